@@ -51,6 +51,23 @@ public abstract class Attribute {
      */
     public static final String PARENT_SEQUENCE_ID = "parentSequenceId";
     
+    /**
+     * The numeric identifier of the monitor, unique within its trace. Set in place of the sequence
+     * id counters by inheritable strategies configured for span ids.
+     */
+    public static final String SPAN_ID = "spanId";
+    
+    /**
+     * The span id of the composite monitor the monitor was created under. Not set on monitors
+     * created with no composite monitor.
+     */
+    public static final String PARENT_SPAN_ID = "parentSpanId";
+    
+    /**
+     * The numeric identifier shared by a root monitor and every monitor created under it.
+     */
+    public static final String TRACE_ID = "traceId";
+    
     /**
      * The class of the Monitor instance.
      */
@@ -78,6 +95,12 @@ public abstract class Attribute {
      */
     public static final String LATENCY = "latency";
     
+    /**
+     * For a {@link TransactionMonitor}, the duration of the transaction in nanoseconds, measured
+     * with a monotonic timer
+     */
+    public static final String LATENCY_NANOS = "latencyNanos";
+    
     /**
      * If the {@link Monitor monitor} failed because of a {@link Throwable}, the {@link Throwable}
      * that caused the failure.
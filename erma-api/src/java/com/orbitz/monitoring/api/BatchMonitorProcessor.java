@@ -0,0 +1,28 @@
+package com.orbitz.monitoring.api;
+
+import java.util.List;
+
+/**
+ * A {@link MonitorProcessor} that can process several monitors at once. Processors that hand
+ * monitors over in groups, such as an asynchronous processor draining its queue, give a batch
+ * processor all the monitors they have ready in one call, and call {@link #flush()} when they have
+ * none left. Processors that don't implement this interface are given the same monitors one at a
+ * time.
+ */
+public interface BatchMonitorProcessor extends MonitorProcessor {
+
+    /**
+     * Processes monitors that are ready to be processed, as {@link #process(Monitor)} would process
+     * each of them, in order. The list may be reused by the caller once this method returns, so
+     * it must not be kept.
+     *
+     * @param monitors the monitors, never empty
+     */
+    public void processBatch(List<Monitor> monitors);
+
+    /**
+     * Called when there are no more monitors ready to be processed, so anything buffered from
+     * earlier batches can be written out.
+     */
+    public void flush();
+}
@@ -0,0 +1,28 @@
+package com.orbitz.monitoring.api;
+
+/**
+ * The source of time for monitors. The {@link MonitoringEngine} reads wall clock time from its
+ * clock to stamp monitors with the time they were created, started and ended, and reads the
+ * monotonic time to measure the latency of transactions.
+ * <p>
+ * Implementations must be thread-safe.
+ *
+ * @see MonitoringEngine#setClock(Clock)
+ */
+public interface Clock {
+    /**
+     * Gets the wall clock time
+     *
+     * @return the number of milliseconds since midnight, January 1, 1970 UTC
+     */
+    long currentTimeMillis();
+
+    /**
+     * Gets the value of a monotonic timer that only has meaning when compared to another value
+     * returned by the same clock. Unlike the wall clock, it doesn't move when the system time is
+     * changed.
+     *
+     * @return the current value of the timer, in nanoseconds
+     */
+    long nanoTime();
+}
@@ -0,0 +1,122 @@
+package com.orbitz.monitoring.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The processors to call for each lifecycle event of a monitor. Processors are left out of the
+ * events they don't act on, as told by {@link LifecycleAwareMonitorProcessor}, so the engine
+ * doesn't call methods that do nothing.
+ * <p>
+ * A plan is immutable and may be shared by every monitor routed the same way.
+ */
+public final class DispatchPlan {
+  /**
+   * The event of {@link MonitorProcessor#monitorCreated(Monitor)}
+   */
+  public static final int MONITOR_CREATED = 1;
+  /**
+   * The event of {@link MonitorProcessor#monitorStarted(Monitor)}
+   */
+  public static final int MONITOR_STARTED = 2;
+  /**
+   * The event of {@link MonitorProcessor#process(Monitor)}
+   */
+  public static final int PROCESS = 4;
+  /**
+   * Every lifecycle event
+   */
+  public static final int ALL_EVENTS = MONITOR_CREATED | MONITOR_STARTED | PROCESS;
+
+  private static final MonitorProcessor[] NO_PROCESSORS = new MonitorProcessor[0];
+
+  private final MonitorProcessor[] created;
+  private final MonitorProcessor[] started;
+  private final MonitorProcessor[] processed;
+  private final int version;
+  private final Object key;
+
+  /**
+   * Creates a plan
+   * @param processors the processors chosen for the monitor
+   * @param version identifies the configuration the processors were chosen under, for the
+   *        {@link DispatchPlanSource} to check
+   */
+  public DispatchPlan(final MonitorProcessor[] processors, final int version) {
+    this(processors, version, null);
+  }
+
+  /**
+   * Creates a plan
+   * @param processors the processors chosen for the monitor
+   * @param version identifies the configuration the processors were chosen under, for the
+   *        {@link DispatchPlanSource} to check
+   * @param key identifies what about the monitor the processors were chosen by, for the
+   *        {@link DispatchPlanSource} to compare with the monitor later
+   */
+  public DispatchPlan(final MonitorProcessor[] processors, final int version, final Object key) {
+    created = select(processors, MONITOR_CREATED);
+    started = select(processors, MONITOR_STARTED);
+    processed = select(processors, PROCESS);
+    this.version = version;
+    this.key = key;
+  }
+
+  /**
+   * Gets the processors to call for an event
+   * @param event one of {@link #MONITOR_CREATED}, {@link #MONITOR_STARTED} and {@link #PROCESS}
+   * @return the processors, which must not be modified
+   */
+  public MonitorProcessor[] getProcessors(final int event) {
+    switch (event) {
+      case MONITOR_CREATED:
+        return created;
+      case MONITOR_STARTED:
+        return started;
+      default:
+        return processed;
+    }
+  }
+
+  public int getVersion() {
+    return version;
+  }
+
+  public Object getKey() {
+    return key;
+  }
+
+  /**
+   * Gets the lifecycle events a processor acts on
+   * @param processor the processor
+   * @return the events, {@link #ALL_EVENTS} unless it is a {@link LifecycleAwareMonitorProcessor}
+   */
+  public static int getLifecycleEvents(final MonitorProcessor processor) {
+    if (processor instanceof LifecycleAwareMonitorProcessor) {
+      return ((LifecycleAwareMonitorProcessor)processor).getLifecycleEvents();
+    }
+    return ALL_EVENTS;
+  }
+
+  private static MonitorProcessor[] select(final MonitorProcessor[] processors, final int event) {
+    List<MonitorProcessor> selected = null;
+    for (int i = 0; i < processors.length; i++) {
+      if ((getLifecycleEvents(processors[i]) & event) == 0) {
+        if (selected == null) {
+          selected = new ArrayList<MonitorProcessor>(processors.length);
+          for (int j = 0; j < i; j++) {
+            selected.add(processors[j]);
+          }
+        }
+      }
+      else if (selected != null) {
+        selected.add(processors[i]);
+      }
+    }
+    if (selected == null) {
+      return processors;
+    }
+    return selected.isEmpty() ? NO_PROCESSORS : selected.toArray(new MonitorProcessor[selected
+        .size()]);
+  }
+}
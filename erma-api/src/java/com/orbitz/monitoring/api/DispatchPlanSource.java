@@ -0,0 +1,28 @@
+package com.orbitz.monitoring.api;
+
+/**
+ * An interface that {@link MonitorProcessorFactory processor factories} can implement to let the
+ * {@link MonitoringEngine} choose the processors of a monitor once, when it is created, and reuse
+ * them for its later lifecycle events. Factories that don't implement it are asked for the
+ * processors of every event.
+ */
+public interface DispatchPlanSource {
+    /**
+     * Gets the plan for dispatching the lifecycle events of a monitor
+     *
+     * @param monitor the monitor
+     * @return the plan, or null if the processors chosen may depend on attributes the monitor can
+     *         still change
+     */
+    public DispatchPlan getDispatchPlan(Monitor monitor);
+
+    /**
+     * Checks whether a plan made earlier still applies, or whether the configuration that chose
+     * its processors, or the monitor they were chosen by, has changed since
+     *
+     * @param plan a plan returned by {@link #getDispatchPlan(Monitor)}
+     * @param monitor the monitor the plan was made for
+     * @return true if the plan can still be used
+     */
+    public boolean isCurrent(DispatchPlan plan, Monitor monitor);
+}
@@ -0,0 +1,17 @@
+package com.orbitz.monitoring.api;
+
+/**
+ * A {@link MonitorProcessor} that tells the {@link MonitoringEngine} which lifecycle events it
+ * acts on. The engine doesn't call it for the others. Processors that don't implement this
+ * interface are called for every event.
+ */
+public interface LifecycleAwareMonitorProcessor extends MonitorProcessor {
+    /**
+     * Gets the lifecycle events this processor acts on. The answer must not change while the
+     * processor is in use.
+     *
+     * @return a combination of {@link DispatchPlan#MONITOR_CREATED},
+     *         {@link DispatchPlan#MONITOR_STARTED} and {@link DispatchPlan#PROCESS}
+     */
+    public int getLifecycleEvents();
+}
@@ -0,0 +1,171 @@
+package com.orbitz.monitoring.api;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable set of monitor level overrides keyed by monitor name prefix. Prefixes are stored in
+ * a trie so that the longest matching prefix is found in a single pass over the monitor name, and
+ * each resolved name is remembered so that later lookups for the same name are a single map read.
+ * <p>
+ * Changes produce a new instance with a new version, so readers always see a complete set of
+ * overrides.
+ */
+final class MonitorLevelOverrides {
+  /**
+   * The number of distinct monitor names whose resolution is remembered. Names beyond this are
+   * resolved through the trie every time.
+   */
+  private static final int MAX_CACHED_NAMES = 8192;
+
+  /**
+   * Marks a cached name that has no override, since a {@link ConcurrentHashMap} can't hold null
+   */
+  private static final Object NO_OVERRIDE = new Object();
+
+  static final MonitorLevelOverrides EMPTY = new MonitorLevelOverrides(new Node(), 0, 0);
+
+  private final Node root;
+  private final int size;
+  private final int version;
+  private final ConcurrentHashMap<String, Object> resolved = new ConcurrentHashMap<String, Object>();
+
+  private MonitorLevelOverrides(final Node root, final int size, final int version) {
+    this.root = root;
+    this.size = size;
+    this.version = version;
+  }
+
+  /**
+   * Creates a copy of these overrides with one more override
+   * @param nameStartsWith the monitor name prefix
+   * @param level the level for monitors whose name starts with the prefix
+   * @return the new overrides
+   */
+  MonitorLevelOverrides with(final String nameStartsWith, final MonitoringLevel level) {
+    final Node newRoot = root.copy();
+    Node node = newRoot;
+    for (int i = 0; i < nameStartsWith.length(); i++) {
+      node = node.childFor(nameStartsWith.charAt(i));
+    }
+    final int newSize = (node.level == null) ? size + 1 : size;
+    node.level = level;
+    return new MonitorLevelOverrides(newRoot, newSize, version + 1);
+  }
+
+  /**
+   * Creates an empty set of overrides that has a newer version than these
+   * @return the new overrides
+   */
+  MonitorLevelOverrides cleared() {
+    return new MonitorLevelOverrides(new Node(), 0, version + 1);
+  }
+
+  /**
+   * Finds the override for the longest prefix of a monitor name
+   * @param name the monitor name
+   * @return the level, or null if no prefix of the name has an override
+   */
+  MonitoringLevel getLevel(final String name) {
+    if (name == null || size == 0) {
+      return null;
+    }
+    final Object cached = resolved.get(name);
+    if (cached != null) {
+      return (cached == NO_OVERRIDE) ? null : (MonitoringLevel)cached;
+    }
+    final MonitoringLevel level = resolve(name);
+    if (resolved.size() < MAX_CACHED_NAMES) {
+      resolved.put(name, (level == null) ? NO_OVERRIDE : level);
+    }
+    return level;
+  }
+
+  /**
+   * Gets the number of overrides
+   * @return the number of prefixes with an override
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Gets a number that increases every time the overrides change
+   * @return the version
+   */
+  int getVersion() {
+    return version;
+  }
+
+  /**
+   * Lists the overrides, most specific prefix first
+   */
+  @Override
+  public String toString() {
+    final Map<String, MonitoringLevel> levels = new TreeMap<String, MonitoringLevel>(Collections
+        .reverseOrder());
+    root.collect(new StringBuilder(), levels);
+    return levels.toString();
+  }
+
+  private MonitoringLevel resolve(final String name) {
+    MonitoringLevel level = root.level;
+    Node node = root;
+    for (int i = 0; i < name.length(); i++) {
+      node = node.children.get(Character.valueOf(name.charAt(i)));
+      if (node == null) {
+        break;
+      }
+      if (node.level != null) {
+        level = node.level;
+      }
+    }
+    return level;
+  }
+
+  /**
+   * A node of the prefix trie. Nodes are only modified while building a new set of overrides.
+   */
+  private static final class Node {
+    private final Map<Character, Node> children;
+    private MonitoringLevel level;
+
+    private Node() {
+      children = new HashMap<Character, Node>(4);
+    }
+
+    private Node(final Node other) {
+      children = new HashMap<Character, Node>(other.children);
+      level = other.level;
+    }
+
+    private void collect(final StringBuilder prefix, final Map<String, MonitoringLevel> levels) {
+      if (level != null) {
+        levels.put(prefix.toString(), level);
+      }
+      for (Map.Entry<Character, Node> entry : children.entrySet()) {
+        prefix.append(entry.getKey().charValue());
+        entry.getValue().collect(prefix, levels);
+        prefix.setLength(prefix.length() - 1);
+      }
+    }
+
+    private Node copy() {
+      return new Node(this);
+    }
+
+    /**
+     * Gets a child that is safe to modify, copying the existing child if there is one
+     */
+    private Node childFor(final char c) {
+      final Character key = Character.valueOf(c);
+      final Node existing = children.get(key);
+      final Node child = (existing == null) ? new Node() : existing.copy();
+      children.put(key, child);
+      return child;
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package com.orbitz.monitoring.api;
+
+/**
+ * An interface that {@link MonitorProcessorFactory processor factories} and
+ * {@link InheritableStrategy inheritable strategies} can implement to tell the
+ * {@link MonitoringEngine} the lowest level of monitor they would act on. The engine uses it to
+ * answer {@link MonitoringEngine#isMonitored(String, MonitoringLevel)}. Components that don't
+ * implement it are assumed to act on monitors of every level.
+ */
+public interface MonitoredLevelSource {
+    /**
+     * Gets the lowest level of monitor that this component would act on if the monitor were
+     * processed now on the calling thread. The answer may change as the component is reconfigured
+     * and may depend on the state of the calling thread.
+     *
+     * @return the lowest level acted on, or null if no monitor would be
+     */
+    public MonitoringLevel getLowestMonitoredLevel();
+}
@@ -1,8 +1,15 @@
 package com.orbitz.monitoring.api;
 
 import com.orbitz.monitoring.api.engine.MapBasedInheritableStrategy;
+import com.orbitz.monitoring.api.engine.SystemClock;
+import com.orbitz.monitoring.api.metric.Counter;
+import com.orbitz.monitoring.api.metric.Gauge;
+import com.orbitz.monitoring.api.metric.MetricRegistry;
+import com.orbitz.monitoring.api.metric.Timer;
+import com.orbitz.monitoring.api.monitor.AbstractMonitor;
 import com.orbitz.monitoring.api.monitor.AttributeHolder;
 import com.orbitz.monitoring.api.monitor.AttributeMap;
+import com.orbitz.monitoring.api.monitor.SpanAttributeHolder;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collections;
@@ -11,8 +18,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.log4j.Logger;
 
 /**
@@ -26,29 +32,46 @@ public class MonitoringEngine {
   
   private static final Logger log = Logger.getLogger(MonitoringEngine.class);
   
-  private static final int MAX_LEVEL_OVERRIDES = 128;
+  private static final int MAX_LEVEL_OVERRIDES = 4096;
   
   private static MonitoringEngine instance = new MonitoringEngine();
   
+  /**
+   * The hex form of each thread's hash code, computed once per thread
+   */
+  private static final ThreadLocal<String> threadIds = new ThreadLocal<String>() {
+    @Override
+    protected String initialValue() {
+      return Integer.toHexString(Thread.currentThread().hashCode());
+    }
+  };
+  
   private boolean monitoringEnabled = true;
   private boolean running;
   
   private MonitorProcessorFactory processorFactory;
   private Decomposer decomposer;
   private InheritableStrategy inheritableStrategy;
+  private volatile Clock clock = new SystemClock();
+  private volatile boolean singleWriterMonitors;
+  private volatile boolean monitorRecycling;
+  private volatile int maxRetainedChildMonitors;
+  private volatile boolean momentoCaching;
+  private final MetricRegistry metricRegistry = new MetricRegistry();
   
   private final AttributeMap globalAttributes;
+  private volatile Map<String, Object> globalAttributeSnapshot = Collections.emptyMap();
   
   private final Map monitorProcessorLevels;
-  private final Map monitorLevels;
+  private volatile MonitorLevelOverrides monitorLevels = MonitorLevelOverrides.EMPTY;
+  private final Object monitorLevelsLock = new Object();
+  private final AtomicInteger processorLevelsVersion = new AtomicInteger();
   
   private Runnable startupRunnable;
   
   protected MonitoringEngine() {
     monitorProcessorLevels = new HashMap();
     
-    monitorLevels = new TreeMap(Collections.reverseOrder());
-    
     globalAttributes = new AttributeMap();
     
     inheritableStrategy = new MapBasedInheritableStrategy();
@@ -108,10 +131,15 @@ public class MonitoringEngine {
   public void shutdown() {
     if (running) {
       log.info("MonitoringEngine shutting down");
-      globalAttributes.clear();
+      synchronized (globalAttributes) {
+        globalAttributes.clear();
+        publishGlobalAttributes();
+      }
       monitorProcessorLevels.clear();
-      monitorLevels.clear();
+      processorLevelsVersion.incrementAndGet();
+      clearMonitorLevels();
       running = false;
+      flushProcessors();
       processorFactory.shutdown();
       inheritableStrategy.shutdown();
     }
@@ -169,10 +197,15 @@ public class MonitoringEngine {
       return;
     }
     
-    monitor.set(Attribute.CREATED_AT, new Date()).serializable().lock();
+    final long createdAt = clock.currentTimeMillis();
+    if (monitor instanceof AbstractMonitor) {
+      ((AbstractMonitor)monitor).setTimestamp(Attribute.CREATED_AT, createdAt).lock();
+    }
+    else {
+      monitor.set(Attribute.CREATED_AT, new Date(createdAt)).serializable().lock();
+    }
     
-    final String threadId = Integer.toHexString(Thread.currentThread().hashCode());
-    monitor.set(Attribute.THREAD_ID, threadId).serializable().lock();
+    monitor.set(Attribute.THREAD_ID, threadIds.get()).serializable().lock();
     
     inheritGlobals(monitor);
     
@@ -193,7 +226,7 @@ public class MonitoringEngine {
       return;
     }
     
-    handleMonitor(monitor, MONITOR_CREATED_CLOSURE);
+    dispatch(monitor, DispatchPlan.MONITOR_CREATED, MONITOR_CREATED_CLOSURE);
   }
   
   private static ProcessClosure MONITOR_CREATED_CLOSURE = new ProcessClosure() {
@@ -213,7 +246,7 @@ public class MonitoringEngine {
       return;
     }
     
-    handleMonitor(monitor, MONITOR_STARTED_CLOSURE);
+    dispatch(monitor, DispatchPlan.MONITOR_STARTED, MONITOR_STARTED_CLOSURE);
   }
   
   private static ProcessClosure MONITOR_STARTED_CLOSURE = new ProcessClosure() {
@@ -233,9 +266,13 @@ public class MonitoringEngine {
       return;
     }
     
+    if (monitor instanceof AbstractMonitor) {
+      ((AbstractMonitor)monitor).freezeAttributes();
+    }
+    
     inheritableStrategy.processMonitorForCompositeMonitor(monitor);
     
-    handleMonitor(monitor, PROCESS_CLOSURE);
+    dispatch(monitor, DispatchPlan.PROCESS, PROCESS_CLOSURE);
   }
   
   private static ProcessClosure PROCESS_CLOSURE = new ProcessClosure() {
@@ -350,7 +387,10 @@ public class MonitoringEngine {
    * @param value the value of that attribute
    */
   public void setGlobalAttribute(final String key, final Object value) {
-    globalAttributes.set(key, value);
+    synchronized (globalAttributes) {
+      globalAttributes.set(key, value);
+      publishGlobalAttributes();
+    }
   }
   
   /**
@@ -361,7 +401,10 @@ public class MonitoringEngine {
    * @param value the value of that attribute
    */
   public void setGlobalAttribute(final String key, final short value) {
-    globalAttributes.set(key, value);
+    synchronized (globalAttributes) {
+      globalAttributes.set(key, value);
+      publishGlobalAttributes();
+    }
   }
   
   /**
@@ -372,7 +415,10 @@ public class MonitoringEngine {
    * @param value the value of that attribute
    */
   public void setGlobalAttribute(final String key, final int value) {
-    globalAttributes.set(key, value);
+    synchronized (globalAttributes) {
+      globalAttributes.set(key, value);
+      publishGlobalAttributes();
+    }
   }
   
   /**
@@ -383,7 +429,10 @@ public class MonitoringEngine {
    * @param value the value of that attribute
    */
   public void setGlobalAttribute(final String key, final long value) {
-    globalAttributes.set(key, value);
+    synchronized (globalAttributes) {
+      globalAttributes.set(key, value);
+      publishGlobalAttributes();
+    }
   }
   
   /**
@@ -394,7 +443,10 @@ public class MonitoringEngine {
    * @param value the value of that attribute
    */
   public void setGlobalAttribute(final String key, final float value) {
-    globalAttributes.set(key, value);
+    synchronized (globalAttributes) {
+      globalAttributes.set(key, value);
+      publishGlobalAttributes();
+    }
   }
   
   /**
@@ -405,7 +457,10 @@ public class MonitoringEngine {
    * @param value the value of that attribute
    */
   public void setGlobalAttribute(final String key, final double value) {
-    globalAttributes.set(key, value);
+    synchronized (globalAttributes) {
+      globalAttributes.set(key, value);
+      publishGlobalAttributes();
+    }
   }
   
   /**
@@ -416,7 +471,10 @@ public class MonitoringEngine {
    * @param value the value of that attribute
    */
   public void setGlobalAttribute(final String key, final char value) {
-    globalAttributes.set(key, value);
+    synchronized (globalAttributes) {
+      globalAttributes.set(key, value);
+      publishGlobalAttributes();
+    }
   }
   
   /**
@@ -427,7 +485,10 @@ public class MonitoringEngine {
    * @param value the value of that attribute
    */
   public void setGlobalAttribute(final String key, final byte value) {
-    globalAttributes.set(key, value);
+    synchronized (globalAttributes) {
+      globalAttributes.set(key, value);
+      publishGlobalAttributes();
+    }
   }
   
   /**
@@ -438,7 +499,10 @@ public class MonitoringEngine {
    * @param value the value of that attribute
    */
   public void setGlobalAttribute(final String key, final boolean value) {
-    globalAttributes.set(key, value);
+    synchronized (globalAttributes) {
+      globalAttributes.set(key, value);
+      publishGlobalAttributes();
+    }
   }
   
   /**
@@ -448,11 +512,28 @@ public class MonitoringEngine {
    * @param attributes the map of attributes to set
    */
   public void setGlobalAttributes(final Map attributes) {
-    globalAttributes.setAll(attributes);
+    synchronized (globalAttributes) {
+      globalAttributes.setAll(attributes);
+      publishGlobalAttributes();
+    }
   }
   
   public AttributeHolder setGlobal(final String key, final String value) {
-    return globalAttributes.set(key, value).serializable();
+    synchronized (globalAttributes) {
+      final AttributeHolder holder = globalAttributes.set(key, value).serializable();
+      publishGlobalAttributes();
+      return holder;
+    }
+  }
+  
+  /**
+   * Replaces the snapshot of global attributes that is applied to new monitors. The snapshot holds
+   * the same holders as the global attribute map, so flags set on a holder returned by
+   * {@link #setGlobal(String, String)} are seen by monitors created afterwards.
+   */
+  private void publishGlobalAttributes() {
+    globalAttributeSnapshot = Collections.unmodifiableMap(new HashMap<String, Object>(
+        globalAttributes.getAttributes()));
   }
   
   /**
@@ -465,6 +546,42 @@ public class MonitoringEngine {
     return monitoringEnabled && running;
   }
   
+  /**
+   * Determines whether a monitor with a name and level would reach anything if it were processed
+   * now on this thread: a processor, or a composite monitor that collects it as a child. Monitor
+   * level overrides are applied to the level first. The answer follows changes to the processor
+   * factory and inheritable strategy that implement {@link MonitoredLevelSource}; any other
+   * factory or strategy is assumed to take every monitor.
+   * <p>
+   * Instrumentation on hot paths can use this to skip building a monitor, as
+   * {@link com.orbitz.monitoring.api.monitor.EventMonitor#obtain EventMonitor.obtain} and
+   * {@link com.orbitz.monitoring.api.monitor.ValueMonitor#obtain ValueMonitor.obtain} do.
+   * 
+   * @param name the name of the monitor
+   * @param level the level the monitor would be created with
+   * @return false if nothing would consume the monitor
+   */
+  public boolean isMonitored(final String name, final MonitoringLevel level) {
+    if (!isEnabled()) {
+      return false;
+    }
+    final MonitoringLevel override = monitorLevels.getLevel(name);
+    final MonitoringLevel effectiveLevel = (override != null) ? override : level;
+    if (effectiveLevel == null) {
+      return true;
+    }
+    return isMonitoredBy(processorFactory, effectiveLevel)
+        || isMonitoredBy(inheritableStrategy, effectiveLevel);
+  }
+  
+  private static boolean isMonitoredBy(final Object component, final MonitoringLevel level) {
+    if (!(component instanceof MonitoredLevelSource)) {
+      return true;
+    }
+    final MonitoringLevel lowest = ((MonitoredLevelSource)component).getLowestMonitoredLevel();
+    return lowest != null && level.hasHigherOrEqualPriorityThan(lowest);
+  }
+  
   /**
    * Sets a Runnable to be executed on startup of the MonitoringEngine.
    * @param startupRunnable instance of a Runnable
@@ -473,6 +590,54 @@ public class MonitoringEngine {
     this.startupRunnable = startupRunnable;
   }
   
+  /**
+   * Calls the processors of a monitor for a lifecycle event. If the processor factory is a
+   * {@link DispatchPlanSource}, the plan is made for the first event of the monitor and kept on it
+   * for the later events for as long as it is current, which includes the monitor not having been
+   * renamed. Otherwise the processors are chosen for
+   * each event.
+   * 
+   * @param monitor the monitor to handle
+   * @param event the lifecycle event
+   * @param closure the work we should perform across each processor
+   */
+  private void dispatch(final Monitor monitor, final int event, final ProcessClosure closure) {
+    if (!(processorFactory instanceof DispatchPlanSource) || !(monitor instanceof AbstractMonitor)) {
+      handleMonitor(monitor, event, closure);
+      return;
+    }
+    final AbstractMonitor abstractMonitor = (AbstractMonitor)monitor;
+    final DispatchPlanSource source = (DispatchPlanSource)processorFactory;
+    DispatchPlan plan = abstractMonitor.getDispatchPlan();
+    try {
+      if (plan == null || !source.isCurrent(plan, monitor)) {
+        plan = source.getDispatchPlan(monitor);
+        abstractMonitor.setDispatchPlan(plan);
+      }
+    }
+    catch (final Throwable t) {
+      log.warn("Throwable caught while processing " + monitor + "; application is unaffected: ", t);
+      return;
+    }
+    if (plan == null) {
+      handleMonitor(monitor, event, closure);
+      return;
+    }
+    final MonitorProcessor[] processors = plan.getProcessors(event);
+    if (log.isDebugEnabled()) {
+      log.debug(monitor + " will be processed by " + Arrays.asList(processors));
+    }
+    for (int i = 0; i < processors.length; i++) {
+      try {
+        closure.processWithProcessor(monitor, processors[i]);
+      }
+      catch (final Throwable t) {
+        log.warn("Throwable caught while processing " + monitor + "; application is unaffected: ",
+            t);
+      }
+    }
+  }
+  
   /**
    * This method encapsulates the logic of looping over all applicable processors and applying the
    * supplied closure on each processor.
@@ -483,9 +648,10 @@ public class MonitoringEngine {
    * that one failing processor does not affect other working processors.
    * 
    * @param monitor the monitor to handle
+   * @param event the lifecycle event, whose processors that don't act on it are skipped
    * @param closure the work we should perform across each processor
    */
-  private void handleMonitor(final Monitor monitor, final ProcessClosure closure) {
+  private void handleMonitor(final Monitor monitor, final int event, final ProcessClosure closure) {
     try {
       final MonitorProcessor[] processors = processorFactory.getProcessorsForMonitor(monitor);
       
@@ -494,6 +660,9 @@ public class MonitoringEngine {
       }
       
       for (int i = 0; i < processors.length; i++) {
+        if ((DispatchPlan.getLifecycleEvents(processors[i]) & event) == 0) {
+          continue;
+        }
         try {
           closure.processWithProcessor(monitor, processors[i]);
         }
@@ -509,10 +678,24 @@ public class MonitoringEngine {
   }
   
   private void inheritGlobals(final Monitor monitor) {
-    for (final Iterator it = globalAttributes.getAllAttributeHolders().entrySet().iterator(); it
-        .hasNext();) {
-      final Map.Entry entry = (Map.Entry)it.next();
-      final String key = (String)entry.getKey();
+    final Map<String, Object> globals = globalAttributeSnapshot;
+    if (globals.isEmpty()) {
+      return;
+    }
+    for (final String key : globals.keySet()) {
+      if (monitor.hasAttribute(key)) {
+        // an existing attribute may be locked, so apply each global the way set() would
+        inheritGlobalsIndividually(monitor, globals);
+        return;
+      }
+    }
+    // keys were validated when the globals were set, and holders are copied with their flags
+    monitor.setAllAttributeHolders(globals);
+  }
+  
+  private void inheritGlobalsIndividually(final Monitor monitor, final Map<String, Object> globals) {
+    for (final Map.Entry<String, Object> entry : globals.entrySet()) {
+      final String key = entry.getKey();
       final AttributeHolder holder = (AttributeHolder)entry.getValue();
       
       final Object value = holder.getValue();
@@ -537,6 +720,11 @@ public class MonitoringEngine {
       final AttributeHolder parentAttribute = (AttributeHolder)entry.getValue();
       
       if (!monitor.hasAttribute(key)) {
+        if (parentAttribute instanceof SpanAttributeHolder && monitor instanceof AbstractMonitor) {
+          // copied as a holder, so a sequence id isn't built until something reads it
+          ((AbstractMonitor)monitor).setAttributeHolder(key, parentAttribute);
+          continue;
+        }
         final Object value = parentAttribute.getValue();
         final AttributeHolder childAttribute = monitor.set(key, value);
         
@@ -574,6 +762,176 @@ public class MonitoringEngine {
     this.inheritableStrategy = inheritableStrategy;
   }
   
+  public Clock getClock() {
+    return clock;
+  }
+  
+  /**
+   * Sets the clock that monitors read their timestamps and latencies from. Monitors that are
+   * already running keep measuring with the clock they started with.
+   * 
+   * @param clock the clock
+   * @throws IllegalArgumentException if the clock is null
+   */
+  public void setClock(final Clock clock) {
+    if (clock == null) {
+      throw new IllegalArgumentException("clock cannot be null");
+    }
+    this.clock = clock;
+  }
+  
+  public boolean isSingleWriterMonitors() {
+    return singleWriterMonitors;
+  }
+  
+  /**
+   * Sets whether new monitors keep their attributes in maps for a single writer. Such maps are
+   * smaller and cheaper to change, but only the thread that creates a monitor may change its
+   * attributes until the monitor is processed. Processors that read monitors on other threads
+   * should only do so after {@link #process(Monitor)}.
+   * 
+   * @param singleWriterMonitors true to create monitors for a single writer
+   * @see AttributeMap#freeze()
+   */
+  public void setSingleWriterMonitors(final boolean singleWriterMonitors) {
+    this.singleWriterMonitors = singleWriterMonitors;
+  }
+  
+  public boolean isMonitorRecycling() {
+    return monitorRecycling;
+  }
+  
+  /**
+   * Sets whether monitors obtained with {@link com.orbitz.monitoring.api.monitor.EventMonitor#obtain
+   * EventMonitor.obtain} and {@link com.orbitz.monitoring.api.monitor.ValueMonitor#obtain
+   * ValueMonitor.obtain} come from a per-thread pool and go back to it once they have been fired.
+   * Processors that keep a reference to a monitor after processing it must either take its
+   * {@link AbstractMonitor#getSerializableMomento() momento} or {@link AbstractMonitor#retain()
+   * retain} it.
+   * 
+   * @param monitorRecycling true to recycle pooled monitors
+   */
+  public void setMonitorRecycling(final boolean monitorRecycling) {
+    this.monitorRecycling = monitorRecycling;
+  }
+  
+  public boolean isMomentoCaching() {
+    return momentoCaching;
+  }
+  
+  /**
+   * Sets whether a monitor keeps the {@link Monitor#getSerializableMomento() momento} made once it
+   * has started being processed, and returns it to later callers. A composite monitor's momento
+   * then reuses the momentos its children made while they were processed, instead of decomposing
+   * every child's attributes again at each level of the tree.
+   * <p>
+   * A cached momento is shared by every caller, so it must not be changed. It is made again if the
+   * monitor's attributes are set, replaced or removed afterwards, or a child is added, but not if
+   * a holder's flags or a mutable attribute value change in place. Each monitor kept in a tree
+   * holds its momento as long as the tree is reachable, which roughly doubles the memory of
+   * retained trees.
+   * 
+   * @param momentoCaching true to cache momentos
+   */
+  public void setMomentoCaching(final boolean momentoCaching) {
+    this.momentoCaching = momentoCaching;
+  }
+  
+  public int getMaxRetainedChildMonitors() {
+    return maxRetainedChildMonitors;
+  }
+  
+  /**
+   * Sets how many children a new composite monitor keeps. Further children are folded into one
+   * {@link com.orbitz.monitoring.api.monitor.ChildMonitorSummary summary} per name, so a composite
+   * that wraps a long loop doesn't keep every child in memory. A composite can change its own
+   * limit with {@link com.orbitz.monitoring.api.monitor.AbstractCompositeMonitor#setMaxRetainedChildMonitors(int)
+   * setMaxRetainedChildMonitors}.
+   * 
+   * @param maxRetainedChildMonitors the most children kept, or 0 to keep them all
+   */
+  public void setMaxRetainedChildMonitors(final int maxRetainedChildMonitors) {
+    this.maxRetainedChildMonitors = maxRetainedChildMonitors;
+  }
+  
+  public MetricRegistry getMetricRegistry() {
+    return metricRegistry;
+  }
+  
+  /**
+   * Gets a counter from the {@link #getMetricRegistry() metric registry}, creating it if needed.
+   * Counting doesn't create monitors; the counter is reported when the metrics are
+   * {@link #flushMetrics() flushed}.
+   * 
+   * @param name the name of the counter
+   * @return the counter
+   */
+  public Counter counter(final String name) {
+    return metricRegistry.counter(name);
+  }
+  
+  /**
+   * Gets a timer from the {@link #getMetricRegistry() metric registry}, creating it if needed.
+   * Recording latencies doesn't create monitors; the timer is reported when the metrics are
+   * {@link #flushMetrics() flushed}.
+   * 
+   * @param name the name of the timer
+   * @return the timer
+   */
+  public Timer timer(final String name) {
+    return metricRegistry.timer(name);
+  }
+  
+  /**
+   * Registers a gauge with the {@link #getMetricRegistry() metric registry}. The gauge is read
+   * each time the metrics are {@link #flushMetrics() flushed}.
+   * 
+   * @param name the name of the gauge
+   * @param gauge the gauge
+   */
+  public void gauge(final String name, final Gauge gauge) {
+    metricRegistry.gauge(name, gauge);
+  }
+  
+  /**
+   * Reports the metrics of the {@link #getMetricRegistry() metric registry} as monitors, if
+   * monitoring is enabled
+   */
+  public void flushMetrics() {
+    if (isEnabled()) {
+      metricRegistry.flush();
+      flushProcessors();
+    }
+  }
+  
+  /**
+   * Calls {@link BatchMonitorProcessor#flush()} on every batch processor of the processor factory,
+   * so they write out what they have buffered. The engine does this after flushing metrics and
+   * when it shuts down.
+   */
+  public void flushProcessors() {
+    try {
+      final MonitorProcessor[] processors = processorFactory.getAllProcessors();
+      if (processors == null) {
+        return;
+      }
+      for (final MonitorProcessor processor : processors) {
+        if (processor instanceof BatchMonitorProcessor) {
+          try {
+            ((BatchMonitorProcessor)processor).flush();
+          }
+          catch (final Throwable t) {
+            log.warn("Throwable caught while flushing " + processor
+                + "; application is unaffected: ", t);
+          }
+        }
+      }
+    }
+    catch (final Throwable t) {
+      log.warn("Throwable caught while flushing processors; application is unaffected: ", t);
+    }
+  }
+  
   public void setMonitoringEnabled(final boolean monitoringEnabled) {
     this.monitoringEnabled = monitoringEnabled;
   }
@@ -584,6 +942,16 @@ public class MonitoringEngine {
     }
     
     monitorProcessorLevels.put(name, level);
+    processorLevelsVersion.incrementAndGet();
+  }
+  
+  /**
+   * Gets a counter that changes every time the processor level overrides change. Processor
+   * factories that cache routing decisions can compare this value to detect stale entries.
+   * @return the current version of the processor level overrides
+   */
+  public int getProcessorLevelsVersion() {
+    return processorLevelsVersion.get();
   }
   
   public String getOverrideProcessorLevelsListing() {
@@ -594,11 +962,26 @@ public class MonitoringEngine {
     if (nameStartsWith == null) {
       throw new NullPointerException("null monitor name");
     }
-    if (monitorLevels.size() >= MAX_LEVEL_OVERRIDES) {
-      throw new RuntimeException("Attempt to exceed max cache size for override levels");
+    synchronized (monitorLevelsLock) {
+      if (monitorLevels.size() >= MAX_LEVEL_OVERRIDES) {
+        throw new RuntimeException("Attempt to exceed max cache size for override levels");
+      }
+      monitorLevels = monitorLevels.with(nameStartsWith, level);
+    }
+  }
+  
+  private void clearMonitorLevels() {
+    synchronized (monitorLevelsLock) {
+      monitorLevels = monitorLevels.cleared();
     }
-    
-    monitorLevels.put(nameStartsWith, level);
+  }
+  
+  /**
+   * Gets a counter that changes every time the monitor level overrides change
+   * @return the current version of the monitor level overrides
+   */
+  public int getMonitorLevelsVersion() {
+    return monitorLevels.getVersion();
   }
   
   public String getOverrideMonitorLevelsListing() {
@@ -625,22 +1008,7 @@ public class MonitoringEngine {
    *         be returned, if not the monitor's level set at construction time will be returned.
    */
   public MonitoringLevel getOverrideLevelForMonitor(final Monitor monitor) {
-    final String name = monitor.getAsString(Attribute.NAME);
-    
-    final Set keys = monitorLevels.keySet();
-    final Iterator itr = keys.iterator();
-    
-    String keyToUse = null;
-    while (itr.hasNext()) {
-      final String key = (String)itr.next();
-      
-      if (name.startsWith(key)) {
-        keyToUse = key;
-        break;
-      }
-    }
-    
-    return (keyToUse != null ? (MonitoringLevel)monitorLevels.get(keyToUse) : null);
+    return monitorLevels.getLevel(monitor.getAsString(Attribute.NAME));
   }
   
   public void setInheritable(final CompositeMonitor compositeMonitor, final String key,
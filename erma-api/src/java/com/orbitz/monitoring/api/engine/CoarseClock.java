@@ -0,0 +1,108 @@
+package com.orbitz.monitoring.api.engine;
+
+import com.orbitz.monitoring.api.Clock;
+import org.apache.log4j.Logger;
+
+/**
+ * A {@link Clock} whose wall clock time is read from a field that a ticker thread updates at a fixed
+ * resolution, so that timestamping a monitor doesn't read the system clock. Wall clock times are
+ * accurate to within the resolution. {@link #nanoTime()} always reads {@link System#nanoTime()},
+ * so latencies keep their full precision.
+ * <p>
+ * The ticker is a daemon thread started by {@link #start()} and stopped by {@link #stop()}. While
+ * it isn't running, the wall clock time is read from the system clock.
+ */
+public class CoarseClock implements Clock {
+
+    private static final Logger log = Logger.getLogger(CoarseClock.class);
+
+    private static final long DEFAULT_RESOLUTION_MILLIS = 1;
+
+    private final long resolutionMillis;
+    private volatile long currentTimeMillis;
+    private volatile Thread ticker;
+
+    /**
+     * Creates a clock that is updated every millisecond
+     */
+    public CoarseClock() {
+        this(DEFAULT_RESOLUTION_MILLIS);
+    }
+
+    /**
+     * Creates a clock that is updated at the given resolution
+     *
+     * @param resolutionMillis the number of milliseconds between updates
+     * @throws IllegalArgumentException if the resolution isn't positive
+     */
+    public CoarseClock(final long resolutionMillis) {
+        if (resolutionMillis <= 0) {
+            throw new IllegalArgumentException("resolutionMillis must be positive");
+        }
+        this.resolutionMillis = resolutionMillis;
+        this.currentTimeMillis = System.currentTimeMillis();
+    }
+
+    public long currentTimeMillis() {
+        return (ticker == null) ? System.currentTimeMillis() : currentTimeMillis;
+    }
+
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    public long getResolutionMillis() {
+        return resolutionMillis;
+    }
+
+    /**
+     * Starts the ticker thread, if it isn't already running
+     */
+    public synchronized void start() {
+        if (ticker != null) {
+            return;
+        }
+        currentTimeMillis = System.currentTimeMillis();
+        final Thread thread = new Thread(new Runnable() {
+            public void run() {
+                tick();
+            }
+        }, "erma-clock-ticker");
+        thread.setDaemon(true);
+        ticker = thread;
+        thread.start();
+    }
+
+    /**
+     * Stops the ticker thread. Later reads of the wall clock go to the system clock until the ticker
+     * is started again.
+     */
+    public synchronized void stop() {
+        final Thread thread = ticker;
+        ticker = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void tick() {
+        final Thread self = Thread.currentThread();
+        try {
+            while (ticker == self) {
+                currentTimeMillis = System.currentTimeMillis();
+                Thread.sleep(resolutionMillis);
+            }
+        }
+        catch (InterruptedException e) {
+            // stopped
+        }
+        catch (RuntimeException e) {
+            log.error("clock ticker failed; falling back to the system clock", e);
+            synchronized (this) {
+                if (ticker == self) {
+                    ticker = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.orbitz.monitoring.api.engine;
+
+import com.orbitz.monitoring.api.Attribute;
+import com.orbitz.monitoring.api.CompositeMonitor;
+import com.orbitz.monitoring.api.monitor.AbstractCompositeMonitor;
+import com.orbitz.monitoring.api.monitor.AbstractMonitor;
+import com.orbitz.monitoring.api.monitor.AttributeHolder;
+import com.orbitz.monitoring.api.monitor.CompositeAttributeHolder;
+import com.orbitz.monitoring.api.monitor.Span;
+import com.orbitz.monitoring.api.monitor.SpanAttributeHolder;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * One composite monitor on a thread's stack. Each frame keeps the inheritable attribute holders of
+ * its monitor merged over those of its parent frame, built when the frame is pushed, so a new
+ * monitor can be given the attributes of the whole stack without walking it.
+ * <p>
+ * The frames of a stack share a count of inheritable attribute changes, which the strategy
+ * increments through {@link #inheritableChanged()} when a monitor on the stack sets an inheritable
+ * attribute. The merged maps are rebuilt, parents first, the next time a frame finds the count
+ * changed. A frame also rebuilds its map when its own monitor's attributes have changed, as told by
+ * {@link AbstractCompositeMonitor#getAttributesModificationCount()}.
+ * <p>
+ * With span ids, each new monitor is given a {@link Span} under the span of the frame's monitor,
+ * and its span id, the frame's span id and the trace id are held as numbers. Sequence ids are held
+ * by {@link SpanAttributeHolder}s, which only build the string if it is read.
+ * <p>
+ * Frames are only used by the thread that owns the stack. A strategy may reuse a popped frame for a
+ * later push with {@link #reset(CompositeMonitor, InheritableFrame, boolean)}.
+ */
+final class InheritableFrame {
+    private static final Object[] SEQUENCE_KEYS = new Object[] {Attribute.SEQUENCE_ID};
+    private static final Object[] SPAN_KEYS = new Object[] {Attribute.SEQUENCE_ID, Attribute.SPAN_ID};
+    private static final Object[] ROOT_SPAN_KEYS = new Object[] {
+            Attribute.SEQUENCE_ID, Attribute.SPAN_ID, Attribute.TRACE_ID};
+
+    private CompositeMonitor monitor;
+    private InheritableFrame parent;
+    private boolean spanIds;
+    private int[] changes;
+    private int counter;
+    private Span span;
+
+    private Map merged;
+    private int mergedChanges;
+    private int mergedModificationCount;
+
+    InheritableFrame(final CompositeMonitor monitor, final InheritableFrame parent, final boolean spanIds) {
+        reset(monitor, parent, spanIds);
+    }
+
+    /**
+     * Makes this frame the frame of another monitor, as if it had just been created
+     *
+     * @param monitor the composite monitor being pushed
+     * @param parent the frame below it, or null if it's at the bottom of the stack
+     * @param spanIds whether monitors created under it are given spans
+     */
+    void reset(final CompositeMonitor monitor, final InheritableFrame parent, final boolean spanIds) {
+        this.monitor = monitor;
+        this.parent = parent;
+        this.spanIds = spanIds;
+        // a bottom frame keeps the count it had; sharing one with old frames only costs a rebuild
+        if (parent != null) {
+            changes = parent.changes;
+        }
+        else if (changes == null) {
+            changes = new int[1];
+        }
+        counter = 0;
+        span = null;
+        build((parent == null) ? Collections.EMPTY_MAP : parent.getMerged());
+    }
+
+    /**
+     * Drops the references this frame holds to its monitor and attributes once it's popped, so a
+     * frame kept for reuse doesn't keep a completed monitor reachable
+     */
+    void release() {
+        monitor = null;
+        span = null;
+        merged = null;
+    }
+
+    CompositeMonitor getCompositeMonitor() {
+        return monitor;
+    }
+
+    /**
+     * Marks the merged maps of every frame on this frame's stack as out of date, after a monitor on
+     * the stack has set an inheritable attribute
+     */
+    void inheritableChanged() {
+        changes[0]++;
+    }
+
+    /**
+     * Creates the inheritable attributes for a new monitor created under this frame. The returned
+     * map shares the merged holders of this frame and adds the next sequence id, or the next span.
+     *
+     * @return an unmodifiable map of attribute names to {@link CompositeAttributeHolder holders}
+     */
+    Map nextInheritableAttributes() {
+        final Map inherited = getMerged();
+        if (spanIds) {
+            return withSpan(inherited, getSpan().child(counter++), SPAN_KEYS);
+        }
+        final String parentSequenceId = monitor.getAsString(Attribute.SEQUENCE_ID);
+        return withSequenceId(inherited, parentSequenceId + "_" + counter++);
+    }
+
+    /**
+     * Creates the inheritable attributes for a monitor created with no composite monitor on the
+     * stack
+     *
+     * @param sequenceId the sequence id of the new monitor
+     * @param spanIds whether to start a new trace for the monitor
+     * @return an unmodifiable map containing only the sequence id, and the ids of the new trace
+     */
+    static Map rootInheritableAttributes(final String sequenceId, final boolean spanIds) {
+        if (spanIds) {
+            return withSpan(Collections.EMPTY_MAP, Span.root(sequenceId), ROOT_SPAN_KEYS);
+        }
+        return withSequenceId(Collections.EMPTY_MAP, sequenceId);
+    }
+
+    private static Map withSequenceId(final Map inherited, final String sequenceId) {
+        return new ExtendedMap(inherited, SEQUENCE_KEYS, new Object[] {
+                new CompositeAttributeHolder(sequenceId, true).serializable().lock()});
+    }
+
+    private static Map withSpan(final Map inherited, final Span newSpan, final Object[] keys) {
+        final Object[] values = new Object[keys.length];
+        values[0] = SpanAttributeHolder.sequenceId(newSpan).serializable().lock();
+        values[1] = SpanAttributeHolder.spanId(newSpan).serializable().lock();
+        if (keys.length > 2) {
+            values[2] = SpanAttributeHolder.traceId(newSpan).serializable().lock();
+        }
+        return new ExtendedMap(inherited, keys, values);
+    }
+
+    /**
+     * Gets the span of the frame's monitor. A monitor that wasn't given a span, because span ids
+     * were turned on after it was created or it isn't an {@link AbstractMonitor}, starts a new
+     * trace from its sequence id.
+     */
+    private Span getSpan() {
+        if (span == null) {
+            final AttributeHolder holder = (monitor instanceof AbstractMonitor)
+                    ? ((AbstractMonitor) monitor).getAttributeHolder(Attribute.SEQUENCE_ID) : null;
+            if (holder instanceof SpanAttributeHolder) {
+                span = ((SpanAttributeHolder) holder).getSpan();
+            }
+            else {
+                span = Span.root(monitor.getAsString(Attribute.SEQUENCE_ID));
+            }
+        }
+        return span;
+    }
+
+    /**
+     * Gets the merged map, rebuilding it if it's out of date. Only a frame whose map is out of date
+     * asks its parent for the parent's map; otherwise the parent's map is current already.
+     */
+    private Map getMerged() {
+        final boolean stale = mergedChanges != changes[0];
+        if (stale || getModificationCount() != mergedModificationCount) {
+            build((parent == null) ? Collections.EMPTY_MAP
+                    : (stale ? parent.getMerged() : parent.merged));
+        }
+        return merged;
+    }
+
+    private void build(final Map parentMerged) {
+        final Map newMerged = new HashMap(parentMerged);
+        newMerged.putAll(monitor.getInheritableAttributeHolders());
+        if (spanIds) {
+            final Span frameSpan = getSpan();
+            newMerged.put(Attribute.PARENT_SEQUENCE_ID,
+                    SpanAttributeHolder.sequenceId(frameSpan).serializable().lock());
+            newMerged.put(Attribute.PARENT_SPAN_ID,
+                    SpanAttributeHolder.spanId(frameSpan).serializable().lock());
+            newMerged.put(Attribute.TRACE_ID,
+                    SpanAttributeHolder.traceId(frameSpan).serializable().lock());
+        }
+        else {
+            newMerged.put(Attribute.PARENT_SEQUENCE_ID, new CompositeAttributeHolder(
+                    monitor.getAsString(Attribute.SEQUENCE_ID), true).serializable().lock());
+        }
+        merged = newMerged;
+        mergedChanges = changes[0];
+        mergedModificationCount = getModificationCount();
+    }
+
+    /**
+     * @return the modification count of the monitor's attributes, or 0 if it isn't tracked
+     */
+    private int getModificationCount() {
+        return (monitor instanceof AbstractCompositeMonitor)
+                ? ((AbstractCompositeMonitor) monitor).getAttributesModificationCount() : 0;
+    }
+
+    /**
+     * An unmodifiable view of a map with a few entries added or replaced
+     */
+    private static final class ExtendedMap extends AbstractMap {
+        private final Map base;
+        private final Object[] keys;
+        private final Object[] values;
+
+        private ExtendedMap(final Map base, final Object[] keys, final Object[] values) {
+            this.base = base;
+            this.keys = keys;
+            this.values = values;
+        }
+
+        private int indexOf(final Object k) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].equals(k)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        public Object get(final Object k) {
+            final int index = indexOf(k);
+            return (index >= 0) ? values[index] : base.get(k);
+        }
+
+        public boolean containsKey(final Object k) {
+            return indexOf(k) >= 0 || base.containsKey(k);
+        }
+
+        public int size() {
+            int size = base.size();
+            for (int i = 0; i < keys.length; i++) {
+                if (!base.containsKey(keys[i])) {
+                    size++;
+                }
+            }
+            return size;
+        }
+
+        public Set entrySet() {
+            return new AbstractSet() {
+                public int size() {
+                    return ExtendedMap.this.size();
+                }
+
+                public Iterator iterator() {
+                    return new EntryIterator();
+                }
+            };
+        }
+
+        private final class EntryIterator implements Iterator {
+            private final Iterator baseEntries = base.entrySet().iterator();
+            private Map.Entry next;
+            private int extrasReturned;
+
+            private EntryIterator() {
+                advance();
+            }
+
+            private void advance() {
+                while (baseEntries.hasNext()) {
+                    final Map.Entry entry = (Map.Entry) baseEntries.next();
+                    if (indexOf(entry.getKey()) < 0) {
+                        next = entry;
+                        return;
+                    }
+                }
+                if (extrasReturned < keys.length) {
+                    next = new ExtraEntry(keys[extrasReturned], values[extrasReturned]);
+                    extrasReturned++;
+                }
+                else {
+                    next = null;
+                }
+            }
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public Object next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                final Map.Entry entry = next;
+                advance();
+                return entry;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }
+    }
+
+    private static final class ExtraEntry implements Map.Entry {
+        private final Object key;
+        private final Object value;
+
+        private ExtraEntry(final Object key, final Object value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public Object getKey() {
+            return key;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public Object setValue(final Object newValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean equals(final Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            final Map.Entry other = (Map.Entry) o;
+            return key.equals(other.getKey())
+                    && (value == null ? other.getValue() == null : value.equals(other.getValue()));
+        }
+
+        public int hashCode() {
+            return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+    }
+}
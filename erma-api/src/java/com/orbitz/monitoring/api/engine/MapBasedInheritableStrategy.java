@@ -3,6 +3,8 @@ package com.orbitz.monitoring.api.engine;
 import com.orbitz.monitoring.api.CompositeMonitor;
 import com.orbitz.monitoring.api.InheritableStrategy;
 import com.orbitz.monitoring.api.Monitor;
+import com.orbitz.monitoring.api.MonitoredLevelSource;
+import com.orbitz.monitoring.api.MonitoringLevel;
 import com.orbitz.monitoring.api.monitor.AttributeHolder;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -18,7 +20,7 @@ import org.apache.log4j.Logger;
 /**
  *
  */
-public class MapBasedInheritableStrategy implements InheritableStrategy {
+public class MapBasedInheritableStrategy implements InheritableStrategy, MonitoredLevelSource {
 
     private static final Logger log = Logger.getLogger(MapBasedInheritableStrategy.class);
 
@@ -69,6 +71,15 @@ public class MapBasedInheritableStrategy implements InheritableStrategy {
         return inheritableAttributes;
     }
 
+    /**
+     * This strategy never collects child monitors.
+     *
+     * @return null
+     */
+    public MonitoringLevel getLowestMonitoredLevel() {
+        return null;
+    }
+
     public void processMonitorForCompositeMonitor(Monitor monitor) {
         // no-op
     }
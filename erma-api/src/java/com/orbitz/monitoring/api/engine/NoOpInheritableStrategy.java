@@ -3,6 +3,8 @@ package com.orbitz.monitoring.api.engine;
 import com.orbitz.monitoring.api.CompositeMonitor;
 import com.orbitz.monitoring.api.InheritableStrategy;
 import com.orbitz.monitoring.api.Monitor;
+import com.orbitz.monitoring.api.MonitoredLevelSource;
+import com.orbitz.monitoring.api.MonitoringLevel;
 import com.orbitz.monitoring.api.monitor.AttributeHolder;
 import java.util.Collections;
 import java.util.Map;
@@ -13,7 +15,7 @@ import java.util.Map;
  * Created: Apr 6, 2011
  * @author John VanDerpol
  */
-public class NoOpInheritableStrategy implements InheritableStrategy {
+public class NoOpInheritableStrategy implements InheritableStrategy, MonitoredLevelSource {
     
     public int clearCurrentThread() {
         return 0;
@@ -35,6 +37,10 @@ public class NoOpInheritableStrategy implements InheritableStrategy {
         return Collections.emptyMap();
     }
     
+    public MonitoringLevel getLowestMonitoredLevel() {
+        return null;
+    }
+    
     public void processMonitorForCompositeMonitor(final Monitor monitor) {
         // NOOP
     }
@@ -4,26 +4,24 @@ import com.orbitz.monitoring.api.Attribute;
 import com.orbitz.monitoring.api.CompositeMonitor;
 import com.orbitz.monitoring.api.InheritableStrategy;
 import com.orbitz.monitoring.api.Monitor;
+import com.orbitz.monitoring.api.MonitoredLevelSource;
 import com.orbitz.monitoring.api.MonitoringEngine;
 import com.orbitz.monitoring.api.MonitoringLevel;
 import com.orbitz.monitoring.api.monitor.AttributeHolder;
-import com.orbitz.monitoring.api.monitor.CompositeAttributeHolder;
 import org.apache.log4j.Logger;
 
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
  *
  */
-public class StackBasedInheritableStrategy implements InheritableStrategy {
+public class StackBasedInheritableStrategy implements InheritableStrategy, MonitoredLevelSource {
 
     private static final Logger log = Logger.getLogger(StackBasedInheritableStrategy.class);
 
@@ -31,6 +29,7 @@ public class StackBasedInheritableStrategy implements InheritableStrategy {
 
     private final ConcurrentMap threadBasedMap = new ConcurrentHashMap();
     private AtomicReference eventPatternLevel = new AtomicReference(MonitoringLevel.INFO);
+    private volatile boolean spanIds;
 
     public int clearCurrentThread() {
         LinkedList stack = getStack();
@@ -40,7 +39,7 @@ public class StackBasedInheritableStrategy implements InheritableStrategy {
             if (count > 0) {
                 StringBuffer monitorNames = new StringBuffer();
                 for (Iterator i = stack.iterator(); i.hasNext();) {
-                    StackFrame stackFrame = (StackFrame) i.next();
+                    InheritableFrame stackFrame = (InheritableFrame) i.next();
                     Monitor m = stackFrame.getCompositeMonitor();
                     String s = (String) m.get(Attribute.NAME);
                     if (monitorNames.length() > 0) {
@@ -65,16 +64,15 @@ public class StackBasedInheritableStrategy implements InheritableStrategy {
         LinkedList stack = getStack();
 
         if (stack != null && !stack.isEmpty()) {
-            StackFrame target = new StackFrame(monitor);
-            if (!stack.getLast().equals(target) && !stack.contains(target)) {
+            if (!isTop(stack, monitor) && !contains(stack, monitor)) {
                 // This monitor is being double processed on accident.
                 // Ignore it.
                 return;
             }
 
-            while (!stack.getLast().equals(target)) {
+            while (!isTop(stack, monitor)) {
                 // A child monitor was not processed, process them now.
-                StackFrame stackFrame = (StackFrame) stack.removeLast();
+                InheritableFrame stackFrame = (InheritableFrame) stack.removeLast();
                 CompositeMonitor missedMonitor = stackFrame.getCompositeMonitor();
                 String name = (String) missedMonitor.get(Attribute.NAME);
                 log.warn("unfinished child monitor \""+name+"\" found so will process now and remove; app is fine");
@@ -106,7 +104,8 @@ public class StackBasedInheritableStrategy implements InheritableStrategy {
             threadBasedMap.put(Thread.currentThread(), stack);
         }
 
-        stack.addLast(new StackFrame(compositeMonitor));
+        InheritableFrame parent = stack.isEmpty() ? null : (InheritableFrame) stack.getLast();
+        stack.addLast(new InheritableFrame(compositeMonitor, parent, spanIds));
     }
 
     /**
@@ -137,7 +136,7 @@ public class StackBasedInheritableStrategy implements InheritableStrategy {
             ListIterator i = stack.listIterator(size);
 
             while (i.hasPrevious()) {
-                StackFrame stackFrame = (StackFrame) i.previous();
+                InheritableFrame stackFrame = (InheritableFrame) i.previous();
                 CompositeMonitor monitor = stackFrame.getCompositeMonitor();
 
                 if (name.equals(monitor.get(Attribute.NAME))) {
@@ -151,45 +150,21 @@ public class StackBasedInheritableStrategy implements InheritableStrategy {
     }
 
     /**
-     * Returns the current inheritable attributes for this thread.
+     * Returns the current inheritable attributes for this thread. The attributes
+     * of the composite monitors on the stack are merged incrementally by each
+     * stack frame, so this doesn't walk the stack.
      *
      * @return the inheritable attributes that would be applied to a monitor
-     *         if it were made right now, or an empty Map if there are none
+     *         if it were made right now, as an unmodifiable map
      */
     public Map getInheritableAttributes() {
-        Map inheritable = new HashMap();
-
-        String parentSequenceId = DEFAULT_PARENT_SEQUENCE_ID;
-
         LinkedList stack = getStack();
 
         if (stack != null && !stack.isEmpty()) {
-            Iterator i = stack.iterator();
-            while (i.hasNext()) {
-                StackFrame stackFrame = (StackFrame) i.next();
-                CompositeMonitor monitor = stackFrame.getCompositeMonitor();
-                inheritable.putAll(monitor.getInheritableAttributeHolders());
-            }
-            StackFrame stackFrame = (StackFrame) stack.getLast();
-            CompositeMonitor parent = stackFrame.getCompositeMonitor();
-
-            parentSequenceId = parent.getAsString(Attribute.SEQUENCE_ID);
-
-            inheritable.put(Attribute.PARENT_SEQUENCE_ID,
-                    new CompositeAttributeHolder(parentSequenceId, true).serializable().lock());
-
-        }
-
-        String sequenceId = parentSequenceId;
-        if (stack != null && !stack.isEmpty()) {
-            StackFrame stackFrame = (StackFrame) stack.getLast();
-            AtomicInteger counter = stackFrame.getCounter();
-            sequenceId += "_" + counter.getAndIncrement();
+            InheritableFrame stackFrame = (InheritableFrame) stack.getLast();
+            return stackFrame.nextInheritableAttributes();
         }
-
-        inheritable.put(Attribute.SEQUENCE_ID, new CompositeAttributeHolder(sequenceId, true).serializable().lock());
-
-        return inheritable;
+        return InheritableFrame.rootInheritableAttributes(DEFAULT_PARENT_SEQUENCE_ID, spanIds);
     }
 
     public void processMonitorForCompositeMonitor(Monitor monitor) {
@@ -197,7 +172,7 @@ public class StackBasedInheritableStrategy implements InheritableStrategy {
 
         if (stack != null) {
             if (! stack.isEmpty()) {
-                StackFrame stackFrame = (StackFrame) stack.getLast();
+                InheritableFrame stackFrame = (InheritableFrame) stack.getLast();
                 CompositeMonitor parentMonitor = stackFrame.getCompositeMonitor();
 
                 // only add this monitor being processed to a parent if it is enabled
@@ -214,7 +189,10 @@ public class StackBasedInheritableStrategy implements InheritableStrategy {
     }
 
     public void setInheritable(CompositeMonitor monitor, String key, AttributeHolder origional) {
-        // no-op
+        LinkedList stack = getStack();
+        if (stack != null && contains(stack, monitor)) {
+            ((InheritableFrame) stack.getLast()).inheritableChanged();
+        }
     }
 
     public void shutdown() {
@@ -225,6 +203,38 @@ public class StackBasedInheritableStrategy implements InheritableStrategy {
         threadBasedMap.clear();
     }
 
+    /**
+     * Monitors are only collected as children while a composite monitor is on the calling
+     * thread's stack.
+     *
+     * @return the event pattern level if the calling thread has a composite monitor, otherwise null
+     */
+    public MonitoringLevel getLowestMonitoredLevel() {
+        LinkedList stack = getStack();
+        return (stack != null && !stack.isEmpty()) ? getEventPatternLevel() : null;
+    }
+
+    /**
+     * Determines whether monitors are given span ids
+     *
+     * @return true if monitors are given {@link Attribute#SPAN_ID span ids}, a
+     *         {@link Attribute#TRACE_ID trace id} and sequence ids that are only built when read
+     */
+    public boolean isSpanIds() {
+        return spanIds;
+    }
+
+    /**
+     * Sets whether monitors are given numeric span ids. Sequence ids are still set, in the same
+     * form, but aren't built unless a processor reads them. Composite monitors already on a stack
+     * when this is turned on start new traces for the monitors created under them.
+     *
+     * @param spanIds true to give monitors span ids
+     */
+    public void setSpanIds(final boolean spanIds) {
+        this.spanIds = spanIds;
+    }
+
     public MonitoringLevel getEventPatternLevel() {
         return (MonitoringLevel) eventPatternLevel.get();
     }
@@ -237,40 +247,16 @@ public class StackBasedInheritableStrategy implements InheritableStrategy {
         return (LinkedList) threadBasedMap.get(Thread.currentThread());
     }
 
-    /**
-     * Private class used in synced stacks.
-     */
-    private class StackFrame {
-
-        private final CompositeMonitor _monitor;
-        private final AtomicInteger _counter;
-
-        public StackFrame(CompositeMonitor monitor) {
-            super();
-            _monitor = monitor;
-            _counter = new AtomicInteger(0);
-        }
-
-        public CompositeMonitor getCompositeMonitor() {
-            return _monitor;
-        }
-
-        public AtomicInteger getCounter() {
-            return _counter;
-        }
-
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-
-            final StackFrame other = (StackFrame) o;
-
-            return (_monitor == null ? other._monitor == null : _monitor == other._monitor);
-        }
+    private static boolean isTop(LinkedList stack, CompositeMonitor monitor) {
+        return ((InheritableFrame) stack.getLast()).getCompositeMonitor() == monitor;
+    }
 
-        public int hashCode() {
-            return  (_monitor == null ? 0 : _monitor.hashCode());
+    private static boolean contains(LinkedList stack, CompositeMonitor monitor) {
+        for (Iterator i = stack.iterator(); i.hasNext();) {
+            if (((InheritableFrame) i.next()).getCompositeMonitor() == monitor) {
+                return true;
+            }
         }
-
+        return false;
     }
 }
@@ -0,0 +1,17 @@
+package com.orbitz.monitoring.api.engine;
+
+import com.orbitz.monitoring.api.Clock;
+
+/**
+ * A {@link Clock} that reads {@link System#currentTimeMillis()} and {@link System#nanoTime()}
+ */
+public class SystemClock implements Clock {
+
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+}
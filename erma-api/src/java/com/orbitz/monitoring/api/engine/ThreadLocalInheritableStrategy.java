@@ -0,0 +1,298 @@
+package com.orbitz.monitoring.api.engine;
+
+import com.orbitz.monitoring.api.Attribute;
+import com.orbitz.monitoring.api.CompositeMonitor;
+import com.orbitz.monitoring.api.InheritableStrategy;
+import com.orbitz.monitoring.api.Monitor;
+import com.orbitz.monitoring.api.MonitoredLevelSource;
+import com.orbitz.monitoring.api.MonitoringEngine;
+import com.orbitz.monitoring.api.MonitoringLevel;
+import com.orbitz.monitoring.api.monitor.AttributeHolder;
+import org.apache.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link InheritableStrategy} that behaves like {@link StackBasedInheritableStrategy} but keeps
+ * each thread's stack of composite monitors in a {@link ThreadLocal} instead of a map shared by all
+ * threads. Stacks are array based, and completion finds the monitor by its position on the stack.
+ * A stack's frames are reused once it has been as deep before, so pushing a monitor only allocates
+ * the frame's merged attribute map.
+ * Nothing outside the thread refers to its stack, so the state of a thread that dies goes with it.
+ * <p>
+ * {@link #startup()} and {@link #shutdown()} can't reach the stacks of other threads. Instead they
+ * start a new generation, and a stack from an older generation is emptied the next time its thread
+ * uses it.
+ */
+public class ThreadLocalInheritableStrategy implements InheritableStrategy, MonitoredLevelSource {
+
+    private static final Logger log = Logger.getLogger(ThreadLocalInheritableStrategy.class);
+
+    private static final String DEFAULT_PARENT_SEQUENCE_ID = "m";
+
+    private final ThreadLocal<Stack> stacks = new ThreadLocal<Stack>();
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile MonitoringLevel eventPatternLevel = MonitoringLevel.INFO;
+    private volatile boolean spanIds;
+
+    public int clearCurrentThread() {
+        final Stack stack = getStack(false);
+        if (stack == null || stack.size == 0) {
+            return 0;
+        }
+        final int count = stack.size;
+        final StringBuffer monitorNames = new StringBuffer();
+        for (int i = 0; i < count; i++) {
+            if (monitorNames.length() > 0) {
+                monitorNames.append(", ");
+            }
+            monitorNames.append(stack.frames[i].getCompositeMonitor().get(Attribute.NAME));
+        }
+        log.warn("clearing old CompositeMonitor refs for current thread; " + count + " found; names: "
+                + monitorNames);
+        stack.clear();
+        return count;
+    }
+
+    /**
+     * This method should be called by all CompositeMonitor implementations
+     * before they call process().
+     *
+     * @param monitor the monitor that is completed
+     */
+    public void compositeMonitorCompleted(final CompositeMonitor monitor) {
+        final Stack stack = getStack(false);
+        if (stack == null) {
+            return;
+        }
+        final int index = stack.indexOf(monitor);
+        if (index < 0) {
+            // This monitor is being double processed on accident.
+            // Ignore it.
+            return;
+        }
+        while (stack.size - 1 > index) {
+            // A child monitor was not processed, process them now.
+            final CompositeMonitor missedMonitor = stack.pop();
+            log.warn("unfinished child monitor \"" + missedMonitor.get(Attribute.NAME)
+                    + "\" found so will process now and remove; app is fine");
+            MonitoringEngine.getInstance().process(missedMonitor);
+        }
+        if (stack.size - 1 == index) {
+            stack.pop();
+        }
+    }
+
+    /**
+     * This method should be called by all CompositeMonitor implementations
+     * before they call monitorStarted().
+     *
+     * @param compositeMonitor the composite monitor
+     */
+    public void compositeMonitorStarted(final CompositeMonitor compositeMonitor) {
+        if (getEventPatternLevel().hasHigherPriorityThan(compositeMonitor.getLevel())) {
+            if (log.isDebugEnabled()) {
+                log.debug("skipping " + compositeMonitor.getAsString(Attribute.NAME));
+            }
+            return;
+        }
+        getStack(true).push(compositeMonitor, spanIds);
+    }
+
+    /**
+     * Obtains the first CompositeMonitor found on the per thread stack that has
+     * its name attribute equal to the supplied name, starting from the top of
+     * the stack.
+     *
+     * @param name the value of name that our Monitor was created with.
+     * @return the first CompositeMonitor with the supplied name, or null if not
+     *         found
+     * @throws IllegalArgumentException if name is null
+     */
+    public CompositeMonitor getCompositeMonitorNamed(final String name) throws IllegalArgumentException {
+        if (name == null) {
+            throw new IllegalArgumentException("name cannot be null");
+        }
+        final Stack stack = getStack(false);
+        if (stack != null) {
+            for (int i = stack.size - 1; i >= 0; i--) {
+                final CompositeMonitor monitor = stack.frames[i].getCompositeMonitor();
+                if (name.equals(monitor.get(Attribute.NAME))) {
+                    return monitor;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the current inheritable attributes for this thread. The attributes
+     * of the composite monitors on the stack are merged incrementally by each
+     * stack frame, so this doesn't walk the stack.
+     *
+     * @return the inheritable attributes that would be applied to a monitor
+     *         if it were made right now, as an unmodifiable map
+     */
+    public Map getInheritableAttributes() {
+        final Stack stack = getStack(false);
+        if (stack != null && stack.size > 0) {
+            return stack.frames[stack.size - 1].nextInheritableAttributes();
+        }
+        return InheritableFrame.rootInheritableAttributes(DEFAULT_PARENT_SEQUENCE_ID, spanIds);
+    }
+
+    public void processMonitorForCompositeMonitor(final Monitor monitor) {
+        final Stack stack = getStack(false);
+        if (stack != null && stack.size > 0) {
+            final CompositeMonitor parentMonitor = stack.frames[stack.size - 1].getCompositeMonitor();
+
+            // only add this monitor being processed to a parent if it is enabled
+            // by its monitoring level
+            final MonitoringLevel monitorLevel = monitor.getLevel();
+            if ((monitorLevel != null) && (monitorLevel.hasHigherOrEqualPriorityThan(getEventPatternLevel()))) {
+                parentMonitor.addChildMonitor(monitor);
+            }
+        }
+    }
+
+    public void setInheritable(final CompositeMonitor monitor, final String key, final AttributeHolder original) {
+        final Stack stack = getStack(false);
+        if (stack != null && stack.indexOf(monitor) >= 0) {
+            stack.frames[stack.size - 1].inheritableChanged();
+        }
+    }
+
+    public void shutdown() {
+        generation.incrementAndGet();
+        stacks.remove();
+    }
+
+    public void startup() {
+        generation.incrementAndGet();
+        stacks.remove();
+    }
+
+    /**
+     * Monitors are only collected as children while a composite monitor is on the calling
+     * thread's stack.
+     *
+     * @return the event pattern level if the calling thread has a composite monitor, otherwise null
+     */
+    public MonitoringLevel getLowestMonitoredLevel() {
+        final Stack stack = getStack(false);
+        return (stack != null && stack.size > 0) ? getEventPatternLevel() : null;
+    }
+
+    /**
+     * Determines whether monitors are given span ids
+     *
+     * @return true if monitors are given {@link Attribute#SPAN_ID span ids}, a
+     *         {@link Attribute#TRACE_ID trace id} and sequence ids that are only built when read
+     */
+    public boolean isSpanIds() {
+        return spanIds;
+    }
+
+    /**
+     * Sets whether monitors are given numeric span ids. Sequence ids are still set, in the same
+     * form, but aren't built unless a processor reads them. Composite monitors already on a stack
+     * when this is turned on start new traces for the monitors created under them.
+     *
+     * @param spanIds true to give monitors span ids
+     */
+    public void setSpanIds(final boolean spanIds) {
+        this.spanIds = spanIds;
+    }
+
+    public MonitoringLevel getEventPatternLevel() {
+        return eventPatternLevel;
+    }
+
+    public void setEventPatternLevel(final MonitoringLevel eventPatternLevel) {
+        this.eventPatternLevel = eventPatternLevel;
+    }
+
+    /**
+     * Gets the stack of the current thread, emptying it if it belongs to an older generation
+     *
+     * @param create whether to create a stack if the thread doesn't have one
+     * @return the stack, or null if the thread has none and create is false
+     */
+    private Stack getStack(final boolean create) {
+        Stack stack = stacks.get();
+        final int currentGeneration = generation.get();
+        if (stack == null) {
+            if (create) {
+                stack = new Stack(currentGeneration);
+                stacks.set(stack);
+            }
+        }
+        else if (stack.generation != currentGeneration) {
+            stack.clear();
+            stack.generation = currentGeneration;
+        }
+        return stack;
+    }
+
+    /**
+     * A growable stack of composite monitor frames. Only the owning thread uses it.
+     */
+    private static final class Stack {
+        private static final int INITIAL_CAPACITY = 8;
+
+        private InheritableFrame[] frames = new InheritableFrame[INITIAL_CAPACITY];
+        private int size;
+        private int generation;
+
+        private Stack(final int generation) {
+            this.generation = generation;
+        }
+
+        private void push(final CompositeMonitor monitor, final boolean spanIds) {
+            if (size == frames.length) {
+                final InheritableFrame[] newFrames = new InheritableFrame[size * 2];
+                System.arraycopy(frames, 0, newFrames, 0, size);
+                frames = newFrames;
+            }
+            final InheritableFrame parent = (size == 0) ? null : frames[size - 1];
+            // frames are kept when popped and reset when their slot is pushed again
+            if (frames[size] == null) {
+                frames[size] = new InheritableFrame(monitor, parent, spanIds);
+            }
+            else {
+                frames[size].reset(monitor, parent, spanIds);
+            }
+            size++;
+        }
+
+        private CompositeMonitor pop() {
+            size--;
+            final InheritableFrame frame = frames[size];
+            final CompositeMonitor monitor = frame.getCompositeMonitor();
+            // don't keep completed monitors reachable from a long lived thread
+            frame.release();
+            return monitor;
+        }
+
+        /**
+         * Finds a monitor by identity, searching from the top of the stack where completed monitors
+         * are almost always found
+         */
+        private int indexOf(final CompositeMonitor monitor) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (frames[i].getCompositeMonitor() == monitor) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void clear() {
+            for (int i = 0; i < size; i++) {
+                frames[i].release();
+            }
+            size = 0;
+        }
+    }
+}
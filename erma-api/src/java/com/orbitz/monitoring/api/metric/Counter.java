@@ -0,0 +1,54 @@
+package com.orbitz.monitoring.api.metric;
+
+import com.orbitz.monitoring.api.MonitoringLevel;
+import com.orbitz.monitoring.api.monitor.ValueMonitor;
+
+/**
+ * A count that is cheap to change from many threads. Each flush fires a {@link ValueMonitor} whose
+ * value is the amount the count has changed since the last flush; nothing is fired if it hasn't
+ * changed.
+ */
+public final class Counter extends Metric {
+  private final StripedLong count = new StripedLong();
+  private long flushedCount;
+
+  Counter(final String name, final MonitoringLevel level) {
+    super(name, level);
+  }
+
+  /**
+   * Adds one to the count
+   */
+  public void increment() {
+    count.add(1);
+  }
+
+  /**
+   * Adds to the count
+   * @param amount the amount to add, which may be negative
+   */
+  public void add(final long amount) {
+    count.add(amount);
+  }
+
+  /**
+   * Gets the count
+   * @return everything added since the counter was created
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  @Override
+  void flush() {
+    final long current = count.sum();
+    final long delta = current - flushedCount;
+    if (delta == 0) {
+      return;
+    }
+    flushedCount = current;
+    final ValueMonitor monitor = ValueMonitor.obtain(getName(), delta, getLevel());
+    monitor.set(MetricRegistry.METRIC_TYPE, "counter");
+    monitor.fire();
+  }
+}
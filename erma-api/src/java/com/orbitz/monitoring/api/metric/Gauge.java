@@ -0,0 +1,13 @@
+package com.orbitz.monitoring.api.metric;
+
+/**
+ * Supplies the current value of something measured, such as the size of a queue. Gauges are read
+ * each time their {@link MetricRegistry} is flushed, on the flushing thread.
+ */
+public interface Gauge {
+  /**
+   * Reads the gauge
+   * @return the current value
+   */
+  double getValue();
+}
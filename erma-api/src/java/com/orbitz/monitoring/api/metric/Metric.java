@@ -0,0 +1,39 @@
+package com.orbitz.monitoring.api.metric;
+
+import com.orbitz.monitoring.api.MonitoringLevel;
+
+/**
+ * A named value kept in a {@link MetricRegistry} and reported as a monitor each time the registry
+ * is flushed
+ */
+public abstract class Metric {
+  private final String name;
+  private final MonitoringLevel level;
+
+  Metric(final String name, final MonitoringLevel level) {
+    this.name = name;
+    this.level = level;
+  }
+
+  /**
+   * Gets the name of this metric, which is also the name of the monitors that report it
+   * @return the name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Gets the level of the monitors that report this metric
+   * @return the monitoring level
+   */
+  public MonitoringLevel getLevel() {
+    return level;
+  }
+
+  /**
+   * Fires a monitor with the changes to this metric since it was last flushed. Only called by one
+   * thread at a time.
+   */
+  abstract void flush();
+}
@@ -0,0 +1,200 @@
+package com.orbitz.monitoring.api.metric;
+
+import com.orbitz.monitoring.api.MonitoringLevel;
+import com.orbitz.monitoring.api.monitor.ValueMonitor;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.log4j.Logger;
+
+/**
+ * Counters, timers and gauges that are updated without creating monitors. Updating a counter or
+ * timer costs a few atomic additions and allocates nothing. The registry reports its metrics as one
+ * monitor per metric each time it is {@link #flush() flushed}, usually on a timer, and those
+ * monitors are processed by the engine's processors like any other.
+ * <p>
+ * Each name has one metric. Asking for a metric again by the same name returns the existing one.
+ */
+public class MetricRegistry {
+  private static final Logger log = Logger.getLogger(MetricRegistry.class);
+
+  /**
+   * The attribute of flushed monitors that holds the type of their metric: counter, timer or gauge
+   */
+  public static final String METRIC_TYPE = "metricType";
+  /**
+   * The attribute of flushed timer monitors that holds the number of latencies recorded
+   */
+  public static final String COUNT = "count";
+  /**
+   * The attribute of flushed timer monitors that holds the longest latency recorded, in
+   * milliseconds
+   */
+  public static final String MAX_LATENCY = "maxLatency";
+
+  private final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<String, Metric>();
+  private final Object flushLock = new Object();
+
+  /**
+   * Gets the counter with a name, creating it at {@link MonitoringLevel#INFO} if needed
+   * @param name the name of the counter
+   * @return the counter
+   * @throws IllegalArgumentException if the name is null or belongs to another type of metric
+   */
+  public Counter counter(final String name) {
+    return counter(name, MonitoringLevel.INFO);
+  }
+
+  /**
+   * Gets the counter with a name, creating it if needed
+   * @param name the name of the counter
+   * @param level the level of the monitors that report a new counter
+   * @return the counter
+   * @throws IllegalArgumentException if the name is null or belongs to another type of metric
+   */
+  public Counter counter(final String name, final MonitoringLevel level) {
+    final Metric metric = metrics.get(checkName(name));
+    if (metric != null) {
+      return (Counter)checkType(metric, Counter.class);
+    }
+    return (Counter)register(new Counter(name, level), Counter.class);
+  }
+
+  /**
+   * Gets the timer with a name, creating it at {@link MonitoringLevel#INFO} if needed
+   * @param name the name of the timer
+   * @return the timer
+   * @throws IllegalArgumentException if the name is null or belongs to another type of metric
+   */
+  public Timer timer(final String name) {
+    return timer(name, MonitoringLevel.INFO);
+  }
+
+  /**
+   * Gets the timer with a name, creating it if needed
+   * @param name the name of the timer
+   * @param level the level of the monitors that report a new timer
+   * @return the timer
+   * @throws IllegalArgumentException if the name is null or belongs to another type of metric
+   */
+  public Timer timer(final String name, final MonitoringLevel level) {
+    final Metric metric = metrics.get(checkName(name));
+    if (metric != null) {
+      return (Timer)checkType(metric, Timer.class);
+    }
+    return (Timer)register(new Timer(name, level), Timer.class);
+  }
+
+  /**
+   * Registers a gauge at {@link MonitoringLevel#INFO}. A gauge already registered with the name is
+   * kept.
+   * @param name the name of the gauge
+   * @param gauge the gauge
+   * @throws IllegalArgumentException if the name or gauge is null, or the name belongs to another
+   *         type of metric
+   */
+  public void gauge(final String name, final Gauge gauge) {
+    gauge(name, gauge, MonitoringLevel.INFO);
+  }
+
+  /**
+   * Registers a gauge. A gauge already registered with the name is kept.
+   * @param name the name of the gauge
+   * @param gauge the gauge
+   * @param level the level of the monitors that report the gauge
+   * @throws IllegalArgumentException if the name or gauge is null, or the name belongs to another
+   *         type of metric
+   */
+  public void gauge(final String name, final Gauge gauge, final MonitoringLevel level) {
+    if (gauge == null) {
+      throw new IllegalArgumentException("gauge cannot be null");
+    }
+    final Metric metric = metrics.get(checkName(name));
+    if (metric != null) {
+      checkType(metric, GaugeMetric.class);
+      return;
+    }
+    register(new GaugeMetric(name, level, gauge), GaugeMetric.class);
+  }
+
+  /**
+   * Removes a metric. Anything recorded since the last flush isn't reported.
+   * @param name the name of the metric
+   * @return the metric, or null if there was none with the name
+   */
+  public Metric remove(final String name) {
+    return metrics.remove(name);
+  }
+
+  /**
+   * Removes all metrics
+   */
+  public void clear() {
+    metrics.clear();
+  }
+
+  /**
+   * Gets the metrics
+   * @return an unmodifiable view of the metrics
+   */
+  public Collection<Metric> getMetrics() {
+    return Collections.unmodifiableCollection(metrics.values());
+  }
+
+  /**
+   * Fires one monitor for each counter and timer that has changed since the last flush and for
+   * each gauge. A metric that fails to flush is logged and doesn't stop the others.
+   */
+  public void flush() {
+    synchronized (flushLock) {
+      for (final Metric metric : metrics.values()) {
+        try {
+          metric.flush();
+        }
+        catch (final RuntimeException e) {
+          log.warn("Failed to flush metric " + metric.getName(), e);
+        }
+      }
+    }
+  }
+
+  private Metric register(final Metric metric, final Class<? extends Metric> type) {
+    final Metric existing = metrics.putIfAbsent(metric.getName(), metric);
+    return (existing == null) ? metric : checkType(existing, type);
+  }
+
+  private static String checkName(final String name) {
+    if (name == null) {
+      throw new IllegalArgumentException("name cannot be null");
+    }
+    return name;
+  }
+
+  private static Metric checkType(final Metric metric, final Class<? extends Metric> type) {
+    if (metric.getClass() != type) {
+      throw new IllegalArgumentException("Metric " + metric.getName() + " is already a "
+          + metric.getClass().getSimpleName());
+    }
+    return metric;
+  }
+
+  /**
+   * Reports a {@link Gauge} as a {@link ValueMonitor} holding the gauge's value
+   */
+  private static final class GaugeMetric extends Metric {
+    private final Gauge gauge;
+
+    private GaugeMetric(final String name, final MonitoringLevel level, final Gauge gauge) {
+      super(name, level);
+      this.gauge = gauge;
+    }
+
+    @Override
+    void flush() {
+      final ValueMonitor monitor = ValueMonitor.obtain(getName(), gauge.getValue(), getLevel());
+      monitor.set(METRIC_TYPE, "gauge");
+      monitor.fire();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package com.orbitz.monitoring.api.metric;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A sum that many threads add to. Uncontended additions go to a single base value; once two
+ * threads collide the sum spreads over cells, each on its own cache line, picked by thread. Adding
+ * never allocates after the cells exist.
+ */
+final class StripedLong {
+  // longs per cell, so that neighbouring cells don't share a cache line
+  private static final int PADDING = 8;
+  private static final int CELLS = cellCount();
+
+  private final AtomicLong base = new AtomicLong();
+  private volatile AtomicLongArray cells;
+
+  void add(final long x) {
+    AtomicLongArray cellArray = cells;
+    if (cellArray == null) {
+      final long current = base.get();
+      if (base.compareAndSet(current, current + x)) {
+        return;
+      }
+      cellArray = createCells();
+    }
+    cellArray.getAndAdd(cellIndex(), x);
+  }
+
+  /**
+   * @return the sum of everything added so far. Additions made while summing may be missed.
+   */
+  long sum() {
+    long sum = base.get();
+    final AtomicLongArray cellArray = cells;
+    if (cellArray != null) {
+      for (int i = 0; i < cellArray.length(); i += PADDING) {
+        sum += cellArray.get(i);
+      }
+    }
+    return sum;
+  }
+
+  private synchronized AtomicLongArray createCells() {
+    if (cells == null) {
+      cells = new AtomicLongArray(CELLS * PADDING);
+    }
+    return cells;
+  }
+
+  private static int cellIndex() {
+    final long id = Thread.currentThread().getId();
+    final int hash = (int)(id ^ (id >>> 32)) * 0x9E3779B9;
+    return ((hash >>> 16) & (CELLS - 1)) * PADDING;
+  }
+
+  /**
+   * @return the smallest power of two that is at least the number of processors, up to 64
+   */
+  private static int cellCount() {
+    final int processors = Runtime.getRuntime().availableProcessors();
+    int count = 1;
+    while (count < processors && count < 64) {
+      count <<= 1;
+    }
+    return count;
+  }
+}
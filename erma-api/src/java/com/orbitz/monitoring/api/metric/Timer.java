@@ -0,0 +1,91 @@
+package com.orbitz.monitoring.api.metric;
+
+import com.orbitz.monitoring.api.Attribute;
+import com.orbitz.monitoring.api.MonitoringEngine;
+import com.orbitz.monitoring.api.MonitoringLevel;
+import com.orbitz.monitoring.api.monitor.EventMonitor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latencies that are cheap to record from many threads. Each flush fires an {@link EventMonitor}
+ * with the number of latencies recorded since the last flush, their average as
+ * {@link Attribute#LATENCY} and {@link Attribute#LATENCY_NANOS}, and the longest of them; nothing
+ * is fired if none were recorded.
+ */
+public final class Timer extends Metric {
+  private final StripedLong count = new StripedLong();
+  private final StripedLong totalNanos = new StripedLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+  private long flushedCount;
+  private long flushedTotalNanos;
+
+  Timer(final String name, final MonitoringLevel level) {
+    super(name, level);
+  }
+
+  /**
+   * Reads the {@link MonitoringEngine#getClock() engine's clock} to start timing
+   * @return the start of the latency, to pass to {@link #stop(long)}
+   */
+  public long start() {
+    return MonitoringEngine.getInstance().getClock().nanoTime();
+  }
+
+  /**
+   * Records the latency from a {@link #start()} until now
+   * @param startNanos the value returned by {@link #start()}
+   */
+  public void stop(final long startNanos) {
+    record(MonitoringEngine.getInstance().getClock().nanoTime() - startNanos);
+  }
+
+  /**
+   * Records a latency
+   * @param nanos the latency in nanoseconds
+   */
+  public void record(final long nanos) {
+    count.add(1);
+    totalNanos.add(nanos);
+    long max = maxNanos.get();
+    while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+      max = maxNanos.get();
+    }
+  }
+
+  /**
+   * Gets the number of latencies recorded
+   * @return the number recorded since the timer was created
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * Gets the sum of the latencies recorded
+   * @return the total in nanoseconds since the timer was created
+   */
+  public long getTotalNanos() {
+    return totalNanos.sum();
+  }
+
+  @Override
+  void flush() {
+    final long currentCount = count.sum();
+    final long currentTotalNanos = totalNanos.sum();
+    final long max = maxNanos.getAndSet(0);
+    final long countDelta = currentCount - flushedCount;
+    if (countDelta == 0) {
+      return;
+    }
+    final long averageNanos = (currentTotalNanos - flushedTotalNanos) / countDelta;
+    flushedCount = currentCount;
+    flushedTotalNanos = currentTotalNanos;
+    final EventMonitor monitor = EventMonitor.obtain(getName(), getLevel());
+    monitor.set(MetricRegistry.METRIC_TYPE, "timer");
+    monitor.set(MetricRegistry.COUNT, countDelta);
+    monitor.set(Attribute.LATENCY, averageNanos / 1000000L);
+    monitor.set(Attribute.LATENCY_NANOS, averageNanos);
+    monitor.set(MetricRegistry.MAX_LATENCY, max / 1000000L);
+    monitor.fire();
+  }
+}
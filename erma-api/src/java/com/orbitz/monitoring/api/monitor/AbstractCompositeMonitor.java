@@ -1,10 +1,10 @@
 package com.orbitz.monitoring.api.monitor;
 
+import com.orbitz.monitoring.api.Attribute;
 import com.orbitz.monitoring.api.CompositeMonitor;
 import com.orbitz.monitoring.api.Monitor;
 import com.orbitz.monitoring.api.MonitoringEngine;
 import com.orbitz.monitoring.api.MonitoringLevel;
-import com.orbitz.monitoring.api.monitor.serializable.SerializableCompositeMonitor;
 import com.orbitz.monitoring.api.monitor.serializable.SerializableMonitor;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -12,6 +12,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -41,6 +42,9 @@ public abstract class AbstractCompositeMonitor extends AbstractMonitor implement
   }
   
   private final List<Monitor> _childMonitors = new LinkedList<Monitor>();
+  private Map<String, ChildMonitorSummary> _childSummaries;
+  private int _maxRetainedChildMonitors = MonitoringEngine.getInstance()
+      .getMaxRetainedChildMonitors();
   
   /**
    * Create a new composite monitor with the provided name.
@@ -87,20 +91,78 @@ public abstract class AbstractCompositeMonitor extends AbstractMonitor implement
   }
   
   /**
-   * Add a monitor as a child.
+   * Uses the given attribute map without initializing the monitor or starting it, for monitors
+   * that never reach the {@link MonitoringEngine}
+   * 
+   * @param attributes the attribute map
+   */
+  AbstractCompositeMonitor(final AttributeMap attributes) {
+    super(attributes);
+  }
+  
+  /**
+   * Add a monitor as a child. The child is {@link AbstractMonitor#retain() retained}, unless this
+   * monitor already has as many children as it keeps, in which case the child is added to the
+   * {@link ChildMonitorSummary summary} of its name instead.
    * 
    * @param monitor the child monitor
    */
   public void addChildMonitor(final Monitor monitor) {
+    discardCachedMomento();
+    if (_maxRetainedChildMonitors > 0 && _childMonitors.size() >= _maxRetainedChildMonitors) {
+      summarizeChildMonitor(monitor);
+      return;
+    }
+    if (monitor instanceof AbstractMonitor) {
+      ((AbstractMonitor)monitor).retain();
+    }
     _childMonitors.add(monitor);
   }
   
   /**
-   * Get the child monitors.
+   * Get the child monitors. Children that weren't kept are represented by one
+   * {@link ChildMonitorSummary} per name, after the children that were.
    * @return the child monitors
    */
   public Collection<Monitor> getChildMonitors() {
-    return _childMonitors;
+    if (_childSummaries == null) {
+      return _childMonitors;
+    }
+    final List<Monitor> children = new ArrayList<Monitor>(_childMonitors.size()
+        + _childSummaries.size());
+    children.addAll(_childMonitors);
+    for (final ChildMonitorSummary summary : _childSummaries.values()) {
+      summary.update();
+      children.add(summary);
+    }
+    return children;
+  }
+  
+  public int getMaxRetainedChildMonitors() {
+    return _maxRetainedChildMonitors;
+  }
+  
+  /**
+   * Sets how many children this monitor keeps. Defaults to the
+   * {@link MonitoringEngine#setMaxRetainedChildMonitors(int) engine's limit} when the monitor is
+   * created. Children already kept are not summarized when the limit is lowered.
+   * @param maxRetainedChildMonitors the most children kept, or 0 to keep them all
+   */
+  public void setMaxRetainedChildMonitors(final int maxRetainedChildMonitors) {
+    _maxRetainedChildMonitors = maxRetainedChildMonitors;
+  }
+  
+  private void summarizeChildMonitor(final Monitor monitor) {
+    if (_childSummaries == null) {
+      _childSummaries = new LinkedHashMap<String, ChildMonitorSummary>();
+    }
+    final String name = monitor.getAsString(Attribute.NAME);
+    ChildMonitorSummary summary = _childSummaries.get(name);
+    if (summary == null) {
+      summary = new ChildMonitorSummary(monitor);
+      _childSummaries.put(name, summary);
+    }
+    summary.add(monitor);
   }
   
   public CompositeAttributeHolder setInheritable(final String key, final Object value) {
@@ -169,29 +231,49 @@ public abstract class AbstractCompositeMonitor extends AbstractMonitor implement
     return compositeMap.getAllInheritableAttributeHolders();
   }
   
+  /**
+   * Gets a number that changes whenever an attribute of this monitor is set, replaced or removed.
+   * Inheritable strategies use it to tell when attributes inherited from this monitor need to be
+   * collected again.
+   * @return the modification count of this monitor's attributes
+   * @see CompositeAttributeMap#getModificationCount()
+   */
+  public int getAttributesModificationCount() {
+    return ((CompositeAttributeMap)attributes).getModificationCount();
+  }
+  
   /**
    * Get a serializable version of this monitor. Also creates serialized versions of any child
-   * monitors.
+   * monitors, reusing the momentos that processed children have cached.
    * @return the serializable monitor
    */
   @Override
   public SerializableMonitor getSerializableMomento() {
-    final List<SerializableMonitor> childMomentos = new ArrayList<SerializableMonitor>(
-        _childMonitors.size());
-    for (final Monitor monitor : _childMonitors) {
-      childMomentos.add(monitor.getSerializableMomento());
+    final SerializableMonitor cached = getCachedMomento();
+    if (cached != null) {
+      return cached;
     }
-    final MonitoringEngine engine = MonitoringEngine.getInstance();
-    final Map<String, Serializable> serializableAttributes = engine
-        .makeAttributeHoldersSerializable(attributes.getAllAttributeHolders());
-    
-    final SerializableCompositeMonitor monitor = new SerializableCompositeMonitor(null,
-        childMomentos);
-    monitor.setAllAttributeHolders(serializableAttributes);
-    
+    final SerializableMonitor monitor = createMomento(attributes.getAllAttributeHolders(),
+        getChildMonitors());
+    cacheMomento(monitor);
     return monitor;
   }
   
+  /**
+   * Captures the attributes and the list of children without decomposing anything. The children's
+   * momentos are made when the deferred momento is.
+   * @return the deferred momento
+   */
+  @Override
+  public DeferredMomento getDeferredMomento() {
+    final SerializableMonitor cached = getCachedMomento();
+    if (cached != null) {
+      return new DeferredMomento(cached);
+    }
+    return new DeferredMomento(attributes.snapshotAttributeHolders(),
+        new ArrayList<Monitor>(getChildMonitors()), this);
+  }
+  
   /**
    * Used to set the inherited attributes on this monitor.
    * 
@@ -225,6 +307,6 @@ public abstract class AbstractCompositeMonitor extends AbstractMonitor implement
   
   @Override
   protected AttributeMap createAttributeMap() {
-    return new CompositeAttributeMap();
+    return new CompositeAttributeMap(MonitoringEngine.getInstance().isSingleWriterMonitors());
   }
 }
@@ -1,11 +1,15 @@
 package com.orbitz.monitoring.api.monitor;
 
 import com.orbitz.monitoring.api.Attribute;
+import com.orbitz.monitoring.api.DispatchPlan;
 import com.orbitz.monitoring.api.Monitor;
 import com.orbitz.monitoring.api.MonitoringEngine;
 import com.orbitz.monitoring.api.MonitoringLevel;
+import com.orbitz.monitoring.api.monitor.serializable.SerializableCompositeMonitor;
 import com.orbitz.monitoring.api.monitor.serializable.SerializableMonitor;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -25,6 +29,15 @@ public abstract class AbstractMonitor implements Monitor {
    */
   protected AttributeMap attributes;
   private boolean processed;
+  // set on monitors taken from a MonitorPool
+  private boolean pooled;
+  private volatile boolean retained;
+  private volatile boolean completed;
+  private volatile SerializableMonitor momento;
+  private int momentoModificationCount;
+  // changes whenever the cached momento is dropped for a reason the modification count misses
+  private volatile int momentoGeneration;
+  private DispatchPlan dispatchPlan;
   /**
    * Determines which monitors will be processed
    */
@@ -42,6 +55,17 @@ public abstract class AbstractMonitor implements Monitor {
     processed = false;
   }
   
+  /**
+   * Uses the given attribute map without initializing the monitor, for monitors that never reach
+   * the {@link MonitoringEngine}
+   * 
+   * @param attributes the attribute map
+   */
+  AbstractMonitor(final AttributeMap attributes) {
+    this.attributes = attributes;
+    processed = false;
+  }
+  
   /**
    * Initializes the attribute map, global attributes and calls init(String).
    * 
@@ -122,6 +146,17 @@ public abstract class AbstractMonitor implements Monitor {
     return attributes.set(key, value).serializable();
   }
   
+  /**
+   * Sets a serializable point in time that reads as a {@link Date}. The {@link Date} isn't created
+   * until the attribute is read.
+   * @param key the attribute to set
+   * @param millis the number of milliseconds since midnight, January 1, 1970 UTC
+   * @return the holder of the attribute
+   */
+  public AttributeHolder setTimestamp(final String key, final long millis) {
+    return attributes.setTimestamp(key, millis).serializable();
+  }
+  
   public AttributeHolder set(final String key, final String value) {
     return attributes.set(key, value).serializable();
   }
@@ -138,6 +173,27 @@ public abstract class AbstractMonitor implements Monitor {
     attributes.setAllAttributeHolders(attributeHolders);
   }
   
+  /**
+   * Sets a copy of a holder, with its value and flags, without reading its value
+   * @param key the attribute to set
+   * @param attributeHolder the holder to copy
+   * @return the copy
+   */
+  public AttributeHolder setAttributeHolder(final String key, final AttributeHolder attributeHolder) {
+    final AttributeHolder copy = (AttributeHolder)attributeHolder.clone();
+    attributes.putAttributeHolder(key, copy);
+    return copy;
+  }
+  
+  /**
+   * Gets the holder of an attribute
+   * @param key the attribute
+   * @return the holder, or null if the monitor doesn't have the attribute
+   */
+  public AttributeHolder getAttributeHolder(final String key) {
+    return attributes.getAttributeHolder(key);
+  }
+  
   public void unset(final String key) {
     attributes.unset(key);
   }
@@ -257,10 +313,50 @@ public abstract class AbstractMonitor implements Monitor {
    * @return the {@link Serializable} monitor
    */
   public SerializableMonitor getSerializableMomento() {
-    final MonitoringEngine engine = MonitoringEngine.getInstance();
-    final Map<String, Serializable> serializableAttributes = engine
-        .makeAttributeHoldersSerializable(attributes.getAllAttributeHolders());
-    final SerializableMonitor monitor = new SerializableMonitor(null);
+    final SerializableMonitor cached = getCachedMomento();
+    if (cached != null) {
+      return cached;
+    }
+    final SerializableMonitor monitor = createMomento(attributes.getAllAttributeHolders(), null);
+    cacheMomento(monitor);
+    return monitor;
+  }
+  
+  /**
+   * Captures what {@link #getSerializableMomento()} needs without decomposing anything, so the
+   * momento can be made later on another thread
+   * @return the deferred momento
+   */
+  public DeferredMomento getDeferredMomento() {
+    final SerializableMonitor cached = getCachedMomento();
+    if (cached != null) {
+      return new DeferredMomento(cached);
+    }
+    return new DeferredMomento(attributes.snapshotAttributeHolders(), null, this);
+  }
+  
+  /**
+   * Makes a momento from attribute holders and, for a composite monitor, its children
+   * @param holders the attribute holders, whose serializable values are decomposed
+   * @param children the children, or null if the momento isn't for a composite monitor
+   * @return the momento
+   */
+  static SerializableMonitor createMomento(final Map<String, AttributeHolder> holders,
+      final Collection<Monitor> children) {
+    final SerializableMonitor monitor;
+    if (children == null) {
+      monitor = new SerializableMonitor(null);
+    }
+    else {
+      final List<SerializableMonitor> childMomentos = new ArrayList<SerializableMonitor>(
+          children.size());
+      for (final Monitor child : children) {
+        childMomentos.add(child.getSerializableMomento());
+      }
+      monitor = new SerializableCompositeMonitor(null, childMomentos);
+    }
+    final Map<String, Serializable> serializableAttributes = MonitoringEngine.getInstance()
+        .makeAttributeHoldersSerializable(holders);
     monitor.setAllAttributeHolders(serializableAttributes);
     return monitor;
   }
@@ -327,17 +423,152 @@ public abstract class AbstractMonitor implements Monitor {
       log.error("This monitor has already been processed: " + this);
     }
     else {
+      completed = true;
       MonitoringEngine.getInstance().process(this);
       processed = true;
     }
   }
   
   /**
-   * Creates a new {@link AttributeMap}
+   * Gets the momento kept by {@link #cacheMomento(SerializableMonitor)}, if the attributes haven't
+   * changed since it was made
+   * @return the momento, or null if there is none to reuse
+   */
+  protected SerializableMonitor getCachedMomento() {
+    final SerializableMonitor cached = momento;
+    if (cached != null && momentoModificationCount == attributes.getModificationCount()) {
+      return cached;
+    }
+    return null;
+  }
+  
+  /**
+   * Keeps a momento to be returned by later calls to {@link #getSerializableMomento()}, if
+   * {@link MonitoringEngine#setMomentoCaching(boolean) momento caching} is on and this monitor
+   * has started being processed. Its attributes are complete by then, so processors that each
+   * take a momento, and the momentos of its parents, share one.
+   * @param newMomento the momento just made
+   */
+  protected void cacheMomento(final SerializableMonitor newMomento) {
+    if (completed && MonitoringEngine.getInstance().isMomentoCaching()) {
+      momentoModificationCount = attributes.getModificationCount();
+      momento = newMomento;
+    }
+  }
+  
+  /**
+   * Keeps a momento made from a {@link DeferredMomento} of this monitor, if this monitor hasn't
+   * changed since the deferred momento was taken
+   * @param newMomento the momento just made
+   * @param modificationCount the attributes' modification count when it was taken
+   * @param generation the {@link #getMomentoGeneration() generation} when it was taken
+   */
+  void cacheDeferredMomento(final SerializableMonitor newMomento, final int modificationCount,
+      final int generation) {
+    if (generation == momentoGeneration && modificationCount == attributes.getModificationCount()) {
+      cacheMomento(newMomento);
+    }
+  }
+  
+  /**
+   * Drops the cached momento, for changes that the attributes' modification count doesn't cover
+   */
+  protected void discardCachedMomento() {
+    momento = null;
+    momentoGeneration++;
+  }
+  
+  /**
+   * Gets a number that changes whenever the cached momento is dropped without the attributes
+   * changing
+   * @return the generation
+   */
+  int getMomentoGeneration() {
+    return momentoGeneration;
+  }
+  
+  /**
+   * Gets the plan the {@link MonitoringEngine} made for dispatching this monitor's lifecycle events
+   * @return the plan, or null if none has been made
+   */
+  public DispatchPlan getDispatchPlan() {
+    return dispatchPlan;
+  }
+  
+  /**
+   * Keeps the plan for dispatching this monitor's lifecycle events, so the engine needn't choose
+   * processors again for its later events
+   * @param dispatchPlan the plan
+   */
+  public void setDispatchPlan(final DispatchPlan dispatchPlan) {
+    this.dispatchPlan = dispatchPlan;
+  }
+  
+  /**
+   * Creates a new {@link AttributeMap}, for a single writer if the engine is
+   * {@link MonitoringEngine#isSingleWriterMonitors() configured for it}
    * @return a new attribute map
    */
   protected AttributeMap createAttributeMap() {
-    return new AttributeMap();
+    return new AttributeMap(MonitoringEngine.getInstance().isSingleWriterMonitors());
+  }
+  
+  /**
+   * Publishes the attributes of this monitor to other threads. Called by the
+   * {@link MonitoringEngine} before the monitor is processed.
+   * @see AttributeMap#freeze()
+   */
+  public void freezeAttributes() {
+    attributes.freeze();
+  }
+  
+  /**
+   * Marks this monitor as referenced after it has been processed. Anything that keeps a monitor
+   * after the {@link MonitoringEngine} has processed it, instead of taking its
+   * {@link #getSerializableMomento() momento}, must retain it so that a
+   * {@link MonitoringEngine#setMonitorRecycling(boolean) recycled} monitor isn't reused while it is
+   * still referenced.
+   */
+  public void retain() {
+    retained = true;
+  }
+  
+  /**
+   * Determines whether this monitor has been {@link #retain() retained}
+   * @return true if the monitor is retained
+   */
+  public boolean isRetained() {
+    return retained;
+  }
+  
+  /**
+   * Marks this monitor as taken from its thread's pool, to be returned by {@link #release()}
+   */
+  void setPooled() {
+    pooled = true;
+  }
+  
+  /**
+   * Returns this monitor to its thread's pool if it was taken from one. Called after the monitor
+   * has been processed; the monitor must not be used afterwards.
+   */
+  protected void release() {
+    if (pooled && processed) {
+      MonitorPool.release(this);
+    }
+  }
+  
+  /**
+   * Resets this monitor so it can be initialized again
+   */
+  void recycle() {
+    attributes.recycle();
+    processed = false;
+    completed = false;
+    momento = null;
+    momentoGeneration++;
+    dispatchPlan = null;
+    monitoringLevel = MonitoringLevel.INFO;
   }
   
   /**
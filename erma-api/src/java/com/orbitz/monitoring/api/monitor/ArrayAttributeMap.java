@@ -0,0 +1,240 @@
+package com.orbitz.monitoring.api.monitor;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A small map of attribute names to holders kept in a single array, with keys and values in
+ * adjacent elements and collisions resolved by linear probing. It has none of the per-entry objects
+ * or locking of a {@link java.util.concurrent.ConcurrentHashMap}, and is meant for the attributes of
+ * a monitor that only one thread writes.
+ * <p>
+ * It is not thread-safe. Readers on other threads must only read it after it has been safely
+ * published; see {@link AttributeMap#freeze()}.
+ */
+final class ArrayAttributeMap extends AbstractMap<String, AttributeHolder> {
+  private static final int INITIAL_CAPACITY = 8;
+
+  // keys at even indexes, their values at the following odd indexes
+  private Object[] table = new Object[INITIAL_CAPACITY * 2];
+  private int size;
+
+  @Override
+  public AttributeHolder get(final Object key) {
+    final Object[] tab = table;
+    final int index = indexOf(tab, key);
+    return (index < 0) ? null : (AttributeHolder)tab[index + 1];
+  }
+
+  @Override
+  public boolean containsKey(final Object key) {
+    return indexOf(table, key) >= 0;
+  }
+
+  @Override
+  public AttributeHolder put(final String key, final AttributeHolder value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    final int index = indexOf(table, key);
+    if (index >= 0) {
+      final AttributeHolder old = (AttributeHolder)table[index + 1];
+      table[index + 1] = value;
+      return old;
+    }
+    if ((size + 1) * 4 > (table.length / 2) * 3) {
+      resize();
+    }
+    insert(table, key, value);
+    size++;
+    return null;
+  }
+
+  @Override
+  public AttributeHolder remove(final Object key) {
+    final Object[] tab = table;
+    int index = indexOf(tab, key);
+    if (index < 0) {
+      return null;
+    }
+    final AttributeHolder old = (AttributeHolder)tab[index + 1];
+    // shift later entries of the probe sequence back so that none is left behind an empty slot
+    final int mask = (tab.length >> 1) - 1;
+    int empty = index >> 1;
+    int slot = empty;
+    while (true) {
+      slot = (slot + 1) & mask;
+      final Object k = tab[slot << 1];
+      if (k == null) {
+        break;
+      }
+      final int home = hash(k) & mask;
+      final boolean movable = (empty <= slot) ? (home <= empty || home > slot)
+          : (home <= empty && home > slot);
+      if (movable) {
+        tab[empty << 1] = k;
+        tab[(empty << 1) + 1] = tab[(slot << 1) + 1];
+        empty = slot;
+      }
+    }
+    tab[empty << 1] = null;
+    tab[(empty << 1) + 1] = null;
+    size--;
+    return old;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(table, null);
+    size = 0;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Set<Map.Entry<String, AttributeHolder>> entrySet() {
+    return new AbstractSet<Map.Entry<String, AttributeHolder>>() {
+      @Override
+      public Iterator<Map.Entry<String, AttributeHolder>> iterator() {
+        return new EntryIterator(table);
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  private void resize() {
+    final Object[] old = table;
+    final Object[] tab = new Object[old.length * 2];
+    for (int i = 0; i < old.length; i += 2) {
+      if (old[i] != null) {
+        insert(tab, old[i], old[i + 1]);
+      }
+    }
+    table = tab;
+  }
+
+  private static void insert(final Object[] tab, final Object key, final Object value) {
+    final int mask = (tab.length >> 1) - 1;
+    int slot = hash(key) & mask;
+    while (tab[slot << 1] != null) {
+      slot = (slot + 1) & mask;
+    }
+    tab[slot << 1] = key;
+    tab[(slot << 1) + 1] = value;
+  }
+
+  /**
+   * @return the array index of the key, or -1 if it isn't in the table
+   */
+  private static int indexOf(final Object[] tab, final Object key) {
+    if (key == null) {
+      return -1;
+    }
+    final int mask = (tab.length >> 1) - 1;
+    int slot = hash(key) & mask;
+    while (true) {
+      final Object k = tab[slot << 1];
+      if (k == null) {
+        return -1;
+      }
+      if (k == key || k.equals(key)) {
+        return slot << 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private static int hash(final Object key) {
+    final int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  private static final class EntryIterator implements Iterator<Map.Entry<String, AttributeHolder>> {
+    private final Object[] tab;
+    private int next;
+
+    private EntryIterator(final Object[] tab) {
+      this.tab = tab;
+      advance(0);
+    }
+
+    private void advance(final int from) {
+      next = from;
+      while (next < tab.length && tab[next] == null) {
+        next += 2;
+      }
+    }
+
+    public boolean hasNext() {
+      return next < tab.length;
+    }
+
+    public Map.Entry<String, AttributeHolder> next() {
+      if (next >= tab.length) {
+        throw new NoSuchElementException();
+      }
+      final Map.Entry<String, AttributeHolder> entry = new TableEntry((String)tab[next],
+          (AttributeHolder)tab[next + 1]);
+      advance(next + 2);
+      return entry;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static final class TableEntry implements Map.Entry<String, AttributeHolder> {
+    private final String key;
+    private final AttributeHolder value;
+
+    private TableEntry(final String key, final AttributeHolder value) {
+      this.key = key;
+      this.value = value;
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    public AttributeHolder getValue() {
+      return value;
+    }
+
+    public AttributeHolder setValue(final AttributeHolder newValue) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      final Map.Entry<?, ?> other = (Map.Entry<?, ?>)o;
+      return key.equals(other.getKey())
+          && (value == null ? other.getValue() == null : value.equals(other.getValue()));
+    }
+
+    @Override
+    public int hashCode() {
+      return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+    }
+
+    @Override
+    public String toString() {
+      return key + "=" + value;
+    }
+  }
+}
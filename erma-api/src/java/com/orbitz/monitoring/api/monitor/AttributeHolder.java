@@ -40,11 +40,20 @@ public class AttributeHolder implements Serializable, Cloneable {
    * @see com.orbitz.monitoring.api.Monitor#getSerializableMomento()
    */
   public AttributeHolder serializable() {
-    serializable = (value != null) && Serializable.class.isAssignableFrom(value.getClass());
+    serializable = isValueSerializable();
     // failing silently if set(foo,bar).serializable() is not serializable
     return this;
   }
   
+  /**
+   * Determines whether the value can be serialized
+   * @return true if the value implements {@link Serializable}
+   */
+  protected boolean isValueSerializable() {
+    final Object value = getValue();
+    return (value != null) && Serializable.class.isAssignableFrom(value.getClass());
+  }
+  
   /**
    * Set this AttributeHolder as not serializable. By default, primitive types and Strings are
    * serializable; this method can be used to revert that.
@@ -87,6 +96,7 @@ public class AttributeHolder implements Serializable, Cloneable {
   
   @Override
   public String toString() {
+    final Object value = getValue();
     return (value != null) ? value.toString() : "null";
   }
   
@@ -100,14 +110,15 @@ public class AttributeHolder implements Serializable, Cloneable {
   public boolean equals(final Object o) {
     if (o instanceof AttributeHolder) {
       AttributeHolder that = (AttributeHolder)o;
-      return Objects.equal(this.value, that.value) && Objects.equal(this.locked, that.locked)
-          && Objects.equal(this.serializable, that.serializable);
+      return Objects.equal(this.getValue(), that.getValue())
+          && this.isLocked() == that.isLocked() && this.isSerializable() == that.isSerializable();
     }
     return false;
   }
   
   @Override
   public int hashCode() {
+    final Object value = getValue();
     return (value == null) ? "null".hashCode() : value.hashCode();
   }
   
@@ -0,0 +1,155 @@
+package com.orbitz.monitoring.api.monitor;
+
+import com.orbitz.monitoring.api.Attribute;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * A process-wide dictionary of attribute names. Each name is validated the first time it is seen
+ * and given a small integer id and a canonical {@link String} instance. Attribute maps key their
+ * entries by the canonical instance, so equal names are the same object. Lookups then succeed on
+ * the identity check, and a stream of serialized monitors writes each name only once.
+ * <p>
+ * The dictionary holds at most {@link #MAX_KEYS} names. Names seen after it is full are validated
+ * every time they are used and have no id.
+ */
+public final class AttributeKeys {
+  /**
+   * The number of names the dictionary holds
+   */
+  public static final int MAX_KEYS = 16384;
+  
+  private static final Pattern ATTRIBUTE_NAME_PATTERN = Pattern.compile("[a-zA-Z_]+[a-zA-Z_0-9]*");
+  
+  private static final ConcurrentHashMap<String, Key> keys = new ConcurrentHashMap<String, Key>();
+  private static final Object lock = new Object();
+  private static volatile String[] names = new String[64];
+  private static int size;
+  
+  static {
+    // the standard names are registered first, so the constants themselves are canonical
+    for (final Field field : Attribute.class.getFields()) {
+      if (Modifier.isStatic(field.getModifiers()) && field.getType() == String.class) {
+        try {
+          register((String)field.get(null));
+        }
+        catch (final IllegalAccessException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    }
+  }
+  
+  private AttributeKeys() {
+  }
+  
+  /**
+   * Gets the canonical instance of an attribute name, validating and registering the name if it
+   * hasn't been seen before
+   * @param name the attribute name
+   * @return the canonical instance, which equals the name
+   * @throws IllegalArgumentException if the name isn't a valid attribute name
+   */
+  public static String canonicalize(final String name) {
+    final Key key = keys.get(name);
+    if (key != null) {
+      return key.name;
+    }
+    final Key registered = register(name);
+    return (registered == null) ? name : registered.name;
+  }
+  
+  /**
+   * Gets the canonical instance of an attribute name if the name is in the dictionary. Unlike
+   * {@link #canonicalize(String)}, this doesn't validate or register the name.
+   * @param name the attribute name
+   * @return the canonical instance, or the name itself if it isn't in the dictionary
+   */
+  public static String canonicalIfKnown(final String name) {
+    final Key key = keys.get(name);
+    return (key == null) ? name : key.name;
+  }
+  
+  /**
+   * Gets the id of an attribute name, validating and registering the name if it hasn't been seen
+   * before
+   * @param name the attribute name
+   * @return the id, or -1 if the dictionary is full
+   * @throws IllegalArgumentException if the name isn't a valid attribute name
+   */
+  public static int idOf(final String name) {
+    Key key = keys.get(name);
+    if (key == null) {
+      key = register(name);
+    }
+    return (key == null) ? -1 : key.id;
+  }
+  
+  /**
+   * Gets the attribute name with an id
+   * @param id the id
+   * @return the canonical name
+   * @throws IllegalArgumentException if no name has the id
+   */
+  public static String nameOf(final int id) {
+    final String[] current = names;
+    if (id < 0 || id >= current.length || current[id] == null) {
+      throw new IllegalArgumentException("no attribute name has id " + id);
+    }
+    return current[id];
+  }
+  
+  /**
+   * Gets the number of names in the dictionary
+   * @return the number of names
+   */
+  public static int size() {
+    synchronized (lock) {
+      return size;
+    }
+  }
+  
+  /**
+   * Validates and registers a name
+   * @return the key of the name, or null if the dictionary is full
+   */
+  private static Key register(final String name) {
+    if (name == null || !ATTRIBUTE_NAME_PATTERN.matcher(name).matches()) {
+      throw new IllegalArgumentException("Attribute [" + name
+          + "] violates attribute name restriction, attribute not added.");
+    }
+    synchronized (lock) {
+      final Key existing = keys.get(name);
+      if (existing != null) {
+        return existing;
+      }
+      if (size >= MAX_KEYS) {
+        return null;
+      }
+      String[] current = names;
+      if (size == current.length) {
+        final String[] grown = new String[current.length * 2];
+        System.arraycopy(current, 0, grown, 0, size);
+        current = grown;
+      }
+      final Key key = new Key(name, size);
+      current[size++] = name;
+      // publish the name before the key, so an id that is handed out can always be resolved
+      names = current;
+      keys.put(name, key);
+      return key;
+    }
+  }
+  
+  private static final class Key {
+    private final String name;
+    private final int id;
+    
+    private Key(final String name, final int id) {
+      this.name = name;
+      this.id = id;
+    }
+  }
+}
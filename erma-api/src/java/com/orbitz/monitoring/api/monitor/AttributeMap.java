@@ -6,16 +6,21 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.orbitz.monitoring.api.AttributeUndefinedException;
 import com.orbitz.monitoring.api.CantCoerceException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import org.apache.log4j.Logger;
 
 /**
@@ -23,21 +28,65 @@ import org.apache.log4j.Logger;
  * are {@link String strings}. Also, it has methods for getting and setting primitives as the values
  * of those attributes. This map does not support null values. Values set to null are removed from
  * the the map.
+ * <p>
+ * The well-known attributes that nearly every monitor carries, such as {@link
+ * com.orbitz.monitoring.api.Attribute#NAME name} and {@link
+ * com.orbitz.monitoring.api.Attribute#LATENCY latency}, are kept in fields when their values have
+ * the expected type, with their flags packed into a single int. Only other attributes are put in
+ * the hash map. The holders returned for these attributes read and write the fields of this map.
+ * <p>
+ * A map created for a single writer keeps its attributes in an {@link ArrayAttributeMap} instead
+ * of a {@link ConcurrentHashMap}, and doesn't synchronize its writes. Only the thread that created
+ * it may change it until it is {@link #freeze() frozen}. After that, the first change copies the
+ * attributes into a {@link ConcurrentHashMap}, so any thread may change it.
  * @author Doug Barth
  */
 
 public class AttributeMap implements Serializable {
-  private static final Pattern ATTRIBUTE_NAME_PATTERN = Pattern.compile("[a-zA-Z_]+[a-zA-Z_0-9]*");
   private static final long serialVersionUID = 2L;
   
-  private final ConcurrentHashMap<String, AttributeHolder> attributes;
+  private static final AtomicIntegerFieldUpdater<AttributeMap> SLOT_STATE = AtomicIntegerFieldUpdater
+      .newUpdater(AttributeMap.class, "slotState");
+  
+  // the serialized form is the same as when all attributes were in a ConcurrentHashMap
+  private static final ObjectStreamField[] serialPersistentFields = new ObjectStreamField[] {
+      new ObjectStreamField("attributes", ConcurrentHashMap.class)};
+  
+  private transient volatile Map<String, AttributeHolder> attributes;
   private transient final Logger logger = Logger.getLogger(AttributeMap.class);
+  private transient boolean singleWriter;
+  private transient volatile boolean frozen;
+  private transient int modificationCount;
+  
+  // the well-known attributes. Values are written before the bits that publish them.
+  private transient volatile int slotState;
+  private transient volatile boolean slotsDisabled;
+  private transient long[] slotNumbers;
+  private transient Object[] slotObjects;
+  // views of the slots, created as they are first needed
+  private transient SlotHolder[] slotHolders;
   
   /**
    * Creates an empty attribute map
    */
   public AttributeMap() {
-    attributes = new ConcurrentHashMap<String, AttributeHolder>();
+    this(false);
+  }
+  
+  /**
+   * Creates an empty attribute map
+   * @param singleWriter true if the map will only be changed by the thread that creates it until it
+   *        is {@link #freeze() frozen}
+   */
+  public AttributeMap(final boolean singleWriter) {
+    this.singleWriter = singleWriter;
+    if (singleWriter) {
+      attributes = new ArrayAttributeMap();
+    }
+    else {
+      attributes = new ConcurrentHashMap<String, AttributeHolder>();
+    }
+    initSlots();
   }
   
   /**
@@ -56,7 +105,9 @@ public class AttributeMap implements Serializable {
    * Removes all entries from this map
    */
   public void clear() {
-    attributes.clear();
+    modificationCount++;
+    slotState = 0;
+    writableAttributes().clear();
   }
   
   /**
@@ -109,8 +160,7 @@ public class AttributeMap implements Serializable {
    */
   @SuppressWarnings({"unchecked", "rawtypes"})
   public Map<String, CompositeAttributeHolder> findCompositeAttributes() {
-    return (Map)Maps
-        .filterValues(attributes, Predicates.instanceOf(CompositeAttributeHolder.class));
+    return (Map)Maps.filterValues(holders(), Predicates.instanceOf(CompositeAttributeHolder.class));
   }
   
   /**
@@ -120,20 +170,37 @@ public class AttributeMap implements Serializable {
    * @throws AttributeUndefinedException if the key doesn't exist
    */
   public Object get(final String key) {
-    if (this.hasAttribute(key)) {
-      AttributeHolder attribute = attributes.get(key);
-      return (attribute == null) ? attribute : attribute.getValue();
+    final int slot = slotOf(key);
+    if (slot >= 0 && (slotState & AttributeSlots.present(slot)) != 0) {
+      return slotValue(slot);
+    }
+    final AttributeHolder attribute = attributes.get(key);
+    if (attribute != null) {
+      return attribute.getValue();
     }
     throw new AttributeUndefinedException(key);
   }
   
+  /**
+   * Gets the holder of a key
+   * @param key the key to find
+   * @return the holder, or null if the key doesn't exist
+   */
+  public AttributeHolder getAttributeHolder(final String key) {
+    final int slot = slotOf(key);
+    if (slot >= 0 && (slotState & AttributeSlots.present(slot)) != 0) {
+      return slotHolder(slot);
+    }
+    return attributes.get(key);
+  }
+  
   /**
    * Gets all values from this attribute map
    * @return a map of all keys to all values
    */
   @SuppressWarnings("unchecked")
   public <V> Map<String, V> getAll() {
-    return Maps.transformValues(attributes, new Function<AttributeHolder, V>() {
+    return Maps.transformValues(holders(), new Function<AttributeHolder, V>() {
       public V apply(final AttributeHolder attribute) {
         return (V)attribute.getValue();
       }
@@ -146,7 +213,31 @@ public class AttributeMap implements Serializable {
    * @return the new map
    */
   public Map<String, AttributeHolder> getAllAttributeHolders() {
-    return new HashMap<String, AttributeHolder>(attributes);
+    final Map<String, AttributeHolder> holders = new HashMap<String, AttributeHolder>(attributes);
+    final int state = slotState;
+    for (int slot = 0; slot < AttributeSlots.COUNT; slot++) {
+      if ((state & AttributeSlots.present(slot)) != 0) {
+        holders.put(AttributeSlots.keyOf(slot), slotHolder(slot));
+      }
+    }
+    return holders;
+  }
+  
+  /**
+   * Creates a new map of the attribute holders that later changes to this map don't affect. Unlike
+   * {@link #getAllAttributeHolders()}, well-known attributes are copied into holders of their own.
+   * The holders and values themselves aren't copied.
+   * @return the new map
+   */
+  public Map<String, AttributeHolder> snapshotAttributeHolders() {
+    final Map<String, AttributeHolder> holders = new HashMap<String, AttributeHolder>(attributes);
+    final int state = slotState;
+    for (int slot = 0; slot < AttributeSlots.COUNT; slot++) {
+      if ((state & AttributeSlots.present(slot)) != 0) {
+        holders.put(AttributeSlots.keyOf(slot), copySlot(slot, state));
+      }
+    }
+    return holders;
   }
   
   /**
@@ -164,6 +255,15 @@ public class AttributeMap implements Serializable {
         allSerializable.put(entry.getKey(), value);
       }
     }
+    final int state = slotState;
+    for (int slot = 0; slot < AttributeSlots.COUNT; slot++) {
+      if ((state & AttributeSlots.present(slot)) != 0
+          && (state & AttributeSlots.serializable(slot)) != 0) {
+        @SuppressWarnings("unchecked")
+        final V value = (V)slotValue(slot);
+        allSerializable.put(AttributeSlots.keyOf(slot), value);
+      }
+    }
     return allSerializable;
   }
   
@@ -176,6 +276,9 @@ public class AttributeMap implements Serializable {
    * @throws CantCoerceException if the value is not a boolean and can't be converted to one
    */
   public boolean getAsBoolean(final String key) {
+    if (isSlotPresent(key, AttributeSlots.FAILED)) {
+      return slotNumbers[AttributeSlots.FAILED] != 0;
+    }
     final Object value = getNotNull(key);
     if (value instanceof Boolean) {
       return ((Boolean)value);
@@ -385,6 +488,9 @@ public class AttributeMap implements Serializable {
    *         converted to one
    */
   public int getAsInt(final String key) {
+    if (isSlotPresent(key, AttributeSlots.LATENCY)) {
+      return (int)slotNumbers[AttributeSlots.LATENCY];
+    }
     final Object value = getNotNull(key);
     if (value instanceof Number) {
       return ((Number)value).intValue();
@@ -456,6 +562,9 @@ public class AttributeMap implements Serializable {
    *         converted to one
    */
   public long getAsLong(final String key) {
+    if (isSlotPresent(key, AttributeSlots.LATENCY)) {
+      return slotNumbers[AttributeSlots.LATENCY];
+    }
     final Object value = getNotNull(key);
     if (value instanceof Number) {
       return ((Number)value).longValue();
@@ -578,11 +687,22 @@ public class AttributeMap implements Serializable {
   }
   
   /**
-   * Gets the raw map of strings to attribute holders
+   * Gets the raw map of strings to attribute holders. The well-known attributes held in fields are
+   * moved into the map first, and from then on this map keeps all of its attributes in the map.
    * @return the map
    */
   public ConcurrentHashMap<String, AttributeHolder> getAttributes() {
-    return attributes;
+    if (!slotsDisabled) {
+      slotsDisabled = true;
+      final int state = slotState;
+      for (int slot = 0; slot < AttributeSlots.COUNT; slot++) {
+        if ((state & AttributeSlots.present(slot)) != 0) {
+          writableAttributes().put(AttributeSlots.keyOf(slot), copySlot(slot, state));
+        }
+      }
+      slotState = 0;
+    }
+    return concurrentAttributes();
   }
   
   /**
@@ -607,6 +727,10 @@ public class AttributeMap implements Serializable {
    * @return true if it exists, false otherwise
    */
   public boolean hasAttribute(final String key) {
+    final int slot = slotOf(key);
+    if (slot >= 0 && (slotState & AttributeSlots.present(slot)) != 0) {
+      return true;
+    }
     return attributes.containsKey(key);
   }
   
@@ -627,21 +751,44 @@ public class AttributeMap implements Serializable {
    *         {@link AttributeHolder} of value that already existed for the specified key.
    */
   protected AttributeHolder internalSetAttribute(final String key, final Object value) {
-    verifyValidKeyName(key);
-    AttributeHolder attributeHolder = attributes.get(key);
+    final int slot = slotOf(key);
+    if (slot >= 0) {
+      if (AttributeSlots.holdsString(slot) && value instanceof String) {
+        return setSlot(slot, 0, value);
+      }
+      if (slot == AttributeSlots.FAILED && value instanceof Boolean) {
+        return setSlot(slot, ((Boolean)value).booleanValue() ? 1 : 0, null);
+      }
+      if (slot == AttributeSlots.LATENCY && value instanceof Long) {
+        return setSlot(slot, ((Long)value).longValue(), null);
+      }
+      final int state = slotState;
+      if ((state & AttributeSlots.present(slot)) != 0) {
+        // a value of another type moves the attribute from its slot to the map
+        final AttributeHolder current = slotHolder(slot);
+        if ((state & AttributeSlots.locked(slot)) != 0) {
+          logLocked(key);
+          return current;
+        }
+        final AttributeHolder attributeHolder = createHolderForValue(current, value);
+        writableAttributes().put(key, attributeHolder);
+        clearSlot(slot);
+        return attributeHolder;
+      }
+    }
+    final String name = AttributeKeys.canonicalize(key);
+    AttributeHolder attributeHolder = attributes.get(name);
     if (attributeHolder == null) {
       attributeHolder = createHolderForValue(value);
-      attributes.put(key, attributeHolder);
+      writableAttributes().put(name, attributeHolder);
     }
     else {
       if (attributeHolder.isLocked()) {
-        if (logger.isDebugEnabled()) {
-          logger.debug("Attempt to overwrite locked attribute with key '" + key + "'");
-        }
+        logLocked(name);
       }
       else {
         attributeHolder = createHolderForValue(attributeHolder, value);
-        attributes.put(key, attributeHolder);
+        writableAttributes().put(name, attributeHolder);
       }
     }
     return attributeHolder;
@@ -657,6 +804,9 @@ public class AttributeMap implements Serializable {
    *         existed in the map.
    */
   public AttributeHolder set(final String key, final boolean value) {
+    if (slotOf(key) == AttributeSlots.FAILED) {
+      return setSlot(AttributeSlots.FAILED, value ? 1 : 0, null);
+    }
     return internalSetAttribute(key, Boolean.valueOf(value));
   }
   
@@ -735,6 +885,9 @@ public class AttributeMap implements Serializable {
    *         existed in the map.
    */
   public AttributeHolder set(final String key, final long value) {
+    if (slotOf(key) == AttributeSlots.LATENCY) {
+      return setSlot(AttributeSlots.LATENCY, value, null);
+    }
     return internalSetAttribute(key, Long.valueOf(value));
   }
   
@@ -761,6 +914,41 @@ public class AttributeMap implements Serializable {
     return internalSetAttribute(key, Short.valueOf(value));
   }
   
+  /**
+   * Sets a point in time without creating a {@link java.util.Date}. The value reads as a
+   * {@link java.util.Date}, which is created the first time it is read. The time is set following
+   * the same rules as {@link #internalSetAttribute(String, Object)}.
+   * @param key the key that identifies the value
+   * @param millis the number of milliseconds since midnight, January 1, 1970 UTC
+   * @return if the time was put into the map, the {@link TimestampAttributeHolder} created to hold
+   *         it. If it was not put, the {@link AttributeHolder} for the value that already existed in
+   *         the map.
+   */
+  public AttributeHolder setTimestamp(final String key, final long millis) {
+    final int slot = slotOf(key);
+    if (slot >= 0 && AttributeSlots.holdsTimestamp(slot)) {
+      return setSlot(slot, millis, null);
+    }
+    final String name = AttributeKeys.canonicalize(key);
+    final AttributeHolder existing = attributes.get(name);
+    if (existing != null && existing.isLocked()) {
+      logLocked(name);
+      return existing;
+    }
+    final TimestampAttributeHolder attributeHolder = new TimestampAttributeHolder(millis);
+    if (existing != null) {
+      if (existing.isSerializable()) {
+        attributeHolder.serializable();
+      }
+      if (existing instanceof CompositeAttributeHolder
+          && ((CompositeAttributeHolder)existing).isInheritable()) {
+        attributeHolder.setInheritable(true);
+      }
+    }
+    writableAttributes().put(name, attributeHolder);
+    return attributeHolder;
+  }
+  
   /**
    * Sets zero or more attribute holders from a collection. If an entry value is an
    * {@link AttributeHolder}, it is cloned and its clone is put in this map. If it is not an
@@ -790,7 +978,7 @@ public class AttributeMap implements Serializable {
         if (AttributeHolder.class.isAssignableFrom(value.getClass())) {
           final AttributeHolder original = (AttributeHolder)value;
           final AttributeHolder copy = (AttributeHolder)original.clone();
-          getAttributes().put(key, copy);
+          putAttributeHolder(key, copy);
         }
         else {
           set(key, value);
@@ -809,14 +997,416 @@ public class AttributeMap implements Serializable {
    * @param key the key to remove
    */
   public void unset(final String key) {
-    attributes.remove(key);
+    final int slot = slotOf(key);
+    if (slot >= 0) {
+      clearSlot(slot);
+    }
+    writableAttributes().remove(key);
+  }
+  
+  /**
+   * Puts a holder into the map as it is, replacing any value the key has
+   * @param key the key
+   * @param attributeHolder the holder
+   */
+  protected void putAttributeHolder(final String key, final AttributeHolder attributeHolder) {
+    writableAttributes().put(AttributeKeys.canonicalIfKnown(key), attributeHolder);
+    final int slot = slotOf(key);
+    if (slot >= 0) {
+      clearSlot(slot);
+    }
+  }
+  
+  /**
+   * Publishes the attributes to other threads. A map for a single writer must be frozen before its
+   * monitor is handed to another thread. The {@link com.orbitz.monitoring.api.MonitoringEngine}
+   * freezes the attributes of the monitors it processes. After this call any thread may change the
+   * map. Freezing a map that isn't for a single writer does nothing.
+   */
+  public void freeze() {
+    if (singleWriter && !frozen) {
+      frozen = true;
+      // rewriting the volatile field makes everything written so far visible to later readers
+      attributes = attributes;
+    }
+  }
+  
+  /**
+   * Empties the map of a recycled monitor and makes it thread confined again if it was created for a
+   * single writer. Only called once nothing else refers to the monitor, so the tables of the map are
+   * kept for its next use.
+   */
+  void recycle() {
+    modificationCount++;
+    slotState = 0;
+    slotsDisabled = false;
+    Arrays.fill(slotObjects, null);
+    final Map<String, AttributeHolder> current = attributes;
+    if (singleWriter && !(current instanceof ArrayAttributeMap)) {
+      attributes = new ArrayAttributeMap();
+    }
+    else {
+      current.clear();
+    }
+    frozen = false;
+  }
+  
+  /**
+   * Gets a number that changes whenever an attribute is set, replaced or removed through this map,
+   * or a flag of a well-known attribute changes. Callers that derive state from the attributes can
+   * compare it to detect changes. Changes made directly to a holder, or to the map returned by
+   * {@link #getAttributes()}, are not counted. The count is meant to be read by the thread that
+   * changes the map, or after the map has been published to the reading thread.
+   * @return the modification count
+   */
+  public int getModificationCount() {
+    return modificationCount;
+  }
+  
+  /**
+   * Determines whether this map is for a single writer and hasn't been frozen
+   * @return true if only the creating thread may change the map
+   */
+  public boolean isThreadConfined() {
+    return singleWriter && !frozen;
+  }
+  
+  /**
+   * Gets the map to change, first copying the attributes of a frozen single writer map into a map
+   * that any thread may change
+   */
+  private Map<String, AttributeHolder> writableAttributes() {
+    modificationCount++;
+    final Map<String, AttributeHolder> current = attributes;
+    if (!frozen || current instanceof ConcurrentHashMap) {
+      return current;
+    }
+    return concurrentAttributes();
+  }
+  
+  private ConcurrentHashMap<String, AttributeHolder> concurrentAttributes() {
+    synchronized (this) {
+      final Map<String, AttributeHolder> current = attributes;
+      if (current instanceof ConcurrentHashMap) {
+        return (ConcurrentHashMap<String, AttributeHolder>)current;
+      }
+      final ConcurrentHashMap<String, AttributeHolder> concurrent =
+          new ConcurrentHashMap<String, AttributeHolder>(current);
+      attributes = concurrent;
+      return concurrent;
+    }
+  }
+  
+  private void logLocked(final String key) {
+    if (logger.isDebugEnabled()) {
+      logger.debug("Attempt to overwrite locked attribute with key '" + key + "'");
+    }
+  }
+  
+  /**
+   * Gets the attributes as holders, using the hash map itself when no slot is in use
+   */
+  private Map<String, AttributeHolder> holders() {
+    return (slotState == 0) ? attributes : getAllAttributeHolders();
+  }
+  
+  private void initSlots() {
+    slotNumbers = new long[AttributeSlots.COUNT];
+    slotObjects = new Object[AttributeSlots.COUNT];
+  }
+  
+  /**
+   * @return the slot of a key, or -1 if the key doesn't have one or slots aren't in use
+   */
+  private int slotOf(final String key) {
+    return slotsDisabled ? -1 : AttributeSlots.indexOf(key);
+  }
+  
+  private boolean isSlotPresent(final String key, final int slot) {
+    return (slotState & AttributeSlots.present(slot)) != 0 && slotOf(key) == slot;
+  }
+  
+  private Object slotValue(final int slot) {
+    if (AttributeSlots.holdsString(slot)) {
+      return slotObjects[slot];
+    }
+    if (AttributeSlots.holdsTimestamp(slot)) {
+      Object date = slotObjects[slot];
+      if (date == null) {
+        date = new Date(slotNumbers[slot]);
+        slotObjects[slot] = date;
+      }
+      return date;
+    }
+    if (slot == AttributeSlots.FAILED) {
+      return Boolean.valueOf(slotNumbers[slot] != 0);
+    }
+    return Long.valueOf(slotNumbers[slot]);
+  }
+  
+  /**
+   * Puts a value into a slot. The value is set following the same rules as
+   * {@link #internalSetAttribute(String, Object)}.
+   * @param slot the slot
+   * @param number the value of a numeric, boolean or timestamp slot
+   * @param object the value of a string slot
+   * @return the holder of the slot, or the existing holder if the value could not be set
+   */
+  private AttributeHolder setSlot(final int slot, final long number, final Object object) {
+    final String key = AttributeSlots.keyOf(slot);
+    final int state = slotState;
+    int bits = AttributeSlots.present(slot);
+    AttributeHolder displaced = null;
+    if ((state & AttributeSlots.present(slot)) != 0) {
+      if ((state & AttributeSlots.locked(slot)) != 0) {
+        logLocked(key);
+        return slotHolder(slot);
+      }
+      bits |= state & (AttributeSlots.serializable(slot) | AttributeSlots.inheritable(slot));
+    }
+    else {
+      displaced = attributes.get(key);
+      if (displaced != null) {
+        if (displaced.isLocked()) {
+          logLocked(key);
+          return displaced;
+        }
+        if (displaced.isSerializable()) {
+          bits |= AttributeSlots.serializable(slot);
+        }
+        if (displaced instanceof CompositeAttributeHolder
+            && ((CompositeAttributeHolder)displaced).isInheritable()) {
+          bits |= AttributeSlots.inheritable(slot);
+        }
+      }
+    }
+    slotNumbers[slot] = number;
+    slotObjects[slot] = object;
+    updateSlotState(AttributeSlots.all(slot), bits);
+    if (displaced != null) {
+      final Map<String, AttributeHolder> writable = writableAttributes();
+      if (writable.get(key) == displaced) {
+        writable.remove(key);
+      }
+    }
+    return slotHolder(slot);
+  }
+  
+  /**
+   * Gets the view of a slot. Views hold no state of their own, so each slot has just one.
+   */
+  private AttributeHolder slotHolder(final int slot) {
+    SlotHolder[] holders = slotHolders;
+    if (holders == null) {
+      holders = new SlotHolder[AttributeSlots.COUNT];
+      slotHolders = holders;
+    }
+    SlotHolder holder = holders[slot];
+    if (holder == null) {
+      holder = new SlotHolder(slot);
+      holders[slot] = holder;
+    }
+    return holder;
+  }
+  
+  private void clearSlot(final int slot) {
+    updateSlotState(AttributeSlots.all(slot), 0);
+  }
+  
+  private void updateSlotState(final int clear, final int set) {
+    modificationCount++;
+    if (singleWriter && !frozen) {
+      slotState = (slotState & ~clear) | set;
+      return;
+    }
+    int state;
+    do {
+      state = slotState;
+    } while (!SLOT_STATE.compareAndSet(this, state, (state & ~clear) | set));
+  }
+  
+  /**
+   * Sets or clears a flag of a slot, if the slot holds a value
+   */
+  private void setSlotFlag(final int slot, final int flag, final boolean on) {
+    modificationCount++;
+    if (singleWriter && !frozen) {
+      final int state = slotState;
+      if ((state & AttributeSlots.present(slot)) != 0) {
+        slotState = on ? state | flag : state & ~flag;
+      }
+      return;
+    }
+    int state;
+    do {
+      state = slotState;
+      if ((state & AttributeSlots.present(slot)) == 0) {
+        return;
+      }
+    } while (!SLOT_STATE.compareAndSet(this, state, on ? state | flag : state & ~flag));
+  }
+  
+  /**
+   * Copies a slot into a holder that doesn't depend on this map
+   */
+  private CompositeAttributeHolder copySlot(final int slot, final int state) {
+    final CompositeAttributeHolder holder = AttributeSlots.holdsTimestamp(slot)
+        ? new TimestampAttributeHolder(slotNumbers[slot])
+        : new CompositeAttributeHolder(slotValue(slot));
+    if ((state & AttributeSlots.serializable(slot)) != 0) {
+      holder.serializable();
+    }
+    if ((state & AttributeSlots.locked(slot)) != 0) {
+      holder.lock();
+    }
+    if ((state & AttributeSlots.inheritable(slot)) != 0) {
+      holder.setInheritable(true);
+    }
+    return holder;
   }
   
-  private void verifyValidKeyName(final String key) {
-    final Matcher matcher = ATTRIBUTE_NAME_PATTERN.matcher(key);
-    if (!matcher.matches()) {
-      throw new IllegalArgumentException("Attribute [" + key
-          + "] violates attribute name restriction, attribute not added.");
+  private void writeObject(final ObjectOutputStream out) throws IOException {
+    // the well-known attributes are written into the map, so the serialized form is the same as
+    // that of maps that don't have slots
+    final ObjectOutputStream.PutField fields = out.putFields();
+    fields.put("attributes", new ConcurrentHashMap<String, AttributeHolder>(
+        getAllAttributeHolders()));
+    out.writeFields();
+  }
+  
+  @SuppressWarnings("unchecked")
+  private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+    final ObjectInputStream.GetField fields = in.readFields();
+    attributes = (Map<String, AttributeHolder>)fields.get("attributes", null);
+    if (attributes == null) {
+      attributes = new ConcurrentHashMap<String, AttributeHolder>();
+    }
+    initSlots();
+  }
+  
+  /**
+   * The holder of a well-known attribute kept in the fields of this map. Its value and flags are
+   * read from and written to the map. If the attribute has since moved to the hash map, the holder
+   * there is used instead. Copies and serialized forms are independent holders.
+   */
+  private final class SlotHolder extends CompositeAttributeHolder {
+    private static final long serialVersionUID = 1L;
+    
+    private final int slot;
+    
+    private SlotHolder(final int slot) {
+      super(null);
+      this.slot = slot;
+    }
+    
+    /**
+     * @return the holder in the hash map, or null if the attribute is still in its slot
+     */
+    private AttributeHolder moved() {
+      if ((slotState & AttributeSlots.present(slot)) != 0) {
+        return null;
+      }
+      final AttributeHolder holder = attributes.get(AttributeSlots.keyOf(slot));
+      // an unset attribute reads as an empty holder
+      return (holder == null) ? new CompositeAttributeHolder(null) : holder;
+    }
+    
+    private boolean hasFlag(final int flag) {
+      return (slotState & flag) != 0;
+    }
+    
+    @Override
+    public Object getValue() {
+      final AttributeHolder holder = moved();
+      return (holder == null) ? slotValue(slot) : holder.getValue();
+    }
+    
+    @Override
+    public boolean isSerializable() {
+      final AttributeHolder holder = moved();
+      return (holder == null) ? hasFlag(AttributeSlots.serializable(slot)) : holder.isSerializable();
+    }
+    
+    @Override
+    public AttributeHolder serializable() {
+      final AttributeHolder holder = moved();
+      if (holder == null) {
+        setSlotFlag(slot, AttributeSlots.serializable(slot), true);
+      }
+      else {
+        holder.serializable();
+      }
+      return this;
+    }
+    
+    @Override
+    public AttributeHolder notSerializable() {
+      final AttributeHolder holder = moved();
+      if (holder == null) {
+        setSlotFlag(slot, AttributeSlots.serializable(slot), false);
+      }
+      else {
+        holder.notSerializable();
+      }
+      return this;
+    }
+    
+    @Override
+    public boolean isLocked() {
+      final AttributeHolder holder = moved();
+      return (holder == null) ? hasFlag(AttributeSlots.locked(slot)) : holder.isLocked();
+    }
+    
+    @Override
+    public AttributeHolder lock() {
+      final AttributeHolder holder = moved();
+      if (holder == null) {
+        setSlotFlag(slot, AttributeSlots.locked(slot), true);
+      }
+      else {
+        holder.lock();
+      }
+      return this;
+    }
+    
+    @Override
+    public boolean isInheritable() {
+      final AttributeHolder holder = moved();
+      if (holder == null) {
+        return hasFlag(AttributeSlots.inheritable(slot));
+      }
+      return (holder instanceof CompositeAttributeHolder)
+          && ((CompositeAttributeHolder)holder).isInheritable();
+    }
+    
+    @Override
+    public CompositeAttributeHolder setInheritable(final boolean inheritable) {
+      final AttributeHolder holder = moved();
+      if (holder == null) {
+        setSlotFlag(slot, AttributeSlots.inheritable(slot), inheritable);
+      }
+      else if (holder instanceof CompositeAttributeHolder) {
+        ((CompositeAttributeHolder)holder).setInheritable(inheritable);
+      }
+      return this;
+    }
+    
+    @Override
+    protected boolean isValueSerializable() {
+      return true;
+    }
+    
+    @Override
+    public Object clone() {
+      final int state = slotState;
+      if ((state & AttributeSlots.present(slot)) != 0) {
+        return copySlot(slot, state);
+      }
+      return moved().clone();
+    }
+    
+    private Object writeReplace() throws ObjectStreamException {
+      return clone();
     }
   }
 }
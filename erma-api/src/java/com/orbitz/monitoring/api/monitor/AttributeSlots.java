@@ -0,0 +1,97 @@
+package com.orbitz.monitoring.api.monitor;
+
+import com.orbitz.monitoring.api.Attribute;
+
+/**
+ * The well-known attributes that an {@link AttributeMap} keeps in fields instead of in its hash
+ * map, and the layout of the bits that describe them. Each slot has four bits in a single int: one
+ * each for whether it holds a value and whether that value is serializable, locked and inheritable.
+ */
+final class AttributeSlots {
+  static final int NAME = 0;
+  static final int SEQUENCE_ID = 1;
+  static final int THREAD_ID = 2;
+  static final int FAILED = 3;
+  static final int CREATED_AT = 4;
+  static final int START_TIME = 5;
+  static final int END_TIME = 6;
+  static final int LATENCY = 7;
+
+  static final int COUNT = 8;
+
+  private static final String[] KEYS = new String[] {Attribute.NAME, Attribute.SEQUENCE_ID,
+      Attribute.THREAD_ID, Attribute.FAILED, Attribute.CREATED_AT, Attribute.START_TIME,
+      Attribute.END_TIME, Attribute.LATENCY};
+
+  private static final int[] HASHES = new int[COUNT];
+  static {
+    for (int i = 0; i < COUNT; i++) {
+      HASHES[i] = KEYS[i].hashCode();
+    }
+  }
+
+  private AttributeSlots() {
+  }
+
+  /**
+   * Finds the slot of a key. Keys that are the {@link Attribute} constants themselves are found
+   * without hashing.
+   * @param key the attribute key
+   * @return the slot, or -1 if the key doesn't have one
+   */
+  static int indexOf(final String key) {
+    for (int i = 0; i < COUNT; i++) {
+      if (KEYS[i] == key) {
+        return i;
+      }
+    }
+    final int hash = key.hashCode();
+    for (int i = 0; i < COUNT; i++) {
+      if (HASHES[i] == hash && KEYS[i].equals(key)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  static String keyOf(final int slot) {
+    return KEYS[slot];
+  }
+
+  /**
+   * @return true if the slot holds a {@link String}
+   */
+  static boolean holdsString(final int slot) {
+    return slot <= THREAD_ID;
+  }
+
+  /**
+   * @return true if the slot holds a time in milliseconds that reads as a {@link java.util.Date}
+   */
+  static boolean holdsTimestamp(final int slot) {
+    return slot >= CREATED_AT && slot <= END_TIME;
+  }
+
+  static int present(final int slot) {
+    return 1 << slot;
+  }
+
+  static int serializable(final int slot) {
+    return 1 << (slot + COUNT);
+  }
+
+  static int locked(final int slot) {
+    return 1 << (slot + 2 * COUNT);
+  }
+
+  static int inheritable(final int slot) {
+    return 1 << (slot + 3 * COUNT);
+  }
+
+  /**
+   * @return all of the bits of a slot
+   */
+  static int all(final int slot) {
+    return present(slot) | serializable(slot) | locked(slot) | inheritable(slot);
+  }
+}
@@ -0,0 +1,120 @@
+package com.orbitz.monitoring.api.monitor;
+
+import com.orbitz.monitoring.api.Attribute;
+import com.orbitz.monitoring.api.Monitor;
+import com.orbitz.monitoring.api.monitor.serializable.SerializableMonitor;
+
+/**
+ * Stands in for the children with one name that a composite monitor received after it had kept as
+ * many children as it is allowed. The children themselves, and anything below them, aren't kept.
+ * The summary is named after them and carries how many there were, how many failed and the total,
+ * shortest and longest of their latencies. Its {@link Attribute#LATENCY latency} is the total.
+ * <p>
+ * Counts are kept as numbers and are written to the summary's attributes when the composite's
+ * children are read.
+ */
+public class ChildMonitorSummary extends SerializableMonitor {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The attribute that marks a monitor as a summary
+   */
+  public static final String SUMMARY = "summary";
+  /**
+   * The attribute that holds the number of children summarized
+   */
+  public static final String COUNT = "count";
+  /**
+   * The attribute that holds the number of children summarized that had failed
+   */
+  public static final String FAILURE_COUNT = "failureCount";
+  /**
+   * The attribute that holds the shortest latency of the children summarized, in milliseconds
+   */
+  public static final String MIN_LATENCY = "minLatency";
+  /**
+   * The attribute that holds the longest latency of the children summarized, in milliseconds
+   */
+  public static final String MAX_LATENCY = "maxLatency";
+
+  private long count;
+  private long failureCount;
+  private long latencyCount;
+  private long totalLatency;
+  private long minLatency = Long.MAX_VALUE;
+  private long maxLatency = Long.MIN_VALUE;
+  private boolean dirty;
+
+  /**
+   * Creates an empty summary for the children of a name
+   * @param first the first child summarized, whose name and level the summary takes
+   */
+  ChildMonitorSummary(final Monitor first) {
+    super(null, first.getLevel());
+    set(Attribute.NAME, first.getAsString(Attribute.NAME));
+    set(SUMMARY, true);
+  }
+
+  /**
+   * Adds a child to the summary
+   * @param child the child, which is not kept
+   */
+  void add(final Monitor child) {
+    count++;
+    if (child.hasAttribute(Attribute.FAILED) && child.getAsBoolean(Attribute.FAILED)) {
+      failureCount++;
+    }
+    if (child.hasAttribute(Attribute.LATENCY)) {
+      final long latency = child.getAsLong(Attribute.LATENCY);
+      latencyCount++;
+      totalLatency += latency;
+      if (latency < minLatency) {
+        minLatency = latency;
+      }
+      if (latency > maxLatency) {
+        maxLatency = latency;
+      }
+    }
+    dirty = true;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getFailureCount() {
+    return failureCount;
+  }
+
+  public long getTotalLatency() {
+    return totalLatency;
+  }
+
+  /**
+   * Gets a plain {@link SerializableMonitor} with the summary's attributes, so that the receiving
+   * JVM doesn't need this class
+   * @return the momento
+   */
+  @Override
+  public SerializableMonitor getSerializableMomento() {
+    update();
+    return new SerializableMonitor(getAll(), getLevel());
+  }
+
+  /**
+   * Writes the counts to the attributes if children have been added since they were last written
+   */
+  void update() {
+    if (!dirty) {
+      return;
+    }
+    set(COUNT, count);
+    set(FAILURE_COUNT, failureCount);
+    if (latencyCount > 0) {
+      set(Attribute.LATENCY, totalLatency);
+      set(MIN_LATENCY, minLatency);
+      set(MAX_LATENCY, maxLatency);
+    }
+    dirty = false;
+  }
+}
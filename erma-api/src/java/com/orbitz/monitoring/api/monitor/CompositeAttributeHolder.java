@@ -39,14 +39,14 @@ public class CompositeAttributeHolder extends AttributeHolder {
   public boolean equals(final Object o) {
     if (o instanceof CompositeAttributeHolder) {
       CompositeAttributeHolder that = (CompositeAttributeHolder)o;
-      return Objects.equal(this.inheritable, that.inheritable) && super.equals(that);
+      return this.isInheritable() == that.isInheritable() && super.equals(that);
     }
     return false;
   }
   
   @Override
   public int hashCode() {
-    return Objects.hashCode(this.inheritable, super.hashCode());
+    return Objects.hashCode(isInheritable(), super.hashCode());
   }
   
   /**
@@ -19,6 +19,15 @@ public class CompositeAttributeMap extends AttributeMap {
     super();
   }
   
+  /**
+   * Creates an empty map
+   * @param singleWriter true if the map will only be changed by the thread that creates it until it
+   *        is {@link #freeze() frozen}
+   */
+  public CompositeAttributeMap(final boolean singleWriter) {
+    super(singleWriter);
+  }
+  
   /**
    * Constructor.
    * @param attributes initial attributes
@@ -43,7 +52,7 @@ public class CompositeAttributeMap extends AttributeMap {
       if (CompositeAttributeHolder.class.isAssignableFrom(value.getClass())) {
         final CompositeAttributeHolder original = (CompositeAttributeHolder)value;
         final CompositeAttributeHolder copy = (CompositeAttributeHolder)original.clone();
-        getAttributes().put(key, copy);
+        putAttributeHolder(key, copy);
       }
       else if (AttributeHolder.class.isAssignableFrom(value.getClass())) {
         final AttributeHolder original = (AttributeHolder)value;
@@ -54,7 +63,7 @@ public class CompositeAttributeMap extends AttributeMap {
         if (original.isLocked()) {
           copy.lock();
         }
-        getAttributes().put(key, copy);
+        putAttributeHolder(key, copy);
       }
       else {
         set(key, value);
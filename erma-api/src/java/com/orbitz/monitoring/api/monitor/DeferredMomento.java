@@ -0,0 +1,83 @@
+package com.orbitz.monitoring.api.monitor;
+
+import com.orbitz.monitoring.api.Monitor;
+import com.orbitz.monitoring.api.monitor.serializable.SerializableMonitor;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A {@link Monitor#getSerializableMomento() momento} whose making has been put off. It keeps a
+ * shallow copy of a monitor's attribute holders, and of a composite monitor's children, taken
+ * without decomposing anything, so a monitor can be handed to another thread cheaply and the
+ * momento made there.
+ * <p>
+ * The holders and values are shared with the monitor, not copied. A value that is changed in place
+ * after the copy was taken, such as a list the application keeps adding to, is seen as it is when
+ * the momento is made. Attributes set, replaced or removed after the copy was taken are not.
+ * <p>
+ * If the monitor hasn't changed by the time the momento is made, the momento is cached on the
+ * monitor as {@link Monitor#getSerializableMomento()} would have, so the momentos of its parents
+ * reuse it.
+ */
+public final class DeferredMomento {
+  private final Map<String, AttributeHolder> holders;
+  private final Collection<Monitor> children;
+  private final AbstractMonitor source;
+  private final int modificationCount;
+  private final int generation;
+  private SerializableMonitor momento;
+
+  /**
+   * Captures the parts of a monitor that its momento is made from
+   * @param holders a snapshot of the monitor's attribute holders
+   * @param children a snapshot of the monitor's children, or null if it isn't a composite monitor
+   * @param source the monitor
+   */
+  DeferredMomento(final Map<String, AttributeHolder> holders, final Collection<Monitor> children,
+      final AbstractMonitor source) {
+    this.holders = holders;
+    this.children = children;
+    this.source = source;
+    modificationCount = source.attributes.getModificationCount();
+    generation = source.getMomentoGeneration();
+  }
+
+  /**
+   * Wraps a momento that has already been made
+   * @param momento the momento
+   */
+  DeferredMomento(final SerializableMonitor momento) {
+    holders = null;
+    children = null;
+    source = null;
+    modificationCount = 0;
+    generation = 0;
+    this.momento = momento;
+  }
+
+  /**
+   * Captures a monitor. Monitors that don't extend {@link AbstractMonitor} have their momento made
+   * now.
+   * @param monitor the monitor
+   * @return the deferred momento
+   */
+  public static DeferredMomento of(final Monitor monitor) {
+    if (monitor instanceof AbstractMonitor) {
+      return ((AbstractMonitor)monitor).getDeferredMomento();
+    }
+    return new DeferredMomento(monitor.getSerializableMomento());
+  }
+
+  /**
+   * Gets the momento, making it on the first call. Not thread-safe; the thread that makes the
+   * momento must be the only one using this object.
+   * @return the momento
+   */
+  public SerializableMonitor getSerializableMomento() {
+    if (momento == null) {
+      momento = AbstractMonitor.createMomento(holders, children);
+      source.cacheDeferredMomento(momento, modificationCount, generation);
+    }
+    return momento;
+  }
+}
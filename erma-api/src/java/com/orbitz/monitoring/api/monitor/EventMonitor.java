@@ -1,5 +1,6 @@
 package com.orbitz.monitoring.api.monitor;
 
+import com.orbitz.monitoring.api.MonitoringEngine;
 import com.orbitz.monitoring.api.MonitoringLevel;
 
 import java.util.Map;
@@ -56,9 +57,67 @@ public class EventMonitor extends AbstractMonitor {
     }
 
     /**
-     * Fire this event monitor. Delegates to AbstractMonitor.process().
+     * Creates an event monitor that never reaches the engine.
+     *
+     * @param attributes the attribute map
+     */
+    EventMonitor(AttributeMap attributes) {
+        super(attributes);
+    }
+
+    /**
+     * Gets an event monitor with the provided name, taken from the current thread's pool if the
+     * engine {@link MonitoringEngine#isMonitorRecycling() recycles monitors}. A pooled monitor goes
+     * back to the pool when it is fired, so it must not be used after {@link #fire()}. If the
+     * engine says the monitor {@link MonitoringEngine#isMonitored(String, MonitoringLevel) wouldn't
+     * be consumed}, a shared monitor that ignores its attributes and does nothing when fired is
+     * returned instead.
+     *
+     * @param name the name of the monitor
+     * @return the monitor
+     */
+    public static EventMonitor obtain(String name) {
+        return obtain(name, MonitoringLevel.INFO);
+    }
+
+    /**
+     * Gets an event monitor with the provided name and monitoring level, taken from the current
+     * thread's pool if the engine {@link MonitoringEngine#isMonitorRecycling() recycles monitors}.
+     * A pooled monitor goes back to the pool when it is fired, so it must not be used after
+     * {@link #fire()}. If the engine says the monitor
+     * {@link MonitoringEngine#isMonitored(String, MonitoringLevel) wouldn't be consumed}, a shared
+     * monitor that ignores its attributes and does nothing when fired is returned instead.
+     *
+     * @param name the name of the monitor
+     * @param monitoringLevel the monitoring level
+     * @return the monitor
+     */
+    public static EventMonitor obtain(String name, MonitoringLevel monitoringLevel) {
+        MonitoringEngine engine = MonitoringEngine.getInstance();
+        if (!engine.isMonitored(name, monitoringLevel)) {
+            return InertMonitors.EVENT;
+        }
+        if (!engine.isMonitorRecycling()) {
+            return new EventMonitor(name, monitoringLevel);
+        }
+        EventMonitor monitor = MonitorPool.takeEventMonitor();
+        if (monitor == null) {
+            monitor = new EventMonitor(name, monitoringLevel);
+        }
+        else {
+            monitor.monitoringLevel = monitoringLevel;
+            monitor.init(name, null);
+        }
+        monitor.setPooled();
+        return monitor;
+    }
+
+    /**
+     * Fire this event monitor. Delegates to AbstractMonitor.process(), then returns the monitor to
+     * its thread's pool if it was {@link #obtain(String) obtained} from one.
      */
     public void fire() {
         process();
+        release();
     }
 }
@@ -0,0 +1,236 @@
+package com.orbitz.monitoring.api.monitor;
+
+import com.orbitz.monitoring.api.Monitor;
+import java.util.Map;
+
+/**
+ * Shared monitors that nothing consumes. Setting their attributes stores nothing and allocates
+ * nothing, and firing or completing them does nothing, so they are handed out in place of real
+ * monitors that would never reach a processor. Their attributes always read as empty.
+ */
+final class InertMonitors {
+  private static final InertAttributeHolder HOLDER = new InertAttributeHolder();
+
+  static final EventMonitor EVENT = new InertEventMonitor();
+  static final ValueMonitor VALUE = new InertValueMonitor();
+  static final TransactionMonitor TRANSACTION = new InertTransactionMonitor();
+
+  private InertMonitors() {
+  }
+
+  /**
+   * A holder whose changes are ignored, returned for every attribute set on an inert monitor
+   */
+  private static final class InertAttributeHolder extends CompositeAttributeHolder {
+    private static final long serialVersionUID = 1L;
+
+    private InertAttributeHolder() {
+      super(null);
+    }
+
+    @Override
+    public AttributeHolder serializable() {
+      return this;
+    }
+
+    @Override
+    public AttributeHolder notSerializable() {
+      return this;
+    }
+
+    @Override
+    public AttributeHolder lock() {
+      return this;
+    }
+
+    @Override
+    public CompositeAttributeHolder setInheritable(final boolean inheritable) {
+      return this;
+    }
+
+    @Override
+    public Object clone() {
+      return this;
+    }
+  }
+
+  /**
+   * An attribute map that stays empty
+   */
+  private static final class InertAttributeMap extends CompositeAttributeMap {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected AttributeHolder internalSetAttribute(final String key, final Object value) {
+      return HOLDER;
+    }
+
+    @Override
+    public AttributeHolder set(final String key, final boolean value) {
+      return HOLDER;
+    }
+
+    @Override
+    public AttributeHolder set(final String key, final byte value) {
+      return HOLDER;
+    }
+
+    @Override
+    public AttributeHolder set(final String key, final char value) {
+      return HOLDER;
+    }
+
+    @Override
+    public AttributeHolder set(final String key, final double value) {
+      return HOLDER;
+    }
+
+    @Override
+    public AttributeHolder set(final String key, final float value) {
+      return HOLDER;
+    }
+
+    @Override
+    public AttributeHolder set(final String key, final int value) {
+      return HOLDER;
+    }
+
+    @Override
+    public AttributeHolder set(final String key, final long value) {
+      return HOLDER;
+    }
+
+    @Override
+    public AttributeHolder set(final String key, final Object value) {
+      return HOLDER;
+    }
+
+    @Override
+    public AttributeHolder set(final String key, final short value) {
+      return HOLDER;
+    }
+
+    @Override
+    public AttributeHolder setTimestamp(final String key, final long millis) {
+      return HOLDER;
+    }
+
+    @Override
+    public void setAll(final Map<String, ?> attributes) {
+      // ignored
+    }
+
+    @Override
+    public void setAllAttributeHolders(final Map<String, ?> attributeHolders) {
+      // ignored
+    }
+
+    @Override
+    protected void putAttributeHolder(final String key, final AttributeHolder attributeHolder) {
+      // ignored
+    }
+
+    @Override
+    public void unset(final String key) {
+      // nothing to remove
+    }
+
+    @Override
+    public void clear() {
+      // nothing to remove
+    }
+  }
+
+  private static final class InertEventMonitor extends EventMonitor {
+    private InertEventMonitor() {
+      super(new InertAttributeMap());
+    }
+
+    @Override
+    public void fire() {
+      // nothing consumes this monitor
+    }
+
+    @Override
+    protected void process() {
+      // nothing consumes this monitor
+    }
+  }
+
+  private static final class InertValueMonitor extends ValueMonitor {
+    private InertValueMonitor() {
+      super(new InertAttributeMap());
+    }
+
+    @Override
+    public void fire() {
+      // nothing consumes this monitor
+    }
+
+    @Override
+    protected void process() {
+      // nothing consumes this monitor
+    }
+  }
+
+  private static final class InertTransactionMonitor extends TransactionMonitor {
+    private InertTransactionMonitor() {
+      super(new InertAttributeMap());
+    }
+
+    @Override
+    public void done() {
+      // nothing consumes this monitor
+    }
+
+    @Override
+    protected void process() {
+      // nothing consumes this monitor
+    }
+
+    @Override
+    public void addChildMonitor(final Monitor monitor) {
+      // children aren't kept
+    }
+
+    @Override
+    public CompositeAttributeHolder setInheritable(final String key, final Object value) {
+      return HOLDER;
+    }
+
+    @Override
+    public CompositeAttributeHolder setInheritable(final String key, final byte value) {
+      return HOLDER;
+    }
+
+    @Override
+    public CompositeAttributeHolder setInheritable(final String key, final int value) {
+      return HOLDER;
+    }
+
+    @Override
+    public CompositeAttributeHolder setInheritable(final String key, final long value) {
+      return HOLDER;
+    }
+
+    @Override
+    public CompositeAttributeHolder setInheritable(final String key, final float value) {
+      return HOLDER;
+    }
+
+    @Override
+    public CompositeAttributeHolder setInheritable(final String key, final double value) {
+      return HOLDER;
+    }
+
+    @Override
+    public CompositeAttributeHolder setInheritable(final String key, final char value) {
+      return HOLDER;
+    }
+
+    @Override
+    public CompositeAttributeHolder setInheritable(final String key, final boolean value) {
+      return HOLDER;
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package com.orbitz.monitoring.api.monitor;
+
+/**
+ * A thread's free {@link EventMonitor event} and {@link ValueMonitor value} monitors. Monitors are
+ * returned to the pool of the thread that fires them, once every processor has finished with them,
+ * and are reset when they are returned so that the pool doesn't keep their values reachable.
+ * <p>
+ * Each pool is only used by its own thread.
+ */
+final class MonitorPool {
+  /**
+   * The most free monitors of each type kept by a thread
+   */
+  static final int CAPACITY = 16;
+
+  private static final ThreadLocal<MonitorPool> pools = new ThreadLocal<MonitorPool>() {
+    @Override
+    protected MonitorPool initialValue() {
+      return new MonitorPool();
+    }
+  };
+
+  private final AbstractMonitor[] eventMonitors = new AbstractMonitor[CAPACITY];
+  private int eventMonitorCount;
+  private final AbstractMonitor[] valueMonitors = new AbstractMonitor[CAPACITY];
+  private int valueMonitorCount;
+
+  private MonitorPool() {
+  }
+
+  /**
+   * Takes a free event monitor from the current thread's pool
+   * @return the monitor, or null if the pool is empty
+   */
+  static EventMonitor takeEventMonitor() {
+    final MonitorPool pool = pools.get();
+    if (pool.eventMonitorCount == 0) {
+      return null;
+    }
+    final int index = --pool.eventMonitorCount;
+    final AbstractMonitor monitor = pool.eventMonitors[index];
+    pool.eventMonitors[index] = null;
+    return (EventMonitor)monitor;
+  }
+
+  /**
+   * Takes a free value monitor from the current thread's pool
+   * @return the monitor, or null if the pool is empty
+   */
+  static ValueMonitor takeValueMonitor() {
+    final MonitorPool pool = pools.get();
+    if (pool.valueMonitorCount == 0) {
+      return null;
+    }
+    final int index = --pool.valueMonitorCount;
+    final AbstractMonitor monitor = pool.valueMonitors[index];
+    pool.valueMonitors[index] = null;
+    return (ValueMonitor)monitor;
+  }
+
+  /**
+   * Resets a fired monitor and returns it to the current thread's pool, unless something has
+   * {@link AbstractMonitor#retain() retained} it or the pool is full
+   * @param monitor a monitor that was taken from a pool
+   * @return true if the monitor was returned to the pool
+   */
+  static boolean release(final AbstractMonitor monitor) {
+    if (monitor.isRetained()) {
+      return false;
+    }
+    final MonitorPool pool = pools.get();
+    if (monitor instanceof EventMonitor) {
+      if (pool.eventMonitorCount == CAPACITY) {
+        return false;
+      }
+      monitor.recycle();
+      pool.eventMonitors[pool.eventMonitorCount++] = monitor;
+      return true;
+    }
+    if (monitor instanceof ValueMonitor) {
+      if (pool.valueMonitorCount == CAPACITY) {
+        return false;
+      }
+      monitor.recycle();
+      pool.valueMonitors[pool.valueMonitorCount++] = monitor;
+      return true;
+    }
+    return false;
+  }
+}
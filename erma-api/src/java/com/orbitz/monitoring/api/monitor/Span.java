@@ -0,0 +1,113 @@
+package com.orbitz.monitoring.api.monitor;
+
+import java.io.Serializable;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The position of a monitor in a tree of monitors, identified by numbers instead of by a sequence
+ * id string. A span knows its parent, so the dotted sequence id that older processors expect can
+ * still be rendered, but it is only built when something asks for it and is then kept.
+ * <p>
+ * Span ids are taken from a counter that starts at a random value, in blocks reserved by each
+ * thread, so creating a span doesn't contend with other threads.
+ */
+public final class Span implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private static final int ID_BLOCK_SIZE = 1024;
+  private static final AtomicLong idBlocks = new AtomicLong(new Random().nextLong());
+  private static final ThreadLocal<long[]> threadIds = new ThreadLocal<long[]>() {
+    @Override
+    protected long[] initialValue() {
+      // the next id and the end of the block
+      return new long[2];
+    }
+  };
+
+  private final long traceId;
+  private final long spanId;
+  private final Span parent;
+  private final int index;
+  private volatile String sequenceId;
+
+  private Span(final long traceId, final long spanId, final Span parent, final int index,
+      final String sequenceId) {
+    this.traceId = traceId;
+    this.spanId = spanId;
+    this.parent = parent;
+    this.index = index;
+    this.sequenceId = sequenceId;
+  }
+
+  /**
+   * Starts a new trace
+   * @param sequenceId the sequence id of the root monitor
+   * @return a span whose trace id is its own span id
+   */
+  public static Span root(final String sequenceId) {
+    final long id = nextId();
+    return new Span(id, id, null, 0, sequenceId);
+  }
+
+  /**
+   * Creates the span of a monitor created under the monitor of this span
+   * @param childIndex the number of monitors already created under this one
+   * @return the new span, in the same trace
+   */
+  public Span child(final int childIndex) {
+    return new Span(traceId, nextId(), this, childIndex, null);
+  }
+
+  public long getTraceId() {
+    return traceId;
+  }
+
+  public long getSpanId() {
+    return spanId;
+  }
+
+  /**
+   * @return the span id of the parent, or 0 for a root span
+   */
+  public long getParentSpanId() {
+    return (parent == null) ? 0 : parent.spanId;
+  }
+
+  public Span getParent() {
+    return parent;
+  }
+
+  /**
+   * Gets the sequence id in the form built by the sequence id counters, such as <code>m_0_2</code>,
+   * building it on the first call
+   * @return the sequence id
+   */
+  public String getSequenceId() {
+    String value = sequenceId;
+    if (value == null) {
+      value = parent.getSequenceId() + "_" + index;
+      sequenceId = value;
+    }
+    return value;
+  }
+
+  @Override
+  public String toString() {
+    return "Span[traceId=" + traceId + " spanId=" + spanId + " parentSpanId="
+        + getParentSpanId() + "]";
+  }
+
+  /**
+   * @return a new id, never 0
+   */
+  private static long nextId() {
+    final long[] block = threadIds.get();
+    long id = block[0];
+    if (id == block[1]) {
+      id = idBlocks.getAndAdd(ID_BLOCK_SIZE);
+      block[1] = id + ID_BLOCK_SIZE;
+    }
+    block[0] = id + 1;
+    return (id == 0) ? nextId() : id;
+  }
+}
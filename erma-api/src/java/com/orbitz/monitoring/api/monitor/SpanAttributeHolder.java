@@ -0,0 +1,84 @@
+package com.orbitz.monitoring.api.monitor;
+
+/**
+ * Holds one of the identifiers of a {@link Span} and creates the value the first time it is read,
+ * so monitors can carry span ids and sequence ids without boxing a number or building a string
+ * that no processor may ever look at.
+ */
+public class SpanAttributeHolder extends CompositeAttributeHolder {
+  private static final long serialVersionUID = 1L;
+
+  private static final int SPAN_ID = 0;
+  private static final int TRACE_ID = 1;
+  private static final int SEQUENCE_ID = 2;
+
+  private final Span span;
+  private final int field;
+
+  private SpanAttributeHolder(final Span span, final int field) {
+    super(null);
+    this.span = span;
+    this.field = field;
+  }
+
+  /**
+   * Creates a holder whose value is the span id of a span
+   * @param span the span
+   * @return the holder
+   */
+  public static SpanAttributeHolder spanId(final Span span) {
+    return new SpanAttributeHolder(span, SPAN_ID);
+  }
+
+  /**
+   * Creates a holder whose value is the trace id of a span
+   * @param span the span
+   * @return the holder
+   */
+  public static SpanAttributeHolder traceId(final Span span) {
+    return new SpanAttributeHolder(span, TRACE_ID);
+  }
+
+  /**
+   * Creates a holder whose value is the sequence id of a span
+   * @param span the span
+   * @return the holder
+   */
+  public static SpanAttributeHolder sequenceId(final Span span) {
+    return new SpanAttributeHolder(span, SEQUENCE_ID);
+  }
+
+  /**
+   * Gets the held span, whose identifiers can be read without creating objects
+   * @return the span
+   */
+  public Span getSpan() {
+    return span;
+  }
+
+  /**
+   * Gets the held identifier as a {@link Long} or, for a sequence id, a {@link String}
+   * @return the value
+   */
+  @Override
+  public Object getValue() {
+    switch (field) {
+      case SPAN_ID:
+        return Long.valueOf(span.getSpanId());
+      case TRACE_ID:
+        return Long.valueOf(span.getTraceId());
+      default:
+        return span.getSequenceId();
+    }
+  }
+
+  @Override
+  protected boolean isValueSerializable() {
+    return true;
+  }
+
+  @Override
+  public Object clone() {
+    return super.clone();
+  }
+}
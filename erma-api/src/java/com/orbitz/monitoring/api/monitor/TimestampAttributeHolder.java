@@ -0,0 +1,56 @@
+package com.orbitz.monitoring.api.monitor;
+
+import java.util.Date;
+
+/**
+ * Holds a point in time as a number of milliseconds and creates the {@link Date} value the first
+ * time it is read, so monitors can be stamped with times without allocating a {@link Date} that no
+ * processor may ever look at.
+ */
+public class TimestampAttributeHolder extends CompositeAttributeHolder {
+  private static final long serialVersionUID = 1L;
+  
+  private final long millis;
+  private transient volatile Date date;
+  
+  /**
+   * Creates a holder for a time
+   * @param millis the number of milliseconds since midnight, January 1, 1970 UTC
+   */
+  public TimestampAttributeHolder(final long millis) {
+    super(null);
+    this.millis = millis;
+  }
+  
+  /**
+   * Gets the held time without creating a {@link Date}
+   * @return the number of milliseconds since midnight, January 1, 1970 UTC
+   */
+  public long getMillis() {
+    return millis;
+  }
+  
+  /**
+   * Gets the held time as a {@link Date}, creating it on the first call
+   * @return the date
+   */
+  @Override
+  public Object getValue() {
+    Date value = date;
+    if (value == null) {
+      value = new Date(millis);
+      date = value;
+    }
+    return value;
+  }
+  
+  @Override
+  protected boolean isValueSerializable() {
+    return true;
+  }
+  
+  @Override
+  public Object clone() {
+    return super.clone();
+  }
+}
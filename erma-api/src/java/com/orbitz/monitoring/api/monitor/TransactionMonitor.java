@@ -1,11 +1,11 @@
 package com.orbitz.monitoring.api.monitor;
 
+import com.orbitz.monitoring.api.Clock;
 import com.orbitz.monitoring.api.MonitoringEngine;
 import com.orbitz.monitoring.api.MonitoringLevel;
 import com.orbitz.monitoring.api.Attribute;
 
 import java.util.Map;
-import java.util.Date;
 
 /**
  * A monitor for transactions. Transactions implicitly have durations. In order
@@ -47,6 +47,12 @@ public class TransactionMonitor extends AbstractCompositeMonitor {
      */
     protected static final String BUSINESS_FAILURE = Attribute.BUSINESS_FAILURE;
 
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    // the clock that started the stop watch, which must also stop it
+    private Clock clock;
+    private long startNanos;
+
     /**
      * Creates a new transaction monitor with the provided
      * name. The monitor is marked as failed by default. Also,
@@ -152,6 +158,45 @@ public class TransactionMonitor extends AbstractCompositeMonitor {
         this(formatName(klass, method), inheritedAttributes);
     }
 
+    /**
+     * Creates a transaction monitor that never reaches the engine.
+     *
+     * @param attributes the attribute map
+     */
+    TransactionMonitor(AttributeMap attributes) {
+        super(attributes);
+    }
+
+    /**
+     * Gets a new transaction monitor with the provided name, or a shared monitor that ignores its
+     * attributes and does nothing when done if {@link MonitoringEngine#isEnabled() monitoring is
+     * disabled}.
+     *
+     * @param name the name of the monitor
+     * @return the monitor
+     */
+    public static TransactionMonitor obtain(String name) {
+        return obtain(name, MonitoringLevel.INFO);
+    }
+
+    /**
+     * Gets a new transaction monitor with the provided name and monitoring level, or a shared
+     * monitor that ignores its attributes and does nothing when done if
+     * {@link MonitoringEngine#isEnabled() monitoring is disabled}. Unlike
+     * {@link EventMonitor#obtain(String, MonitoringLevel)}, a real monitor is created whatever its
+     * level, since its inheritable attributes and children may reach monitors that are processed.
+     *
+     * @param name the name of the monitor
+     * @param monitoringLevel the monitoring level
+     * @return the monitor
+     */
+    public static TransactionMonitor obtain(String name, MonitoringLevel monitoringLevel) {
+        if (!MonitoringEngine.getInstance().isEnabled()) {
+            return InertMonitors.TRANSACTION;
+        }
+        return new TransactionMonitor(name, monitoringLevel);
+    }
+
     /**
      * Marks this transaction as having succeeded.
      */
@@ -178,13 +223,17 @@ public class TransactionMonitor extends AbstractCompositeMonitor {
     
     /**
      * Stops the stop watch for this monitor. Delegates to AbstractMonitor.process().
+     * <p>
+     * The latency is measured with the monotonic timer of the engine's {@link Clock}, so it isn't
+     * affected by changes to the system time. It is set in milliseconds as {@link Attribute#LATENCY}
+     * and in nanoseconds as {@link Attribute#LATENCY_NANOS}.
      */
     public void done() {
-        Date endTime = new Date();
-        set(Attribute.END_TIME, endTime).serializable().lock();
+        setTimestamp(Attribute.END_TIME, clock.currentTimeMillis()).lock();
 
-        Date startTime = (Date) get(Attribute.START_TIME);
-        set(Attribute.LATENCY, endTime.getTime() - startTime.getTime()).serializable().lock();
+        long latencyNanos = clock.nanoTime() - startNanos;
+        set(Attribute.LATENCY, latencyNanos / NANOS_PER_MILLI).lock();
+        set(Attribute.LATENCY_NANOS, latencyNanos).lock();
 
         process();
     }
@@ -197,7 +246,9 @@ public class TransactionMonitor extends AbstractCompositeMonitor {
     // mark the monitor as failed and start the stop watch
     private void startTransactionMonitor() {
         set(FAILED, true).serializable();
-        set(START_TIME, new Date()).serializable().lock();
+        clock = MonitoringEngine.getInstance().getClock();
+        setTimestamp(Attribute.START_TIME, clock.currentTimeMillis()).lock();
+        startNanos = clock.nanoTime();
 
         MonitoringEngine.getInstance().monitorStarted(this);
     }
@@ -70,6 +70,69 @@ public class ValueMonitor extends AbstractMonitor {
         // the call to init() on AbstractMonitor
         super();
 
+        initValue(name, value, includeInheritables, monitoringLevel);
+    }
+
+    /**
+     * Creates a value monitor that never reaches the engine.
+     *
+     * @param attributes the attribute map
+     */
+    ValueMonitor(AttributeMap attributes) {
+        super(attributes);
+    }
+
+    /**
+     * Gets a value monitor with the provided name and value, taken from the current thread's pool
+     * if the engine {@link MonitoringEngine#isMonitorRecycling() recycles monitors}. A pooled
+     * monitor goes back to the pool when it is fired, so it must not be used after {@link #fire()}.
+     * If the engine says the monitor {@link MonitoringEngine#isMonitored(String, MonitoringLevel)
+     * wouldn't be consumed}, a shared monitor that does nothing when fired is returned instead.
+     * Does NOT support inheritable attributes.
+     *
+     * @param name the name of the monitor
+     * @param value the value
+     * @return the monitor
+     */
+    public static ValueMonitor obtain(String name, double value) {
+        return obtain(name, value, MonitoringLevel.INFO);
+    }
+
+    /**
+     * Gets a value monitor with the provided name, value and monitoring level, taken from the
+     * current thread's pool if the engine {@link MonitoringEngine#isMonitorRecycling() recycles
+     * monitors}. A pooled monitor goes back to the pool when it is fired, so it must not be used
+     * after {@link #fire()}. If the engine says the monitor
+     * {@link MonitoringEngine#isMonitored(String, MonitoringLevel) wouldn't be consumed}, a shared
+     * monitor that does nothing when fired is returned instead. Does NOT support inheritable
+     * attributes.
+     *
+     * @param name the name of the monitor
+     * @param value the value
+     * @param monitoringLevel the monitoring level
+     * @return the monitor
+     */
+    public static ValueMonitor obtain(String name, double value, MonitoringLevel monitoringLevel) {
+        MonitoringEngine engine = MonitoringEngine.getInstance();
+        if (!engine.isMonitored(name, monitoringLevel)) {
+            return InertMonitors.VALUE;
+        }
+        if (!engine.isMonitorRecycling()) {
+            return new ValueMonitor(name, value, monitoringLevel);
+        }
+        ValueMonitor monitor = MonitorPool.takeValueMonitor();
+        if (monitor == null) {
+            monitor = new ValueMonitor(name, value, monitoringLevel);
+        }
+        else {
+            monitor.initValue(name, value, false, monitoringLevel);
+        }
+        monitor.setPooled();
+        return monitor;
+    }
+
+    private void initValue(String name, double value, boolean includeInheritables,
+                           MonitoringLevel monitoringLevel) {
         this.monitoringLevel = monitoringLevel;
 
         // perform standard monitor initialization optionally ommitting inheritable
@@ -86,9 +149,11 @@ public class ValueMonitor extends AbstractMonitor {
     }
 
     /**
-     * Fire this value monitor. Delegates to AbstractMonitor.process().
+     * Fire this value monitor. Delegates to AbstractMonitor.process(), then returns the monitor to
+     * its thread's pool if it was {@link #obtain(String, double) obtained} from one.
      */
     public void fire() {
         process();
+        release();
 	}
 }
@@ -9,7 +9,12 @@ import com.orbitz.monitoring.api.monitor.AttributeMap;
 import com.orbitz.monitoring.api.monitor.CompositeAttributeHolder;
 import com.orbitz.monitoring.api.monitor.CompositeAttributeMap;
 import com.orbitz.monitoring.api.monitor.TransactionMonitor;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -342,6 +347,159 @@ public class AttributeMapTest {
     assertEquals("Setting all attributes", attributes.getAll().size(), 2);
   }
   
+  /**
+   * Well-known attributes are kept in fields but read like any other attribute
+   */
+  @Test
+  public void testWellKnownAttributes() {
+    attributes.set(Attribute.NAME, "name").serializable().lock();
+    attributes.set(Attribute.FAILED, true);
+    attributes.set(Attribute.LATENCY, 42L).serializable();
+    attributes.setTimestamp(Attribute.START_TIME, 1000L).serializable();
+    attributes.set("other", "value");
+    
+    assertEquals("name", attributes.get(Attribute.NAME));
+    assertEquals(Boolean.TRUE, attributes.get(Attribute.FAILED));
+    assertTrue(attributes.getAsBoolean(Attribute.FAILED));
+    assertEquals(Long.valueOf(42L), attributes.get(Attribute.LATENCY));
+    assertEquals(42L, attributes.getAsLong(Attribute.LATENCY));
+    assertEquals(42, attributes.getAsInt(Attribute.LATENCY));
+    assertEquals(new Date(1000L), attributes.get(Attribute.START_TIME));
+    assertTrue(attributes.hasAttribute(new String("latency")));
+    assertFalse(attributes.hasAttribute(Attribute.END_TIME));
+    
+    assertEquals(5, attributes.getAll().size());
+    Map<String, Object> serializable = attributes.getAllSerializable();
+    assertEquals(3, serializable.size());
+    assertFalse(serializable.containsKey(Attribute.FAILED));
+    assertFalse(serializable.containsKey("other"));
+    
+    attributes.set(Attribute.NAME, "renamed");
+    assertEquals("locked attribute was replaced", "name", attributes.get(Attribute.NAME));
+    
+    attributes.unset(Attribute.LATENCY);
+    assertFalse(attributes.hasAttribute(Attribute.LATENCY));
+    assertEquals(4, attributes.getAllAttributeHolders().size());
+  }
+  
+  /**
+   * A well-known attribute set to a value of an unexpected type keeps its flags
+   */
+  @Test
+  public void testWellKnownAttributeOfOtherType() {
+    compositeAttributes.set(Attribute.LATENCY, 5L).serializable();
+    ((CompositeAttributeHolder)compositeAttributes.set(Attribute.LATENCY, 5L)).setInheritable(true);
+    compositeAttributes.set(Attribute.LATENCY, "fast");
+    
+    assertEquals("fast", compositeAttributes.get(Attribute.LATENCY));
+    AttributeHolder holder = compositeAttributes.getAllAttributeHolders().get(Attribute.LATENCY);
+    assertTrue(holder.isSerializable());
+    assertTrue(((CompositeAttributeHolder)holder).isInheritable());
+    assertEquals("fast", compositeAttributes.getAllInheritable().get(Attribute.LATENCY));
+    
+    compositeAttributes.set(Attribute.LATENCY, 7L);
+    assertEquals(7L, compositeAttributes.getAsLong(Attribute.LATENCY));
+    assertTrue(compositeAttributes.getAllAttributeHolders().get(Attribute.LATENCY)
+        .isSerializable());
+    assertEquals(1, compositeAttributes.getAll().size());
+  }
+  
+  /**
+   * The holder returned when setting a well-known attribute reads and writes the map
+   */
+  @Test
+  public void testWellKnownAttributeHolders() {
+    AttributeHolder holder = compositeAttributes.set(Attribute.SEQUENCE_ID, "m_0");
+    assertFalse(holder.isSerializable());
+    holder.serializable();
+    assertTrue(compositeAttributes.getAllAttributeHolders().get(Attribute.SEQUENCE_ID)
+        .isSerializable());
+    
+    int count = compositeAttributes.getModificationCount();
+    compositeAttributes.set(Attribute.FAILED, false);
+    compositeAttributes.set(Attribute.LATENCY, 1L);
+    assertEquals(count + 2, compositeAttributes.getModificationCount());
+    
+    AttributeHolder copy = (AttributeHolder)holder.clone();
+    compositeAttributes.set(Attribute.SEQUENCE_ID, "m_1");
+    assertEquals("m_0", copy.getValue());
+    assertEquals("m_1", holder.getValue());
+    assertEquals(copy.getClass(), CompositeAttributeHolder.class);
+  }
+  
+  /**
+   * Asking for the raw map moves the well-known attributes into it
+   */
+  @Test
+  public void testGetAttributesIncludesWellKnownAttributes() {
+    AttributeHolder holder = attributes.set(Attribute.NAME, "name");
+    attributes.set("other", "value");
+    
+    assertEquals(2, attributes.getAttributes().size());
+    assertEquals("name", attributes.getAttributes().get(Attribute.NAME).getValue());
+    holder.lock();
+    assertTrue(attributes.getAttributes().get(Attribute.NAME).isLocked());
+    
+    attributes.set(Attribute.THREAD_ID, "1a");
+    assertEquals("1a", attributes.getAttributes().get(Attribute.THREAD_ID).getValue());
+  }
+  
+  /**
+   * Well-known attributes are written in the map of the serialized form
+   * @throws Exception if the map can't be serialized
+   */
+  @Test
+  public void testSerializeWellKnownAttributes() throws Exception {
+    attributes.set(Attribute.NAME, "name").serializable().lock();
+    attributes.setTimestamp(Attribute.END_TIME, 2000L);
+    
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(attributes);
+    out.close();
+    AttributeMap copy = (AttributeMap)new ObjectInputStream(new ByteArrayInputStream(bytes
+        .toByteArray())).readObject();
+    
+    assertEquals("name", copy.get(Attribute.NAME));
+    assertTrue(copy.getAttributes().get(Attribute.NAME).isLocked());
+    assertEquals(new Date(2000L), copy.get(Attribute.END_TIME));
+    copy.set(Attribute.LATENCY, 3L);
+    assertEquals(3L, copy.getAsLong(Attribute.LATENCY));
+  }
+  
+  /**
+   * A map for a single writer can be changed by any thread once it is frozen
+   * @throws Exception if the other thread is interrupted
+   */
+  @Test
+  public void testSingleWriter() throws Exception {
+    final AttributeMap map = new CompositeAttributeMap(true);
+    map.set(Attribute.NAME, "name").serializable();
+    map.set("foo", "bar");
+    map.set("baz", 1);
+    map.unset("baz");
+    assertTrue(map.isThreadConfined());
+    assertEquals(2, map.getAll().size());
+    
+    map.freeze();
+    assertFalse(map.isThreadConfined());
+    final Object[] seen = new Object[1];
+    Thread other = new Thread() {
+      @Override
+      public void run() {
+        seen[0] = map.get("foo");
+        map.set("other", "thread");
+      }
+    };
+    other.start();
+    other.join();
+    
+    assertEquals("bar", seen[0]);
+    assertEquals("thread", map.get("other"));
+    assertEquals("name", map.get(Attribute.NAME));
+    assertEquals(3, map.getAttributes().size());
+  }
+  
   private static class NotSerializable {
   }
 }
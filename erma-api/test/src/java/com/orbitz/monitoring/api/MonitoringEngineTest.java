@@ -2,6 +2,7 @@ package com.orbitz.monitoring.api;
 
 import com.orbitz.monitoring.api.monitor.EventMonitor;
 import com.orbitz.monitoring.api.monitor.TransactionMonitor;
+import com.orbitz.monitoring.api.monitor.ValueMonitor;
 import com.orbitz.monitoring.api.monitor.AttributeHolder;
 import com.orbitz.monitoring.api.monitor.serializable.SerializableMonitor;
 import com.orbitz.monitoring.api.engine.StackBasedInheritableStrategy;
@@ -11,6 +12,7 @@ import com.orbitz.monitoring.test.MockMonitorProcessorFactory;
 import junit.framework.TestCase;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 
@@ -130,6 +132,89 @@ public class MonitoringEngineTest extends TestCase {
         _factory.assertShutdownCalled();
     }
 
+    public void testShutdownFlushesBatchProcessors() {
+        final int[] flushes = new int[1];
+        final BatchMonitorProcessor batchProcessor = new BatchMonitorProcessor() {
+            public void startup() {
+            }
+
+            public void shutdown() {
+            }
+
+            public void monitorCreated(Monitor monitor) {
+            }
+
+            public void monitorStarted(Monitor monitor) {
+            }
+
+            public void process(Monitor monitor) {
+            }
+
+            public void processBatch(List<Monitor> monitors) {
+            }
+
+            public void flush() {
+                flushes[0]++;
+            }
+
+            public String getName() {
+                return "batch";
+            }
+        };
+        _engine.setProcessorFactory(new MockMonitorProcessorFactory(
+                new MonitorProcessor[]{_processor, batchProcessor}));
+        _engine.startup();
+        _engine.flushMetrics();
+        assertEquals(1, flushes[0]);
+        _engine.shutdown();
+        assertEquals(2, flushes[0]);
+    }
+
+    public void testDispatchPlanResolvedOncePerMonitor() {
+        final int[] plans = new int[1];
+        final int[] created = new int[1];
+        final int[] processed = new int[1];
+        final LifecycleAwareMonitorProcessor processOnly = new LifecycleAwareMonitorProcessor() {
+            public void startup() {
+            }
+
+            public void shutdown() {
+            }
+
+            public void monitorCreated(Monitor monitor) {
+                created[0]++;
+            }
+
+            public void monitorStarted(Monitor monitor) {
+                created[0]++;
+            }
+
+            public void process(Monitor monitor) {
+                processed[0]++;
+            }
+
+            public String getName() {
+                return "processOnly";
+            }
+
+            public int getLifecycleEvents() {
+                return DispatchPlan.PROCESS;
+            }
+        };
+        final MonitorProcessor[] processors = new MonitorProcessor[] {_processor, processOnly};
+        _engine.setProcessorFactory(new PlanningProcessorFactory(processors, plans));
+        _engine.startup();
+
+        TransactionMonitor monitor = new TransactionMonitor("plan");
+        monitor.succeeded();
+        monitor.done();
+
+        assertEquals(1, plans[0]);
+        assertEquals(0, created[0]);
+        assertEquals(1, processed[0]);
+        assertEquals(1, _processor.extractProcessObjects().length);
+    }
+
     public void testFactoryThrowsExceptionOnShutdown() {
         _engine.startup();
 
@@ -381,6 +466,140 @@ public class MonitoringEngineTest extends TestCase {
         
     }
 
+    public void testGlobalAttributeFlags() {
+        _engine.startup();
+
+        _engine.setGlobal("host", "web1").lock();
+        _engine.setGlobalAttribute("plain", "x");
+        EventMonitor monitor = new EventMonitor("test");
+        monitor.set("host", "other");
+        monitor.set("plain", "y");
+        assertEquals("Locked global should not be overwritten", "web1", monitor.get("host"));
+        assertEquals("y", monitor.get("plain"));
+        assertTrue(monitor.getAllSerializable().containsKey("host"));
+
+        _engine.setGlobalAttribute("plain", "z");
+        assertEquals("Globals set later should apply to new monitors", "z",
+                new EventMonitor("test").get("plain"));
+        assertEquals("Globals should not change existing monitors", "y", monitor.get("plain"));
+    }
+
+    public void testGlobalAttributesDoNotReplaceLockedAttributes() {
+        _engine.startup();
+
+        _engine.setGlobalAttribute(Attribute.CREATED_AT, "never");
+        _engine.setGlobalAttribute("other", "value");
+        EventMonitor monitor = new EventMonitor("test");
+        assertTrue(monitor.get(Attribute.CREATED_AT) instanceof java.util.Date);
+        assertEquals("value", monitor.get("other"));
+    }
+
+    public void testInheritableChangesReachNewMonitors() {
+        _engine.startup();
+
+        TransactionMonitor parent = new TransactionMonitor("parent");
+        parent.setInheritable("a", "1");
+        TransactionMonitor child = new TransactionMonitor("child");
+        assertEquals("1", new EventMonitor("first").get("a"));
+
+        parent.setInheritable("b", "2");
+        parent.set("a", "3");
+        EventMonitor second = new EventMonitor("second");
+        assertEquals("3", second.get("a"));
+        assertEquals("2", second.get("b"));
+
+        child.setInheritable("a", "4");
+        parent.unset("b");
+        EventMonitor third = new EventMonitor("third");
+        assertEquals("4", third.get("a"));
+        assertFalse(third.hasAttribute("b"));
+        assertEquals("m_0", third.get(Attribute.PARENT_SEQUENCE_ID));
+        assertEquals("m_0_2", third.get(Attribute.SEQUENCE_ID));
+
+        child.done();
+        parent.done();
+    }
+
+    public void testSingleWriterMonitors() {
+        _engine.startup();
+        _engine.setSingleWriterMonitors(true);
+        try {
+            TransactionMonitor parent = new TransactionMonitor("parent");
+            parent.setInheritable("a", "1");
+            EventMonitor child = new EventMonitor("child");
+            assertEquals("1", child.get("a"));
+            child.fire();
+            parent.done();
+
+            Monitor[] processed = _processor.extractProcessObjects();
+            assertEquals(2, processed.length);
+            assertEquals("parent", processed[1].get(Attribute.NAME));
+            assertTrue(processed[1].getAsLong(Attribute.LATENCY) >= 0);
+            assertEquals(1, parent.getChildMonitors().size());
+            assertEquals("1", processed[0].get("a"));
+        } finally {
+            _engine.setSingleWriterMonitors(false);
+        }
+    }
+
+    public void testIsMonitored() {
+        _engine.startup();
+        assertTrue("a factory without levels takes everything",
+                _engine.isMonitored("anything", MonitoringLevel.DEBUG));
+
+        _engine.setProcessorFactory(new EssentialOnlyProcessorFactory(_processor));
+        assertFalse(_engine.isMonitored("hot", MonitoringLevel.INFO));
+        assertTrue(_engine.isMonitored("hot", MonitoringLevel.ESSENTIAL));
+
+        _engine.addMonitorLevel("hot.path", MonitoringLevel.ESSENTIAL);
+        assertTrue("level overrides apply", _engine.isMonitored("hot.path.call", MonitoringLevel.INFO));
+
+        TransactionMonitor parent = new TransactionMonitor("parent");
+        assertTrue("the parent collects INFO children",
+                _engine.isMonitored("hot", MonitoringLevel.INFO));
+        assertFalse(_engine.isMonitored("hot", MonitoringLevel.DEBUG));
+        parent.done();
+        assertFalse(_engine.isMonitored("hot", MonitoringLevel.INFO));
+
+        _engine.setMonitoringEnabled(false);
+        try {
+            assertFalse(_engine.isMonitored("hot", MonitoringLevel.ESSENTIAL));
+        } finally {
+            _engine.setMonitoringEnabled(true);
+        }
+    }
+
+    public void testInertMonitorsWhenNothingConsumes() {
+        _engine.startup();
+        _engine.setProcessorFactory(new EssentialOnlyProcessorFactory(_processor));
+
+        EventMonitor event = EventMonitor.obtain("hot", MonitoringLevel.INFO);
+        assertSame(event, EventMonitor.obtain("other", MonitoringLevel.DEBUG));
+        event.set("foo", "bar").lock();
+        assertFalse(event.hasAttribute("foo"));
+        event.fire();
+        ValueMonitor.obtain("hot", 1.0d).fire();
+
+        EventMonitor essential = EventMonitor.obtain("hot", MonitoringLevel.ESSENTIAL);
+        assertNotSame(event, essential);
+        essential.fire();
+
+        _engine.setMonitoringEnabled(false);
+        try {
+            TransactionMonitor transaction = TransactionMonitor.obtain("disabled");
+            transaction.setInheritable("foo", "bar");
+            transaction.failedDueTo(new RuntimeException());
+            transaction.done();
+            assertFalse(transaction.hasAttribute(Attribute.FAILURE_THROWABLE));
+        } finally {
+            _engine.setMonitoringEnabled(true);
+        }
+
+        Monitor[] processed = _processor.extractProcessObjects();
+        assertEquals(1, processed.length);
+        assertSame(essential, processed[0]);
+    }
+
     public void testClearCompositeMonitorRefs() {
         _engine.startup();
         int count = _engine.clearCurrentThread();
@@ -477,6 +696,42 @@ public class MonitoringEngineTest extends TestCase {
         assertNull("construction time level should be used, so the updated level would be null", updatedLevel);
     }
 
+    public void testMonitoringLevelOverridesArePrefixes() {
+        _engine.startup();
+
+        _engine.addMonitorLevel("com.foo", MonitoringLevel.ESSENTIAL);
+        EventMonitor m = new EventMonitor("com.foobar.Baz");
+        assertEquals(MonitoringLevel.ESSENTIAL, _engine.getOverrideLevelForMonitor(m));
+        assertEquals("Cached lookup should be stable", MonitoringLevel.ESSENTIAL,
+                _engine.getOverrideLevelForMonitor(m));
+
+        int version = _engine.getMonitorLevelsVersion();
+        _engine.addMonitorLevel("com.foob", MonitoringLevel.DEBUG);
+        assertTrue(version != _engine.getMonitorLevelsVersion());
+        assertEquals("New override should replace cached lookup", MonitoringLevel.DEBUG,
+                _engine.getOverrideLevelForMonitor(m));
+        assertEquals("{com.foob=DEBUG, com.foo=ESSENTIAL}",
+                _engine.getOverrideMonitorLevelsListing());
+
+        _engine.shutdown();
+        assertNull(_engine.getOverrideLevelForMonitor(m));
+    }
+
+    public void testManyMonitoringLevelOverrides() {
+        _engine.startup();
+
+        for (int i = 0; i < 1000; i++) {
+            _engine.addMonitorLevel("monitor" + i + ".", MonitoringLevel.DEBUG);
+        }
+        _engine.addMonitorLevel("monitor500.x", MonitoringLevel.ESSENTIAL);
+
+        assertEquals(MonitoringLevel.DEBUG,
+                _engine.getOverrideLevelForMonitor(new EventMonitor("monitor999.a")));
+        assertEquals(MonitoringLevel.ESSENTIAL,
+                _engine.getOverrideLevelForMonitor(new EventMonitor("monitor500.xyz")));
+        assertNull(_engine.getOverrideLevelForMonitor(new EventMonitor("monitor1000.a")));
+    }
+
     // ** INNER CLASSES *******************************************************
     private static class CompositeMonitorUsage implements Runnable {
         public TransactionMonitor _monitor;
@@ -507,4 +762,46 @@ public class MonitoringEngineTest extends TestCase {
             _monitor.done();
         }
     }
+
+    /**
+     * A factory whose processors only take ESSENTIAL monitors
+     */
+    private static class EssentialOnlyProcessorFactory extends MockMonitorProcessorFactory
+            implements MonitoredLevelSource {
+        EssentialOnlyProcessorFactory(MonitorProcessor processor) {
+            super(processor);
+        }
+
+        public MonitorProcessor[] getProcessorsForMonitor(Monitor monitor) {
+            if (MonitoringLevel.ESSENTIAL.equals(monitor.getLevel())) {
+                return super.getProcessorsForMonitor(monitor);
+            }
+            return new MonitorProcessor[0];
+        }
+
+        public MonitoringLevel getLowestMonitoredLevel() {
+            return MonitoringLevel.ESSENTIAL;
+        }
+    }
+
+    private static class PlanningProcessorFactory extends MockMonitorProcessorFactory
+            implements DispatchPlanSource {
+        private final MonitorProcessor[] _processors;
+        private final int[] _plans;
+
+        PlanningProcessorFactory(MonitorProcessor[] processors, int[] plans) {
+            super(processors);
+            _processors = processors;
+            _plans = plans;
+        }
+
+        public DispatchPlan getDispatchPlan(Monitor monitor) {
+            _plans[0]++;
+            return new DispatchPlan(_processors, 0);
+        }
+
+        public boolean isCurrent(DispatchPlan plan, Monitor monitor) {
+            return true;
+        }
+    }
 }
@@ -0,0 +1,68 @@
+package com.orbitz.monitoring.api.engine;
+
+import junit.framework.TestCase;
+
+public class CoarseClockTest extends TestCase {
+
+    public void testReadsSystemClockWhenNotStarted() {
+        CoarseClock clock = new CoarseClock(60000);
+        long before = System.currentTimeMillis();
+        long now = clock.currentTimeMillis();
+        assertTrue(now >= before);
+        assertTrue(now <= System.currentTimeMillis());
+    }
+
+    public void testTickerUpdatesTime() throws Exception {
+        CoarseClock clock = new CoarseClock(1);
+        clock.start();
+        try {
+            long first = clock.currentTimeMillis();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (clock.currentTimeMillis() == first && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertTrue(clock.currentTimeMillis() > first);
+        }
+        finally {
+            clock.stop();
+        }
+    }
+
+    public void testTimeIsCoarse() throws Exception {
+        CoarseClock clock = new CoarseClock(60000);
+        clock.start();
+        try {
+            // let the ticker take its first reading and go to sleep
+            Thread.sleep(50);
+            long first = clock.currentTimeMillis();
+            Thread.sleep(20);
+            assertEquals(first, clock.currentTimeMillis());
+        }
+        finally {
+            clock.stop();
+        }
+    }
+
+    public void testNanoTimeIsNotCoarse() throws Exception {
+        CoarseClock clock = new CoarseClock(60000);
+        clock.start();
+        try {
+            long first = clock.nanoTime();
+            Thread.sleep(5);
+            assertTrue(clock.nanoTime() > first);
+        }
+        finally {
+            clock.stop();
+        }
+    }
+
+    public void testInvalidResolution() {
+        try {
+            new CoarseClock(0);
+            fail();
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
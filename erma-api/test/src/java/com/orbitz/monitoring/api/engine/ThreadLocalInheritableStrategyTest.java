@@ -0,0 +1,200 @@
+package com.orbitz.monitoring.api.engine;
+
+import com.orbitz.monitoring.api.Attribute;
+import com.orbitz.monitoring.api.CompositeMonitor;
+import com.orbitz.monitoring.api.MonitorProcessor;
+import com.orbitz.monitoring.api.MonitoringEngine;
+import com.orbitz.monitoring.api.monitor.EventMonitor;
+import com.orbitz.monitoring.api.monitor.Span;
+import com.orbitz.monitoring.api.monitor.SpanAttributeHolder;
+import com.orbitz.monitoring.api.monitor.TransactionMonitor;
+import com.orbitz.monitoring.test.MockDecomposer;
+import com.orbitz.monitoring.test.MockMonitorProcessor;
+import com.orbitz.monitoring.test.MockMonitorProcessorFactory;
+import junit.framework.TestCase;
+
+import java.util.Map;
+
+public class ThreadLocalInheritableStrategyTest extends TestCase {
+
+    private ThreadLocalInheritableStrategy strategy;
+    private MockMonitorProcessor processor;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        strategy = new ThreadLocalInheritableStrategy();
+        processor = new MockMonitorProcessor();
+
+        MonitoringEngine.getInstance().setProcessorFactory(
+                new MockMonitorProcessorFactory(new MonitorProcessor[]{processor}));
+        MonitoringEngine.getInstance().setInheritableStrategy(strategy);
+        MonitoringEngine.getInstance().setDecomposer(new MockDecomposer());
+        MonitoringEngine.getInstance().restart();
+        MonitoringEngine.getInstance().setMonitoringEnabled(true);
+    }
+
+    protected void tearDown() throws Exception {
+        MonitoringEngine.getInstance().shutdown();
+        super.tearDown();
+    }
+
+    public void testSequenceIdsAndChildren() {
+        TransactionMonitor parent = new TransactionMonitor("parent");
+        parent.setInheritable("foo", "bar");
+        assertEquals("m", parent.get(Attribute.SEQUENCE_ID));
+
+        TransactionMonitor child = new TransactionMonitor("child");
+        assertEquals("m_0", child.get(Attribute.SEQUENCE_ID));
+        assertEquals("m", child.get(Attribute.PARENT_SEQUENCE_ID));
+        assertEquals("bar", child.get("foo"));
+
+        EventMonitor event = new EventMonitor("event");
+        assertEquals("m_0_0", event.get(Attribute.SEQUENCE_ID));
+        event.fire();
+        child.done();
+
+        assertEquals("m_1", new EventMonitor("second").get(Attribute.SEQUENCE_ID));
+        parent.done();
+
+        assertEquals(1, parent.getChildMonitors().size());
+        assertSame(child, parent.getChildMonitors().iterator().next());
+        assertEquals(1, child.getChildMonitors().size());
+        assertEquals(0, strategy.clearCurrentThread());
+    }
+
+    public void testInheritableSetBelowTopOfStack() {
+        TransactionMonitor parent = new TransactionMonitor("parent");
+        TransactionMonitor child = new TransactionMonitor("child");
+        assertFalse(new EventMonitor("before").hasAttribute("foo"));
+
+        parent.setInheritable("foo", "bar");
+        assertEquals("bar", new EventMonitor("after").get("foo"));
+
+        child.setInheritable("foo", "baz");
+        parent.setInheritable("foo", "qux");
+        assertEquals("baz", new EventMonitor("shadowed").get("foo"));
+        child.done();
+        assertEquals("qux", new EventMonitor("popped").get("foo"));
+        parent.done();
+    }
+
+    public void testReusedFrameStartsAfresh() {
+        TransactionMonitor parent = new TransactionMonitor("parent");
+        TransactionMonitor first = new TransactionMonitor("first");
+        first.setInheritable("foo", "bar");
+        new EventMonitor("event").fire();
+        first.done();
+
+        TransactionMonitor second = new TransactionMonitor("second");
+        EventMonitor event = new EventMonitor("event");
+        assertEquals("m_1_0", event.get(Attribute.SEQUENCE_ID));
+        assertEquals("m_1", event.get(Attribute.PARENT_SEQUENCE_ID));
+        assertFalse(event.hasAttribute("foo"));
+        second.done();
+        parent.done();
+        assertEquals(0, strategy.clearCurrentThread());
+    }
+
+    public void testSpanIds() {
+        strategy.setSpanIds(true);
+        TransactionMonitor parent = new TransactionMonitor("parent");
+        long traceId = parent.getAsLong(Attribute.TRACE_ID);
+        long parentSpanId = parent.getAsLong(Attribute.SPAN_ID);
+        assertEquals(traceId, parentSpanId);
+        assertFalse(parent.hasAttribute(Attribute.PARENT_SPAN_ID));
+
+        TransactionMonitor child = new TransactionMonitor("child");
+        EventMonitor event = new EventMonitor("event");
+        EventMonitor second = new EventMonitor("second");
+        assertTrue(event.getAttributeHolder(Attribute.SEQUENCE_ID) instanceof SpanAttributeHolder);
+        Span eventSpan = ((SpanAttributeHolder) event.getAttributeHolder(Attribute.SEQUENCE_ID)).getSpan();
+
+        assertEquals(traceId, child.getAsLong(Attribute.TRACE_ID));
+        assertEquals(parentSpanId, child.getAsLong(Attribute.PARENT_SPAN_ID));
+        assertEquals(traceId, event.getAsLong(Attribute.TRACE_ID));
+        assertEquals(child.getAsLong(Attribute.SPAN_ID), event.getAsLong(Attribute.PARENT_SPAN_ID));
+        assertEquals(eventSpan.getSpanId(), event.getAsLong(Attribute.SPAN_ID));
+        assertFalse(event.getAsLong(Attribute.SPAN_ID) == second.getAsLong(Attribute.SPAN_ID));
+
+        // the sequence ids read the same as without span ids
+        assertEquals("m_0_1", second.get(Attribute.SEQUENCE_ID));
+        assertEquals("m_0", second.get(Attribute.PARENT_SEQUENCE_ID));
+        assertEquals("m_0_0", event.get(Attribute.SEQUENCE_ID));
+        assertEquals("m", parent.get(Attribute.SEQUENCE_ID));
+        assertTrue(event.getAttributeHolder(Attribute.SEQUENCE_ID).isLocked());
+        assertTrue(event.getAttributeHolder(Attribute.SEQUENCE_ID).isSerializable());
+        child.done();
+        parent.done();
+
+        TransactionMonitor nextTrace = new TransactionMonitor("next");
+        assertFalse(traceId == nextTrace.getAsLong(Attribute.TRACE_ID));
+        assertEquals("m", nextTrace.get(Attribute.SEQUENCE_ID));
+        nextTrace.done();
+    }
+
+    public void testUnfinishedChildIsProcessed() {
+        TransactionMonitor parent = new TransactionMonitor("parent");
+        TransactionMonitor child = new TransactionMonitor("child");
+        assertSame(child, strategy.getCompositeMonitorNamed("child"));
+        assertSame(parent, strategy.getCompositeMonitorNamed("parent"));
+
+        parent.done();
+
+        assertNull(strategy.getCompositeMonitorNamed("child"));
+        assertNull(strategy.getCompositeMonitorNamed("parent"));
+        assertEquals(2, processor.extractProcessObjects().length);
+    }
+
+    public void testDoubleCompletionIsIgnored() {
+        TransactionMonitor parent = new TransactionMonitor("parent");
+        TransactionMonitor child = new TransactionMonitor("child");
+        child.done();
+        strategy.compositeMonitorCompleted(child);
+        assertSame(parent, strategy.getCompositeMonitorNamed("parent"));
+        parent.done();
+    }
+
+    public void testThreadsHaveSeparateStacks() throws Exception {
+        final TransactionMonitor parent = new TransactionMonitor("parent");
+        final CompositeMonitor[] found = new CompositeMonitor[1];
+        final Map[] inheritable = new Map[1];
+        Thread thread = new Thread() {
+            public void run() {
+                found[0] = strategy.getCompositeMonitorNamed("parent");
+                inheritable[0] = strategy.getInheritableAttributes();
+            }
+        };
+        thread.start();
+        thread.join();
+
+        assertNull(found[0]);
+        assertFalse(inheritable[0].containsKey(Attribute.PARENT_SEQUENCE_ID));
+        parent.done();
+    }
+
+    public void testRestartDiscardsStacks() {
+        new TransactionMonitor("abandoned");
+        strategy.startup();
+        assertNull(strategy.getCompositeMonitorNamed("abandoned"));
+        assertEquals(0, strategy.clearCurrentThread());
+    }
+
+    public void testClearCurrentThread() {
+        new TransactionMonitor("one");
+        new TransactionMonitor("two");
+        assertEquals(2, strategy.clearCurrentThread());
+        assertEquals(0, strategy.clearCurrentThread());
+    }
+
+    public void testDeepStack() {
+        TransactionMonitor[] monitors = new TransactionMonitor[20];
+        for (int i = 0; i < monitors.length; i++) {
+            monitors[i] = new TransactionMonitor("level" + i);
+        }
+        assertSame(monitors[19], strategy.getCompositeMonitorNamed("level19"));
+        for (int i = monitors.length - 1; i >= 0; i--) {
+            monitors[i].done();
+        }
+        assertEquals(0, strategy.clearCurrentThread());
+    }
+}
@@ -0,0 +1,141 @@
+package com.orbitz.monitoring.api.metric;
+
+import com.orbitz.monitoring.api.Attribute;
+import com.orbitz.monitoring.api.Monitor;
+import com.orbitz.monitoring.api.MonitorProcessor;
+import com.orbitz.monitoring.api.MonitoringEngine;
+import com.orbitz.monitoring.api.MonitoringLevel;
+import com.orbitz.monitoring.api.monitor.EventMonitor;
+import com.orbitz.monitoring.api.monitor.ValueMonitor;
+import com.orbitz.monitoring.test.MockDecomposer;
+import com.orbitz.monitoring.test.MockMonitorProcessor;
+import com.orbitz.monitoring.test.MockMonitorProcessorFactory;
+import junit.framework.TestCase;
+
+public class MetricRegistryTest extends TestCase {
+  
+  private MockMonitorProcessor _processor;
+  private MetricRegistry _registry;
+  
+  @Override
+  protected void setUp() throws Exception {
+    _processor = new MockMonitorProcessor();
+    MonitoringEngine engine = MonitoringEngine.getInstance();
+    engine.setProcessorFactory(new MockMonitorProcessorFactory(new MonitorProcessor[] {_processor}));
+    engine.setDecomposer(new MockDecomposer());
+    engine.restart();
+    engine.setMonitoringEnabled(true);
+    _registry = new MetricRegistry();
+  }
+  
+  @Override
+  protected void tearDown() throws Exception {
+    MonitoringEngine.getInstance().shutdown();
+  }
+  
+  public void testCounterReportsChangesSinceLastFlush() {
+    Counter counter = _registry.counter("cacheHits");
+    assertSame(counter, _registry.counter("cacheHits"));
+    counter.increment();
+    counter.add(4);
+    
+    _registry.flush();
+    Monitor[] monitors = _processor.extractProcessObjects();
+    assertEquals(1, monitors.length);
+    assertTrue(monitors[0] instanceof ValueMonitor);
+    assertEquals("cacheHits", monitors[0].get(Attribute.NAME));
+    assertEquals(5.0d, monitors[0].getAsDouble(Attribute.VALUE), 0);
+    assertEquals("counter", monitors[0].get(MetricRegistry.METRIC_TYPE));
+    
+    _registry.flush();
+    assertEquals("an unchanged counter isn't reported", 0, _processor.extractProcessObjects().length);
+    
+    counter.increment();
+    _registry.flush();
+    monitors = _processor.extractProcessObjects();
+    assertEquals(1.0d, monitors[0].getAsDouble(Attribute.VALUE), 0);
+    assertEquals(6, counter.getCount());
+  }
+  
+  public void testTimerReportsAverageAndMax() {
+    Timer timer = _registry.timer("lookup", MonitoringLevel.ESSENTIAL);
+    timer.record(2000000L);
+    timer.record(6000000L);
+    
+    _registry.flush();
+    Monitor[] monitors = _processor.extractProcessObjects();
+    assertEquals(1, monitors.length);
+    assertTrue(monitors[0] instanceof EventMonitor);
+    assertEquals(MonitoringLevel.ESSENTIAL, monitors[0].getLevel());
+    assertEquals(2, monitors[0].getAsLong(MetricRegistry.COUNT));
+    assertEquals(4, monitors[0].getAsLong(Attribute.LATENCY));
+    assertEquals(4000000L, monitors[0].getAsLong(Attribute.LATENCY_NANOS));
+    assertEquals(6, monitors[0].getAsLong(MetricRegistry.MAX_LATENCY));
+    
+    _registry.flush();
+    assertEquals(0, _processor.extractProcessObjects().length);
+  }
+  
+  public void testGaugeIsReadOnEveryFlush() {
+    final int[] reads = new int[1];
+    _registry.gauge("queueSize", new Gauge() {
+      public double getValue() {
+        return ++reads[0];
+      }
+    });
+    
+    _registry.flush();
+    _registry.flush();
+    Monitor[] monitors = _processor.extractProcessObjects();
+    assertEquals(2, monitors.length);
+    assertEquals(2.0d, monitors[1].getAsDouble(Attribute.VALUE), 0);
+    assertEquals("gauge", monitors[1].get(MetricRegistry.METRIC_TYPE));
+  }
+  
+  public void testNameBelongsToOneType() {
+    _registry.counter("requests");
+    try {
+      _registry.timer("requests");
+      fail();
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertNotNull(_registry.remove("requests"));
+    assertNotNull(_registry.timer("requests"));
+  }
+  
+  public void testConcurrentIncrements() throws Exception {
+    final Counter counter = _registry.counter("concurrent");
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 100000; j++) {
+            counter.increment();
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (int i = 0; i < threads.length; i++) {
+      threads[i].join();
+    }
+    assertEquals(800000, counter.getCount());
+  }
+  
+  public void testEngineFlushesItsRegistry() {
+    MonitoringEngine engine = MonitoringEngine.getInstance();
+    engine.counter("engineCounter").increment();
+    try {
+      engine.flushMetrics();
+      Monitor[] monitors = _processor.extractProcessObjects();
+      assertEquals(1, monitors.length);
+      assertEquals("engineCounter", monitors[0].get(Attribute.NAME));
+    }
+    finally {
+      engine.getMetricRegistry().clear();
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package com.orbitz.monitoring.api.monitor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import junit.framework.TestCase;
+
+public class ArrayAttributeMapTest extends TestCase {
+  
+  public void testPutGetRemove() {
+    ArrayAttributeMap map = new ArrayAttributeMap();
+    AttributeHolder foo = new AttributeHolder("foo");
+    assertNull(map.put("foo", foo));
+    assertSame(foo, map.get("foo"));
+    assertSame(foo, map.get(new String("foo")));
+    assertTrue(map.containsKey("foo"));
+    assertNull(map.get("bar"));
+    
+    AttributeHolder foo2 = new AttributeHolder("foo2");
+    assertSame(foo, map.put("foo", foo2));
+    assertEquals(1, map.size());
+    
+    assertSame(foo2, map.remove("foo"));
+    assertNull(map.remove("foo"));
+    assertTrue(map.isEmpty());
+  }
+  
+  public void testNullsAreRejected() {
+    ArrayAttributeMap map = new ArrayAttributeMap();
+    try {
+      map.put("foo", null);
+      fail();
+    }
+    catch (NullPointerException e) {
+      // expected
+    }
+    assertNull(map.get(null));
+  }
+  
+  public void testBehavesLikeHashMap() {
+    Random random = new Random(42);
+    ArrayAttributeMap map = new ArrayAttributeMap();
+    Map<String, AttributeHolder> expected = new HashMap<String, AttributeHolder>();
+    for (int i = 0; i < 20000; i++) {
+      String key = "k" + random.nextInt(64);
+      if (random.nextInt(3) == 0) {
+        assertSame(expected.remove(key), map.remove(key));
+      }
+      else {
+        AttributeHolder holder = new AttributeHolder(Integer.valueOf(i));
+        assertSame(expected.put(key, holder), map.put(key, holder));
+      }
+      if (i % 100 == 0) {
+        assertEquals(expected, new HashMap<String, AttributeHolder>(map));
+        for (String k : expected.keySet()) {
+          assertSame(expected.get(k), map.get(k));
+        }
+      }
+    }
+    map.clear();
+    assertEquals(0, map.size());
+    assertFalse(map.entrySet().iterator().hasNext());
+  }
+}
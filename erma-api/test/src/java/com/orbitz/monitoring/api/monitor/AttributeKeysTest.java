@@ -0,0 +1,53 @@
+package com.orbitz.monitoring.api.monitor;
+
+import com.orbitz.monitoring.api.Attribute;
+import junit.framework.TestCase;
+
+public class AttributeKeysTest extends TestCase {
+  
+  public void testStandardNamesAreCanonical() {
+    assertSame(Attribute.RESULT_CODE, AttributeKeys.canonicalize(new String("resultCode")));
+    assertSame(Attribute.LATENCY, AttributeKeys.canonicalIfKnown(new String("latency")));
+    assertEquals(Attribute.NAME, AttributeKeys.nameOf(AttributeKeys.idOf(Attribute.NAME)));
+  }
+  
+  public void testNamesAreRegisteredOnce() {
+    String name = AttributeKeys.canonicalize(new String("attributeKeysTestName"));
+    int id = AttributeKeys.idOf(name);
+    int size = AttributeKeys.size();
+    
+    assertSame(name, AttributeKeys.canonicalize(new String("attributeKeysTestName")));
+    assertEquals(id, AttributeKeys.idOf(new String("attributeKeysTestName")));
+    assertSame(name, AttributeKeys.nameOf(id));
+    assertEquals(size, AttributeKeys.size());
+  }
+  
+  public void testInvalidNames() {
+    try {
+      AttributeKeys.canonicalize("not valid");
+      fail();
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertEquals("not.registered", AttributeKeys.canonicalIfKnown("not.registered"));
+    try {
+      AttributeKeys.nameOf(-1);
+      fail();
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+  
+  public void testMapsShareKeys() {
+    AttributeMap first = new AttributeMap();
+    AttributeMap second = new AttributeMap(true);
+    first.set(new String("sharedKey"), "a");
+    second.set(new String("sharedKey"), "b");
+    
+    String firstKey = first.getAll().keySet().iterator().next();
+    String secondKey = second.getAll().keySet().iterator().next();
+    assertSame(firstKey, secondKey);
+  }
+}
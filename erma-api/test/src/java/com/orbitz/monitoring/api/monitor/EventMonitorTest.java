@@ -1,6 +1,9 @@
 package com.orbitz.monitoring.api.monitor;
 
+import com.orbitz.monitoring.api.Attribute;
 import com.orbitz.monitoring.api.Monitor;
+import com.orbitz.monitoring.api.MonitoringEngine;
+import com.orbitz.monitoring.api.MonitoringLevel;
 import com.orbitz.monitoring.test.MonitorTestBase;
 
 import java.util.Map;
@@ -33,6 +36,59 @@ public class EventMonitorTest extends MonitorTestBase {
         getMockProcessor(event).assertExpectedProcessObject(event);
     }
 
+    public void testObtainWithoutRecycling() {
+        EventMonitor first = EventMonitor.obtain("first");
+        first.fire();
+        EventMonitor second = EventMonitor.obtain("second");
+        second.fire();
+
+        assertNotSame(first, second);
+        assertEquals("first", first.get(Monitor.NAME));
+    }
+
+    public void testObtainRecyclesFiredMonitor() {
+        MonitoringEngine.getInstance().setMonitorRecycling(true);
+        try {
+            EventMonitor first = EventMonitor.obtain("first", MonitoringLevel.ESSENTIAL);
+            first.set("count", 1);
+            first.fire();
+            getMockProcessor(first).assertExpectedProcessObject(first);
+
+            EventMonitor second = EventMonitor.obtain("second");
+            assertSame(first, second);
+            assertEquals("second", second.get(Monitor.NAME));
+            assertEquals(MonitoringLevel.INFO, second.getLevel());
+            assertFalse("attributes of the last use are cleared", second.hasAttribute("count"));
+            assertTrue(second.hasAttribute(Attribute.CREATED_AT));
+            second.fire();
+            getMockProcessor(second).assertExpectedProcessObject(second);
+        }
+        finally {
+            MonitoringEngine.getInstance().setMonitorRecycling(false);
+        }
+    }
+
+    public void testRetainedMonitorIsNotRecycled() {
+        MonitoringEngine.getInstance().setMonitorRecycling(true);
+        try {
+            TransactionMonitor parent = new TransactionMonitor("parent");
+            EventMonitor child = EventMonitor.obtain("child");
+            child.fire();
+            assertTrue("the parent keeps its children", child.isRetained());
+
+            EventMonitor next = EventMonitor.obtain("next");
+            assertNotSame(child, next);
+            assertEquals("child", child.get(Monitor.NAME));
+            next.fire();
+            parent.done();
+
+            assertTrue(parent.getChildMonitors().contains(child));
+        }
+        finally {
+            MonitoringEngine.getInstance().setMonitorRecycling(false);
+        }
+    }
+
     // ** PROTECTED METHODS ***************************************************
     protected Monitor createMonitor(String name, Map inheritedAttributes) {
         return new EventMonitor(name, inheritedAttributes);
@@ -1,10 +1,17 @@
 package com.orbitz.monitoring.api.monitor;
 
+import com.orbitz.monitoring.api.Attribute;
+import com.orbitz.monitoring.api.Clock;
+import com.orbitz.monitoring.api.CompositeMonitor;
 import com.orbitz.monitoring.api.Monitor;
 import com.orbitz.monitoring.api.MonitoringEngine;
 import com.orbitz.monitoring.api.engine.StackBasedInheritableStrategy;
+import com.orbitz.monitoring.api.monitor.serializable.SerializableCompositeMonitor;
+import com.orbitz.monitoring.api.monitor.serializable.SerializableMonitor;
 import com.orbitz.monitoring.test.CompositeMonitorTestBase;
+import com.orbitz.monitoring.test.MockClock;
 import com.orbitz.monitoring.test.MockMonitorProcessor;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -24,6 +31,45 @@ import java.util.concurrent.TimeUnit;
  */
 public class TransactionMonitorTest extends CompositeMonitorTestBase {
   // ** TEST METHODS ********************************************************
+  public void testTimesComeFromEngineClock() {
+    final Clock original = MonitoringEngine.getInstance().getClock();
+    final MockClock clock = new MockClock(1000000L);
+    MonitoringEngine.getInstance().setClock(clock);
+    try {
+      TransactionMonitor transaction = new TransactionMonitor("clocked");
+      clock.advance(2500000L);
+      // a step of the system time must not change the latency
+      clock.setCurrentTimeMillis(500000L);
+      transaction.done();
+      
+      assertEquals(new Date(1000000L), transaction.get(Attribute.CREATED_AT));
+      assertEquals(new Date(1000000L), transaction.get(Attribute.START_TIME));
+      assertEquals(new Date(500000L), transaction.get(Attribute.END_TIME));
+      assertEquals(2L, transaction.getAsLong(Attribute.LATENCY));
+      assertEquals(2500000L, transaction.getAsLong(Attribute.LATENCY_NANOS));
+    }
+    finally {
+      MonitoringEngine.getInstance().setClock(original);
+    }
+  }
+  
+  public void testTimestampsAreSerializableAndLocked() {
+    TransactionMonitor transaction = new TransactionMonitor("stamped");
+    transaction.done();
+    
+    Map<String, AttributeHolder> holders = transaction.attributes.getAllAttributeHolders();
+    for (String key : new String[] {Attribute.CREATED_AT, Attribute.START_TIME, Attribute.END_TIME}) {
+      AttributeHolder holder = holders.get(key);
+      assertTrue(key, holder.clone() instanceof TimestampAttributeHolder);
+      assertTrue(key, holder.isSerializable());
+      assertTrue(key, holder.isLocked());
+    }
+    assertTrue(transaction.getSerializableMomento().get(Attribute.END_TIME) instanceof Date);
+    
+    transaction.setTimestamp(Attribute.START_TIME, 0L);
+    assertFalse(new Date(0L).equals(transaction.get(Attribute.START_TIME)));
+  }
+  
   public void testTransaction() throws Exception {
     TransactionMonitor transaction = new TransactionMonitor("fakeTxn");
     assertConstructionInvariants(transaction);
@@ -84,6 +130,107 @@ public class TransactionMonitorTest extends CompositeMonitorTestBase {
     assertFalse("More children", childMonitors.hasNext());
   }
   
+  public void testChildMonitorSummaries() {
+    MonitoringEngine.getInstance().setInheritableStrategy(new StackBasedInheritableStrategy());
+    TransactionMonitor parent = new TransactionMonitor("parent");
+    parent.setMaxRetainedChildMonitors(2);
+    
+    TransactionMonitor kept = new TransactionMonitor("loop");
+    kept.succeeded();
+    kept.done();
+    EventMonitor keptEvent = new EventMonitor("event");
+    keptEvent.fire();
+    for (int i = 0; i < 5; i++) {
+      TransactionMonitor child = new TransactionMonitor("loop");
+      if (i % 2 == 0) {
+        child.succeeded();
+      }
+      child.done();
+    }
+    new EventMonitor("event").fire();
+    parent.done();
+    
+    Iterator<Monitor> childMonitors = parent.getChildMonitors().iterator();
+    assertSame("For kept child", kept, childMonitors.next());
+    assertSame("For kept event", keptEvent, childMonitors.next());
+    ChildMonitorSummary loops = (ChildMonitorSummary)childMonitors.next();
+    assertEquals("loop", loops.get(Attribute.NAME));
+    assertTrue(loops.getAsBoolean(ChildMonitorSummary.SUMMARY));
+    assertEquals(5, loops.getAsLong(ChildMonitorSummary.COUNT));
+    assertEquals(2, loops.getAsLong(ChildMonitorSummary.FAILURE_COUNT));
+    assertEquals(loops.getTotalLatency(), loops.getAsLong(Attribute.LATENCY));
+    assertTrue(loops.hasAttribute(ChildMonitorSummary.MIN_LATENCY));
+    assertTrue(loops.hasAttribute(ChildMonitorSummary.MAX_LATENCY));
+    ChildMonitorSummary events = (ChildMonitorSummary)childMonitors.next();
+    assertEquals(1, events.getAsLong(ChildMonitorSummary.COUNT));
+    assertFalse(events.hasAttribute(Attribute.LATENCY));
+    assertFalse("More children", childMonitors.hasNext());
+    
+    CompositeMonitor momento = (CompositeMonitor)parent.getSerializableMomento();
+    assertEquals(4, momento.getChildMonitors().size());
+  }
+  
+  public void testMomentoCaching() {
+    MonitoringEngine.getInstance().setInheritableStrategy(new StackBasedInheritableStrategy());
+    MonitoringEngine.getInstance().setMomentoCaching(true);
+    try {
+      TransactionMonitor parent = new TransactionMonitor("parent");
+      TransactionMonitor child = new TransactionMonitor("child");
+      assertNotSame("Before processing", child.getSerializableMomento(),
+          child.getSerializableMomento());
+      child.succeeded();
+      child.done();
+      
+      SerializableMonitor childMomento = child.getSerializableMomento();
+      assertSame(childMomento, child.getSerializableMomento());
+      child.set("late", "value");
+      SerializableMonitor changedMomento = child.getSerializableMomento();
+      assertNotSame(childMomento, changedMomento);
+      assertEquals("value", changedMomento.get("late"));
+      
+      parent.done();
+      SerializableCompositeMonitor parentMomento = (SerializableCompositeMonitor)parent
+          .getSerializableMomento();
+      assertSame(changedMomento, parentMomento.getSerializableChildMonitors().iterator().next());
+      assertSame(parentMomento, parent.getSerializableMomento());
+    }
+    finally {
+      MonitoringEngine.getInstance().setMomentoCaching(false);
+    }
+  }
+  
+  public void testDeferredMomentoCaching() {
+    MonitoringEngine.getInstance().setInheritableStrategy(new StackBasedInheritableStrategy());
+    MonitoringEngine.getInstance().setMomentoCaching(true);
+    try {
+      TransactionMonitor parent = new TransactionMonitor("parent");
+      TransactionMonitor child = new TransactionMonitor("child");
+      child.succeeded();
+      child.done();
+      
+      // as a processor deferring decomposition would make them
+      SerializableMonitor childMomento = DeferredMomento.of(child).getSerializableMomento();
+      assertSame(childMomento, child.getSerializableMomento());
+      
+      parent.done();
+      SerializableCompositeMonitor parentMomento = (SerializableCompositeMonitor)DeferredMomento
+          .of(parent).getSerializableMomento();
+      assertSame(childMomento, parentMomento.getSerializableChildMonitors().iterator().next());
+      assertSame(parentMomento, parent.getSerializableMomento());
+      
+      parent.set("late", "value");
+      DeferredMomento deferred = DeferredMomento.of(parent);
+      parent.set("later", "value");
+      SerializableMonitor stale = deferred.getSerializableMomento();
+      assertFalse(stale.hasAttribute("later"));
+      assertNotSame(stale, parent.getSerializableMomento());
+      assertEquals("value", parent.getSerializableMomento().get("later"));
+    }
+    finally {
+      MonitoringEngine.getInstance().setMomentoCaching(false);
+    }
+  }
+  
   public void testChildTransactionMissedEndCall() {
     TransactionMonitor parent = new TransactionMonitor("parent");
     MockMonitorProcessor processor = getMockProcessor(parent);
@@ -146,4 +146,37 @@ public class ValueMonitorTest extends TestCase {
     assertEquals(createdAt, vm.get(Attribute.CREATED_AT));
     assertEquals(threadId, vm.get(Attribute.THREAD_ID));
   }
+  
+  public void testObtainRecyclesFiredMonitor() {
+    MonitoringEngine.getInstance().setMonitorRecycling(true);
+    try {
+      ValueMonitor first = ValueMonitor.obtain("foo", 1.0d, MonitoringLevel.DEBUG);
+      first.set("unit", "ms");
+      first.fire();
+      _processor.assertExpectedProcessObject(first);
+      
+      ValueMonitor second = ValueMonitor.obtain("bar", 2.0d);
+      assertSame(first, second);
+      assertEquals("bar", second.get(Attribute.NAME));
+      assertEquals(2.0d, second.get(Attribute.VALUE));
+      assertEquals(MonitoringLevel.INFO, second.getLevel());
+      assertEquals("VMID", second.get(Attribute.VMID));
+      assertFalse(second.hasAttribute("unit"));
+      second.fire();
+      _processor.assertExpectedProcessObject(second);
+    }
+    finally {
+      MonitoringEngine.getInstance().setMonitorRecycling(false);
+    }
+  }
+  
+  public void testObtainWithoutRecycling() {
+    ValueMonitor first = ValueMonitor.obtain("foo", 1.0d);
+    first.fire();
+    ValueMonitor second = ValueMonitor.obtain("bar", 2.0d);
+    second.fire();
+    
+    assertNotSame(first, second);
+    assertEquals("foo", first.get(Attribute.NAME));
+  }
 }
@@ -278,11 +278,12 @@ public class BaseMonitoringEngineManager {
   }
   
   /**
-   * Stops all {@link #getTimerTasks() timer tasks} and {@link MonitoringEngine#shutdown() shuts the
-   * monitoring engine down}.
+   * Stops all {@link #getTimerTasks() timer tasks}, {@link MonitoringEngine#flushMetrics() flushes
+   * the metrics} and {@link MonitoringEngine#shutdown() shuts the monitoring engine down}.
    */
   public void shutdown() {
     scheduledExecutor.shutdown();
+    MonitoringEngine.getInstance().flushMetrics();
     EventMonitor monitor = new EventMonitor("MonitoringEngineManager.lifecycle",
         MonitoringLevel.ESSENTIAL);
     monitor.set("eventType", "shutdown");
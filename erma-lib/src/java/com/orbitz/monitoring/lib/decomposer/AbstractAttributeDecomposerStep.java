@@ -14,15 +14,31 @@ abstract class AbstractAttributeDecomposerStep implements AttributeDecomposer.St
       return null;
     }
     
-    if (alreadyDecomposed.containsKey(object)) {
-      return alreadyDecomposed.get(object);
+    if (!hasContents()) {
+      // nothing inside the object can refer back to it, so there's no need to track it
+      return createMutableContainer(object);
     }
-    else {
-      final Serializable mutableContainer = createMutableContainer(object);
-      alreadyDecomposed.put(object, mutableContainer);
-      decomposeInto(object, mutableContainer, alreadyDecomposed);
-      return mutableContainer;
+    
+    IdentityHashMap<Object, Serializable> decomposed = alreadyDecomposed;
+    if (decomposed == null) {
+      decomposed = new IdentityHashMap<Object, Serializable>();
+    }
+    else if (decomposed.containsKey(object)) {
+      return decomposed.get(object);
     }
+    final Serializable mutableContainer = createMutableContainer(object);
+    decomposed.put(object, mutableContainer);
+    decomposeInto(object, mutableContainer, decomposed);
+    return mutableContainer;
+  }
+  
+  /**
+   * Whether the objects this step decomposes contain other objects that need decomposing. Steps
+   * for immutable values return false, so those values are converted without tracking them.
+   * @return true unless {@link #decomposeInto(Object, Serializable, IdentityHashMap)} does nothing
+   */
+  boolean hasContents() {
+    return true;
   }
   
   abstract Serializable createMutableContainer(Object o);
@@ -11,26 +11,107 @@ import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * A class that takes any Object and turns it into a Serializable implementation that can be a
  * drop-in replacement for the original Object.
+ * <p>
+ * An instance is safe to share between threads. The steps used to decompose each class are looked
+ * up once and cached.
  * 
  * @author Doug Barth
  */
 public class AttributeDecomposer implements Decomposer {
+  private final BaseAttributeDecomposer _decomposer = new BaseAttributeDecomposer();
+  
   public Serializable decompose(final Object object) {
-    return new BaseAttributeDecomposer().decompose(object,
-        new IdentityHashMap<Object, Serializable>());
+    return _decomposer.decompose(object, null);
+  }
+  
+  /**
+   * Sets the only properties decomposed for objects that are decomposed by reflecting on their
+   * JavaBean properties
+   * @param includedProperties property names keyed by the name of the class or interface they
+   *        apply to. They also apply to subclasses and implementations. The <code>class</code>
+   *        property is always included.
+   */
+  public void setIncludedProperties(final Map<String, List<String>> includedProperties) {
+    _decomposer.getReflectiveDecomposer().setIncludedProperties(includedProperties);
+    _decomposer.getThrowableDecomposer().setIncludedProperties(includedProperties);
+  }
+  
+  /**
+   * Sets properties that aren't decomposed for objects that are decomposed by reflecting on their
+   * JavaBean properties
+   * @param excludedProperties property names keyed by the name of the class or interface they
+   *        apply to. They also apply to subclasses and implementations.
+   */
+  public void setExcludedProperties(final Map<String, List<String>> excludedProperties) {
+    _decomposer.getReflectiveDecomposer().setExcludedProperties(excludedProperties);
+    _decomposer.getThrowableDecomposer().setExcludedProperties(excludedProperties);
+  }
+  
+  /**
+   * Sets how deeply objects decomposed by reflecting on their JavaBean properties may be nested
+   * within each other. Deeper objects are replaced by a bean holding only their class name.
+   * @param maxDepth the greatest depth, or 0 for no limit
+   */
+  public void setMaxDepth(final int maxDepth) {
+    _decomposer.getReflectiveDecomposer().setMaxDepth(maxDepth);
+    _decomposer.getThrowableDecomposer().setMaxDepth(maxDepth);
+  }
+  
+  /**
+   * Sets how many objects containing others may be decomposed for one attribute. Once reached,
+   * further objects that would be decomposed by reflecting on their JavaBean properties are
+   * replaced by a bean holding only their class name.
+   * @param maxSize the greatest number of objects, or 0 for no limit
+   */
+  public void setMaxSize(final int maxSize) {
+    _decomposer.getReflectiveDecomposer().setMaxSize(maxSize);
+    _decomposer.getThrowableDecomposer().setMaxSize(maxSize);
+  }
+  
+  /**
+   * Sets how many decomposed stack traces are kept for reuse. The most recently decomposed stack
+   * traces are shared by later throwables with the same stack trace. Defaults to 256.
+   * @param stackTraceCacheSize the number of stack traces, or 0 to keep none
+   */
+  public void setStackTraceCacheSize(final int stackTraceCacheSize) {
+    _decomposer.getThrowableDecomposer().setStackTraceCacheSize(stackTraceCacheSize);
+  }
+  
+  /**
+   * Sets whether a throwable whose stack trace is already kept is decomposed without it, leaving
+   * its <code>fingerprint</code> to identify the earlier throwable that has the stack trace.
+   * Defaults to false.
+   * @param omitRepeatedStackTraces true to leave out repeated stack traces
+   */
+  public void setOmitRepeatedStackTraces(final boolean omitRepeatedStackTraces) {
+    _decomposer.getThrowableDecomposer().setOmitRepeatedStackTraces(omitRepeatedStackTraces);
   }
   
   interface Step {
+    /**
+     * Decomposes an object
+     * @param object the object to decompose
+     * @param alreadyDecomposed the objects decomposed so far, used to stop at cycles, or null if
+     *        no object containing others has been decomposed yet. Steps that decompose the
+     *        contents of an object create the map when it is null.
+     * @return the serializable replacement for the object
+     */
     Serializable decompose(Object object, IdentityHashMap<Object, Serializable> alreadyDecomposed);
   }
 }
 
 class BaseAttributeDecomposer implements AttributeDecomposer.Step {
   private Map<Class<?>, Step> _classToDecomposer;
+  private final ReflectiveDecomposer _reflectiveDecomposer;
+  private final ThrowableDecomposer _throwableDecomposer;
+  private final ConcurrentMap<Class<?>, Step> _resolvedSteps =
+      new ConcurrentHashMap<Class<?>, Step>();
   
   public BaseAttributeDecomposer() {
     _classToDecomposer = new HashMap<Class<?>, Step>();
@@ -55,7 +136,18 @@ class BaseAttributeDecomposer implements AttributeDecomposer.Step {
     _classToDecomposer.put(CompositeAttributeHolder.class, new AttributeHolderDecomposer(this));
     _classToDecomposer.put(AttributeHolder.class, new AttributeHolderDecomposer(this));
     _classToDecomposer.put(Object[].class, new ArrayDecomposer(this));
-    _classToDecomposer.put(Object.class, new ReflectiveDecomposer(this));
+    _throwableDecomposer = new ThrowableDecomposer(this);
+    _classToDecomposer.put(Throwable.class, _throwableDecomposer);
+    _reflectiveDecomposer = new ReflectiveDecomposer(this);
+    _classToDecomposer.put(Object.class, _reflectiveDecomposer);
+  }
+  
+  ReflectiveDecomposer getReflectiveDecomposer() {
+    return _reflectiveDecomposer;
+  }
+  
+  ThrowableDecomposer getThrowableDecomposer() {
+    return _throwableDecomposer;
   }
   
   public Map<Class<?>, Step> getClassDecomposerMap() {
@@ -68,7 +160,22 @@ class BaseAttributeDecomposer implements AttributeDecomposer.Step {
       return null;
     }
     
-    Class<?> klass = object.getClass();
+    final Class<?> objectClass = object.getClass();
+    AttributeDecomposer.Step decomposer = _resolvedSteps.get(objectClass);
+    if (decomposer == null) {
+      decomposer = findStep(objectClass);
+      _resolvedSteps.putIfAbsent(objectClass, decomposer);
+    }
+    return decomposer.decompose(object, alreadyDecomposed);
+  }
+  
+  /**
+   * Finds the step registered for a class, its superclasses or the interfaces they implement
+   * @param objectClass the class of the object being decomposed
+   * @return the step
+   */
+  private AttributeDecomposer.Step findStep(final Class<?> objectClass) {
+    Class<?> klass = objectClass;
     AttributeDecomposer.Step decomposer = null;
     CLASS_LOOP: while (klass != null) {
       decomposer = _classToDecomposer.get(klass);
@@ -98,8 +205,8 @@ class BaseAttributeDecomposer implements AttributeDecomposer.Step {
     if (decomposer == null) {
       // Not using Preconditions for verification so that this message is only generated when needed
       throw new NullPointerException("Could not find an AttributeDecomposer.Step for "
-          + klass.getCanonicalName());
+          + objectClass.getCanonicalName());
     }
-    return decomposer.decompose(object, alreadyDecomposed);
+    return decomposer;
   }
 }
@@ -6,13 +6,12 @@ import java.util.IdentityHashMap;
 
 /**
  * Converts an {@link AttributeHolder} into something serializable, also decomposing the
- * {@link AttributeHolder#getValue() value} of the holder.
+ * {@link AttributeHolder#getValue() value} of the holder. Holds no state between calls, so it can
+ * be shared between threads.
  */
-public class AttributeHolderDecomposer extends AbstractAttributeDecomposerStep {
+public class AttributeHolderDecomposer implements AttributeDecomposer.Step {
   private final AttributeDecomposer.Step _delegate;
   
-  private Object updatedValue;
-  
   /**
    * Creates an attribute holder decomposer that uses the specified delegate to decompose the
    * holder's value
@@ -22,37 +21,23 @@ public class AttributeHolderDecomposer extends AbstractAttributeDecomposerStep {
     _delegate = delegate;
   }
   
-  @Override
-  Serializable createMutableContainer(final Object object) {
-    AttributeHolder holder = (AttributeHolder)object;
-    return new AttributeHolder(holder.getValue());
-  }
-  
-  @Override
-  void decomposeInto(final Object o, final Serializable container,
-      final IdentityHashMap<Object, Serializable> alreadyDecomposed) {
-    AttributeHolder holder = (AttributeHolder)o;
-    
-    updatedValue = _delegate.decompose(holder.getValue(), alreadyDecomposed);
-  }
-  
-  @Override
   public Serializable decompose(final Object object,
       final IdentityHashMap<Object, Serializable> alreadyDecomposed) {
     if (object == null) {
       return null;
     }
     
-    if (alreadyDecomposed.containsKey(object)) {
+    if (alreadyDecomposed != null && alreadyDecomposed.containsKey(object)) {
       return alreadyDecomposed.get(object);
     }
-    else {
-      Serializable mutableContainer = createMutableContainer(object);
-      alreadyDecomposed.put(object, mutableContainer);
-      decomposeInto(object, mutableContainer, alreadyDecomposed);
-      Serializable holder = new AttributeHolder(updatedValue);
-      return holder;
+    // a value that refers back to this holder is tracked by the step that decomposes the value, so
+    // the holder itself is only tracked once something else has started tracking
+    AttributeHolder holder = (AttributeHolder)object;
+    Serializable decomposed = new AttributeHolder(_delegate.decompose(holder.getValue(),
+        alreadyDecomposed));
+    if (alreadyDecomposed != null) {
+      alreadyDecomposed.put(object, decomposed);
     }
+    return decomposed;
   }
-  
 }
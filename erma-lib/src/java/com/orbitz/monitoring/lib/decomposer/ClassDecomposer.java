@@ -18,4 +18,9 @@ class ClassDecomposer extends AbstractAttributeDecomposerStep {
       final IdentityHashMap<Object, Serializable> alreadyDecomposed) {
     // No-op
   }
+  
+  @Override
+  boolean hasContents() {
+    return false;
+  }
 }
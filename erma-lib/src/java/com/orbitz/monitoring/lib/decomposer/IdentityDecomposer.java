@@ -18,4 +18,8 @@ class IdentityDecomposer extends AbstractAttributeDecomposerStep {
                        IdentityHashMap alreadyDecomposed) {
         // No-op
     }
+
+    boolean hasContents() {
+        return false;
+    }
 }
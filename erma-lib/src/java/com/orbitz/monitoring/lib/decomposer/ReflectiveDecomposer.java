@@ -1,30 +1,147 @@
 package com.orbitz.monitoring.lib.decomposer;
 
+import java.beans.PropertyDescriptor;
 import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.apache.commons.beanutils.DynaProperty;
 import org.apache.commons.beanutils.LazyDynaBean;
+import org.apache.commons.beanutils.LazyDynaClass;
 import org.apache.commons.beanutils.MethodUtils;
-import org.apache.commons.beanutils.WrapDynaBean;
-import org.apache.commons.beanutils.WrapDynaClass;
+import org.apache.commons.beanutils.PropertyUtils;
 
 /**
  * Given an object, this class reflects over its JavaBean attributes and creates a Serializable
  * representation containing serializable versions of the JavaBean attributes.
- * 
+ * <p>
+ * The readable properties of each class are worked out once and kept as a plan of the methods to
+ * call, so decomposing another object of the same class only calls its getters. The result is
+ * always a {@link LazyDynaBean}, which renderers and other VMs reading serialized monitors expect.
+ * Its <code>class</code> property holds the name of the decomposed object's class.
+ * <p>
+ * The properties decomposed for a class can be narrowed with lists of included and excluded
+ * property names, and how much of an object graph is decomposed can be limited. An object beyond
+ * either limit is replaced by a bean holding only its <code>class</code>.
+ *
  * @author Doug Barth
  */
 class ReflectiveDecomposer extends AbstractAttributeDecomposerStep {
+  private static final String CLASS_PROPERTY = "class";
+  // shared by every instance, so the depth counts objects nested across the bean and throwable
+  // steps of a decomposer
+  private static final ThreadLocal<int[]> DEPTH = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[1];
+    }
+  };
+  
   private final AttributeDecomposer.Step _delegate;
+  // replaced as a whole when the property lists change, so a plan made from the old lists can't
+  // be kept with the new ones
+  private volatile PropertyLists _propertyLists = new PropertyLists(
+      Collections.<String, Set<String>>emptyMap(), Collections.<String, Set<String>>emptyMap());
+  private volatile int _maxDepth;
+  private volatile int _maxSize;
   
   public ReflectiveDecomposer(final AttributeDecomposer.Step delegate) {
     _delegate = delegate;
   }
   
+  /**
+   * Sets the only properties decomposed for some classes
+   * @param includedProperties property names keyed by the name of the class or interface they
+   *        apply to. They also apply to subclasses and implementations. The <code>class</code>
+   *        property is always included.
+   */
+  public synchronized void setIncludedProperties(
+      final Map<String, ? extends Collection<String>> includedProperties) {
+    _propertyLists = new PropertyLists(copyPropertyLists(includedProperties),
+        _propertyLists._excluded);
+  }
+  
+  /**
+   * Sets properties that aren't decomposed for some classes
+   * @param excludedProperties property names keyed by the name of the class or interface they
+   *        apply to. They also apply to subclasses and implementations.
+   */
+  public synchronized void setExcludedProperties(
+      final Map<String, ? extends Collection<String>> excludedProperties) {
+    _propertyLists = new PropertyLists(_propertyLists._included,
+        copyPropertyLists(excludedProperties));
+  }
+  
+  /**
+   * Sets how deeply objects decomposed by this step may be nested within each other
+   * @param maxDepth the greatest depth, or 0 for no limit
+   */
+  public void setMaxDepth(final int maxDepth) {
+    if (maxDepth < 0) {
+      throw new IllegalArgumentException("maxDepth must not be negative: " + maxDepth);
+    }
+    _maxDepth = maxDepth;
+  }
+  
+  /**
+   * Sets how many objects containing others, such as beans, lists and maps, may be decomposed for
+   * one attribute before this step stops decomposing further objects
+   * @param maxSize the greatest number of objects, or 0 for no limit
+   */
+  public void setMaxSize(final int maxSize) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("maxSize must not be negative: " + maxSize);
+    }
+    _maxSize = maxSize;
+  }
+  
+  @Override
+  public Serializable decompose(final Object object,
+      final IdentityHashMap<Object, Serializable> alreadyDecomposed) {
+    if (object == null) {
+      return null;
+    }
+    
+    if (alreadyDecomposed != null) {
+      final Serializable decomposed = alreadyDecomposed.get(object);
+      if (decomposed != null) {
+        return decomposed;
+      }
+      final int maxSize = _maxSize;
+      if (maxSize > 0 && alreadyDecomposed.size() >= maxSize) {
+        return truncated(object);
+      }
+    }
+    final int maxDepth = _maxDepth;
+    if (maxDepth == 0) {
+      return super.decompose(object, alreadyDecomposed);
+    }
+    final int[] depth = DEPTH.get();
+    if (depth[0] >= maxDepth) {
+      return truncated(object);
+    }
+    depth[0]++;
+    try {
+      return super.decompose(object, alreadyDecomposed);
+    }
+    finally {
+      depth[0]--;
+    }
+  }
+  
   @Override
   Serializable createMutableContainer(final Object o) {
-    return new LazyDynaBean();
+    return new LazyDynaBean(new LazyDynaClass(null, findPlan(o.getClass())._properties));
   }
   
   /**
@@ -36,23 +153,169 @@ class ReflectiveDecomposer extends AbstractAttributeDecomposerStep {
   @Override
   void decomposeInto(final Object o, final Serializable container,
       final IdentityHashMap<Object, Serializable> alreadyDecomposed) {
-    LazyDynaBean decomposed = (LazyDynaBean)container;
-    WrapDynaBean bean = new WrapDynaBean(o);
-    WrapDynaClass dynaClass = (WrapDynaClass)bean.getDynaClass();
-    for (DynaProperty property : dynaClass.getDynaProperties()) {
-      String name = property.getName();
-      Method readMethod = dynaClass.getPropertyDescriptor(name).getReadMethod();
-      if (MethodUtils.getAccessibleMethod(readMethod) != null) {
-        Object beanProperty;
-        try {
-          beanProperty = bean.get(name);
+    // every property is already declared by the bean's class, so the values are put straight into
+    // its map rather than checked one by one by set()
+    @SuppressWarnings("unchecked")
+    final Map<String, Object> decomposed = ((LazyDynaBean)container).getMap();
+    final AccessorPlan plan = findPlan(o.getClass());
+    decomposed.put(CLASS_PROPERTY, plan._className);
+    for (int i = 0; i < plan._readMethods.length; i++) {
+      final String name = plan._names[i];
+      Object beanProperty;
+      try {
+        beanProperty = plan._readMethods[i].invoke(o, (Object[])null);
+      }
+      catch (InvocationTargetException e) {
+        throw new RuntimeException("Unable to decompose " + plan._className + "." + name,
+            e.getCause());
+      }
+      catch (IllegalAccessException e) {
+        throw new RuntimeException("Unable to decompose " + plan._className + "." + name, e);
+      }
+      decomposed.put(name, _delegate.decompose(beanProperty, alreadyDecomposed));
+    }
+  }
+  
+  /**
+   * Whether a property is read by calling its getter. Subclasses that decompose a property
+   * themselves leave it out this way.
+   * @param name the name of the property
+   * @return true unless the property is decomposed some other way
+   */
+  boolean isReflected(final String name) {
+    return true;
+  }
+  
+  /**
+   * Whether objects nested directly within the object being decomposed can be decomposed without
+   * reaching either limit
+   * @param size how many objects they add to those decomposed for the attribute
+   * @param alreadyDecomposed the objects decomposed for the attribute so far
+   * @return true if none of them would be truncated
+   */
+  boolean withinLimits(final int size,
+      final IdentityHashMap<Object, Serializable> alreadyDecomposed) {
+    final int maxSize = _maxSize;
+    if (maxSize > 0 && alreadyDecomposed.size() + size > maxSize) {
+      return false;
+    }
+    final int maxDepth = _maxDepth;
+    return maxDepth == 0 || DEPTH.get()[0] < maxDepth;
+  }
+  
+  private Serializable truncated(final Object object) {
+    final LazyDynaBean bean = new LazyDynaBean();
+    bean.set(CLASS_PROPERTY, object.getClass().getName());
+    return bean;
+  }
+  
+  private AccessorPlan findPlan(final Class<?> klass) {
+    final PropertyLists propertyLists = _propertyLists;
+    AccessorPlan plan = propertyLists._plans.get(klass);
+    if (plan == null) {
+      plan = new AccessorPlan(this, klass, findPropertyList(klass, propertyLists._included),
+          findPropertyList(klass, propertyLists._excluded));
+      propertyLists._plans.putIfAbsent(klass, plan);
+    }
+    return plan;
+  }
+  
+  /**
+   * Gathers the property names listed for a class, its superclasses and the interfaces they
+   * implement
+   * @param klass the class
+   * @param propertyLists property names keyed by class name
+   * @return the property names, or null if none of the classes are listed
+   */
+  private static Set<String> findPropertyList(final Class<?> klass,
+      final Map<String, Set<String>> propertyLists) {
+    if (propertyLists.isEmpty()) {
+      return null;
+    }
+    Set<String> properties = null;
+    final List<Class<?>> types = new ArrayList<Class<?>>();
+    for (Class<?> type = klass; type != null; type = type.getSuperclass()) {
+      types.add(type);
+    }
+    for (int i = 0; i < types.size(); i++) {
+      final Class<?> type = types.get(i);
+      final Set<String> listed = propertyLists.get(type.getName());
+      if (listed != null) {
+        if (properties == null) {
+          properties = new HashSet<String>();
         }
-        catch (RuntimeException e) {
-          throw new RuntimeException("Unable to decompose " + o.getClass().getName() + "." + name,
-              e);
+        properties.addAll(listed);
+      }
+      for (Class<?> anInterface : type.getInterfaces()) {
+        if (!types.contains(anInterface)) {
+          types.add(anInterface);
         }
-        Serializable decomposedProperty = _delegate.decompose(beanProperty, alreadyDecomposed);
-        decomposed.set(name, decomposedProperty);
+      }
+    }
+    return properties;
+  }
+  
+  private static Map<String, Set<String>> copyPropertyLists(
+      final Map<String, ? extends Collection<String>> propertyLists) {
+    if (propertyLists == null || propertyLists.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    final Map<String, Set<String>> copy = new HashMap<String, Set<String>>();
+    for (Map.Entry<String, ? extends Collection<String>> entry : propertyLists.entrySet()) {
+      copy.put(entry.getKey(), new HashSet<String>(entry.getValue()));
+    }
+    return copy;
+  }
+  
+  /**
+   * The included and excluded property lists, and the plans made from them
+   */
+  private static final class PropertyLists {
+    private final Map<String, Set<String>> _included;
+    private final Map<String, Set<String>> _excluded;
+    private final ConcurrentMap<Class<?>, AccessorPlan> _plans =
+        new ConcurrentHashMap<Class<?>, AccessorPlan>();
+    
+    PropertyLists(final Map<String, Set<String>> included,
+        final Map<String, Set<String>> excluded) {
+      _included = included;
+      _excluded = excluded;
+    }
+  }
+  
+  /**
+   * The properties decomposed for a class and the methods that read them
+   */
+  private static final class AccessorPlan {
+    private final String _className;
+    private final String[] _names;
+    private final Method[] _readMethods;
+    private final DynaProperty[] _properties;
+    
+    AccessorPlan(final ReflectiveDecomposer step, final Class<?> klass, final Set<String> included,
+        final Set<String> excluded) {
+      _className = klass.getName();
+      final List<String> names = new ArrayList<String>();
+      final List<Method> readMethods = new ArrayList<Method>();
+      for (PropertyDescriptor descriptor : PropertyUtils.getPropertyDescriptors(klass)) {
+        final String name = descriptor.getName();
+        if (CLASS_PROPERTY.equals(name) || (included != null && !included.contains(name))
+            || (excluded != null && excluded.contains(name)) || !step.isReflected(name)) {
+          continue;
+        }
+        // a getter is only callable if it's declared by a public class or interface
+        final Method readMethod = MethodUtils.getAccessibleMethod(descriptor.getReadMethod());
+        if (readMethod != null) {
+          names.add(name);
+          readMethods.add(readMethod);
+        }
+      }
+      _names = names.toArray(new String[names.size()]);
+      _readMethods = readMethods.toArray(new Method[readMethods.size()]);
+      _properties = new DynaProperty[_names.length + 1];
+      _properties[0] = new DynaProperty(CLASS_PROPERTY);
+      for (int i = 0; i < _names.length; i++) {
+        _properties[i + 1] = new DynaProperty(_names[i]);
       }
     }
   }
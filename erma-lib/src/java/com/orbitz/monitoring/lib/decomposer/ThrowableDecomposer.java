@@ -0,0 +1,222 @@
+package com.orbitz.monitoring.lib.decomposer;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.commons.beanutils.LazyDynaBean;
+
+/**
+ * Decomposes {@link Throwable throwables} as {@link ReflectiveDecomposer} does, adding a
+ * <code>fingerprint</code> property that identifies the kind of failure. The fingerprint is made
+ * from the throwable's class, its message with any numbers left out and the top frames of its stack
+ * trace, and is the same in every VM, so failures can be grouped by it.
+ * <p>
+ * Decomposing the stack trace is most of the cost of decomposing a throwable, and while something
+ * is failing the same stack trace is decomposed over and over. The most recently decomposed stack
+ * traces are kept, keyed by all of their frames, and shared by every later throwable with an equal
+ * stack trace. Throwables with the same fingerprint but different stack traces each keep their own.
+ * If repeated stack traces are omitted, a throwable whose stack trace is already kept is decomposed
+ * without one, and its fingerprint refers back to the first throwable decomposed with it. A stack
+ * trace that would be cut short by the depth or size limits is decomposed as usual and not kept.
+ */
+class ThrowableDecomposer extends ReflectiveDecomposer {
+  static final int DEFAULT_STACK_TRACE_CACHE_SIZE = 256;
+  
+  private static final String STACK_TRACE_PROPERTY = "stackTrace";
+  private static final String FINGERPRINT_PROPERTY = "fingerprint";
+  private static final int FINGERPRINT_FRAMES = 5;
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+  
+  private final AttributeDecomposer.Step _delegate;
+  private final StackTraceCache _stackTraces = new StackTraceCache(DEFAULT_STACK_TRACE_CACHE_SIZE);
+  private volatile boolean _omitRepeatedStackTraces;
+  
+  public ThrowableDecomposer(final AttributeDecomposer.Step delegate) {
+    super(delegate);
+    _delegate = delegate;
+  }
+  
+  /**
+   * Sets how many decomposed stack traces are kept
+   * @param stackTraceCacheSize the number of stack traces kept, or 0 to keep none
+   */
+  public void setStackTraceCacheSize(final int stackTraceCacheSize) {
+    if (stackTraceCacheSize < 0) {
+      throw new IllegalArgumentException("stackTraceCacheSize must not be negative: "
+          + stackTraceCacheSize);
+    }
+    _stackTraces.setMaxSize(stackTraceCacheSize);
+  }
+  
+  /**
+   * Sets whether throwables whose stack trace is already kept are decomposed without it
+   * @param omitRepeatedStackTraces true to leave out repeated stack traces
+   */
+  public void setOmitRepeatedStackTraces(final boolean omitRepeatedStackTraces) {
+    _omitRepeatedStackTraces = omitRepeatedStackTraces;
+  }
+  
+  @Override
+  boolean isReflected(final String name) {
+    return !STACK_TRACE_PROPERTY.equals(name);
+  }
+  
+  @Override
+  void decomposeInto(final Object o, final Serializable container,
+      final IdentityHashMap<Object, Serializable> alreadyDecomposed) {
+    super.decomposeInto(o, container, alreadyDecomposed);
+    final Throwable throwable = (Throwable)o;
+    final StackTraceElement[] stackTrace = throwable.getStackTrace();
+    final String fingerprint = fingerprint(throwable, stackTrace);
+    final LazyDynaBean decomposed = (LazyDynaBean)container;
+    decomposed.set(FINGERPRINT_PROPERTY, fingerprint);
+    // the array and its elements, which only hold simple values
+    if (!withinLimits(stackTrace.length + 1, alreadyDecomposed)) {
+      // a truncated stack trace depends on where the throwable is, so it isn't kept
+      decomposed.set(STACK_TRACE_PROPERTY, _delegate.decompose(stackTrace, alreadyDecomposed));
+      return;
+    }
+    Serializable decomposedStackTrace = _stackTraces.get(stackTrace);
+    if (decomposedStackTrace == null) {
+      final IdentityHashMap<Object, Serializable> decomposedElements =
+          new IdentityHashMap<Object, Serializable>();
+      decomposedStackTrace = _delegate.decompose(stackTrace, decomposedElements);
+      _stackTraces.put(stackTrace, decomposedStackTrace);
+      alreadyDecomposed.putAll(decomposedElements);
+    }
+    else {
+      // counts the kept stack trace against the attribute's size as if it had been decomposed
+      alreadyDecomposed.put(stackTrace, decomposedStackTrace);
+      final Object[] decomposedElements = (Object[])decomposedStackTrace;
+      for (int i = 0; i < stackTrace.length; i++) {
+        alreadyDecomposed.put(stackTrace[i], (Serializable)decomposedElements[i]);
+      }
+      if (_omitRepeatedStackTraces) {
+        return;
+      }
+    }
+    decomposed.set(STACK_TRACE_PROPERTY, decomposedStackTrace);
+  }
+  
+  /**
+   * Makes the fingerprint of a throwable
+   * @param throwable the throwable
+   * @param stackTrace the throwable's stack trace
+   * @return a 64 bit FNV-1a hash of the throwable's class, message and top stack frames, in hex
+   */
+  static String fingerprint(final Throwable throwable, final StackTraceElement[] stackTrace) {
+    long hash = hash(FNV_OFFSET_BASIS, throwable.getClass().getName(), false);
+    hash = hash(hash, throwable.getMessage(), true);
+    final int frames = Math.min(FINGERPRINT_FRAMES, stackTrace.length);
+    for (int i = 0; i < frames; i++) {
+      hash = hash(hash, stackTrace[i].getClassName(), false);
+      hash = hash(hash, stackTrace[i].getMethodName(), false);
+      final int lineNumber = stackTrace[i].getLineNumber();
+      for (int shift = 0; shift < 32; shift += 8) {
+        hash = (hash ^ ((lineNumber >>> shift) & 0xff)) * FNV_PRIME;
+      }
+    }
+    return Long.toHexString(hash);
+  }
+  
+  /**
+   * Adds a string to a hash
+   * @param hash the hash so far
+   * @param value the string, which may be null
+   * @param template true to hash each run of digits as a single '#', so that messages that only
+   *        differ by ids or counts hash alike
+   * @return the new hash
+   */
+  private static long hash(long hash, final String value, final boolean template) {
+    if (value != null) {
+      boolean inNumber = false;
+      for (int i = 0; i < value.length(); i++) {
+        char c = value.charAt(i);
+        if (template && Character.isDigit(c)) {
+          if (inNumber) {
+            continue;
+          }
+          inNumber = true;
+          c = '#';
+        }
+        else {
+          inNumber = false;
+        }
+        hash = (hash ^ c) * FNV_PRIME;
+      }
+    }
+    // separates this value from the next one
+    return (hash ^ 0xffff) * FNV_PRIME;
+  }
+  
+  /**
+   * The most recently decomposed stack traces
+   */
+  private static final class StackTraceCache {
+    private int _maxSize;
+    @SuppressWarnings("serial")
+    private final Map<StackTraceKey, Serializable> _entries =
+        new LinkedHashMap<StackTraceKey, Serializable>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(final Map.Entry<StackTraceKey, Serializable> eldest) {
+            return size() > _maxSize;
+          }
+        };
+    
+    StackTraceCache(final int maxSize) {
+      _maxSize = maxSize;
+    }
+    
+    /**
+     * Gets the decomposed stack trace kept for a stack trace
+     * @param stackTrace the stack trace
+     * @return the decomposed stack trace, or null if none is kept for it
+     */
+    synchronized Serializable get(final StackTraceElement[] stackTrace) {
+      return _entries.get(new StackTraceKey(stackTrace));
+    }
+    
+    synchronized void put(final StackTraceElement[] stackTrace, final Serializable decomposed) {
+      if (_maxSize > 0) {
+        _entries.put(new StackTraceKey(stackTrace), decomposed);
+      }
+    }
+    
+    synchronized void setMaxSize(final int maxSize) {
+      _maxSize = maxSize;
+      final Iterator<StackTraceKey> stackTraces = _entries.keySet().iterator();
+      while (_entries.size() > maxSize) {
+        stackTraces.next();
+        stackTraces.remove();
+      }
+    }
+  }
+  
+  /**
+   * Compares stack traces by all of their frames
+   */
+  private static final class StackTraceKey {
+    private final StackTraceElement[] _stackTrace;
+    private final int _hashCode;
+    
+    StackTraceKey(final StackTraceElement[] stackTrace) {
+      _stackTrace = stackTrace;
+      _hashCode = Arrays.hashCode(stackTrace);
+    }
+    
+    @Override
+    public int hashCode() {
+      return _hashCode;
+    }
+    
+    @Override
+    public boolean equals(final Object o) {
+      return o instanceof StackTraceKey && _hashCode == ((StackTraceKey)o)._hashCode
+          && Arrays.equals(_stackTrace, ((StackTraceKey)o)._stackTrace);
+    }
+  }
+}
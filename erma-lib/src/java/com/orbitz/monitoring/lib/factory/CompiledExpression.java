@@ -0,0 +1,673 @@
+package com.orbitz.monitoring.lib.factory;
+
+import com.orbitz.monitoring.api.Monitor;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A predicate tree compiled from the subset of the JEXL expression language that is commonly used in
+ * {@link ProcessGroup} expressions. Attributes are read directly from the monitor instead of being
+ * copied into a JEXL context.
+ * <p>
+ * The supported subset is:
+ * <ul>
+ * <li>attribute references: <code>name</code>, <code>m.name</code>, <code>m.get('name')</code>
+ * and <code>m.getAsString('name')</code></li>
+ * <li>string, integer, decimal, boolean and null literals</li>
+ * <li><code>==, !=, &lt;, &lt;=, &gt;, &gt;=</code> and their <code>eq, ne, lt, le, gt, ge</code>
+ * spellings between an attribute and a literal</li>
+ * <li><code>matches, startsWith, endsWith</code> and <code>equals</code> with a string literal</li>
+ * <li><code>and, or, not, &amp;&amp;, ||, !</code> and parentheses</li>
+ * </ul>
+ * {@link #compile(String)} returns null for anything else. When a compiled expression meets a value
+ * whose JEXL coercion it does not reproduce, such as comparing a number to a string,
+ * {@link #evaluate(Monitor)} returns null and the caller should evaluate the JEXL expression instead.
+ */
+final class CompiledExpression {
+  private static final Pattern TOKEN = Pattern
+      .compile("\\s*('[^'\\\\]*'|\"[^\"\\\\]*\"|[0-9]+(\\.[0-9]+)?|[A-Za-z_$][A-Za-z_$0-9]*"
+          + "|==|!=|<=|>=|&&|\\|\\||\\S)");
+
+  /**
+   * Properties that JEXL resolves through a getter on the monitor rather than through
+   * {@link Monitor#get(String)}
+   */
+  private static final Set<String> GETTER_PROPERTIES = new HashSet<String>(Arrays.asList("all",
+      "allAttributeHolders", "allSerializable", "attributes", "childMonitors", "class",
+      "inheritableAttributeHolders", "inheritableAttributes", "level", "serializableChildMonitors",
+      "serializableMomento"));
+
+  private static final String MONITOR_VARIABLE = "m";
+  private static final String KNOWN_MONITOR_PACKAGE = "com.orbitz.monitoring.api.";
+
+  private final Node _root;
+  private final Set<String> _attributeNames;
+
+  private CompiledExpression(final Node root, final Set<String> attributeNames) {
+    _root = root;
+    _attributeNames = Collections.unmodifiableSet(attributeNames);
+  }
+
+  /**
+   * Compiles an expression
+   * @param expression the JEXL expression
+   * @return the compiled expression, or null if the expression is outside the supported subset
+   */
+  static CompiledExpression compile(final String expression) {
+    final List<String> tokens = tokenize(expression);
+    if (tokens == null || tokens.isEmpty()) {
+      return null;
+    }
+    final Parser parser = new Parser(tokens);
+    final Node root = parser.parseOr();
+    if (root == null || !parser.atEnd()) {
+      return null;
+    }
+    return new CompiledExpression(root, parser._attributeNames);
+  }
+
+  /**
+   * Evaluates this expression against a monitor
+   * @param monitor the monitor
+   * @return the value the JEXL expression would produce, or null if it can't be determined without
+   *         JEXL
+   */
+  Boolean evaluate(final Monitor monitor) {
+    return _root.test(monitor);
+  }
+
+  /**
+   * Gets the names of the attributes this expression reads
+   * @return the attribute names
+   */
+  Set<String> getAttributeNames() {
+    return _attributeNames;
+  }
+
+  private static List<String> tokenize(final String expression) {
+    final List<String> tokens = new java.util.ArrayList<String>();
+    final Matcher matcher = TOKEN.matcher(expression);
+    int end = 0;
+    while (matcher.find() && matcher.start() == end) {
+      final String token = matcher.group(1);
+      if (token.charAt(0) == '\'' || token.charAt(0) == '"') {
+        if (!isStringToken(token)) {
+          // a quote that doesn't start a whole literal, as when the literal holds an escape
+          return null;
+        }
+      }
+      else if (token.charAt(0) == '\\') {
+        return null;
+      }
+      tokens.add(token);
+      end = matcher.end();
+    }
+    if (expression.substring(end).trim().length() > 0) {
+      return null;
+    }
+    return tokens;
+  }
+
+  /**
+   * Determines whether a token is a whole string literal, quoted at both ends
+   */
+  private static boolean isStringToken(final String token) {
+    if (token == null || token.length() < 2) {
+      return false;
+    }
+    final char quote = token.charAt(0);
+    return (quote == '\'' || quote == '"') && token.charAt(token.length() - 1) == quote
+        && token.indexOf('\\') < 0;
+  }
+
+  // ** PARSER **************************************************************
+  /**
+   * A recursive descent parser over the supported subset. Each parse method returns null when the
+   * input is not supported.
+   */
+  private static final class Parser {
+    private final List<String> _tokens;
+    private final Set<String> _attributeNames = new HashSet<String>();
+    private int _position;
+
+    private Parser(final List<String> tokens) {
+      _tokens = tokens;
+    }
+
+    private boolean atEnd() {
+      return _position == _tokens.size();
+    }
+
+    private String peek(final int offset) {
+      final int index = _position + offset;
+      return index < _tokens.size() ? _tokens.get(index) : null;
+    }
+
+    private boolean accept(final String token, final String alternative) {
+      final String next = peek(0);
+      if (next != null && (next.equals(token) || next.equals(alternative))) {
+        _position++;
+        return true;
+      }
+      return false;
+    }
+
+    private Node parseOr() {
+      Node left = parseAnd();
+      while (left != null && accept("or", "||")) {
+        final Node right = parseAnd();
+        left = (right == null) ? null : new Or(left, right);
+      }
+      return left;
+    }
+
+    private Node parseAnd() {
+      Node left = parseUnary();
+      while (left != null && accept("and", "&&")) {
+        final Node right = parseUnary();
+        left = (right == null) ? null : new And(left, right);
+      }
+      return left;
+    }
+
+    private Node parseUnary() {
+      if (accept("not", "!")) {
+        // JEXL negates the operand alone, so a comparison after it is left to JEXL
+        final Node operand = parseNegated();
+        return (operand == null || Comparison.operatorFor(peek(0)) != Comparison.NONE) ? null
+            : new Not(operand);
+      }
+      if (accept("(", null)) {
+        final Node inner = parseOr();
+        return (inner != null && accept(")", null)) ? inner : null;
+      }
+      return parseComparison();
+    }
+
+    /**
+     * Parses the operand of a negation, which is only supported if it's a group or a boolean
+     */
+    private Node parseNegated() {
+      if ("not".equals(peek(0)) || "!".equals(peek(0))) {
+        return parseUnary();
+      }
+      if (accept("(", null)) {
+        final Node inner = parseOr();
+        return (inner != null && accept(")", null)) ? inner : null;
+      }
+      final Object operand = parseOperand();
+      return (operand == null) ? null : truth(operand);
+    }
+
+    private Node parseComparison() {
+      final Object left = parseOperand();
+      if (left == null) {
+        return null;
+      }
+      final int operator = parseOperator();
+      if (operator == Comparison.NONE) {
+        return truth(left);
+      }
+      final Object right = parseOperand();
+      if (left instanceof Value && isLiteral(right)) {
+        return new Comparison((Value)left, operator, literalValue(right));
+      }
+      if (right instanceof Value && isLiteral(left)) {
+        return new Comparison((Value)right, Comparison.reverse(operator), literalValue(left));
+      }
+      return null;
+    }
+
+    /**
+     * Makes a node of an operand used directly as a boolean
+     */
+    private static Node truth(final Object operand) {
+      if (operand instanceof Node) {
+        return (Node)operand;
+      }
+      if (operand instanceof Value) {
+        return new Truth((Value)operand);
+      }
+      return (operand == Boolean.TRUE || operand == Boolean.FALSE) ? new Constant(
+          (Boolean)operand) : null;
+    }
+
+    private int parseOperator() {
+      final String next = peek(0);
+      final int operator = Comparison.operatorFor(next);
+      if (operator != Comparison.NONE) {
+        _position++;
+      }
+      return operator;
+    }
+
+    /**
+     * Parses a literal, an attribute {@link Value} or a method {@link Node} on an attribute
+     */
+    private Object parseOperand() {
+      final String token = peek(0);
+      if (token == null) {
+        return null;
+      }
+      final char first = token.charAt(0);
+      if (isStringToken(token)) {
+        _position++;
+        return new StringLiteral(token.substring(1, token.length() - 1));
+      }
+      if (Character.isDigit(first)) {
+        _position++;
+        return (token.indexOf('.') >= 0) ? (Object)Float.valueOf(token) : (Object)Integer
+            .valueOf(token);
+      }
+      if ("true".equals(token) || "false".equals(token)) {
+        _position++;
+        return Boolean.valueOf(token);
+      }
+      if ("null".equals(token)) {
+        _position++;
+        return NullLiteral.INSTANCE;
+      }
+      final Value value = parseValue();
+      if (value == null) {
+        return null;
+      }
+      if (".".equals(peek(0))) {
+        return parseMethod(value);
+      }
+      return value;
+    }
+
+    private Value parseValue() {
+      final String token = peek(0);
+      if (!Character.isJavaIdentifierStart(token.charAt(0)) || Comparison.isKeyword(token)) {
+        return null;
+      }
+      if (!MONITOR_VARIABLE.equals(token)) {
+        _position++;
+        _attributeNames.add(token);
+        return new Value(token, Value.CONTEXT);
+      }
+      if (!".".equals(peek(1)) || peek(2) == null) {
+        return null;
+      }
+      final String member = peek(2);
+      if (("get".equals(member) || "getAsString".equals(member)) && "(".equals(peek(3))
+          && isStringToken(peek(4)) && ")".equals(peek(5))) {
+        final String key = peek(4).substring(1, peek(4).length() - 1);
+        _position += 6;
+        _attributeNames.add(key);
+        return new Value(key, "get".equals(member) ? Value.GET : Value.GET_AS_STRING);
+      }
+      if (Character.isJavaIdentifierStart(member.charAt(0)) && !"(".equals(peek(3))
+          && !GETTER_PROPERTIES.contains(member)) {
+        _position += 3;
+        _attributeNames.add(member);
+        return new Value(member, Value.PROPERTY);
+      }
+      return null;
+    }
+
+    private Node parseMethod(final Value value) {
+      final String method = peek(1);
+      if (!"(".equals(peek(2)) || !isStringToken(peek(3)) || !")".equals(peek(4))) {
+        return null;
+      }
+      final String argument = peek(3).substring(1, peek(3).length() - 1);
+      final int kind = StringMethod.kindFor(method);
+      if (kind == StringMethod.NONE) {
+        return null;
+      }
+      Pattern pattern = null;
+      if (kind == StringMethod.MATCHES) {
+        try {
+          pattern = Pattern.compile(argument);
+        }
+        catch (PatternSyntaxException e) {
+          return null;
+        }
+      }
+      _position += 5;
+      return new StringMethod(value, kind, argument, pattern);
+    }
+
+    private static boolean isLiteral(final Object operand) {
+      return operand instanceof StringLiteral || operand instanceof Number
+          || operand instanceof Boolean || operand == NullLiteral.INSTANCE;
+    }
+
+    private static Object literalValue(final Object operand) {
+      if (operand instanceof StringLiteral) {
+        return ((StringLiteral)operand)._value;
+      }
+      return (operand == NullLiteral.INSTANCE) ? null : operand;
+    }
+  }
+
+  /**
+   * Distinguishes string literals from attribute names while parsing
+   */
+  private static final class StringLiteral {
+    private final String _value;
+
+    private StringLiteral(final String value) {
+      _value = value;
+    }
+  }
+
+  /**
+   * Marks the null literal while parsing
+   */
+  private static final class NullLiteral {
+    private static final NullLiteral INSTANCE = new NullLiteral();
+  }
+
+  // ** VALUES **************************************************************
+  /**
+   * Reads one attribute from a monitor the way the JEXL expression would have
+   */
+  private static final class Value {
+    /** A bare variable, resolved from the attributes copied into the JEXL context */
+    private static final int CONTEXT = 0;
+    /** m.key, resolved by JEXL through {@link Monitor#get(String)} */
+    private static final int PROPERTY = 1;
+    /** m.get('key') */
+    private static final int GET = 2;
+    /** m.getAsString('key') */
+    private static final int GET_AS_STRING = 3;
+
+    private final String _key;
+    private final int _kind;
+
+    private Value(final String key, final int kind) {
+      _key = key;
+      _kind = kind;
+    }
+
+    /**
+     * @return the value, null for a missing context variable, or {@link #UNKNOWN} if the result
+     *         can only be determined by JEXL
+     */
+    private Object read(final Monitor monitor) {
+      if (_kind == CONTEXT) {
+        return monitor.hasAttribute(_key) ? monitor.get(_key) : null;
+      }
+      if (monitor.hasAttribute(MONITOR_VARIABLE) || !monitor.hasAttribute(_key)) {
+        // "m" is shadowed by an attribute, or JEXL would see an AttributeUndefinedException
+        return UNKNOWN;
+      }
+      if (_kind == PROPERTY && !monitor.getClass().getName().startsWith(KNOWN_MONITOR_PACKAGE)) {
+        // other monitor classes may define a getter that JEXL would prefer
+        return UNKNOWN;
+      }
+      final Object value = monitor.get(_key);
+      return (_kind == GET_AS_STRING && value != null) ? value.toString() : value;
+    }
+  }
+
+  private static final Object UNKNOWN = new Object();
+
+  // ** NODES ***************************************************************
+  /**
+   * A node of the predicate tree
+   */
+  private abstract static class Node {
+    /**
+     * @return the result of the JEXL expression, or null if it can't be determined
+     */
+    abstract Boolean test(Monitor monitor);
+  }
+
+  private static final class Constant extends Node {
+    private final Boolean _value;
+
+    private Constant(final Boolean value) {
+      _value = value;
+    }
+
+    @Override
+    Boolean test(final Monitor monitor) {
+      return _value;
+    }
+  }
+
+  /**
+   * An attribute used directly as a boolean
+   */
+  private static final class Truth extends Node {
+    private final Value _value;
+
+    private Truth(final Value value) {
+      _value = value;
+    }
+
+    @Override
+    Boolean test(final Monitor monitor) {
+      final Object value = _value.read(monitor);
+      return (value instanceof Boolean) ? (Boolean)value : null;
+    }
+  }
+
+  private static final class And extends Node {
+    private final Node _left;
+    private final Node _right;
+
+    private And(final Node left, final Node right) {
+      _left = left;
+      _right = right;
+    }
+
+    @Override
+    Boolean test(final Monitor monitor) {
+      final Boolean left = _left.test(monitor);
+      if (left == null || !left.booleanValue()) {
+        return left;
+      }
+      return _right.test(monitor);
+    }
+  }
+
+  private static final class Or extends Node {
+    private final Node _left;
+    private final Node _right;
+
+    private Or(final Node left, final Node right) {
+      _left = left;
+      _right = right;
+    }
+
+    @Override
+    Boolean test(final Monitor monitor) {
+      final Boolean left = _left.test(monitor);
+      if (left == null || left.booleanValue()) {
+        return left;
+      }
+      return _right.test(monitor);
+    }
+  }
+
+  private static final class Not extends Node {
+    private final Node _operand;
+
+    private Not(final Node operand) {
+      _operand = operand;
+    }
+
+    @Override
+    Boolean test(final Monitor monitor) {
+      final Boolean operand = _operand.test(monitor);
+      return (operand == null) ? null : Boolean.valueOf(!operand.booleanValue());
+    }
+  }
+
+  /**
+   * Compares an attribute with a literal using the coercion rules of JEXL 1.0
+   */
+  private static final class Comparison extends Node {
+    private static final int NONE = -1;
+    private static final int EQ = 0;
+    private static final int NE = 1;
+    private static final int LT = 2;
+    private static final int LE = 3;
+    private static final int GT = 4;
+    private static final int GE = 5;
+
+    private static final List<String> SYMBOLS = Arrays.asList("==", "!=", "<", "<=", ">", ">=");
+    private static final List<String> WORDS = Arrays.asList("eq", "ne", "lt", "le", "gt", "ge");
+
+    private final Value _value;
+    private final int _operator;
+    private final Object _literal;
+
+    private Comparison(final Value value, final int operator, final Object literal) {
+      _value = value;
+      _operator = operator;
+      _literal = literal;
+    }
+
+    private static int operatorFor(final String token) {
+      final int symbol = SYMBOLS.indexOf(token);
+      return (symbol >= 0) ? symbol : WORDS.indexOf(token);
+    }
+
+    private static boolean isKeyword(final String token) {
+      return WORDS.contains(token) || "and".equals(token) || "or".equals(token)
+          || "not".equals(token) || "div".equals(token) || "mod".equals(token)
+          || "empty".equals(token) || "size".equals(token);
+    }
+
+    private static int reverse(final int operator) {
+      switch (operator) {
+        case LT:
+          return GT;
+        case LE:
+          return GE;
+        case GT:
+          return LT;
+        case GE:
+          return LE;
+        default:
+          return operator;
+      }
+    }
+
+    @Override
+    Boolean test(final Monitor monitor) {
+      final Object value = _value.read(monitor);
+      if (value == UNKNOWN) {
+        return null;
+      }
+      if (_operator == EQ || _operator == NE) {
+        final Boolean equal = equal(value, _literal);
+        if (equal == null) {
+          return null;
+        }
+        return Boolean.valueOf(equal.booleanValue() == (_operator == EQ));
+      }
+      if (value == null || _literal == null) {
+        return Boolean.FALSE;
+      }
+      final int comparison;
+      if (value instanceof Number && _literal instanceof Number) {
+        comparison = compareNumbers((Number)value, (Number)_literal);
+      }
+      else if (value instanceof String && _literal instanceof String) {
+        comparison = ((String)value).compareTo((String)_literal);
+      }
+      else {
+        return null;
+      }
+      switch (_operator) {
+        case LT:
+          return Boolean.valueOf(comparison < 0);
+        case LE:
+          return Boolean.valueOf(comparison <= 0);
+        case GT:
+          return Boolean.valueOf(comparison > 0);
+        default:
+          return Boolean.valueOf(comparison >= 0);
+      }
+    }
+
+    private static Boolean equal(final Object value, final Object literal) {
+      if (value == null || literal == null) {
+        return Boolean.valueOf(value == literal);
+      }
+      if (value.getClass() == literal.getClass()) {
+        return Boolean.valueOf(value.equals(literal));
+      }
+      if (value instanceof Number && literal instanceof Number) {
+        return Boolean.valueOf(compareNumbers((Number)value, (Number)literal) == 0);
+      }
+      return null;
+    }
+
+    private static int compareNumbers(final Number left, final Number right) {
+      if (isFloatingPoint(left) || isFloatingPoint(right)) {
+        return Double.compare(left.doubleValue(), right.doubleValue());
+      }
+      final long l = left.longValue();
+      final long r = right.longValue();
+      return (l < r) ? -1 : ((l == r) ? 0 : 1);
+    }
+
+    private static boolean isFloatingPoint(final Number number) {
+      return number instanceof Float || number instanceof Double;
+    }
+  }
+
+  /**
+   * Calls a boolean {@link String} method with a literal argument on an attribute
+   */
+  private static final class StringMethod extends Node {
+    private static final int NONE = -1;
+    private static final int MATCHES = 0;
+    private static final int STARTS_WITH = 1;
+    private static final int ENDS_WITH = 2;
+    private static final int EQUALS = 3;
+
+    private static final List<String> METHODS = Arrays.asList("matches", "startsWith", "endsWith",
+        "equals");
+
+    private final Value _value;
+    private final int _kind;
+    private final String _argument;
+    private final Pattern _pattern;
+
+    private StringMethod(final Value value, final int kind, final String argument,
+        final Pattern pattern) {
+      _value = value;
+      _kind = kind;
+      _argument = argument;
+      _pattern = pattern;
+    }
+
+    private static int kindFor(final String method) {
+      return METHODS.indexOf(method);
+    }
+
+    @Override
+    Boolean test(final Monitor monitor) {
+      final Object value = _value.read(monitor);
+      if (!(value instanceof String)) {
+        return null;
+      }
+      final String string = (String)value;
+      switch (_kind) {
+        case MATCHES:
+          return Boolean.valueOf(_pattern.matcher(string).matches());
+        case STARTS_WITH:
+          return Boolean.valueOf(string.startsWith(_argument));
+        case ENDS_WITH:
+          return Boolean.valueOf(string.endsWith(_argument));
+        default:
+          return Boolean.valueOf(string.equals(_argument));
+      }
+    }
+  }
+}
@@ -4,12 +4,14 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.orbitz.monitoring.api.Attribute;
 import com.orbitz.monitoring.api.Monitor;
 import com.orbitz.monitoring.api.MonitorProcessor;
 import com.orbitz.monitoring.api.MonitoringEngine;
 import com.orbitz.monitoring.api.MonitoringLevel;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.jexl.Expression;
 import org.apache.commons.jexl.ExpressionFactory;
 import org.apache.commons.jexl.JexlContext;
@@ -36,7 +38,10 @@ public class ProcessGroup {
   private MonitoringLevel _monitoringLevel = MonitoringLevel.INFO;
   private boolean _active = true;
   private Expression _appliesExpression;
+  private CompiledExpression _compiledExpression;
+  private boolean _expressionUsesAttributes;
   private final List<MonitorProcessor> _processors;
+  private final AtomicInteger _version = new AtomicInteger();
   
   public ProcessGroup(final MonitorProcessor processor) {
     this(Lists.newArrayList(processor));
@@ -84,25 +89,56 @@ public class ProcessGroup {
     return processorsForMonitor;
   }
   
+  /**
+   * Gets the lowest level of monitor that any processor of this group would take, using the
+   * processor level overrides of the {@link MonitoringEngine}. The expression isn't considered.
+   * @return the lowest level, or null if the group is inactive or has no processors
+   */
+  public MonitoringLevel getLowestMonitoredLevel() {
+    if (!isActive()) {
+      return null;
+    }
+    MonitoringLevel lowest = null;
+    for (MonitorProcessor processor : _processors) {
+      MonitoringLevel level = findMonitoringEngine().getProcessorLevel(processor.getName());
+      if (level == null) {
+        level = _monitoringLevel;
+      }
+      if (lowest == null || lowest.hasHigherPriorityThan(level)) {
+        lowest = level;
+      }
+    }
+    return lowest;
+  }
+  
   @VisibleForTesting
   MonitoringEngine findMonitoringEngine() {
     return MonitoringEngine.getInstance();
   }
   
   /**
-   * appliesTo will determine if this ProcessGroup should have the monitor.
+   * appliesTo will determine if this ProcessGroup should have the monitor. Expressions are evaluated
+   * by their compiled form when possible and by JEXL otherwise.
    * @param monitor being processed
    * @return true if the monitor will be handled by this process group, else false
    */
   @VisibleForTesting
   boolean matchesExpressionFor(final Monitor monitor) {
     boolean applies = true;
-    if (_appliesExpression != null) {
+    final CompiledExpression compiled = _compiledExpression;
+    if (compiled != null) {
+      final Boolean result = compiled.evaluate(monitor);
+      if (result != null) {
+        return result.booleanValue();
+      }
+    }
+    final Expression appliesExpression = _appliesExpression;
+    if (appliesExpression != null) {
       JexlContext context = JexlHelper.createContext();
       context.getVars().put("m", monitor);
       context.getVars().putAll(monitor.getAll());
       try {
-        Object result = _appliesExpression.evaluate(context);
+        Object result = appliesExpression.evaluate(context);
         if (result != null && result instanceof Boolean) {
           Boolean expressionResult = (Boolean)result;
           applies = expressionResult.booleanValue();
@@ -132,7 +168,54 @@ public class ProcessGroup {
       }
     }
     
+    final CompiledExpression compiled = (expression != null) ? CompiledExpression
+        .compile(expressionString) : null;
     _appliesExpression = expression;
+    _compiledExpression = compiled;
+    _expressionUsesAttributes = (expression != null) && usesAttributesOtherThanName(compiled);
+    _version.incrementAndGet();
+  }
+  
+  /**
+   * Indicates whether the processors returned by {@link #getProcessorsFor(Monitor)} depend on
+   * anything about a monitor other than its class, name and level. Results for groups that return
+   * false may be cached by processor factories until {@link #getVersion()} changes.
+   * @return true if this group's expression reads monitor attributes other than the name
+   */
+  public boolean isMonitorAttributeDependent() {
+    return _expressionUsesAttributes;
+  }
+  
+  /**
+   * Gets a counter that changes every time this group is activated, deactivated, has its level
+   * changed or has its expression replaced.
+   * @return the current configuration version of this group
+   */
+  public int getVersion() {
+    return _version.get();
+  }
+  
+  /**
+   * Determines whether an expression may read monitor attributes other than the name. Expressions
+   * that can't be compiled are assumed to read anything.
+   * @param expressionString the expression
+   * @return false if the expression reads nothing but the monitor name
+   */
+  @VisibleForTesting
+  static boolean usesAttributesOtherThanName(final String expressionString) {
+    return usesAttributesOtherThanName(CompiledExpression.compile(expressionString));
+  }
+  
+  private static boolean usesAttributesOtherThanName(final CompiledExpression compiled) {
+    if (compiled == null) {
+      return true;
+    }
+    for (String attribute : compiled.getAttributeNames()) {
+      if (!Attribute.NAME.equals(attribute)) {
+        return true;
+      }
+    }
+    return false;
   }
   
   /**
@@ -157,6 +240,7 @@ public class ProcessGroup {
   @ManagedAttribute(description = "Set to true/false to activate/deactivate the process group")
   public void setActive(final boolean active) {
     _active = active;
+    _version.incrementAndGet();
     
     log.info(this.toString() + (active ? " activated" : " deactivated"));
   }
@@ -207,6 +291,7 @@ public class ProcessGroup {
     }
     
     _monitoringLevel = MonitoringLevel.toLevel(levelString);
+    _version.incrementAndGet();
     
     log.info(this.toString() + " -> " + levelString);
   }
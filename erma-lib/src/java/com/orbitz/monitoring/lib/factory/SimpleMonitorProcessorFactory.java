@@ -1,22 +1,48 @@
 package com.orbitz.monitoring.lib.factory;
 
+import com.google.common.base.Objects;
 import com.google.common.collect.Lists;
+import com.orbitz.monitoring.api.Attribute;
+import com.orbitz.monitoring.api.DispatchPlan;
+import com.orbitz.monitoring.api.DispatchPlanSource;
 import com.orbitz.monitoring.api.Monitor;
 import com.orbitz.monitoring.api.MonitorProcessor;
 import com.orbitz.monitoring.api.MonitorProcessorFactory;
+import com.orbitz.monitoring.api.MonitoredLevelSource;
+import com.orbitz.monitoring.api.MonitoringEngine;
+import com.orbitz.monitoring.api.MonitoringLevel;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * An implementation of MonitorProcessorFactory that needs to be conifgured programmatically.
+ * <p>
+ * The processors chosen for a monitor are cached by the monitor's class, name and effective level.
+ * The cache is discarded whenever a {@link ProcessGroup} or the processor level overrides of the
+ * {@link MonitoringEngine} change. Process groups whose expressions read monitor attributes other
+ * than the name are always evaluated against the monitor itself.
+ * <p>
+ * The lowest level taken by any active process group is cached the same way, so
+ * {@link MonitoringEngine#isMonitored(String, MonitoringLevel)} stays cheap and follows changes to
+ * the groups and processor levels.
+ * <p>
+ * Routes that don't depend on monitor attributes also give the {@link MonitoringEngine} a
+ * {@link DispatchPlan}, which it keeps on the monitor for its later lifecycle events until the
+ * process groups, processor levels or monitor levels change.
  * 
  * @author Doug Barth
  */
-public class SimpleMonitorProcessorFactory implements MonitorProcessorFactory {
+public class SimpleMonitorProcessorFactory implements MonitorProcessorFactory, MonitoredLevelSource,
+    DispatchPlanSource {
+  private static final int DEFAULT_MAX_ROUTING_CACHE_SIZE = 4096;
+  
   // ** PRIVATE DATA ********************************************************
   private final ProcessGroup[] _processGroups;
+  private volatile RoutingCache _routingCache = new RoutingCache(-1);
+  private int _maxRoutingCacheSize = DEFAULT_MAX_ROUTING_CACHE_SIZE;
   
   // ** CONSTRUCTORS ********************************************************
   public SimpleMonitorProcessorFactory(ProcessGroup... processGroups) {
@@ -43,16 +69,42 @@ public class SimpleMonitorProcessorFactory implements MonitorProcessorFactory {
     }
   }
   
+  /**
+   * Gets the processors that apply to a monitor. The returned array may be shared between monitors
+   * and must not be modified.
+   * @param monitor the monitor to process
+   * @return the processors that are applicable for this monitor
+   */
   public MonitorProcessor[] getProcessorsForMonitor(final Monitor monitor) {
-    Set applicableProcessors = new LinkedHashSet();
-    for (int i = 0; i < _processGroups.length; i++) {
-      ProcessGroup processGroup = _processGroups[i];
-      for (MonitorProcessor processor : processGroup.getProcessorsFor(monitor)) {
-        applicableProcessors.add(processor);
-      }
+    final RoutingKey key = createRoutingKey(monitor);
+    if (key == null) {
+      return resolveProcessors(monitor);
     }
-    return (MonitorProcessor[])applicableProcessors
-        .toArray(new MonitorProcessor[applicableProcessors.size()]);
+    return findRoute(key, findRoutingCache(), monitor).getProcessorsFor(monitor);
+  }
+  
+  /**
+   * Gets the plan for dispatching the lifecycle events of a monitor, if the process groups that
+   * apply to it don't depend on its attributes
+   * @param monitor the monitor
+   * @return the plan, or null if the processors must be chosen for each event
+   */
+  public DispatchPlan getDispatchPlan(final Monitor monitor) {
+    final RoutingKey key = createRoutingKey(monitor);
+    if (key == null) {
+      return null;
+    }
+    final RoutingCache cache = findRoutingCache();
+    final Route route = findRoute(key, cache, monitor);
+    return route.getDispatchPlan(cache.version
+        + MonitoringEngine.getInstance().getMonitorLevelsVersion(), key);
+  }
+  
+  public boolean isCurrent(final DispatchPlan plan, final Monitor monitor) {
+    // the name isn't locked, so the monitor may have been renamed since the plan was made
+    return plan.getVersion() == getRoutingVersion()
+        + MonitoringEngine.getInstance().getMonitorLevelsVersion()
+        && ((RoutingKey)plan.getKey()).matches(monitor);
   }
   
   /**
@@ -70,6 +122,36 @@ public class SimpleMonitorProcessorFactory implements MonitorProcessorFactory {
     return (MonitorProcessor[])allMps.toArray(new MonitorProcessor[allMps.size()]);
   }
   
+  /**
+   * Gets the lowest level of monitor that any active process group would take. Process group
+   * expressions aren't considered.
+   * @return the lowest level, or null if no process group would take any monitor
+   */
+  public MonitoringLevel getLowestMonitoredLevel() {
+    final RoutingCache cache = findRoutingCache();
+    if (!cache.lowestLevelResolved) {
+      MonitoringLevel lowest = null;
+      for (int i = 0; i < _processGroups.length; i++) {
+        final MonitoringLevel level = _processGroups[i].getLowestMonitoredLevel();
+        if (level != null && (lowest == null || lowest.hasHigherPriorityThan(level))) {
+          lowest = level;
+        }
+      }
+      cache.lowestLevel = lowest;
+      cache.lowestLevelResolved = true;
+    }
+    return cache.lowestLevel;
+  }
+  
+  /**
+   * Sets the maximum number of distinct monitor class, name and level combinations whose processors
+   * will be cached. Once the limit is reached, other combinations are resolved on every call.
+   * @param maxRoutingCacheSize the maximum number of cached routes, or 0 to disable caching
+   */
+  public void setMaxRoutingCacheSize(final int maxRoutingCacheSize) {
+    _maxRoutingCacheSize = maxRoutingCacheSize;
+  }
+  
   public Set getAllMonitorProcessors() {
     Set allMps = new LinkedHashSet();
     for (int i = 0; i < _processGroups.length; i++) {
@@ -79,4 +161,194 @@ public class SimpleMonitorProcessorFactory implements MonitorProcessorFactory {
     
     return allMps;
   }
+  
+  // ** PRIVATE METHODS *****************************************************
+  private MonitorProcessor[] resolveProcessors(final Monitor monitor) {
+    Set applicableProcessors = new LinkedHashSet();
+    for (int i = 0; i < _processGroups.length; i++) {
+      ProcessGroup processGroup = _processGroups[i];
+      for (MonitorProcessor processor : processGroup.getProcessorsFor(monitor)) {
+        applicableProcessors.add(processor);
+      }
+    }
+    return (MonitorProcessor[])applicableProcessors
+        .toArray(new MonitorProcessor[applicableProcessors.size()]);
+  }
+  
+  private Route createRoute(final Monitor monitor) {
+    final MonitorProcessor[][] groupProcessors = new MonitorProcessor[_processGroups.length][];
+    boolean dynamic = false;
+    for (int i = 0; i < _processGroups.length; i++) {
+      final ProcessGroup processGroup = _processGroups[i];
+      if (processGroup.isMonitorAttributeDependent()) {
+        dynamic = true;
+      }
+      else {
+        groupProcessors[i] = Lists.newArrayList(processGroup.getProcessorsFor(monitor)).toArray(
+            new MonitorProcessor[0]);
+      }
+    }
+    return dynamic ? new Route(groupProcessors) : new Route(resolveProcessors(monitor));
+  }
+  
+  private Route findRoute(final RoutingKey key, final RoutingCache cache, final Monitor monitor) {
+    Route route = cache.routes.get(key);
+    if (route == null) {
+      route = createRoute(monitor);
+      if (cache.routes.size() < _maxRoutingCacheSize) {
+        cache.routes.put(key, route);
+      }
+    }
+    return route;
+  }
+  
+  private RoutingKey createRoutingKey(final Monitor monitor) {
+    if (_maxRoutingCacheSize <= 0 || !monitor.hasAttribute(Attribute.NAME)) {
+      return null;
+    }
+    final Object name = monitor.get(Attribute.NAME);
+    final MonitoringLevel level = monitor.getLevel();
+    if (name == null || level == null) {
+      return null;
+    }
+    return new RoutingKey(monitor.getClass(), name, level);
+  }
+  
+  private int getRoutingVersion() {
+    int version = MonitoringEngine.getInstance().getProcessorLevelsVersion();
+    for (int i = 0; i < _processGroups.length; i++) {
+      // versions only ever increase, so the sum changes whenever any of them does
+      version += _processGroups[i].getVersion();
+    }
+    return version;
+  }
+  
+  private RoutingCache findRoutingCache() {
+    final int version = getRoutingVersion();
+    RoutingCache cache = _routingCache;
+    if (cache.version != version) {
+      cache = new RoutingCache(version);
+      _routingCache = cache;
+    }
+    return cache;
+  }
+  
+  /**
+   * The cached routes and lowest level for one version of the process group and processor level
+   * configuration
+   */
+  private static final class RoutingCache {
+    private final int version;
+    private final ConcurrentHashMap<RoutingKey, Route> routes;
+    // written before the flag that publishes it
+    private MonitoringLevel lowestLevel;
+    private volatile boolean lowestLevelResolved;
+    
+    private RoutingCache(final int version) {
+      this.version = version;
+      routes = new ConcurrentHashMap<RoutingKey, Route>();
+    }
+  }
+  
+  /**
+   * The processors for one shape of monitor. Process groups that depend on monitor attributes have
+   * a null entry and are evaluated against each monitor.
+   */
+  private final class Route {
+    private final MonitorProcessor[] _processors;
+    private final MonitorProcessor[][] _groupProcessors;
+    private volatile DispatchPlan _dispatchPlan;
+    
+    private Route(final MonitorProcessor[] processors) {
+      _processors = processors;
+      _groupProcessors = null;
+    }
+    
+    private Route(final MonitorProcessor[][] groupProcessors) {
+      _processors = null;
+      _groupProcessors = groupProcessors;
+    }
+    
+    /**
+     * Gets the dispatch plan of a route that doesn't depend on monitor attributes
+     * @param version the version of the configuration, including monitor levels
+     * @param key the key the route was found by
+     * @return the plan, or null for a route that depends on monitor attributes
+     */
+    private DispatchPlan getDispatchPlan(final int version, final RoutingKey key) {
+      if (_processors == null) {
+        return null;
+      }
+      DispatchPlan plan = _dispatchPlan;
+      // monitor levels aren't part of the routing cache version, so a cached route may outlive them
+      if (plan == null || plan.getVersion() != version) {
+        plan = new DispatchPlan(_processors, version, key);
+        _dispatchPlan = plan;
+      }
+      return plan;
+    }
+    
+    private MonitorProcessor[] getProcessorsFor(final Monitor monitor) {
+      if (_processors != null) {
+        return _processors;
+      }
+      final Set<MonitorProcessor> applicableProcessors = new LinkedHashSet<MonitorProcessor>();
+      for (int i = 0; i < _groupProcessors.length; i++) {
+        if (_groupProcessors[i] != null) {
+          applicableProcessors.addAll(Arrays.asList(_groupProcessors[i]));
+        }
+        else {
+          for (MonitorProcessor processor : _processGroups[i].getProcessorsFor(monitor)) {
+            applicableProcessors.add(processor);
+          }
+        }
+      }
+      return applicableProcessors.toArray(new MonitorProcessor[applicableProcessors.size()]);
+    }
+  }
+  
+  /**
+   * Identifies the shape of a monitor for routing purposes
+   */
+  private static final class RoutingKey {
+    private final Class<?> _monitorClass;
+    private final Object _name;
+    private final MonitoringLevel _level;
+    private final int _hashCode;
+    
+    private RoutingKey(final Class<?> monitorClass, final Object name, final MonitoringLevel level) {
+      _monitorClass = monitorClass;
+      _name = name;
+      _level = level;
+      _hashCode = Objects.hashCode(monitorClass, name, level);
+    }
+    
+    /**
+     * Checks whether a monitor still has the name and level of this key
+     * @param monitor a monitor of the class of this key
+     * @return true if the monitor would be routed by this key
+     */
+    private boolean matches(final Monitor monitor) {
+      return _level.equals(monitor.getLevel()) && monitor.hasAttribute(Attribute.NAME)
+          && _name.equals(monitor.get(Attribute.NAME));
+    }
+    
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof RoutingKey)) {
+        return false;
+      }
+      final RoutingKey that = (RoutingKey)o;
+      return _monitorClass == that._monitorClass && _name.equals(that._name)
+          && _level.equals(that._level);
+    }
+    
+    @Override
+    public int hashCode() {
+      return _hashCode;
+    }
+  }
 }
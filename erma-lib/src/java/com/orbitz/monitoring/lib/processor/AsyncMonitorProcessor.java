@@ -1,25 +1,140 @@
 package com.orbitz.monitoring.lib.processor;
 
 import com.google.common.collect.Lists;
+import com.orbitz.monitoring.api.Attribute;
+import com.orbitz.monitoring.api.BatchMonitorProcessor;
 import com.orbitz.monitoring.api.Monitor;
 import com.orbitz.monitoring.api.MonitorProcessor;
 import com.orbitz.monitoring.api.MonitorProcessorAttachable;
+import com.orbitz.monitoring.api.MonitoringLevel;
+import com.orbitz.monitoring.api.monitor.DeferredMomento;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
 
 /**
  * Processes monitors on a separate thread. This is recommended for use when decoupling the
  * processing of monitors from the gathering of the data is allowed.
+ * <p>
+ * By default the {@link Monitor#getSerializableMomento() momento} handed to the processing thread
+ * is made on the calling thread, so decomposing the monitor's attributes adds to the caller's
+ * latency. With {@link #setDeferredDecomposition(boolean) deferred decomposition} the caller only
+ * copies references to the attributes, and the momento is made on the processing thread.
+ * <p>
+ * Monitors wait for the processing thread in a queue, which is unbounded by default. With a
+ * {@link #setCapacity(int) capacity} set, the {@link #setOverloadPolicy(String) overload policy}
+ * decides what happens to a monitor handed off while the queue is full:
+ * <ul>
+ * <li>{@link #DROP_NEWEST} drops the monitor</li>
+ * <li>{@link #DROP_OLDEST} drops the monitor that has waited longest to make room for it</li>
+ * <li>{@link #DROP_BELOW_LEVEL} drops the monitor if its level is below the
+ * {@link #setDropLevel(String) drop level}, and otherwise makes room by dropping the oldest waiting
+ * monitor below that level, or waits as {@link #BLOCK} does if there is none</li>
+ * <li>{@link #BLOCK} makes the caller wait up to the {@link #setBlockTimeout(long) block timeout}
+ * for room, and drops the monitor if none was made</li>
+ * </ul>
+ * The queue depth, the drops under each policy and the time monitors wait in the queue are
+ * available as JMX attributes.
+ * <p>
+ * Monitors can be processed by several {@link #setShards(int) shards}, each with its own thread
+ * and queue of the configured capacity. A monitor goes to the shard picked by the hash of its
+ * {@link #setShardKey(String) shard key} attribute, its name by default, so monitors with the same
+ * key, and the events of one monitor, are processed in the order they were handed off. Keying on
+ * {@link Attribute#TRACE_ID} keeps each tree together when the inheritable strategy creates span
+ * ids. With more than one shard the attached processors are called from several threads at once
+ * and must be thread-safe.
+ * <p>
+ * With the {@link #setRingBufferHandoff(boolean) ring buffer handoff} each shard's queue is a
+ * preallocated ring of the configured capacity, 1024 if none is set, rounded up to a power of two.
+ * Handing off a monitor then allocates nothing but its momento and takes no lock, and the
+ * processing thread takes every monitor waiting in the ring at once. Its
+ * {@link #setWaitStrategy(String) wait strategy} decides how it waits for monitors. A ring can't
+ * give up a monitor already in it, so {@link #DROP_OLDEST} drops the newest monitor, and
+ * {@link #DROP_BELOW_LEVEL} waits as {@link #BLOCK} does for monitors at or above the drop level.
+ * <p>
+ * The processing thread takes the monitors waiting for it in batches of up to the
+ * {@link #setMaxBatchSize(int) maximum batch size}. Attached processors that implement
+ * {@link BatchMonitorProcessor} are given the monitors of a batch in one call, and are flushed
+ * when there are no more monitors waiting. Other processors are given them one at a time.
  * @author Doug Barth
  */
+@ManagedResource(description = "Processes monitors on a separate thread")
 public final class AsyncMonitorProcessor implements MonitorProcessor, MonitorProcessorAttachable {
+  private static final Logger log = Logger.getLogger(AsyncMonitorProcessor.class);
+  
+  /**
+   * The overload policy that drops the monitor being handed off
+   */
+  public static final String DROP_NEWEST = "DROP_NEWEST";
+  /**
+   * The overload policy that drops the monitor that has waited longest
+   */
+  public static final String DROP_OLDEST = "DROP_OLDEST";
+  /**
+   * The overload policy that drops monitors below the drop level
+   */
+  public static final String DROP_BELOW_LEVEL = "DROP_BELOW_LEVEL";
+  /**
+   * The overload policy that makes the caller wait for room
+   */
+  public static final String BLOCK = "BLOCK";
+  /**
+   * The wait strategy that checks the ring buffer continually
+   */
+  public static final String BUSY_SPIN_WAIT = "BUSY_SPIN";
+  /**
+   * The wait strategy that yields the processing thread between checks of the ring buffer
+   */
+  public static final String YIELDING_WAIT = "YIELD";
+  /**
+   * The wait strategy that parks the processing thread briefly between checks of the ring buffer
+   */
+  public static final String PARKING_WAIT = "PARK";
+  /**
+   * The wait strategy that blocks the processing thread until a monitor is handed off
+   */
+  public static final String BLOCKING_WAIT = "BLOCKING";
+  
+  private static final int MONITOR_CREATED = 0;
+  private static final int MONITOR_STARTED = 1;
+  private static final int PROCESS = 2;
+  private static final int DEFAULT_RING_BUFFER_SIZE = 1024;
+  private static final int DEFAULT_MAX_BATCH_SIZE = 256;
+  
   private String _name;
   private List<MonitorProcessor> _processors;
-  private ExecutorService _monitorProcessingExecutor;
+  private ThreadPoolExecutor[] _monitorProcessingExecutors;
+  private MonitorRingBuffer[] _ringBuffers;
+  private boolean _ringBufferHandoff;
+  private String _waitStrategy = BLOCKING_WAIT;
+  private volatile boolean _deferredDecomposition;
+  private int _capacity;
+  private int _shards = 1;
+  private volatile String _shardKey = Attribute.NAME;
+  private volatile String _overloadPolicy = DROP_NEWEST;
+  private volatile MonitoringLevel _dropLevel = MonitoringLevel.INFO;
+  private volatile long _blockTimeout = 100;
+  private volatile int _maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+  private final RejectedExecutionHandler _overloadHandler = new OverloadHandler();
+  private final AtomicLong _droppedNewest = new AtomicLong();
+  private final AtomicLong _droppedOldest = new AtomicLong();
+  private final AtomicLong _droppedBelowLevel = new AtomicLong();
+  private final AtomicLong _blockTimeouts = new AtomicLong();
+  private final AtomicLong _dequeued = new AtomicLong();
+  private final AtomicLong _totalQueueLatency = new AtomicLong();
+  private final AtomicLong _maxQueueLatency = new AtomicLong();
   
   /**
    * Creates a new async monitor processor with an empty list of {@link MonitorProcessor processors}
@@ -41,7 +156,12 @@ public final class AsyncMonitorProcessor implements MonitorProcessor, MonitorPro
   }
   
   public void startup() {
-    _monitorProcessingExecutor = Executors.newSingleThreadExecutor();
+    if (_ringBufferHandoff) {
+      _ringBuffers = newRingBuffers();
+    }
+    else {
+      _monitorProcessingExecutors = newExecutors();
+    }
     for (MonitorProcessor processor : _processors) {
       processor.startup();
     }
@@ -49,57 +169,452 @@ public final class AsyncMonitorProcessor implements MonitorProcessor, MonitorPro
   
   public void shutdown() {
     flushEvents();
-    _monitorProcessingExecutor.shutdownNow();
+    if (_ringBuffers != null) {
+      for (MonitorRingBuffer ringBuffer : _ringBuffers) {
+        ringBuffer.halt();
+      }
+    }
+    else {
+      for (ThreadPoolExecutor executor : _monitorProcessingExecutors) {
+        executor.shutdownNow();
+      }
+    }
     for (MonitorProcessor processor : _processors) {
       processor.shutdown();
     }
   }
   
   public void monitorCreated(final Monitor monitor) {
-    _monitorProcessingExecutor.execute(new MonitorProcessBundle(monitor.getSerializableMomento()) {
-      @Override
-      protected void processWithProcessor(final MonitorProcessor processor) {
-        processor.monitorCreated(_monitor);
-      }
-    });
+    handOff(MONITOR_CREATED, monitor);
   }
   
   public void monitorStarted(final Monitor monitor) {
-    _monitorProcessingExecutor.execute(new MonitorProcessBundle(monitor.getSerializableMomento()) {
-      @Override
-      protected void processWithProcessor(final MonitorProcessor processor) {
-        processor.monitorStarted(_monitor);
-      }
-    });
+    handOff(MONITOR_STARTED, monitor);
   }
   
   public void process(final Monitor monitor) {
-    _monitorProcessingExecutor.execute(new MonitorProcessBundle(monitor.getSerializableMomento()) {
-      @Override
-      protected void processWithProcessor(final MonitorProcessor processor) {
-        processor.process(_monitor);
+    handOff(PROCESS, monitor);
+  }
+  
+  /**
+   * Hands a monitor to the processing thread of its shard
+   * @param event the method to call on the attached processors
+   * @param monitor the monitor
+   */
+  private void handOff(final int event, final Monitor monitor) {
+    final MonitorRingBuffer[] ringBuffers = _ringBuffers;
+    if (ringBuffers == null) {
+      final ThreadPoolExecutor[] executors = _monitorProcessingExecutors;
+      final ThreadPoolExecutor executor = executors[shardIndex(monitor, executors.length)];
+      executor.execute(new MonitorProcessBundle(event, monitor, executor.getQueue()));
+      return;
+    }
+    try {
+      publish(ringBuffers[shardIndex(monitor, ringBuffers.length)], event, monitor);
+    }
+    catch (RejectedExecutionException e) {
+      if (_ringBuffers == ringBuffers) {
+        throw e;
+      }
+      // flushEvents replaced the ring buffers while the monitor was being handed off
+      handOff(event, monitor);
+    }
+  }
+  
+  /**
+   * Publishes a monitor to a ring buffer, applying the overload policy if it's full
+   * @param ringBuffer the ring buffer of the monitor's shard
+   * @param event the method to call on the attached processors
+   * @param monitor the monitor
+   */
+  private void publish(final MonitorRingBuffer ringBuffer, final int event, final Monitor monitor) {
+    final Object payload = takePayload(monitor);
+    if (ringBuffer.tryPublish(event, payload)) {
+      return;
+    }
+    final String policy = _overloadPolicy;
+    final boolean below = isBelow(monitor.getLevel(), _dropLevel);
+    if (BLOCK.equals(policy) || (DROP_BELOW_LEVEL.equals(policy) && !below)) {
+      if (!ringBuffer.publish(event, payload, _blockTimeout)) {
+        _blockTimeouts.incrementAndGet();
+        dropped();
       }
-    });
+    }
+    else if (DROP_BELOW_LEVEL.equals(policy)) {
+      _droppedBelowLevel.incrementAndGet();
+      dropped();
+    }
+    else {
+      _droppedNewest.incrementAndGet();
+      dropped();
+    }
+  }
+  
+  /**
+   * Takes what is handed to the processing thread for a monitor
+   * @param monitor the monitor
+   * @return a {@link DeferredMomento} with deferred decomposition, otherwise the momento
+   */
+  private Object takePayload(final Monitor monitor) {
+    if (_deferredDecomposition) {
+      return DeferredMomento.of(monitor);
+    }
+    return monitor.getSerializableMomento();
+  }
+  
+  private static boolean isBelow(final MonitoringLevel level, final MonitoringLevel dropLevel) {
+    return (level != null) && dropLevel.hasHigherPriorityThan(level);
+  }
+  
+  private void dropped() {
+    if (log.isDebugEnabled()) {
+      log.debug("Dropped a monitor under " + _overloadPolicy);
+    }
   }
   
   /**
-   * Replaces the {@link Executor executor} that is processing {@link Monitor monitors}, then shuts
-   * down the old monitor and waits up to 100ms for it to finish shutting down.
+   * Replaces the {@link Executor executors} or ring buffers that are processing
+   * {@link Monitor monitors}, then shuts down the old ones and waits until every shard has
+   * processed the monitors it had been handed.
    */
   public void flushEvents() {
-    final ExecutorService oldMonitorProcessingExecutor = _monitorProcessingExecutor;
-    _monitorProcessingExecutor = Executors.newSingleThreadExecutor();
-    oldMonitorProcessingExecutor.shutdown();
-    while (!oldMonitorProcessingExecutor.isTerminated()) {
-      try {
-        oldMonitorProcessingExecutor.awaitTermination(100, TimeUnit.MILLISECONDS);
+    if (_ringBuffers != null) {
+      final MonitorRingBuffer[] oldRingBuffers = _ringBuffers;
+      _ringBuffers = newRingBuffers();
+      for (MonitorRingBuffer ringBuffer : oldRingBuffers) {
+        ringBuffer.halt();
       }
-      catch (InterruptedException e) {
-        // ignore
+      for (MonitorRingBuffer ringBuffer : oldRingBuffers) {
+        ringBuffer.awaitTermination();
+      }
+      return;
+    }
+    final ThreadPoolExecutor[] oldMonitorProcessingExecutors = _monitorProcessingExecutors;
+    _monitorProcessingExecutors = newExecutors();
+    for (ThreadPoolExecutor executor : oldMonitorProcessingExecutors) {
+      executor.shutdown();
+    }
+    for (ThreadPoolExecutor executor : oldMonitorProcessingExecutors) {
+      while (!executor.isTerminated()) {
+        try {
+          executor.awaitTermination(100, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+          // ignore
+        }
       }
     }
   }
   
+  /**
+   * Picks the shard that processes a monitor
+   * @param monitor the monitor
+   * @param shards the number of shards
+   * @return the index of the shard
+   */
+  private int shardIndex(final Monitor monitor, final int shards) {
+    if (shards == 1) {
+      return 0;
+    }
+    final Object key = monitor.get(_shardKey);
+    if (key == null) {
+      return 0;
+    }
+    int hash = key.hashCode();
+    // spreads the hash, as HashMap does, so keys differing in their high bits use different shards
+    hash ^= (hash >>> 20) ^ (hash >>> 12);
+    hash ^= (hash >>> 7) ^ (hash >>> 4);
+    return (hash & Integer.MAX_VALUE) % shards;
+  }
+  
+  private MonitorRingBuffer[] newRingBuffers() {
+    final int waitStrategy;
+    if (BUSY_SPIN_WAIT.equals(_waitStrategy)) {
+      waitStrategy = MonitorRingBuffer.BUSY_SPIN;
+    }
+    else if (YIELDING_WAIT.equals(_waitStrategy)) {
+      waitStrategy = MonitorRingBuffer.YIELD;
+    }
+    else if (PARKING_WAIT.equals(_waitStrategy)) {
+      waitStrategy = MonitorRingBuffer.PARK;
+    }
+    else {
+      waitStrategy = MonitorRingBuffer.BLOCKING;
+    }
+    final int size = (_capacity > 0) ? _capacity : DEFAULT_RING_BUFFER_SIZE;
+    final MonitorRingBuffer[] ringBuffers = new MonitorRingBuffer[_shards];
+    for (int i = 0; i < ringBuffers.length; i++) {
+      ringBuffers[i] = new MonitorRingBuffer(size, waitStrategy, new RingBufferHandler());
+      ringBuffers[i].start("AsyncMonitorProcessor-" + i);
+    }
+    return ringBuffers;
+  }
+  
+  private ThreadPoolExecutor[] newExecutors() {
+    final ThreadPoolExecutor[] executors = new ThreadPoolExecutor[_shards];
+    for (int i = 0; i < executors.length; i++) {
+      executors[i] = newExecutor();
+    }
+    return executors;
+  }
+  
+  /**
+   * Creates the single thread executor of a shard, with a queue of the configured capacity
+   * @return the executor
+   */
+  private ThreadPoolExecutor newExecutor() {
+    final BlockingQueue<Runnable> queue = (_capacity > 0) ? new LinkedBlockingQueue<Runnable>(
+        _capacity) : new LinkedBlockingQueue<Runnable>();
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+        queue, _overloadHandler);
+    // the overload handler puts monitors straight into the queue, so the thread must be running
+    executor.prestartAllCoreThreads();
+    return executor;
+  }
+  
+  public boolean isDeferredDecomposition() {
+    return _deferredDecomposition;
+  }
+  
+  /**
+   * Sets whether monitors are decomposed on the processing thread. The caller then takes a
+   * {@link DeferredMomento}, a shallow copy of the attribute holders, instead of a momento. Values
+   * changed in place after the monitor is handed off are seen as they are when it is decomposed.
+   * @param deferredDecomposition true to decompose monitors on the processing thread
+   */
+  public void setDeferredDecomposition(final boolean deferredDecomposition) {
+    _deferredDecomposition = deferredDecomposition;
+  }
+  
+  @ManagedAttribute(description = "How many monitors may wait to be processed, 0 if unbounded")
+  public int getCapacity() {
+    return _capacity;
+  }
+  
+  /**
+   * Sets how many monitors may wait for the processing thread of each shard. Takes effect at
+   * startup or the next {@link #flushEvents() flush}.
+   * @param capacity the capacity, or 0 for unbounded queues
+   */
+  public void setCapacity(final int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("capacity must not be negative");
+    }
+    _capacity = capacity;
+  }
+  
+  public boolean isRingBufferHandoff() {
+    return _ringBufferHandoff;
+  }
+  
+  /**
+   * Sets whether monitors are handed to the processing threads through preallocated ring buffers
+   * instead of blocking queues. Takes effect at startup.
+   * @param ringBufferHandoff true to hand off monitors through ring buffers
+   */
+  public void setRingBufferHandoff(final boolean ringBufferHandoff) {
+    _ringBufferHandoff = ringBufferHandoff;
+  }
+  
+  public String getWaitStrategy() {
+    return _waitStrategy;
+  }
+  
+  /**
+   * Sets how the processing threads wait for monitors with the ring buffer handoff. Takes effect at
+   * startup or the next {@link #flushEvents() flush}.
+   * @param waitStrategy one of {@link #BUSY_SPIN_WAIT}, {@link #YIELDING_WAIT},
+   *        {@link #PARKING_WAIT} and {@link #BLOCKING_WAIT}
+   */
+  public void setWaitStrategy(final String waitStrategy) {
+    if (!BUSY_SPIN_WAIT.equals(waitStrategy) && !YIELDING_WAIT.equals(waitStrategy)
+        && !PARKING_WAIT.equals(waitStrategy) && !BLOCKING_WAIT.equals(waitStrategy)) {
+      throw new IllegalArgumentException("unknown wait strategy: " + waitStrategy);
+    }
+    _waitStrategy = waitStrategy;
+  }
+  
+  @ManagedAttribute(description = "The most monitors given to a batch processor in one call")
+  public int getMaxBatchSize() {
+    return _maxBatchSize;
+  }
+  
+  /**
+   * Sets the most monitors the processing thread takes from its queue at once, and gives to a
+   * {@link BatchMonitorProcessor} in one call
+   * @param maxBatchSize the maximum batch size, at least 1
+   */
+  @ManagedAttribute(description = "Set the most monitors given to a batch processor in one call")
+  public void setMaxBatchSize(final int maxBatchSize) {
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("maxBatchSize must be at least 1");
+    }
+    _maxBatchSize = maxBatchSize;
+  }
+  
+  @ManagedAttribute(description = "The number of threads processing monitors")
+  public int getShards() {
+    return _shards;
+  }
+  
+  /**
+   * Sets the number of shards, each processing monitors on its own thread. Takes effect at startup
+   * or the next {@link #flushEvents() flush}.
+   * @param shards the number of shards, at least 1
+   */
+  public void setShards(final int shards) {
+    if (shards < 1) {
+      throw new IllegalArgumentException("there must be at least one shard");
+    }
+    _shards = shards;
+  }
+  
+  @ManagedAttribute(description = "The attribute whose value picks the shard processing a monitor")
+  public String getShardKey() {
+    return _shardKey;
+  }
+  
+  /**
+   * Sets the attribute whose value picks the shard that processes a monitor. Monitors without the
+   * attribute are processed by the first shard.
+   * @param shardKey the attribute name
+   */
+  public void setShardKey(final String shardKey) {
+    if (shardKey == null) {
+      throw new IllegalArgumentException("shardKey must not be null");
+    }
+    _shardKey = shardKey;
+  }
+  
+  @ManagedAttribute(description = "What is done with a monitor handed off while the queue is full")
+  public String getOverloadPolicy() {
+    return _overloadPolicy;
+  }
+  
+  /**
+   * Sets what is done with a monitor handed off while the queue is full
+   * @param overloadPolicy one of {@link #DROP_NEWEST}, {@link #DROP_OLDEST},
+   *        {@link #DROP_BELOW_LEVEL} and {@link #BLOCK}
+   */
+  @ManagedAttribute(description = "Set to DROP_NEWEST, DROP_OLDEST, DROP_BELOW_LEVEL or BLOCK")
+  public void setOverloadPolicy(final String overloadPolicy) {
+    if (!DROP_NEWEST.equals(overloadPolicy) && !DROP_OLDEST.equals(overloadPolicy)
+        && !DROP_BELOW_LEVEL.equals(overloadPolicy) && !BLOCK.equals(overloadPolicy)) {
+      throw new IllegalArgumentException("unknown overload policy: " + overloadPolicy);
+    }
+    _overloadPolicy = overloadPolicy;
+  }
+  
+  @ManagedAttribute(description = "Monitors below this level are dropped first under DROP_BELOW_LEVEL")
+  public String getDropLevel() {
+    return _dropLevel.toString();
+  }
+  
+  /**
+   * Sets the level below which monitors are dropped under {@link #DROP_BELOW_LEVEL}
+   * @param levelString the name of a {@link MonitoringLevel}
+   */
+  @ManagedAttribute(description = "Set the level below which monitors are dropped under DROP_BELOW_LEVEL")
+  public void setDropLevel(final String levelString) {
+    if (!MonitoringLevel.isValidLevelStr(levelString)) {
+      throw new IllegalArgumentException("levelString must match an existing MonitoringLevel");
+    }
+    _dropLevel = MonitoringLevel.toLevel(levelString);
+  }
+  
+  @ManagedAttribute(description = "Milliseconds a caller waits for room under BLOCK")
+  public long getBlockTimeout() {
+    return _blockTimeout;
+  }
+  
+  /**
+   * Sets how long a caller waits for room in a full queue under {@link #BLOCK}, and under
+   * {@link #DROP_BELOW_LEVEL} when no monitor can be dropped instead
+   * @param blockTimeout the timeout in milliseconds
+   */
+  @ManagedAttribute(description = "Set the milliseconds a caller waits for room under BLOCK")
+  public void setBlockTimeout(final long blockTimeout) {
+    _blockTimeout = blockTimeout;
+  }
+  
+  @ManagedAttribute(description = "The number of monitors waiting to be processed by all shards")
+  public int getQueueDepth() {
+    int depth = 0;
+    final MonitorRingBuffer[] ringBuffers = _ringBuffers;
+    if (ringBuffers != null) {
+      for (MonitorRingBuffer ringBuffer : ringBuffers) {
+        depth += ringBuffer.size();
+      }
+      return depth;
+    }
+    final ThreadPoolExecutor[] executors = _monitorProcessingExecutors;
+    if (executors == null) {
+      return 0;
+    }
+    for (ThreadPoolExecutor executor : executors) {
+      depth += executor.getQueue().size();
+    }
+    return depth;
+  }
+  
+  @ManagedAttribute(description = "Monitors dropped under DROP_NEWEST")
+  public long getDroppedNewestCount() {
+    return _droppedNewest.get();
+  }
+  
+  @ManagedAttribute(description = "Monitors dropped under DROP_OLDEST")
+  public long getDroppedOldestCount() {
+    return _droppedOldest.get();
+  }
+  
+  @ManagedAttribute(description = "Monitors dropped under DROP_BELOW_LEVEL")
+  public long getDroppedBelowLevelCount() {
+    return _droppedBelowLevel.get();
+  }
+  
+  @ManagedAttribute(description = "Monitors dropped after waiting the block timeout for room")
+  public long getBlockTimeoutCount() {
+    return _blockTimeouts.get();
+  }
+  
+  @ManagedAttribute(description = "Average microseconds monitors waited in the queue")
+  public long getAverageQueueLatency() {
+    final long dequeued = _dequeued.get();
+    return (dequeued == 0) ? 0 : _totalQueueLatency.get() / dequeued / 1000;
+  }
+  
+  @ManagedAttribute(description = "Longest microseconds a monitor waited in the queue")
+  public long getMaxQueueLatency() {
+    return _maxQueueLatency.get() / 1000;
+  }
+  
+  /**
+   * Sets the drop counts and queue latencies back to zero
+   */
+  @ManagedOperation(description = "Reset the drop counts and queue latencies")
+  public void resetStatistics() {
+    _droppedNewest.set(0);
+    _droppedOldest.set(0);
+    _droppedBelowLevel.set(0);
+    _blockTimeouts.set(0);
+    _dequeued.set(0);
+    _totalQueueLatency.set(0);
+    _maxQueueLatency.set(0);
+  }
+  
+  /**
+   * Records how long a monitor waited in the queue
+   * @param latency the wait in nanoseconds
+   */
+  private void recordQueueLatency(final long latency) {
+    _dequeued.incrementAndGet();
+    _totalQueueLatency.addAndGet(latency);
+    long max = _maxQueueLatency.get();
+    while (latency > max && !_maxQueueLatency.compareAndSet(max, latency)) {
+      max = _maxQueueLatency.get();
+    }
+  }
+  
   /**
    * @see MonitorProcessorAttachable#addMonitorProcessor(com.orbitz.monitoring.api.MonitorProcessor)
    */
@@ -129,19 +644,224 @@ public final class AsyncMonitorProcessor implements MonitorProcessor, MonitorPro
     _name = name;
   }
   
-  private abstract class MonitorProcessBundle implements Runnable {
-    protected Monitor _monitor;
+  /**
+   * Gives the monitors taken from a queue at once to the attached processors on the processing
+   * thread, keeping the order in which they were handed off
+   */
+  private final class MonitorBatch {
+    private final List<Monitor> _monitors = new ArrayList<Monitor>();
     
-    protected MonitorProcessBundle(final Monitor monitor) {
-      _monitor = monitor;
+    /**
+     * Adds a monitor to the batch. Monitors to be processed are held until the batch is full or
+     * ended, and other events are passed on once the monitors before them have been processed.
+     * @param event the method to call on the attached processors
+     * @param payload what was taken for the monitor by {@link #takePayload(Monitor)}
+     * @param enqueuedAt the {@link System#nanoTime()} at which the monitor was handed off
+     */
+    void add(final int event, final Object payload, final long enqueuedAt) {
+      recordQueueLatency(System.nanoTime() - enqueuedAt);
+      final Monitor monitor;
+      try {
+        monitor = (payload instanceof DeferredMomento) ? ((DeferredMomento)payload)
+            .getSerializableMomento() : (Monitor)payload;
+      }
+      catch (RuntimeException e) {
+        // only this monitor is lost, not the others already taken into the batch
+        log.error("Failed to decompose monitor", e);
+        return;
+      }
+      if (event == PROCESS) {
+        _monitors.add(monitor);
+        if (_monitors.size() >= _maxBatchSize) {
+          processMonitors();
+        }
+        return;
+      }
+      processMonitors();
+      for (MonitorProcessor processor : _processors) {
+        try {
+          if (event == MONITOR_CREATED) {
+            processor.monitorCreated(monitor);
+          }
+          else {
+            processor.monitorStarted(monitor);
+          }
+        }
+        catch (RuntimeException e) {
+          log.error("Failed to process monitor with " + processor, e);
+        }
+      }
     }
     
-    public void run() {
+    /**
+     * Processes the monitors held and, if there are no more waiting, flushes the batch processors
+     * @param drained true if no more monitors are waiting
+     */
+    void end(final boolean drained) {
+      processMonitors();
+      if (!drained) {
+        return;
+      }
       for (MonitorProcessor processor : _processors) {
-        processWithProcessor(processor);
+        if (processor instanceof BatchMonitorProcessor) {
+          try {
+            ((BatchMonitorProcessor)processor).flush();
+          }
+          catch (RuntimeException e) {
+            log.error("Failed to flush " + processor, e);
+          }
+        }
+      }
+    }
+    
+    private void processMonitors() {
+      if (_monitors.isEmpty()) {
+        return;
+      }
+      // a failure is kept to the processor and monitor it happened on, so the other processors
+      // still see the whole batch
+      try {
+        for (MonitorProcessor processor : _processors) {
+          if (processor instanceof BatchMonitorProcessor) {
+            try {
+              ((BatchMonitorProcessor)processor).processBatch(_monitors);
+            }
+            catch (RuntimeException e) {
+              log.error("Failed to process monitors with " + processor, e);
+            }
+          }
+          else {
+            for (Monitor monitor : _monitors) {
+              try {
+                processor.process(monitor);
+              }
+              catch (RuntimeException e) {
+                log.error("Failed to process monitor with " + processor, e);
+              }
+            }
+          }
+        }
+      }
+      finally {
+        _monitors.clear();
+      }
+    }
+  }
+  
+  private final class MonitorProcessBundle implements Runnable {
+    private final int _event;
+    private final Object _payload;
+    private final MonitoringLevel _level;
+    private final long _enqueuedAt = System.nanoTime();
+    private final BlockingQueue<Runnable> _queue;
+    
+    MonitorProcessBundle(final int event, final Monitor monitor,
+        final BlockingQueue<Runnable> queue) {
+      _event = event;
+      _level = monitor.getLevel();
+      _payload = takePayload(monitor);
+      _queue = queue;
+    }
+    
+    /**
+     * Processes this monitor together with the monitors queued behind it, up to the maximum batch
+     * size
+     */
+    public void run() {
+      final MonitorBatch batch = new MonitorBatch();
+      batch.add(_event, _payload, _enqueuedAt);
+      final int maxBatchSize = _maxBatchSize;
+      for (int i = 1; i < maxBatchSize; i++) {
+        final MonitorProcessBundle next = (MonitorProcessBundle)_queue.poll();
+        if (next == null) {
+          break;
+        }
+        batch.add(next._event, next._payload, next._enqueuedAt);
       }
+      batch.end(_queue.isEmpty());
     }
     
-    protected abstract void processWithProcessor(MonitorProcessor processor);
+    boolean isBelow(final MonitoringLevel dropLevel) {
+      return AsyncMonitorProcessor.isBelow(_level, dropLevel);
+    }
+  }
+  
+  private final class RingBufferHandler implements MonitorRingBuffer.Handler {
+    private final MonitorBatch _batch = new MonitorBatch();
+    
+    public void handle(final int event, final Object payload, final long publishedAt) {
+      _batch.add(event, payload, publishedAt);
+    }
+    
+    public void endOfBatch(final boolean drained) {
+      _batch.end(drained);
+    }
+  }
+  
+  /**
+   * Applies the overload policy to a monitor that didn't fit in the queue
+   */
+  private final class OverloadHandler implements RejectedExecutionHandler {
+    public void rejectedExecution(final Runnable runnable, final ThreadPoolExecutor executor) {
+      if (executor.isShutdown()) {
+        throw new RejectedExecutionException("monitor processing executor is shut down");
+      }
+      final BlockingQueue<Runnable> queue = executor.getQueue();
+      final String policy = _overloadPolicy;
+      if (DROP_OLDEST.equals(policy)) {
+        while (!queue.offer(runnable)) {
+          if (queue.poll() != null) {
+            _droppedOldest.incrementAndGet();
+          }
+        }
+      }
+      else if (DROP_BELOW_LEVEL.equals(policy)) {
+        final MonitoringLevel dropLevel = _dropLevel;
+        if (((MonitorProcessBundle)runnable).isBelow(dropLevel)) {
+          _droppedBelowLevel.incrementAndGet();
+          dropped();
+        }
+        else {
+          if (removeOldestBelow(queue, dropLevel)) {
+            _droppedBelowLevel.incrementAndGet();
+          }
+          if (!queue.offer(runnable)) {
+            offerWithTimeout(queue, runnable);
+          }
+        }
+      }
+      else if (BLOCK.equals(policy)) {
+        offerWithTimeout(queue, runnable);
+      }
+      else {
+        _droppedNewest.incrementAndGet();
+        dropped();
+      }
+    }
+    
+    private boolean removeOldestBelow(final BlockingQueue<Runnable> queue,
+        final MonitoringLevel dropLevel) {
+      for (Iterator<Runnable> i = queue.iterator(); i.hasNext();) {
+        if (((MonitorProcessBundle)i.next()).isBelow(dropLevel)) {
+          i.remove();
+          return true;
+        }
+      }
+      return false;
+    }
+    
+    private void offerWithTimeout(final BlockingQueue<Runnable> queue, final Runnable runnable) {
+      boolean queued = false;
+      try {
+        queued = queue.offer(runnable, _blockTimeout, TimeUnit.MILLISECONDS);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (!queued) {
+        _blockTimeouts.incrementAndGet();
+        dropped();
+      }
+    }
   }
 }
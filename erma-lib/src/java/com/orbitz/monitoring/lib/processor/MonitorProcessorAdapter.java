@@ -1,5 +1,7 @@
 package com.orbitz.monitoring.lib.processor;
 
+import com.orbitz.monitoring.api.DispatchPlan;
+import com.orbitz.monitoring.api.LifecycleAwareMonitorProcessor;
 import com.orbitz.monitoring.api.MonitorProcessor;
 import com.orbitz.monitoring.api.Monitor;
 import com.orbitz.monitoring.api.MonitoringLevel;
@@ -8,12 +10,20 @@ import com.orbitz.monitoring.api.MonitoringLevel;
  * An abstract adapter class for MonitorProcessors. The methods in this class are empty. This class exists as
  * convenience for creating MonitorProcessor objects; subclass it and override what you
  * need.
+ * <p>
+ * The {@link com.orbitz.monitoring.api.MonitoringEngine} only calls the lifecycle methods that a
+ * subclass overrides.
  *
  * @since 3.5
  *
  * @author Matt O'Keefe
  */
-public abstract class MonitorProcessorAdapter implements MonitorProcessor {
+public abstract class MonitorProcessorAdapter implements LifecycleAwareMonitorProcessor {
+    private static final int UNKNOWN_EVENTS = -1;
+
+    // worked out on first use, so it isn't held per class where it would pin the class loader
+    private volatile int lifecycleEvents = UNKNOWN_EVENTS;
+
     /**
      * This is a lifecycle method that a processor can use to initialize itself
      * when the MonitorProcessorFactory starts up. The processor factory passes
@@ -65,4 +75,44 @@ public abstract class MonitorProcessorAdapter implements MonitorProcessor {
     public String getName() {
         return "";
     }
+
+    /**
+     * Gets the lifecycle events whose methods this processor's class overrides. Override this if
+     * the events acted on depend on how the processor is configured.
+     *
+     * @return a combination of the events of {@link DispatchPlan}
+     */
+    public int getLifecycleEvents() {
+        int events = lifecycleEvents;
+        if (events == UNKNOWN_EVENTS) {
+            final Class<?> type = getClass();
+            int overridden = 0;
+            if (isOverridden(type, "monitorCreated")) {
+                overridden |= DispatchPlan.MONITOR_CREATED;
+            }
+            if (isOverridden(type, "monitorStarted")) {
+                overridden |= DispatchPlan.MONITOR_STARTED;
+            }
+            if (isOverridden(type, "process")) {
+                overridden |= DispatchPlan.PROCESS;
+            }
+            events = overridden;
+            lifecycleEvents = events;
+        }
+        return events;
+    }
+
+    private static boolean isOverridden(final Class<?> type, final String methodName) {
+        try {
+            return type.getMethod(methodName, Monitor.class).getDeclaringClass()
+                != MonitorProcessorAdapter.class;
+        }
+        catch (NoSuchMethodException e) {
+            return true;
+        }
+        catch (SecurityException e) {
+            // can't tell, so the processor is called for the event
+            return true;
+        }
+    }
 }
@@ -0,0 +1,319 @@
+package com.orbitz.monitoring.lib.processor;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.log4j.Logger;
+
+/**
+ * A preallocated ring of entries handed from any number of threads to one consuming thread.
+ * <p>
+ * A producer claims the next sequence with a compare and set on the cursor, writes the entry into
+ * the slot the sequence maps to and marks the slot published for that lap of the ring. Handing off
+ * an entry allocates nothing and takes no lock. The consumer processes every published entry it
+ * finds in one batch before recording how far it got, which frees those slots for producers. A slot
+ * can't be claimed until the consumer has passed the entry a full ring earlier.
+ * <p>
+ * What the consumer does when there are no entries is decided by its wait strategy. It can spin,
+ * yield, park for a short time, or block until a producer signals it.
+ */
+final class MonitorRingBuffer implements Runnable {
+  private static final Logger log = Logger.getLogger(MonitorRingBuffer.class);
+
+  /**
+   * Checks for entries continually. Lowest latency, but keeps a core busy.
+   */
+  static final int BUSY_SPIN = 0;
+  /**
+   * Yields the thread between checks for entries
+   */
+  static final int YIELD = 1;
+  /**
+   * Parks the thread for a short time between checks for entries
+   */
+  static final int PARK = 2;
+  /**
+   * Waits for a producer to signal that it has published an entry
+   */
+  static final int BLOCKING = 3;
+
+  private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  /**
+   * Processes the entries taken from the ring
+   */
+  interface Handler {
+    /**
+     * Processes an entry
+     * @param event the kind of entry, as published
+     * @param payload the object published
+     * @param publishedAt the {@link System#nanoTime()} at which the entry was published
+     */
+    void handle(int event, Object payload, long publishedAt);
+
+    /**
+     * Called after the entries found in one pass over the ring have been handled
+     * @param drained true if no more entries had been claimed by then
+     */
+    void endOfBatch(boolean drained);
+  }
+
+  private final Handler handler;
+  private final int waitStrategy;
+  private final int mask;
+  private final int shift;
+  private final int[] events;
+  private final Object[] payloads;
+  private final long[] publishedAt;
+  private final AtomicIntegerArray published;
+  private final AtomicLong cursor = new AtomicLong(-1);
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private volatile long consumed = -1;
+  private volatile boolean consumerWaiting;
+  private volatile boolean halted;
+  private volatile boolean terminated;
+  private Thread thread;
+
+  /**
+   * Creates a ring buffer
+   * @param size the number of entries, rounded up to a power of two
+   * @param waitStrategy one of {@link #BUSY_SPIN}, {@link #YIELD}, {@link #PARK} and
+   *        {@link #BLOCKING}
+   * @param handler processes the entries on the consuming thread
+   */
+  MonitorRingBuffer(final int size, final int waitStrategy, final Handler handler) {
+    int capacity = 1;
+    int bits = 0;
+    while (capacity < size) {
+      capacity <<= 1;
+      bits++;
+    }
+    this.mask = capacity - 1;
+    this.shift = bits;
+    this.waitStrategy = waitStrategy;
+    this.handler = handler;
+    events = new int[capacity];
+    payloads = new Object[capacity];
+    publishedAt = new long[capacity];
+    published = new AtomicIntegerArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      published.set(i, -1);
+    }
+  }
+
+  /**
+   * Starts the consuming thread
+   * @param name the name of the thread
+   */
+  void start(final String name) {
+    thread = new Thread(this, name);
+    thread.start();
+  }
+
+  /**
+   * Publishes an entry if there is room for it
+   * @param event the kind of entry
+   * @param payload the object handed to the consumer
+   * @return true if the entry was published, false if the ring was full
+   * @throws RejectedExecutionException if the ring has been halted, or was halted while the entry
+   *         was being published and stopped before processing it
+   */
+  boolean tryPublish(final int event, final Object payload) {
+    if (halted) {
+      throw new RejectedExecutionException("monitor ring buffer is halted");
+    }
+    final int capacity = mask + 1;
+    long current;
+    long next;
+    do {
+      current = cursor.get();
+      next = current + 1;
+      if (next - capacity > consumed) {
+        return false;
+      }
+    } while (!cursor.compareAndSet(current, next));
+    final int index = (int)next & mask;
+    events[index] = event;
+    payloads[index] = payload;
+    publishedAt[index] = System.nanoTime();
+    published.set(index, (int)(next >>> shift));
+    if (consumerWaiting) {
+      signalConsumer();
+    }
+    if (halted) {
+      // the consumer may have seen the halt before this entry was claimed
+      awaitConsumed(next);
+    }
+    return true;
+  }
+  
+  /**
+   * Waits for the consumer to process an entry published while the ring was being halted
+   * @param sequence the sequence of the entry
+   * @throws RejectedExecutionException if the consumer stopped without processing it
+   */
+  private void awaitConsumed(final long sequence) {
+    while (consumed < sequence) {
+      if (terminated) {
+        // the consumer records how far it got before it stops
+        if (consumed < sequence) {
+          throw new RejectedExecutionException("monitor ring buffer halted before processing");
+        }
+        return;
+      }
+      LockSupport.parkNanos(PARK_NANOS);
+    }
+  }
+
+  /**
+   * Publishes an entry, waiting for room if the ring is full
+   * @param event the kind of entry
+   * @param payload the object handed to the consumer
+   * @param timeout the longest time to wait, in milliseconds
+   * @return true if the entry was published, false if there was no room before the timeout
+   * @throws RejectedExecutionException if the ring has been halted
+   */
+  boolean publish(final int event, final Object payload, final long timeout) {
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    while (!tryPublish(event, payload)) {
+      if (System.nanoTime() - deadline >= 0) {
+        return false;
+      }
+      LockSupport.parkNanos(PARK_NANOS);
+    }
+    return true;
+  }
+
+  /**
+   * @return the number of entries claimed but not yet processed
+   */
+  int size() {
+    return (int)(cursor.get() - consumed);
+  }
+
+  /**
+   * Stops the consumer once it has processed every entry already claimed
+   */
+  void halt() {
+    halted = true;
+    signalConsumer();
+  }
+
+  /**
+   * Waits for the consumer to stop after a {@link #halt()}
+   */
+  void awaitTermination() {
+    while (thread.isAlive()) {
+      try {
+        thread.join(100);
+      }
+      catch (InterruptedException e) {
+        // ignore
+      }
+    }
+  }
+
+  public void run() {
+    try {
+      long next = consumed + 1;
+      while (true) {
+        final long available = waitFor(next);
+        if (available < next) {
+          return;
+        }
+        for (long sequence = next; sequence <= available; sequence++) {
+          final int index = (int)sequence & mask;
+          final Object payload = payloads[index];
+          payloads[index] = null;
+          // errors are caught too, since nothing would drain the ring once this thread died
+          try {
+            handler.handle(events[index], payload, publishedAt[index]);
+          }
+          catch (Throwable t) {
+            log.error("Failed to process monitor", t);
+          }
+        }
+        try {
+          handler.endOfBatch(cursor.get() == available);
+        }
+        catch (Throwable t) {
+          log.error("Failed to process monitors", t);
+        }
+        consumed = available;
+        next = available + 1;
+      }
+    }
+    finally {
+      terminated = true;
+    }
+  }
+
+  /**
+   * Waits until the entry at a sequence is published
+   * @param sequence the sequence
+   * @return the last sequence of the run of published entries starting at the one waited for, or
+   *         a sequence before it if the ring was halted with nothing left to process
+   */
+  private long waitFor(final long sequence) {
+    while (!isPublished(sequence)) {
+      if (halted && cursor.get() < sequence) {
+        return sequence - 1;
+      }
+      switch (waitStrategy) {
+        case BUSY_SPIN:
+          break;
+        case YIELD:
+          Thread.yield();
+          break;
+        case PARK:
+          LockSupport.parkNanos(PARK_NANOS);
+          break;
+        default:
+          awaitSignal(sequence);
+      }
+    }
+    final long claimed = cursor.get();
+    long available = sequence;
+    while (available < claimed && isPublished(available + 1)) {
+      available++;
+    }
+    return available;
+  }
+
+  private boolean isPublished(final long sequence) {
+    return published.get((int)sequence & mask) == (int)(sequence >>> shift);
+  }
+
+  private void awaitSignal(final long sequence) {
+    lock.lock();
+    try {
+      // set before checking again, so a producer publishing now sees it and signals
+      consumerWaiting = true;
+      if (!isPublished(sequence) && !halted) {
+        notEmpty.await();
+      }
+    }
+    catch (InterruptedException e) {
+      // checks again
+    }
+    finally {
+      consumerWaiting = false;
+      lock.unlock();
+    }
+  }
+
+  private void signalConsumer() {
+    lock.lock();
+    try {
+      notEmpty.signalAll();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+}
@@ -234,8 +234,14 @@ public class EventPatternMonitorRenderer {
         final StringBuffer sb = new StringBuffer();
         final Object exceptionClass = (ex.get("class") == null) ? "(Unknown Exception)" : ex.get("class");
         sb.append(exceptionClass).append(": ").append(ex.get("message"));
-        final Object trace[] = (Object[]) ex.get("stackTrace");
+        // the decomposer may have left out the stack trace, or parts of each element, if it was
+        // limited in how much of the throwable it could decompose
+        final Object trace[] = (ex.get("stackTrace") instanceof Object[])
+                ? (Object[]) ex.get("stackTrace") : new Object[0];
         for (int i = 0; i < trace.length; i++) {
+            if (!(trace[i] instanceof LazyDynaBean)) {
+                continue;
+            }
             final LazyDynaBean bean = (LazyDynaBean) trace[i];
             final Object nativeMethod = bean.get("nativeMethod");
             final Object lineNumber = bean.get("lineNumber");
@@ -243,12 +249,11 @@ public class EventPatternMonitorRenderer {
             sb.append("\n  ").append(bean.get("className"))
               .append(".").append(bean.get("methodName"));
             /* if this doesn't work, lineNumber == -2 can be used instead */
-            if (Boolean.class.isAssignableFrom(nativeMethod.getClass())
-                    && ((Boolean) nativeMethod).booleanValue()) {
+            if (Boolean.TRUE.equals(nativeMethod)) {
                 sb.append("(Native Method)");
             } else if (bean.get("fileName") != null) {
                 sb.append("(").append(bean.get("fileName"));
-                if(Integer.class.isAssignableFrom(lineNumber.getClass())
+                if((lineNumber instanceof Integer)
                         && ((Integer) lineNumber).intValue() >= 0) {
                     sb.append(":").append(bean.get("lineNumber"));
                 }
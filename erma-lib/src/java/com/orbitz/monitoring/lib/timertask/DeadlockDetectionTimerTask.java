@@ -31,7 +31,7 @@ public class DeadlockDetectionTimerTask implements Runnable {
         final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
         if(threadBean.isThreadContentionMonitoringEnabled()) {
             if(threadBean.findMonitorDeadlockedThreads() != null) {
-                final EventMonitor monitor = new EventMonitor("JvmStats", MonitoringLevel.ESSENTIAL);
+                final EventMonitor monitor = EventMonitor.obtain("JvmStats", MonitoringLevel.ESSENTIAL);
                 monitor.set("type", "Thread.Deadlock");
                 monitor.set("count", 1);
                 monitor.fire();
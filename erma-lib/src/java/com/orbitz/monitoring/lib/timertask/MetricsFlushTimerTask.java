@@ -0,0 +1,21 @@
+package com.orbitz.monitoring.lib.timertask;
+
+import com.orbitz.monitoring.api.MonitoringEngine;
+
+import java.util.TimerTask;
+
+/**
+ * MetricsFlushTimerTask reports the counters, timers and gauges of the
+ * {@link MonitoringEngine#getMetricRegistry() metric registry} every time it is executed. Counters
+ * and timers report what was recorded since the previous run, so the frequency the task is
+ * scheduled at is the interval of their monitors.
+ */
+public class MetricsFlushTimerTask extends TimerTask {
+
+    /**
+     * Flushes the metrics.
+     */
+    public void run() {
+        MonitoringEngine.getInstance().flushMetrics();
+    }
+}
@@ -99,7 +99,7 @@ public class VMStatTimerTask extends TimerTask {
     }
 
     private void fireJvmStat(final String type, final Long count, final Long time, final Double percent) {
-        final EventMonitor monitor = new EventMonitor("JvmStats", MonitoringLevel.ESSENTIAL);
+        final EventMonitor monitor = EventMonitor.obtain("JvmStats", MonitoringLevel.ESSENTIAL);
         monitor.set("type", type);
         if(count != null) {
             monitor.set("count", count);
@@ -10,6 +10,7 @@ import com.orbitz.monitoring.api.monitor.CompositeAttributeHolder;
 import com.orbitz.monitoring.api.monitor.EventMonitor;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -174,6 +175,54 @@ public class AttributeDecomposerTest {
     assertEquals(holder.getValue(), decomposedHolder.getValue());
   }
   
+  /**
+   * @see AttributeDecomposer#decompose(Object)
+   */
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testDecomposeRepeatedHolder() {
+    AttributeHolder holder = new AttributeHolder(new Node("foo"));
+    List<AttributeHolder> list = new ArrayList<AttributeHolder>();
+    list.add(holder);
+    list.add(holder);
+    List<AttributeHolder> decomposed = (List<AttributeHolder>)_decomposer.decompose(list);
+    assertSame(decomposed.get(0), decomposed.get(1));
+    assertEquals("foo", ((DynaBean)decomposed.get(1).getValue()).get("value"));
+  }
+  
+  /**
+   * @see AttributeDecomposer#decompose(Object)
+   * @throws Exception in case of failure
+   */
+  @Test
+  public void testDecomposeFromSeveralThreads() throws Exception {
+    final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      final String value = "value" + i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 10000; j++) {
+            List<String> list = new ArrayList<String>();
+            list.add(value);
+            AttributeHolder decomposed = (AttributeHolder)_decomposer
+                .decompose(new AttributeHolder(list));
+            if (!list.equals(decomposed.getValue())) {
+              failures.add(value + " became " + decomposed.getValue());
+              return;
+            }
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(Collections.emptyList(), failures);
+  }
+  
   /**
    * @see AttributeDecomposer#decompose(Object)
    */
@@ -1,10 +1,16 @@
 package com.orbitz.monitoring.lib.decomposer;
 
+import com.orbitz.monitoring.api.Attribute;
+import com.orbitz.monitoring.api.monitor.EventMonitor;
+import com.orbitz.monitoring.lib.renderer.EventPatternMonitorRenderer;
 import junit.framework.TestCase;
 import org.apache.commons.beanutils.LazyDynaBean;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.io.Serializable;
 
 /**
@@ -66,4 +72,86 @@ public class ReflectiveDecomposerTest extends TestCase {
                 Boolean.valueOf(original.isBooleanValue())));
         assertTrue(decomposedObjects.contains(original.getExceptionValue()));
     }
+
+    public void testExcludedProperties() {
+        Map<String, List<String>> excluded = Collections.singletonMap(
+                Serializable.class.getName(), Arrays.asList("exceptionValue"));
+        _decomposer.setExcludedProperties(excluded);
+
+        LazyDynaBean decomposed = (LazyDynaBean) _decomposer.decompose(new ExampleClass(), null);
+
+        assertEquals(ExampleClass.class.getName(), decomposed.get("class"));
+        assertNotNull(decomposed.get("stringValue"));
+        assertFalse(decomposed.getMap().containsKey("exceptionValue"));
+    }
+
+    public void testIncludedProperties() {
+        Map<String, List<String>> included = Collections.singletonMap(
+                ExampleClass.class.getName(), Arrays.asList("stringValue"));
+        _decomposer.setIncludedProperties(included);
+
+        LazyDynaBean decomposed = (LazyDynaBean) _decomposer.decompose(new ExampleClass(), null);
+
+        assertEquals(ExampleClass.class.getName(), decomposed.get("class"));
+        assertNotNull(decomposed.get("stringValue"));
+        assertFalse(decomposed.getMap().containsKey("booleanValue"));
+        assertEquals(Arrays.asList(new Object[] {"abc"}), _delegate.getDecomposedObjects());
+    }
+
+    public void testMaxDepth() {
+        AttributeDecomposer decomposer = new AttributeDecomposer();
+        decomposer.setMaxDepth(2);
+        Exception cause = new IllegalStateException("cause", new RuntimeException("root"));
+
+        LazyDynaBean decomposed = (LazyDynaBean) decomposer.decompose(new Exception("top", cause));
+
+        LazyDynaBean decomposedCause = (LazyDynaBean) decomposed.get("cause");
+        assertEquals("cause", decomposedCause.get("message"));
+        LazyDynaBean decomposedRoot = (LazyDynaBean) decomposedCause.get("cause");
+        assertEquals(RuntimeException.class.getName(), decomposedRoot.get("class"));
+        assertNull(decomposedRoot.get("message"));
+    }
+
+    public void testRenderTruncatedThrowable() {
+        AttributeDecomposer decomposer = new AttributeDecomposer();
+        decomposer.setMaxDepth(2);
+        Exception cause = new IllegalStateException("cause", new RuntimeException("root"));
+        EventMonitor monitor = new EventMonitor("test");
+        monitor.set(Attribute.FAILURE_THROWABLE, decomposer.decompose(new Exception("top", cause)));
+
+        EventPatternMonitorRenderer renderer = new EventPatternMonitorRenderer(
+                Arrays.asList(new String[] {Attribute.NAME, Attribute.FAILURE_THROWABLE}));
+
+        assertTrue(renderer.renderMonitor(monitor).endsWith(RuntimeException.class.getName()));
+    }
+
+    public void testMaxSize() {
+        AttributeDecomposer decomposer = new AttributeDecomposer();
+        decomposer.setMaxSize(3);
+        List<ExampleClass> list = Arrays.asList(
+                new ExampleClass[] {new ExampleClass(), new ExampleClass(), new ExampleClass()});
+
+        List<?> decomposed = (List<?>) decomposer.decompose(list);
+
+        assertEquals(3, decomposed.size());
+        assertEquals("abc", ((LazyDynaBean) decomposed.get(0)).get("stringValue"));
+        LazyDynaBean last = (LazyDynaBean) decomposed.get(2);
+        assertEquals(ExampleClass.class.getName(), last.get("class"));
+        assertNull(last.get("stringValue"));
+    }
+
+    public void testInvalidBudgets() {
+        try {
+            _decomposer.setMaxDepth(-1);
+            fail("negative depth accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            _decomposer.setMaxSize(-1);
+            fail("negative size accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
 }
@@ -0,0 +1,231 @@
+package com.orbitz.monitoring.lib.decomposer;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.commons.beanutils.LazyDynaBean;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link ThrowableDecomposer}
+ */
+public class ThrowableDecomposerTest {
+  private AttributeDecomposer _decomposer;
+  
+  /**
+   * Prepares for each test
+   */
+  @Before
+  public void setUp() {
+    _decomposer = new AttributeDecomposer();
+  }
+  
+  /**
+   * @see ThrowableDecomposer#fingerprint(Throwable, StackTraceElement[])
+   */
+  @Test
+  public void testFingerprintIgnoresNumbersInMessage() {
+    Exception[] failures = failures(3);
+    String fingerprint = ThrowableDecomposer.fingerprint(failures[0], failures[0].getStackTrace());
+    assertEquals(fingerprint,
+        ThrowableDecomposer.fingerprint(failures[2], failures[2].getStackTrace()));
+    
+    Exception other = new IllegalArgumentException(failures[0].getMessage());
+    other.setStackTrace(failures[0].getStackTrace());
+    assertFalse(fingerprint.equals(ThrowableDecomposer.fingerprint(other, other.getStackTrace())));
+    
+    Exception otherMessage = new IllegalStateException("order cancelled");
+    otherMessage.setStackTrace(failures[0].getStackTrace());
+    assertFalse(fingerprint.equals(ThrowableDecomposer.fingerprint(otherMessage,
+        otherMessage.getStackTrace())));
+  }
+  
+  /**
+   * @see AttributeDecomposer#decompose(Object)
+   */
+  @Test
+  public void testRepeatedStackTraceShared() {
+    Exception[] failures = failures(2);
+    LazyDynaBean first = (LazyDynaBean)_decomposer.decompose(failures[0]);
+    LazyDynaBean second = (LazyDynaBean)_decomposer.decompose(failures[1]);
+    
+    assertEquals(first.get("fingerprint"), second.get("fingerprint"));
+    assertEquals("order 0 failed", first.get("message"));
+    assertEquals("order 1 failed", second.get("message"));
+    assertEquals(IllegalStateException.class.getName(), second.get("class"));
+    assertSame(first.get("stackTrace"), second.get("stackTrace"));
+    
+    Object[] stackTrace = (Object[])first.get("stackTrace");
+    assertEquals(failures[0].getStackTrace().length, stackTrace.length);
+    assertEquals("failures", ((LazyDynaBean)stackTrace[0]).get("methodName"));
+  }
+  
+  /**
+   * @see AttributeDecomposer#setOmitRepeatedStackTraces(boolean)
+   */
+  @Test
+  public void testOmitRepeatedStackTraces() {
+    _decomposer.setOmitRepeatedStackTraces(true);
+    Exception[] failures = failures(2);
+    LazyDynaBean first = (LazyDynaBean)_decomposer.decompose(failures[0]);
+    LazyDynaBean second = (LazyDynaBean)_decomposer.decompose(failures[1]);
+    
+    assertNotNull(first.get("stackTrace"));
+    assertEquals(first.get("fingerprint"), second.get("fingerprint"));
+    assertEquals("order 1 failed", second.get("message"));
+    assertFalse(second.getMap().containsKey("stackTrace"));
+  }
+  
+  /**
+   * @see AttributeDecomposer#setStackTraceCacheSize(int)
+   */
+  @Test
+  public void testStackTraceCacheSize() {
+    _decomposer.setStackTraceCacheSize(0);
+    Exception[] failures = failures(2);
+    LazyDynaBean first = (LazyDynaBean)_decomposer.decompose(failures[0]);
+    LazyDynaBean second = (LazyDynaBean)_decomposer.decompose(failures[1]);
+    assertNotSame(first.get("stackTrace"), second.get("stackTrace"));
+    
+    try {
+      _decomposer.setStackTraceCacheSize(-1);
+      fail("negative cache size accepted");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+  
+  /**
+   * @see AttributeDecomposer#decompose(Object)
+   */
+  @Test
+  public void testDifferentStackTraceNotShared() {
+    Exception[] failures = failures(2);
+    StackTraceElement[] stackTrace = failures[1].getStackTrace();
+    StackTraceElement[] longer = new StackTraceElement[stackTrace.length + 1];
+    System.arraycopy(stackTrace, 0, longer, 0, stackTrace.length);
+    longer[stackTrace.length] = new StackTraceElement("Caller", "call", "Caller.java", 1);
+    failures[1].setStackTrace(longer);
+    
+    LazyDynaBean first = (LazyDynaBean)_decomposer.decompose(failures[0]);
+    LazyDynaBean second = (LazyDynaBean)_decomposer.decompose(failures[1]);
+    
+    assertEquals(first.get("fingerprint"), second.get("fingerprint"));
+    assertEquals(longer.length, ((Object[])second.get("stackTrace")).length);
+  }
+  
+  /**
+   * @see AttributeDecomposer#setStackTraceCacheSize(int)
+   */
+  @Test
+  public void testSameFingerprintStackTracesBothKept() {
+    Exception[] failures = failures(4);
+    StackTraceElement[] stackTrace = failures[0].getStackTrace();
+    StackTraceElement[] longer = new StackTraceElement[stackTrace.length + 1];
+    System.arraycopy(stackTrace, 0, longer, 0, stackTrace.length);
+    longer[stackTrace.length] = new StackTraceElement("Caller", "call", "Caller.java", 1);
+    failures[1].setStackTrace(longer);
+    failures[3].setStackTrace(longer);
+    
+    LazyDynaBean[] decomposed = new LazyDynaBean[failures.length];
+    for (int i = 0; i < failures.length; i++) {
+      decomposed[i] = (LazyDynaBean)_decomposer.decompose(failures[i]);
+    }
+    assertEquals(decomposed[0].get("fingerprint"), decomposed[1].get("fingerprint"));
+    assertNotSame(decomposed[0].get("stackTrace"), decomposed[1].get("stackTrace"));
+    assertSame(decomposed[0].get("stackTrace"), decomposed[2].get("stackTrace"));
+    assertSame(decomposed[1].get("stackTrace"), decomposed[3].get("stackTrace"));
+  }
+  
+  /**
+   * @see AttributeDecomposer#decompose(Object)
+   */
+  @Test
+  public void testCauseDecomposed() {
+    Exception cause = new IllegalArgumentException("bad id 12");
+    LazyDynaBean decomposed = (LazyDynaBean)_decomposer.decompose(new RuntimeException("failed",
+        cause));
+    
+    LazyDynaBean decomposedCause = (LazyDynaBean)decomposed.get("cause");
+    assertEquals(IllegalArgumentException.class.getName(), decomposedCause.get("class"));
+    assertEquals("bad id 12", decomposedCause.get("message"));
+    assertNotNull(decomposedCause.get("fingerprint"));
+    assertNotNull(decomposedCause.get("stackTrace"));
+  }
+  
+  /**
+   * @see AttributeDecomposer#setMaxDepth(int)
+   */
+  @Test
+  public void testTruncatedStackTraceNotKept() {
+    Exception[] failures = failures(2);
+    _decomposer.setMaxDepth(1);
+    LazyDynaBean first = (LazyDynaBean)_decomposer.decompose(failures[0]);
+    Object[] stackTrace = (Object[])first.get("stackTrace");
+    assertFalse(((LazyDynaBean)stackTrace[0]).getMap().containsKey("methodName"));
+    
+    _decomposer.setMaxDepth(0);
+    LazyDynaBean second = (LazyDynaBean)_decomposer.decompose(failures[1]);
+    stackTrace = (Object[])second.get("stackTrace");
+    assertEquals("failures", ((LazyDynaBean)stackTrace[0]).get("methodName"));
+  }
+  
+  /**
+   * @see AttributeDecomposer#setMaxSize(int)
+   */
+  @Test
+  public void testKeptStackTraceCountsTowardsMaxSize() {
+    Exception[] failures = failures(3);
+    AttributeDecomposer uncached = new AttributeDecomposer();
+    uncached.setStackTraceCacheSize(0);
+    int maxSize = 3 * (failures[0].getStackTrace().length + 4);
+    for (int size = 1; size <= maxSize; size++) {
+      _decomposer.setMaxSize(size);
+      uncached.setMaxSize(size);
+      assertEquals("maxSize " + size, shape(uncached.decompose(failures)),
+          shape(_decomposer.decompose(failures)));
+    }
+  }
+  
+  /**
+   * Describes which properties of a decomposed object are present, leaving out their values
+   * @param decomposed the decomposed object
+   * @return the description
+   */
+  private static String shape(final Object decomposed) {
+    if (decomposed instanceof Object[]) {
+      StringBuilder shape = new StringBuilder("[");
+      for (Object item : (Object[])decomposed) {
+        shape.append(shape(item)).append(' ');
+      }
+      return shape.append(']').toString();
+    }
+    if (decomposed instanceof LazyDynaBean) {
+      @SuppressWarnings("unchecked")
+      Map<String, Object> properties = new TreeMap<String, Object>(
+          ((LazyDynaBean)decomposed).getMap());
+      StringBuilder shape = new StringBuilder("{");
+      for (Map.Entry<String, Object> property : properties.entrySet()) {
+        shape.append(property.getKey()).append('=').append(shape(property.getValue())).append(' ');
+      }
+      return shape.append('}').toString();
+    }
+    return "-";
+  }
+  
+  /**
+   * Creates failures that differ only by the number in their message
+   * @param count the number of failures
+   * @return the failures
+   */
+  private static Exception[] failures(final int count) {
+    Exception[] failures = new Exception[count];
+    for (int i = 0; i < count; i++) {
+      failures[i] = new IllegalStateException("order " + i + " failed");
+    }
+    return failures;
+  }
+}
@@ -0,0 +1,145 @@
+package com.orbitz.monitoring.lib.factory;
+
+import static org.junit.Assert.*;
+
+import com.orbitz.monitoring.api.Monitor;
+import com.orbitz.monitoring.api.MonitorProcessor;
+import com.orbitz.monitoring.api.monitor.EventMonitor;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.commons.jexl.ExpressionFactory;
+import org.apache.commons.jexl.JexlContext;
+import org.apache.commons.jexl.JexlHelper;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link CompiledExpression}.
+ */
+public class CompiledExpressionTest {
+  private static final String[] EXPRESSIONS = {"m.name == 'test'", "name == 'test'",
+      "m.get('name') != 'other'", "m.getAsString('count') == '5'", "count == 5", "count eq 5.0",
+      "count > 4 and count <= 5", "count lt 3 or ratio ge 0.5", "5 < count", "ratio == 0.25",
+      "not (count == 5)", "!failed", "failed || m.name.startsWith('te')",
+      "name.matches('t[a-z]+')", "m.name.endsWith('st') && m.get('missing') == 'x'",
+      "missing == null", "missing != 'x'", "missing < 3", "name == 5", "count == '5'",
+      "type.equals('a')", "flag", "flag and count == 5", "m.failed", "name > 'abc'",
+      "!failed and count == 5", "not name.startsWith('x')", "!(count > 4) or flag",
+      "not not flag"};
+
+  /**
+   * Expressions among {@link #EXPRESSIONS} whose result depends on JEXL coercions that aren't
+   * reproduced
+   */
+  private static final Set<String> UNDECIDED = new HashSet<String>(Arrays.asList("name == 5",
+      "count == '5'", "m.name.endsWith('st') && m.get('missing') == 'x'"));
+
+  private Monitor monitor;
+
+  @Before
+  public void setUp() {
+    monitor = new EventMonitor("test");
+    monitor.set("count", 5);
+    monitor.set("ratio", 0.25);
+    monitor.set("failed", false);
+    monitor.set("flag", true);
+    monitor.set("type", "a");
+  }
+
+  @Test
+  public void testCompiledResultsMatchJexl() throws Exception {
+    for (String expression : EXPRESSIONS) {
+      final CompiledExpression compiled = CompiledExpression.compile(expression);
+      assertNotNull("Should compile " + expression, compiled);
+      final Boolean result = compiled.evaluate(monitor);
+      if (UNDECIDED.contains(expression)) {
+        assertNull("Should leave " + expression + " to JEXL", result);
+      }
+      else {
+        assertNotNull("Should decide " + expression, result);
+        assertEquals(expression, evaluateWithJexl(expression), result.booleanValue());
+      }
+    }
+  }
+
+  @Test
+  public void testEscapedLiteralsLeftToJexl() throws Exception {
+    monitor.set("path", "a\\b");
+    for (String expression : new String[] {"path == 'a\\\\b'", "path == \"a\\\\b\"",
+        "m.get('path') == 'a\\\\b'", "path.startsWith('a\\\\')", "path == '", "path == \""}) {
+      assertNull("Should not compile " + expression, CompiledExpression.compile(expression));
+    }
+
+    final ProcessGroup group = new ProcessGroup(new MonitorProcessor[0]);
+    group.setExpression("path == 'a\\\\b'");
+    assertEquals(evaluateWithJexl("path == 'a\\\\b'"), group.matchesExpressionFor(monitor));
+  }
+
+  @Test
+  public void testNegatedComparisonsLeftToJexl() throws Exception {
+    monitor = new EventMonitor("x");
+    monitor.set("latency", 2000);
+    for (String expression : new String[] {"name == 'x' and not latency > 5000",
+        "!name == 'y'"}) {
+      assertNull("Should not compile " + expression, CompiledExpression.compile(expression));
+      final ProcessGroup group = new ProcessGroup(new MonitorProcessor[0]);
+      group.setExpression(expression);
+      assertEquals(expression, matchesWithJexl(expression), group.matchesExpressionFor(monitor));
+    }
+  }
+
+  @Test
+  public void testUndecidedForMismatchedTypes() {
+    assertNull(CompiledExpression.compile("name == 5").evaluate(monitor));
+    assertNull(CompiledExpression.compile("count == '5'").evaluate(monitor));
+    assertNull(CompiledExpression.compile("m.get('missing') == 'x'").evaluate(monitor));
+  }
+
+  @Test
+  public void testShortCircuit() {
+    assertEquals(Boolean.FALSE, CompiledExpression.compile(
+        "name == 'other' and m.get('missing') == 'x'").evaluate(monitor));
+    assertEquals(Boolean.TRUE, CompiledExpression.compile(
+        "name == 'test' or m.get('missing') == 'x'").evaluate(monitor));
+  }
+
+  @Test
+  public void testUnsupportedExpressions() {
+    assertNull(CompiledExpression.compile("m"));
+    assertNull(CompiledExpression.compile("m.level == 'INFO'"));
+    assertNull(CompiledExpression.compile("count + 1 == 6"));
+    assertNull(CompiledExpression.compile("name.substring(1) == 'est'"));
+    assertNull(CompiledExpression.compile("count == ratio"));
+    assertNull(CompiledExpression.compile("name == 'test' and"));
+    assertNull(CompiledExpression.compile("(name == 'test'"));
+    assertNull(CompiledExpression.compile("name.matches('[')"));
+    assertNull(CompiledExpression.compile("size(name) == 4"));
+  }
+
+  @Test
+  public void testAttributeNames() {
+    assertEquals(new HashSet<String>(Arrays.asList("name", "count", "ratio")), CompiledExpression
+        .compile("m.name == 'a' or (m.get('count') > 3 and ratio < 1.0)").getAttributeNames());
+  }
+
+  /**
+   * Evaluates an expression with JEXL as a process group would, failing to match on an error
+   */
+  private boolean matchesWithJexl(final String expression) {
+    try {
+      return evaluateWithJexl(expression);
+    }
+    catch (Exception e) {
+      return false;
+    }
+  }
+
+  private boolean evaluateWithJexl(final String expression) throws Exception {
+    final JexlContext context = JexlHelper.createContext();
+    context.getVars().put("m", monitor);
+    context.getVars().putAll(monitor.getAll());
+    final Object result = ExpressionFactory.createExpression(expression).evaluate(context);
+    return Boolean.TRUE.equals(result);
+  }
+}
@@ -0,0 +1,82 @@
+package com.orbitz.monitoring.lib.factory;
+
+import com.orbitz.monitoring.api.Monitor;
+import com.orbitz.monitoring.api.monitor.EventMonitor;
+import org.apache.commons.jexl.Expression;
+import org.apache.commons.jexl.ExpressionFactory;
+import org.apache.commons.jexl.JexlContext;
+import org.apache.commons.jexl.JexlHelper;
+
+/**
+ * Compares the compiled expression path of {@link ProcessGroup} with evaluating the same expressions
+ * through JEXL. Run with <code>java ProcessGroupExpressionBenchmark [iterations]</code>.
+ */
+public class ProcessGroupExpressionBenchmark {
+  private static final String[] EXPRESSIONS = {"m.name == 'checkout'",
+      "name.matches('check.*') and m.get('count') > 3",
+      "m.get('host').startsWith('web') or failed == true",
+      "m.name == 'checkout' and hotel ne 'x' and ratio lt 0.5"};
+
+  public static void main(final String[] args) throws Exception {
+    final int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+    final Monitor monitor = new EventMonitor("checkout");
+    monitor.set("count", 5);
+    monitor.set("host", "web12");
+    monitor.set("failed", false);
+    monitor.set("hotel", "y");
+    monitor.set("ratio", 0.25);
+    for (int i = 0; i < 20; i++) {
+      monitor.set("extra" + i, i);
+    }
+
+    for (String expression : EXPRESSIONS) {
+      final CompiledExpression compiled = CompiledExpression.compile(expression);
+      final Expression jexl = ExpressionFactory.createExpression(expression);
+      // warm up both paths before timing them
+      runCompiled(compiled, monitor, iterations);
+      runJexl(jexl, monitor, iterations);
+      final long compiledNanos = runCompiled(compiled, monitor, iterations);
+      final long jexlNanos = runJexl(jexl, monitor, iterations);
+      System.out.println(expression);
+      System.out.println("  compiled: " + (compiledNanos / iterations) + " ns/op");
+      System.out.println("  jexl:     " + (jexlNanos / iterations) + " ns/op");
+    }
+  }
+
+  private static long runCompiled(final CompiledExpression compiled, final Monitor monitor,
+      final int iterations) {
+    int matches = 0;
+    final long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      if (Boolean.TRUE.equals(compiled.evaluate(monitor))) {
+        matches++;
+      }
+    }
+    final long elapsed = System.nanoTime() - start;
+    consume(matches);
+    return elapsed;
+  }
+
+  private static long runJexl(final Expression expression, final Monitor monitor,
+      final int iterations) throws Exception {
+    int matches = 0;
+    final long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      final JexlContext context = JexlHelper.createContext();
+      context.getVars().put("m", monitor);
+      context.getVars().putAll(monitor.getAll());
+      if (Boolean.TRUE.equals(expression.evaluate(context))) {
+        matches++;
+      }
+    }
+    final long elapsed = System.nanoTime() - start;
+    consume(matches);
+    return elapsed;
+  }
+
+  private static void consume(final int matches) {
+    if (matches < 0) {
+      System.out.println(matches);
+    }
+  }
+}
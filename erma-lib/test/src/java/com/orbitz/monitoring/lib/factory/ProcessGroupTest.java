@@ -330,4 +330,29 @@ public class ProcessGroupTest {
     processors = processGroup.getProcessorsFor(new EventMonitor("test"));
     assertSize("Processor should appy to monitor", 0, processors);
   }
+  
+  @Test
+  public void testUsesAttributesOtherThanName() {
+    assertFalse(ProcessGroup.usesAttributesOtherThanName("m.name == 'baz'"));
+    assertFalse(ProcessGroup.usesAttributesOtherThanName("m.get('name').matches('foo.*')"));
+    assertFalse(ProcessGroup.usesAttributesOtherThanName("name == 'a' or name.startsWith(\"b\")"));
+    assertTrue(ProcessGroup.usesAttributesOtherThanName("m.get('foo').matches('bar')"));
+    assertTrue(ProcessGroup.usesAttributesOtherThanName("foo == 'name'"));
+    assertTrue(ProcessGroup.usesAttributesOtherThanName("m.failed"));
+    assertTrue(ProcessGroup.usesAttributesOtherThanName("m"));
+  }
+  
+  @Test
+  public void testVersionChangesWithConfiguration() {
+    int version = processGroup.getVersion();
+    processGroup.setActive(false);
+    assertTrue(processGroup.getVersion() != version);
+    version = processGroup.getVersion();
+    processGroup.updateMonitoringLevel(MonitoringLevel.DEBUG.toString());
+    assertTrue(processGroup.getVersion() != version);
+    version = processGroup.getVersion();
+    processGroup.setExpression("m.get('foo') == 'bar'");
+    assertTrue(processGroup.getVersion() != version);
+    assertTrue(processGroup.isMonitorAttributeDependent());
+  }
 }
@@ -1,9 +1,13 @@
 package com.orbitz.monitoring.lib.factory;
 
+import com.orbitz.monitoring.api.Attribute;
+import com.orbitz.monitoring.api.DispatchPlan;
+import com.orbitz.monitoring.api.Monitor;
 import com.orbitz.monitoring.api.MonitorProcessor;
 import com.orbitz.monitoring.api.MonitoringLevel;
 import com.orbitz.monitoring.api.MonitoringEngine;
 import com.orbitz.monitoring.api.monitor.EventMonitor;
+import com.orbitz.monitoring.lib.processor.MonitorProcessorAdapter;
 import com.orbitz.monitoring.test.MockMonitorProcessor;
 import junit.framework.TestCase;
 
@@ -133,4 +137,157 @@ public class SimpleMonitorProcessorFactoryTest extends TestCase {
         assertEquals("Processor[] contents", expected, actual);
     }
 
+    public void testRoutingIsCachedForSameMonitorShape() {
+        SimpleMonitorProcessorFactory factory =
+                new SimpleMonitorProcessorFactory(new ProcessGroup[] {_aAndB});
+
+        MonitorProcessor[] first = factory.getProcessorsForMonitor(new EventMonitor("baz"));
+        MonitorProcessor[] second = factory.getProcessorsForMonitor(new EventMonitor("baz"));
+
+        assertSame("cached processors", first, second);
+        assertEquals("Processor[].length", 2, second.length);
+    }
+
+    public void testRoutingCacheInvalidatedByProcessGroupChanges() {
+        SimpleMonitorProcessorFactory factory =
+                new SimpleMonitorProcessorFactory(new ProcessGroup[] {_justA});
+
+        assertEquals(1, factory.getProcessorsForMonitor(new EventMonitor("baz")).length);
+
+        _justA.setActive(false);
+        assertEquals(0, factory.getProcessorsForMonitor(new EventMonitor("baz")).length);
+
+        _justA.setActive(true);
+        _justA.updateMonitoringLevel(MonitoringLevel.ESSENTIAL.toString());
+        assertEquals(0, factory.getProcessorsForMonitor(new EventMonitor("baz")).length);
+
+        _justA.updateMonitoringLevel(MonitoringLevel.INFO.toString());
+        _justA.setExpression("m.name == 'xxx'");
+        assertEquals(0, factory.getProcessorsForMonitor(new EventMonitor("baz")).length);
+        assertEquals(1, factory.getProcessorsForMonitor(new EventMonitor("xxx")).length);
+    }
+
+    public void testRoutingCacheInvalidatedByProcessorLevel() {
+        MockMonitorProcessor named = new MockMonitorProcessor("routingCacheProcessor");
+        SimpleMonitorProcessorFactory factory = new SimpleMonitorProcessorFactory(
+                new ProcessGroup[] {new ProcessGroup(named)});
+
+        assertEquals(1, factory.getProcessorsForMonitor(new EventMonitor("baz")).length);
+
+        MonitoringEngine.getInstance().addProcessorLevel("routingCacheProcessor",
+                MonitoringLevel.ESSENTIAL);
+        assertEquals(0, factory.getProcessorsForMonitor(new EventMonitor("baz")).length);
+
+        MonitoringEngine.getInstance().addProcessorLevel("routingCacheProcessor",
+                MonitoringLevel.INFO);
+        assertEquals(1, factory.getProcessorsForMonitor(new EventMonitor("baz")).length);
+    }
+
+    public void testAttributeDependentProcessGroupBypassesCache() {
+        _aAndC.setExpression("m.get('foo') == 'bar'");
+        SimpleMonitorProcessorFactory factory =
+                new SimpleMonitorProcessorFactory(new ProcessGroup[] {_justA, _aAndC});
+
+        EventMonitor matching = new EventMonitor("baz");
+        matching.set("foo", "bar");
+        EventMonitor other = new EventMonitor("baz");
+        other.set("foo", "qux");
+
+        List expected = Arrays.asList(new MonitorProcessor[] {_a, _c});
+        assertEquals(expected, Arrays.asList(factory.getProcessorsForMonitor(matching)));
+        assertEquals(Arrays.asList(new MonitorProcessor[] {_a}),
+                Arrays.asList(factory.getProcessorsForMonitor(other)));
+        assertEquals(expected, Arrays.asList(factory.getProcessorsForMonitor(matching)));
+    }
+
+    public void testRoutingCacheDisabled() {
+        SimpleMonitorProcessorFactory factory =
+                new SimpleMonitorProcessorFactory(new ProcessGroup[] {_justA});
+        factory.setMaxRoutingCacheSize(0);
+
+        MonitorProcessor[] first = factory.getProcessorsForMonitor(new EventMonitor("baz"));
+        MonitorProcessor[] second = factory.getProcessorsForMonitor(new EventMonitor("baz"));
+
+        assertNotSame("uncached processors", first, second);
+        assertEquals(Arrays.asList(first), Arrays.asList(second));
+    }
+
+    public void testLowestMonitoredLevel() {
+        _aAndB.updateMonitoringLevel("DEBUG");
+        SimpleMonitorProcessorFactory factory =
+                new SimpleMonitorProcessorFactory(new ProcessGroup[] {_justA, _aAndB});
+        assertEquals(MonitoringLevel.DEBUG, factory.getLowestMonitoredLevel());
+
+        _aAndB.setActive(false);
+        assertEquals(MonitoringLevel.INFO, factory.getLowestMonitoredLevel());
+
+        _justA.setActive(false);
+        assertNull(factory.getLowestMonitoredLevel());
+
+        _justA.setActive(true);
+        _a.setName("lowestLevelProcessor");
+        MonitoringEngine.getInstance().addProcessorLevel("lowestLevelProcessor",
+                MonitoringLevel.ESSENTIAL);
+        try {
+            assertEquals(MonitoringLevel.ESSENTIAL, factory.getLowestMonitoredLevel());
+        } finally {
+            MonitoringEngine.getInstance().addProcessorLevel("lowestLevelProcessor",
+                    MonitoringLevel.DEBUG);
+        }
+    }
+
+    public void testDispatchPlan() {
+        MonitorProcessor processOnly = new MonitorProcessorAdapter() {
+            @Override
+            public void process(Monitor monitor) {
+            }
+        };
+        ProcessGroup group = new ProcessGroup(new MonitorProcessor[] {_a, processOnly});
+        SimpleMonitorProcessorFactory factory =
+                new SimpleMonitorProcessorFactory(new ProcessGroup[] {group});
+
+        EventMonitor monitor = new EventMonitor("dispatchPlan");
+        DispatchPlan plan = factory.getDispatchPlan(monitor);
+        assertSame("cached plan", plan, factory.getDispatchPlan(new EventMonitor("dispatchPlan")));
+        assertTrue(factory.isCurrent(plan, monitor));
+        assertEquals(Arrays.asList(new MonitorProcessor[] {_a}),
+                Arrays.asList(plan.getProcessors(DispatchPlan.MONITOR_CREATED)));
+        assertEquals(Arrays.asList(new MonitorProcessor[] {_a}),
+                Arrays.asList(plan.getProcessors(DispatchPlan.MONITOR_STARTED)));
+        assertEquals(Arrays.asList(new MonitorProcessor[] {_a, processOnly}),
+                Arrays.asList(plan.getProcessors(DispatchPlan.PROCESS)));
+
+        group.setActive(false);
+        assertFalse(factory.isCurrent(plan, monitor));
+        assertEquals(0, factory.getDispatchPlan(new EventMonitor("dispatchPlan"))
+                .getProcessors(DispatchPlan.PROCESS).length);
+        group.setActive(true);
+
+        MonitoringEngine.getInstance().addProcessorLevel("dispatchPlan", MonitoringLevel.ESSENTIAL);
+        assertFalse(factory.isCurrent(plan, monitor));
+    }
+
+    public void testDispatchPlanOfRenamedMonitor() {
+        ProcessGroup group = new ProcessGroup(new MonitorProcessor[] {_a});
+        group.setExpression("name == 'dispatchPlan'");
+        SimpleMonitorProcessorFactory factory =
+                new SimpleMonitorProcessorFactory(new ProcessGroup[] {group});
+
+        EventMonitor monitor = new EventMonitor("dispatchPlan");
+        DispatchPlan plan = factory.getDispatchPlan(monitor);
+        assertEquals(1, plan.getProcessors(DispatchPlan.PROCESS).length);
+        assertTrue(factory.isCurrent(plan, monitor));
+
+        monitor.set(Attribute.NAME, "renamed");
+        assertFalse(factory.isCurrent(plan, monitor));
+        assertEquals(0, factory.getDispatchPlan(monitor).getProcessors(DispatchPlan.PROCESS).length);
+    }
+
+    public void testNoDispatchPlanForAttributeDependentProcessGroup() {
+        _aAndC.setExpression("m.get('foo') == 'bar'");
+        SimpleMonitorProcessorFactory factory =
+                new SimpleMonitorProcessorFactory(new ProcessGroup[] {_justA, _aAndC});
+
+        assertNull(factory.getDispatchPlan(new EventMonitor("dispatchPlan")));
+    }
 }
@@ -0,0 +1,81 @@
+package com.orbitz.monitoring.lib.processor;
+
+import com.orbitz.monitoring.api.Monitor;
+import com.orbitz.monitoring.api.MonitorProcessor;
+import com.orbitz.monitoring.api.monitor.EventMonitor;
+import java.util.concurrent.CountDownLatch;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * Compares handing monitors to an {@link AsyncMonitorProcessor} through its blocking queue and
+ * through its {@link AsyncMonitorProcessor#setRingBufferHandoff(boolean) ring buffer} with each
+ * wait strategy, from several threads at once. Run with
+ * <code>java AsyncHandoffBenchmark [producers] [monitors per producer]</code>.
+ */
+public class AsyncHandoffBenchmark {
+  public static void main(final String[] args) throws Exception {
+    final int producers = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+    final int monitors = (args.length > 1) ? Integer.parseInt(args[1]) : 200000;
+    BasicConfigurator.configure();
+    Logger.getRootLogger().setLevel(Level.WARN);
+    // the same monitor is handed off repeatedly so that creating monitors isn't measured
+    final Monitor monitor = new EventMonitor("handoff");
+    for (int round = 0; round < 2; round++) {
+      // the first round warms up every path
+      run("queue", null, producers, monitors, monitor, round > 0);
+      for (final String waitStrategy : new String[] {AsyncMonitorProcessor.BLOCKING_WAIT,
+          AsyncMonitorProcessor.PARKING_WAIT, AsyncMonitorProcessor.YIELDING_WAIT,
+          AsyncMonitorProcessor.BUSY_SPIN_WAIT}) {
+        run("ring, " + waitStrategy, waitStrategy, producers, monitors, monitor, round > 0);
+      }
+    }
+  }
+
+  private static void run(final String label, final String waitStrategy, final int producers,
+      final int monitors, final Monitor monitor, final boolean report) throws Exception {
+    final AsyncMonitorProcessor processor = new AsyncMonitorProcessor(
+        new MonitorProcessor[] {new MonitorProcessorAdapter() {
+        }});
+    processor.setDeferredDecomposition(true);
+    processor.setCapacity(4096);
+    processor.setOverloadPolicy(AsyncMonitorProcessor.BLOCK);
+    processor.setBlockTimeout(60000);
+    if (waitStrategy != null) {
+      processor.setRingBufferHandoff(true);
+      processor.setWaitStrategy(waitStrategy);
+    }
+    processor.startup();
+    final CountDownLatch start = new CountDownLatch(1);
+    final Thread[] threads = new Thread[producers];
+    for (int i = 0; i < producers; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          }
+          catch (InterruptedException e) {
+            return;
+          }
+          for (int j = 0; j < monitors; j++) {
+            processor.process(monitor);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    final long begin = System.nanoTime();
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    processor.flushEvents();
+    final long elapsed = System.nanoTime() - begin;
+    processor.shutdown();
+    if (report) {
+      System.out.println(label + ": " + (elapsed / ((long)producers * monitors)) + " ns/monitor");
+    }
+  }
+}
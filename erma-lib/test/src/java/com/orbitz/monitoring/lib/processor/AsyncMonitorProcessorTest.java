@@ -2,14 +2,26 @@ package com.orbitz.monitoring.lib.processor;
 
 import static org.junit.Assert.*;
 
+import com.orbitz.monitoring.api.BatchMonitorProcessor;
 import com.orbitz.monitoring.api.Monitor;
 import com.orbitz.monitoring.api.MonitorProcessor;
+import com.orbitz.monitoring.api.MonitoringLevel;
 import com.orbitz.monitoring.api.monitor.EventMonitor;
+import com.orbitz.monitoring.api.monitor.serializable.SerializableMonitor;
 import com.orbitz.monitoring.lib.BaseMonitoringEngineManager;
 import com.orbitz.monitoring.lib.factory.ProcessGroup;
 import com.orbitz.monitoring.lib.factory.SimpleMonitorProcessorFactory;
 import com.orbitz.monitoring.test.MockMonitorProcessor;
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -89,4 +101,563 @@ public class AsyncMonitorProcessorTest {
     }
     assertTrue(checkMonitorCreated);
   }
+  
+  /**
+   * @see AsyncMonitorProcessor#setDeferredDecomposition(boolean)
+   */
+  @Test
+  public void testDeferredDecomposition() {
+    _processor.setDeferredDecomposition(true);
+    EventMonitor event = new EventMonitor("deferred");
+    event.set("key", "before");
+    _processor.process(event);
+    event.set("key", "after");
+    _processor.flushEvents();
+    Monitor[] monitors = _attachedProcessor.extractProcessObjects();
+    boolean checkProcessed = false;
+    for (Monitor monitor : monitors) {
+      if ("deferred".equals(monitor.get(Monitor.NAME))) {
+        assertTrue(monitor instanceof SerializableMonitor);
+        assertEquals("before", monitor.get("key"));
+        assertEquals(event.get(Monitor.CREATED_AT), monitor.get(Monitor.CREATED_AT));
+        checkProcessed = true;
+      }
+    }
+    assertTrue(checkProcessed);
+  }
+  
+  /**
+   * @see AsyncMonitorProcessor#DROP_NEWEST
+   */
+  @Test
+  public void testDropNewest() throws Exception {
+    final StallingProcessor stalling = new StallingProcessor();
+    final AsyncMonitorProcessor processor = stalled(stalling, 2, AsyncMonitorProcessor.DROP_NEWEST);
+    processor.process(new EventMonitor("m1"));
+    processor.process(new EventMonitor("m2"));
+    processor.process(new EventMonitor("m3"));
+    assertEquals(2, processor.getQueueDepth());
+    assertEquals(1, processor.getDroppedNewestCount());
+    assertEquals(Arrays.asList("m0", "m1", "m2"), drain(processor, stalling));
+  }
+  
+  /**
+   * @see AsyncMonitorProcessor#DROP_OLDEST
+   */
+  @Test
+  public void testDropOldest() throws Exception {
+    final StallingProcessor stalling = new StallingProcessor();
+    final AsyncMonitorProcessor processor = stalled(stalling, 2, AsyncMonitorProcessor.DROP_OLDEST);
+    processor.process(new EventMonitor("m1"));
+    processor.process(new EventMonitor("m2"));
+    processor.process(new EventMonitor("m3"));
+    assertEquals(2, processor.getQueueDepth());
+    assertEquals(1, processor.getDroppedOldestCount());
+    assertEquals(Arrays.asList("m0", "m2", "m3"), drain(processor, stalling));
+  }
+  
+  /**
+   * @see AsyncMonitorProcessor#DROP_BELOW_LEVEL
+   */
+  @Test
+  public void testDropBelowLevel() throws Exception {
+    final StallingProcessor stalling = new StallingProcessor();
+    final AsyncMonitorProcessor processor = stalled(stalling, 2,
+        AsyncMonitorProcessor.DROP_BELOW_LEVEL);
+    processor.setDropLevel("INFO");
+    processor.process(new EventMonitor("m1", MonitoringLevel.DEBUG));
+    processor.process(new EventMonitor("m2", MonitoringLevel.INFO));
+    // dropped itself
+    processor.process(new EventMonitor("m3", MonitoringLevel.DEBUG));
+    // makes room by dropping m1
+    processor.process(new EventMonitor("m4", MonitoringLevel.ESSENTIAL));
+    assertEquals(2, processor.getDroppedBelowLevelCount());
+    assertEquals(Arrays.asList("m0", "m2", "m4"), drain(processor, stalling));
+  }
+  
+  /**
+   * @see AsyncMonitorProcessor#BLOCK
+   */
+  @Test
+  public void testBlock() throws Exception {
+    final StallingProcessor stalling = new StallingProcessor();
+    final AsyncMonitorProcessor processor = stalled(stalling, 1, AsyncMonitorProcessor.BLOCK);
+    processor.setBlockTimeout(20);
+    processor.process(new EventMonitor("m1"));
+    final long start = System.nanoTime();
+    processor.process(new EventMonitor("m2"));
+    assertTrue(System.nanoTime() - start >= 20 * 1000 * 1000);
+    assertEquals(1, processor.getBlockTimeoutCount());
+    assertEquals(Arrays.asList("m0", "m1"), drain(processor, stalling));
+    // m1 waited at least as long as the caller blocked
+    assertTrue(processor.getMaxQueueLatency() >= 20 * 1000);
+    assertTrue(processor.getAverageQueueLatency() > 0);
+    processor.resetStatistics();
+    assertEquals(0, processor.getBlockTimeoutCount());
+    assertEquals(0, processor.getMaxQueueLatency());
+  }
+  
+  /**
+   * @see AsyncMonitorProcessor#setShards(int)
+   */
+  @Test
+  public void testShards() {
+    final OrderRecordingProcessor recording = new OrderRecordingProcessor();
+    final AsyncMonitorProcessor processor = new AsyncMonitorProcessor(
+        new MonitorProcessor[] {recording});
+    processor.setShards(4);
+    processor.startup();
+    for (int i = 0; i < 100; i++) {
+      for (int key = 0; key < 8; key++) {
+        final EventMonitor event = new EventMonitor("k" + key);
+        event.set("index", i);
+        processor.monitorStarted(event);
+        processor.process(event);
+      }
+    }
+    processor.flushEvents();
+    assertEquals(8, recording.indexes.size());
+    final Set<String> threads = new HashSet<String>();
+    for (Map.Entry<String, List<Integer>> entry : recording.indexes.entrySet()) {
+      final List<Integer> indexes = entry.getValue();
+      assertEquals(200, indexes.size());
+      for (int i = 0; i < 100; i++) {
+        // started, then processed, in the order handed off
+        assertEquals(Integer.valueOf(i), indexes.get(2 * i));
+        assertEquals(Integer.valueOf(i), indexes.get(2 * i + 1));
+      }
+      final Set<String> keyThreads = recording.threads.get(entry.getKey());
+      assertEquals(1, keyThreads.size());
+      threads.addAll(keyThreads);
+    }
+    assertTrue(threads.size() > 1);
+    processor.shutdown();
+  }
+  
+  /**
+   * @see AsyncMonitorProcessor#setRingBufferHandoff(boolean)
+   */
+  @Test
+  public void testRingBufferHandoff() throws Exception {
+    for (String waitStrategy : new String[] {AsyncMonitorProcessor.BUSY_SPIN_WAIT,
+        AsyncMonitorProcessor.YIELDING_WAIT, AsyncMonitorProcessor.PARKING_WAIT,
+        AsyncMonitorProcessor.BLOCKING_WAIT}) {
+      final OrderRecordingProcessor recording = new OrderRecordingProcessor();
+      final AsyncMonitorProcessor processor = new AsyncMonitorProcessor(
+          new MonitorProcessor[] {recording});
+      processor.setRingBufferHandoff(true);
+      processor.setWaitStrategy(waitStrategy);
+      processor.setCapacity(16);
+      processor.setShards(2);
+      processor.setOverloadPolicy(AsyncMonitorProcessor.BLOCK);
+      processor.setBlockTimeout(10000);
+      processor.startup();
+      final Thread[] producers = new Thread[4];
+      for (int p = 0; p < producers.length; p++) {
+        final String name = "k" + p;
+        producers[p] = new Thread() {
+          @Override
+          public void run() {
+            for (int i = 0; i < 500; i++) {
+              final EventMonitor event = new EventMonitor(name);
+              event.set("index", i);
+              processor.process(event);
+            }
+          }
+        };
+        producers[p].start();
+      }
+      for (Thread producer : producers) {
+        producer.join();
+      }
+      processor.flushEvents();
+      assertEquals(waitStrategy, 4, recording.indexes.size());
+      for (List<Integer> indexes : recording.indexes.values()) {
+        assertEquals(waitStrategy, 500, indexes.size());
+        for (int i = 0; i < 500; i++) {
+          assertEquals(waitStrategy, Integer.valueOf(i), indexes.get(i));
+        }
+      }
+      assertEquals(0, processor.getBlockTimeoutCount());
+      assertEquals(0, processor.getQueueDepth());
+      processor.shutdown();
+    }
+  }
+  
+  /**
+   * @see AsyncMonitorProcessor#setRingBufferHandoff(boolean)
+   * @see AsyncMonitorProcessor#DROP_NEWEST
+   */
+  @Test
+  public void testRingBufferDropNewest() throws Exception {
+    final StallingProcessor stalling = new StallingProcessor();
+    final AsyncMonitorProcessor processor = new AsyncMonitorProcessor(
+        new MonitorProcessor[] {stalling});
+    processor.setRingBufferHandoff(true);
+    processor.setDeferredDecomposition(true);
+    processor.setCapacity(4);
+    processor.startup();
+    processor.process(new EventMonitor("m0"));
+    stalling.stalled.await();
+    // the monitor being processed keeps its slot until it is done
+    processor.process(new EventMonitor("m1"));
+    processor.process(new EventMonitor("m2"));
+    processor.process(new EventMonitor("m3"));
+    processor.process(new EventMonitor("m4"));
+    assertEquals(4, processor.getQueueDepth());
+    assertEquals(1, processor.getDroppedNewestCount());
+    assertEquals(Arrays.asList("m0", "m1", "m2", "m3"), drain(processor, stalling));
+  }
+  
+  /**
+   * @see AsyncMonitorProcessor#setRingBufferHandoff(boolean)
+   */
+  @Test
+  public void testRingBufferSurvivesError() throws Exception {
+    final FailingProcessor failing = new FailingProcessor(true);
+    final AsyncMonitorProcessor processor = new AsyncMonitorProcessor(
+        new MonitorProcessor[] {failing});
+    processor.setRingBufferHandoff(true);
+    processor.startup();
+    processor.monitorStarted(new EventMonitor("bad"));
+    processor.process(new EventMonitor("m1"));
+    processor.flushEvents();
+    assertEquals(Arrays.asList("m1"), failing.names);
+    processor.shutdown();
+  }
+  
+  /**
+   * @see BatchMonitorProcessor
+   */
+  @Test
+  public void testFailingProcessorIsolated() throws Exception {
+    checkFailureIsolated(false);
+    checkFailureIsolated(true);
+  }
+  
+  private void checkFailureIsolated(final boolean ringBufferHandoff) throws Exception {
+    final StallingProcessor stalling = new StallingProcessor();
+    final FailingProcessor failing = new FailingProcessor(false);
+    final OrderRecordingProcessor recording = new OrderRecordingProcessor();
+    final AsyncMonitorProcessor processor = new AsyncMonitorProcessor(new MonitorProcessor[] {
+        stalling, failing, recording});
+    processor.setRingBufferHandoff(ringBufferHandoff);
+    processor.setMaxBatchSize(8);
+    processor.startup();
+    processor.process(event(0));
+    stalling.stalled.await();
+    // queued behind the stalled monitor, so they're processed as one batch
+    for (int i = 1; i <= 5; i++) {
+      processor.process(event(i));
+      if (i == 2) {
+        final EventMonitor bad = new EventMonitor("bad");
+        bad.set("index", i);
+        processor.process(bad);
+      }
+    }
+    stalling.release.countDown();
+    processor.flushEvents();
+    assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), recording.indexes.get("batch"));
+    assertEquals(1, recording.indexes.get("bad").size());
+    assertEquals(6, failing.names.size());
+    processor.shutdown();
+  }
+  
+  /**
+   * @see AsyncMonitorProcessor#setDeferredDecomposition(boolean)
+   */
+  @Test
+  public void testFailedDecompositionIsolated() throws Exception {
+    checkFailedDecompositionIsolated(false);
+    checkFailedDecompositionIsolated(true);
+  }
+  
+  private void checkFailedDecompositionIsolated(final boolean ringBufferHandoff)
+      throws Exception {
+    final StallingProcessor stalling = new StallingProcessor();
+    final AsyncMonitorProcessor processor = new AsyncMonitorProcessor(
+        new MonitorProcessor[] {stalling});
+    processor.setRingBufferHandoff(ringBufferHandoff);
+    processor.setDeferredDecomposition(true);
+    processor.setMaxBatchSize(8);
+    processor.startup();
+    processor.process(new EventMonitor("m0"));
+    stalling.stalled.await();
+    // queued behind the stalled monitor, so they're taken as one batch
+    processor.process(new EventMonitor("m1"));
+    final EventMonitor bad = new EventMonitor("bad");
+    bad.set("value", new FailingValue()).serializable();
+    processor.process(bad);
+    processor.process(new EventMonitor("m2"));
+    stalling.release.countDown();
+    processor.flushEvents();
+    assertEquals(Arrays.asList("m0", "m1", "m2"), stalling.names);
+    processor.shutdown();
+  }
+  
+  /**
+   * @see AsyncMonitorProcessor#flushEvents()
+   */
+  @Test
+  public void testRingBufferFlushWhileHandingOff() throws Exception {
+    final OrderRecordingProcessor recording = new OrderRecordingProcessor();
+    final AsyncMonitorProcessor processor = new AsyncMonitorProcessor(
+        new MonitorProcessor[] {recording});
+    processor.setRingBufferHandoff(true);
+    processor.setCapacity(16);
+    processor.setOverloadPolicy(AsyncMonitorProcessor.BLOCK);
+    processor.setBlockTimeout(10000);
+    processor.startup();
+    final Thread[] producers = new Thread[4];
+    for (int p = 0; p < producers.length; p++) {
+      final String name = "k" + p;
+      producers[p] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 2000; i++) {
+            final EventMonitor event = new EventMonitor(name);
+            event.set("index", i);
+            processor.process(event);
+          }
+        }
+      };
+      producers[p].start();
+    }
+    // each flush halts the ring buffers that the producers are publishing to
+    for (Thread producer : producers) {
+      while (producer.isAlive()) {
+        processor.flushEvents();
+      }
+    }
+    processor.flushEvents();
+    assertEquals(4, recording.indexes.size());
+    for (List<Integer> indexes : recording.indexes.values()) {
+      assertEquals(2000, indexes.size());
+    }
+    processor.shutdown();
+  }
+  
+  /**
+   * @see BatchMonitorProcessor
+   */
+  @Test
+  public void testBatchProcessor() throws Exception {
+    checkBatches(false);
+    checkBatches(true);
+  }
+  
+  private void checkBatches(final boolean ringBufferHandoff) throws Exception {
+    final BatchRecordingProcessor batchProcessor = new BatchRecordingProcessor();
+    final OrderRecordingProcessor singleProcessor = new OrderRecordingProcessor();
+    final AsyncMonitorProcessor processor = new AsyncMonitorProcessor(new MonitorProcessor[] {
+        batchProcessor, singleProcessor});
+    processor.setRingBufferHandoff(ringBufferHandoff);
+    processor.setMaxBatchSize(4);
+    processor.startup();
+    processor.process(event(0));
+    batchProcessor.stalled.await();
+    for (int i = 1; i <= 6; i++) {
+      processor.process(event(i));
+    }
+    // splits the batch, so monitors are processed in the order they were handed off
+    processor.monitorStarted(event(7));
+    processor.process(event(8));
+    batchProcessor.release.countDown();
+    processor.flushEvents();
+    final List<List<Integer>> expected = new ArrayList<List<Integer>>();
+    expected.add(Arrays.asList(0));
+    expected.add(Arrays.asList(1, 2, 3, 4));
+    expected.add(Arrays.asList(5, 6));
+    expected.add(Arrays.asList(8));
+    assertEquals(expected, batchProcessor.batches);
+    assertEquals(Arrays.asList(7), batchProcessor.started);
+    assertEquals(2, batchProcessor.flushes);
+    assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8), singleProcessor.indexes.get("batch"));
+    processor.shutdown();
+  }
+  
+  /**
+   * @see BatchMonitorProcessor#flush()
+   */
+  @Test
+  public void testFlushedOnlyWhenDrained() throws Exception {
+    for (boolean ringBufferHandoff : new boolean[] {false, true}) {
+      final BatchRecordingProcessor batchProcessor = new BatchRecordingProcessor();
+      final AsyncMonitorProcessor processor = new AsyncMonitorProcessor(
+          new MonitorProcessor[] {batchProcessor});
+      processor.setRingBufferHandoff(ringBufferHandoff);
+      processor.setMaxBatchSize(1);
+      processor.startup();
+      processor.process(event(0));
+      batchProcessor.stalled.await();
+      // waiting by the time the first batch is done
+      processor.process(event(1));
+      processor.process(event(2));
+      batchProcessor.release.countDown();
+      processor.flushEvents();
+      assertEquals(3, batchProcessor.batches.size());
+      assertEquals(1, batchProcessor.flushes);
+      processor.shutdown();
+    }
+  }
+  
+  private static EventMonitor event(final int index) {
+    final EventMonitor event = new EventMonitor("batch");
+    event.set("index", index);
+    return event;
+  }
+  
+  /**
+   * @see AsyncMonitorProcessor#setOverloadPolicy(String)
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownOverloadPolicy() {
+    _processor.setOverloadPolicy("DROP_ALL");
+  }
+  
+  /**
+   * Starts a processor whose processing thread is stalled processing a monitor named m0
+   */
+  private AsyncMonitorProcessor stalled(final StallingProcessor stalling, final int capacity,
+      final String overloadPolicy) throws InterruptedException {
+    final AsyncMonitorProcessor processor = new AsyncMonitorProcessor(
+        new MonitorProcessor[] {stalling});
+    processor.setCapacity(capacity);
+    processor.setOverloadPolicy(overloadPolicy);
+    processor.startup();
+    processor.process(new EventMonitor("m0"));
+    stalling.stalled.await();
+    return processor;
+  }
+  
+  private List<String> drain(final AsyncMonitorProcessor processor,
+      final StallingProcessor stalling) {
+    stalling.release.countDown();
+    processor.shutdown();
+    return stalling.names;
+  }
+  
+  private static final class StallingProcessor extends MonitorProcessorAdapter {
+    final CountDownLatch stalled = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<String> names = Collections.synchronizedList(new ArrayList<String>());
+    
+    @Override
+    public void process(final Monitor monitor) {
+      stalled.countDown();
+      try {
+        release.await();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      names.add(monitor.getAsString(Monitor.NAME));
+    }
+  }
+  
+  /**
+   * Fails on monitors named bad, and records the names of the others
+   */
+  private static final class FailingProcessor extends MonitorProcessorAdapter {
+    final List<String> names = Collections.synchronizedList(new ArrayList<String>());
+    private final boolean _error;
+    
+    FailingProcessor(final boolean error) {
+      _error = error;
+    }
+    
+    @Override
+    public void monitorStarted(final Monitor monitor) {
+      record(monitor);
+    }
+    
+    @Override
+    public void process(final Monitor monitor) {
+      record(monitor);
+    }
+    
+    private void record(final Monitor monitor) {
+      final String name = monitor.getAsString(Monitor.NAME);
+      if ("bad".equals(name)) {
+        if (_error) {
+          throw new Error("failed on " + name);
+        }
+        throw new IllegalStateException("failed on " + name);
+      }
+      names.add(name);
+    }
+  }
+  
+  /**
+   * An attribute value that can't be decomposed
+   */
+  @SuppressWarnings("serial")
+  public static final class FailingValue implements Serializable {
+    public String getValue() {
+      throw new IllegalStateException("not readable");
+    }
+  }
+  
+  private static final class OrderRecordingProcessor extends MonitorProcessorAdapter {
+    final Map<String, List<Integer>> indexes = new HashMap<String, List<Integer>>();
+    final Map<String, Set<String>> threads = new HashMap<String, Set<String>>();
+    
+    @Override
+    public void monitorStarted(final Monitor monitor) {
+      record(monitor);
+    }
+    
+    @Override
+    public void process(final Monitor monitor) {
+      record(monitor);
+    }
+    
+    private synchronized void record(final Monitor monitor) {
+      final String name = monitor.getAsString(Monitor.NAME);
+      if (!indexes.containsKey(name)) {
+        indexes.put(name, new ArrayList<Integer>());
+        threads.put(name, new HashSet<String>());
+      }
+      indexes.get(name).add(monitor.getAsInt("index"));
+      threads.get(name).add(Thread.currentThread().getName());
+    }
+  }
+  
+  private static final class BatchRecordingProcessor extends MonitorProcessorAdapter implements
+      BatchMonitorProcessor {
+    final CountDownLatch stalled = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<List<Integer>> batches = new ArrayList<List<Integer>>();
+    final List<Integer> started = new ArrayList<Integer>();
+    volatile int flushes;
+    
+    public void processBatch(final List<Monitor> monitors) {
+      stalled.countDown();
+      try {
+        release.await();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      final List<Integer> indexes = new ArrayList<Integer>();
+      for (Monitor monitor : monitors) {
+        indexes.add(monitor.getAsInt("index"));
+      }
+      batches.add(indexes);
+    }
+    
+    @Override
+    public void monitorStarted(final Monitor monitor) {
+      started.add(monitor.getAsInt("index"));
+    }
+    
+    @Override
+    public void process(final Monitor monitor) {
+      throw new AssertionError("a batch processor was given a single monitor");
+    }
+    
+    public void flush() {
+      flushes++;
+    }
+  }
 }
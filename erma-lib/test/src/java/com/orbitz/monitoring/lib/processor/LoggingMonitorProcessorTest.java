@@ -86,6 +86,7 @@ public class LoggingMonitorProcessorTest extends TestCase {
                 "\n\t-> failed = true" +
                 "\n\t-> hostname = " + monitor.get("hostname") +
                 "\n\t-> latency = " + monitor.get("latency") +
+                "\n\t-> latencyNanos = " + monitor.get("latencyNanos") +
                 "\n\t-> name = testEvent" +
                 "\n\t-> sequenceId = m" +
                 "\n\t-> startTime = " + monitor.get("startTime") +
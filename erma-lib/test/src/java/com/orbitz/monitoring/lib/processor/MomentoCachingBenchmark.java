@@ -0,0 +1,100 @@
+package com.orbitz.monitoring.lib.processor;
+
+import com.orbitz.monitoring.api.Monitor;
+import com.orbitz.monitoring.api.MonitoringEngine;
+import com.orbitz.monitoring.api.engine.ThreadLocalInheritableStrategy;
+import com.orbitz.monitoring.api.monitor.EventMonitor;
+import com.orbitz.monitoring.api.monitor.TransactionMonitor;
+import com.orbitz.monitoring.lib.BaseMonitoringEngineManager;
+import com.orbitz.monitoring.lib.factory.ProcessGroup;
+import com.orbitz.monitoring.lib.factory.SimpleMonitorProcessorFactory;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * Compares the time to process trees of monitors of 10, 100 and 1000 nodes with and without
+ * {@link MonitoringEngine#setMomentoCaching(boolean) momento caching}, with a processor that takes
+ * the momento of every monitor it processes, as {@link AsyncMonitorProcessor} does. Run with
+ * <code>java MomentoCachingBenchmark [trees]</code>.
+ */
+public class MomentoCachingBenchmark {
+  private static final int FAN_OUT = 4;
+
+  public static void main(final String[] args) throws Exception {
+    final int trees = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+    // debug logging would dominate the cost of each monitor
+    BasicConfigurator.configure();
+    Logger.getRootLogger().setLevel(Level.WARN);
+    final MonitoringEngine engine = MonitoringEngine.getInstance();
+    final BaseMonitoringEngineManager manager = new BaseMonitoringEngineManager(
+        new SimpleMonitorProcessorFactory(new ProcessGroup(new MomentoTakingProcessor())));
+    manager.setInheritableStrategy(new ThreadLocalInheritableStrategy());
+    manager.startup();
+
+    for (final int nodes : new int[] {10, 100, 1000}) {
+      final int iterations = Math.max(1, trees * 10 / nodes);
+      for (int round = 0; round < 2; round++) {
+        // the first round warms up both paths
+        for (final boolean caching : new boolean[] {false, true}) {
+          engine.setMomentoCaching(caching);
+          final long start = System.nanoTime();
+          for (int i = 0; i < iterations; i++) {
+            final TransactionMonitor root = new TransactionMonitor("root");
+            addChildren(nodes - 1);
+            root.succeeded();
+            root.done();
+          }
+          final long elapsed = System.nanoTime() - start;
+          if (round > 0) {
+            System.out.println(nodes + " nodes, " + (caching ? "caching: " : "rebuilding: ")
+                + (elapsed / iterations / 1000) + " us/tree");
+          }
+        }
+      }
+    }
+    manager.shutdown();
+  }
+
+  /**
+   * Creates a subtree under the current composite monitor
+   * @param nodes the number of monitors to create
+   */
+  private static void addChildren(final int nodes) {
+    int remaining = nodes;
+    for (int i = 0; i < FAN_OUT && remaining > 0; i++) {
+      final int subtree = (remaining + FAN_OUT - 1 - i) / (FAN_OUT - i);
+      remaining -= subtree;
+      if (subtree == 1) {
+        final EventMonitor event = new EventMonitor("leaf");
+        setAttributes(event, i);
+        event.fire();
+      }
+      else {
+        final TransactionMonitor transaction = new TransactionMonitor("branch");
+        setAttributes(transaction, i);
+        addChildren(subtree - 1);
+        transaction.succeeded();
+        transaction.done();
+      }
+    }
+  }
+
+  private static void setAttributes(final Monitor monitor, final int index) {
+    monitor.set("index", index);
+    monitor.set("host", "web12");
+    monitor.set("ratio", 0.25);
+    monitor.set("tags", new String[] {"a", "b"});
+  }
+
+  private static final class MomentoTakingProcessor extends MonitorProcessorAdapter {
+    private int momentos;
+
+    @Override
+    public void process(final Monitor monitor) {
+      if (monitor.getSerializableMomento() != null) {
+        momentos++;
+      }
+    }
+  }
+}
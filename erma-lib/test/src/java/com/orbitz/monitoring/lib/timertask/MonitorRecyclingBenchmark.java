@@ -0,0 +1,77 @@
+package com.orbitz.monitoring.lib.timertask;
+
+import com.orbitz.monitoring.api.MonitoringEngine;
+import com.orbitz.monitoring.api.MonitoringLevel;
+import com.orbitz.monitoring.api.monitor.EventMonitor;
+import com.orbitz.monitoring.api.monitor.ValueMonitor;
+import com.orbitz.monitoring.lib.BaseMonitoringEngineManager;
+import com.orbitz.monitoring.lib.factory.SimpleMonitorProcessorFactory;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * Compares the time and the heap allocated by firing {@link EventMonitor event} and
+ * {@link ValueMonitor value} monitors with and without
+ * {@link MonitoringEngine#setMonitorRecycling(boolean) recycling}. Allocation is only reported on
+ * JVMs whose thread bean can measure it. Run with
+ * <code>java MonitorRecyclingBenchmark [iterations]</code>.
+ */
+public class MonitorRecyclingBenchmark {
+  public static void main(final String[] args) throws Exception {
+    final int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+    // debug logging would dominate the cost of each monitor
+    BasicConfigurator.configure();
+    Logger.getRootLogger().setLevel(Level.WARN);
+    final MonitoringEngine engine = MonitoringEngine.getInstance();
+    final BaseMonitoringEngineManager manager = new BaseMonitoringEngineManager(
+        new SimpleMonitorProcessorFactory());
+    manager.startup();
+    engine.setSingleWriterMonitors(true);
+
+    for (int round = 0; round < 2; round++) {
+      // the first round warms up both paths
+      for (final boolean recycling : new boolean[] {false, true}) {
+        engine.setMonitorRecycling(recycling);
+        final long allocatedBefore = allocatedBytes();
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+          final EventMonitor event = EventMonitor.obtain("JvmStats", MonitoringLevel.ESSENTIAL);
+          event.set("type", "GC.young");
+          event.set("count", i);
+          event.fire();
+          ValueMonitor.obtain("queueDepth", i).fire();
+        }
+        final long elapsed = System.nanoTime() - start;
+        final long allocated = allocatedBytes() - allocatedBefore;
+        if (round > 0) {
+          System.out.println(recycling ? "recycling:" : "allocating:");
+          System.out.println("  " + (elapsed / iterations) + " ns/op");
+          if (allocatedBefore >= 0) {
+            System.out.println("  " + (allocated / iterations) + " bytes/op");
+          }
+        }
+      }
+    }
+    manager.shutdown();
+  }
+
+  /**
+   * @return the bytes allocated by the current thread, or -1 if the JVM can't tell
+   */
+  private static long allocatedBytes() {
+    final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    try {
+      final Method method = Class.forName("com.sun.management.ThreadMXBean").getMethod(
+          "getThreadAllocatedBytes", new Class[] {long.class});
+      return ((Long)method.invoke(threadBean,
+          new Object[] {Long.valueOf(Thread.currentThread().getId())})).longValue();
+    }
+    catch (final Exception e) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package com.orbitz.monitoring.test;
+
+import com.orbitz.monitoring.api.Clock;
+
+/**
+ * A {@link Clock} whose time only changes when a test changes it
+ */
+public class MockClock implements Clock {
+    private volatile long _currentTimeMillis;
+    private volatile long _nanoTime;
+
+    public MockClock(long currentTimeMillis) {
+        _currentTimeMillis = currentTimeMillis;
+    }
+
+    public long currentTimeMillis() {
+        return _currentTimeMillis;
+    }
+
+    public long nanoTime() {
+        return _nanoTime;
+    }
+
+    /**
+     * Moves both the wall clock and the monotonic timer forward
+     *
+     * @param nanos the number of nanoseconds to move forward
+     */
+    public void advance(long nanos) {
+        _nanoTime += nanos;
+        _currentTimeMillis += nanos / 1000000L;
+    }
+
+    /**
+     * Changes the wall clock without moving the monotonic timer, as when the system time is set
+     *
+     * @param currentTimeMillis the new wall clock time
+     */
+    public void setCurrentTimeMillis(long currentTimeMillis) {
+        _currentTimeMillis = currentTimeMillis;
+    }
+}